@@ -6,10 +6,17 @@ import android.media.AudioManager;
 import android.media.AudioTrack;
 import android.util.Log;
 
-import java.util.concurrent.BlockingQueue;
+import com.voicechanger.dsp.ClarityFilter;
+import com.voicechanger.dsp.EffectChain;
+import com.voicechanger.dsp.FormantPreservingPitchShifter;
+import com.voicechanger.dsp.NoiseSuppressor;
+import com.voicechanger.dsp.PcmBlockProcessor;
+import com.voicechanger.dsp.PcmRingBuffer;
+import com.voicechanger.dsp.SaturationEffect;
+
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
-import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicLong;
 
@@ -29,13 +36,17 @@ public class AdvancedVoiceProcessor {
     // Ultra-small chunks for minimal latency (62.5ms)
     private static final int CHUNK_SIZE = SAMPLE_RATE / 16; // 62.5ms chunks
     
+    // Ring capacity and how long a parked audio thread waits before re-checking state
+    private static final int RING_CAPACITY = CHUNK_SIZE * 8;
+    private static final long RING_WAIT_NANOS = TimeUnit.MILLISECONDS.toNanos(100);
+    
     private Context context;
     private AudioTrack audioTrack;
     private ExecutorService executorService;
     
-    // Optimized queues with smaller capacity
-    private final BlockingQueue<AudioChunk> inputQueue = new LinkedBlockingQueue<>(20);
-    private final BlockingQueue<byte[]> outputQueue = new LinkedBlockingQueue<>(20);
+    // Lock-free PCM rings: caller -> processing thread -> playback thread
+    private final PcmRingBuffer inputRing = new PcmRingBuffer(RING_CAPACITY);
+    private final PcmRingBuffer outputRing = new PcmRingBuffer(RING_CAPACITY);
     
     // Processing state
     private final AtomicBoolean isProcessing = new AtomicBoolean(false);
@@ -44,10 +55,21 @@ public class AdvancedVoiceProcessor {
     
     // Voice effects configuration
     private VoiceProfile currentProfile = VoiceProfile.SAUDI_GIRL_WARM;
-    private float pitchShift = 1.2f;
-    private float formantShift = 1.1f;
-    private float warmth = 0.3f;
-    private float clarity = 0.8f;
+    
+    // Effect chain: noise suppression, pitch and formant in one pass, warmth, clarity.
+    // Noise is removed first so the later stages do not colour it.
+    private final FormantPreservingPitchShifter pitchStage = new FormantPreservingPitchShifter(SAMPLE_RATE);
+    private final SaturationEffect warmthStage = new SaturationEffect();
+    private final ClarityFilter clarityStage = new ClarityFilter(SAMPLE_RATE);
+    private final NoiseSuppressor noiseSuppressor = new NoiseSuppressor(SAMPLE_RATE);
+    private final EffectChain effectChain = new EffectChain()
+            .add(noiseSuppressor)
+            .add(pitchStage)
+            .add(warmthStage)
+            .add(clarityStage);
+    
+    // Preallocated work buffer for in-place processing on the audio thread
+    private final PcmBlockProcessor blockProcessor = new PcmBlockProcessor();
     
     // Performance tracking
     private final AtomicLong totalProcessedChunks = new AtomicLong(0);
@@ -74,19 +96,6 @@ public class AdvancedVoiceProcessor {
         }
     }
     
-    private static class AudioChunk {
-        byte[] data;
-        int length;
-        long timestamp;
-        
-        AudioChunk(byte[] data, int length) {
-            this.data = new byte[length];
-            System.arraycopy(data, 0, this.data, 0, length);
-            this.length = length;
-            this.timestamp = System.nanoTime(); // Use nanoTime for better precision
-        }
-    }
-    
     public interface VoiceProcessorListener {
         void onPerformanceUpdate(long avgLatency, long totalChunks);
         void onError(String message);
@@ -99,6 +108,9 @@ public class AdvancedVoiceProcessor {
         this.executorService = Executors.newFixedThreadPool(2); // Limit threads for better performance
         
         initializeAudioOutput();
+        // Shape at 2x to keep saturation harmonics from aliasing; costs two samples of delay
+        warmthStage.setOversampling(true);
+        applyProfileParameters(currentProfile);
         Log.d(TAG, "AdvancedVoiceProcessor initialized with ultra-low latency");
     }
     
@@ -138,12 +150,17 @@ public class AdvancedVoiceProcessor {
         
         isProcessing.set(true);
         
-        // Clear queues and reset stats
-        inputQueue.clear();
-        outputQueue.clear();
+        // Clear rings and reset stats
+        inputRing.clear();
+        outputRing.clear();
         totalProcessedChunks.set(0);
         totalLatency.set(0);
         
+        // Allocate all working buffers up front so the audio threads never allocate, and start from clean state
+        blockProcessor.prepare(CHUNK_SIZE);
+        effectChain.prepare(CHUNK_SIZE);
+        effectChain.reset();
+        
         // Start processing threads
         startProcessingThread();
         startPlaybackThread();
@@ -153,7 +170,8 @@ public class AdvancedVoiceProcessor {
             audioTrack.play();
         }
         
-        Log.d(TAG, "Advanced voice processing started");
+        Log.d(TAG, "Advanced voice processing started, pitch shifter latency: "
+                + pitchStage.getLatencySamples() * 1000 / SAMPLE_RATE + "ms");
     }
     
     public void stopProcessing() {
@@ -179,9 +197,9 @@ public class AdvancedVoiceProcessor {
             playbackThread = null;
         }
         
-        // Clear queues
-        inputQueue.clear();
-        outputQueue.clear();
+        // Clear rings
+        inputRing.clear();
+        outputRing.clear();
         
         Log.d(TAG, "Advanced voice processing stopped");
     }
@@ -191,14 +209,9 @@ public class AdvancedVoiceProcessor {
             return;
         }
         
-        // Add to input queue for processing
-        AudioChunk chunk = new AudioChunk(audioData, length);
-        if (!inputQueue.offer(chunk)) {
-            Log.w(TAG, "Input queue full, dropping audio chunk");
-            // Fallback: play original audio to maintain real-time flow
-            if (outputQueue.remainingCapacity() > 0) {
-                outputQueue.offer(audioData);
-            }
+        // Copy into the input ring for processing (single producer: the capture thread)
+        if (inputRing.write(audioData, 0, length) < length / 2) {
+            Log.w(TAG, "Input buffer full, dropping audio");
         }
     }
     
@@ -206,20 +219,28 @@ public class AdvancedVoiceProcessor {
         processingThread = new Thread(() -> {
             android.os.Process.setThreadPriority(android.os.Process.THREAD_PRIORITY_URGENT_AUDIO);
             
+            byte[] workBuffer = new byte[CHUNK_SIZE * 2];
+            
             while (isProcessing.get() && !Thread.currentThread().isInterrupted()) {
                 try {
-                    AudioChunk chunk = inputQueue.take();
+                    if (!inputRing.awaitReadable(1, RING_WAIT_NANOS)) {
+                        continue;
+                    }
+                    
+                    long startTime = System.nanoTime();
+                    int backlog = inputRing.availableToRead();
+                    int length = inputRing.read(workBuffer, 0, workBuffer.length) * 2;
                     
-                    // Process audio with advanced effects
-                    byte[] processedAudio = applyAdvancedVoiceEffects(chunk.data, chunk.length);
+                    // Process audio with advanced effects in place
+                    applyAdvancedVoiceEffects(workBuffer, length);
                     
                     // Queue for playback
-                    if (!outputQueue.offer(processedAudio)) {
-                        Log.w(TAG, "Output queue full, dropping processed audio");
+                    if (outputRing.write(workBuffer, 0, length) < length / 2) {
+                        Log.w(TAG, "Output buffer full, dropping processed audio");
                     }
                     
-                    // Update performance metrics
-                    long latency = (System.nanoTime() - chunk.timestamp) / 1_000_000; // Convert to ms
+                    // Update performance metrics: time buffered in the ring plus processing time, in ms
+                    long latency = backlog * 1000L / SAMPLE_RATE + (System.nanoTime() - startTime) / 1_000_000;
                     updatePerformanceMetrics(latency);
                     
                 } catch (InterruptedException e) {
@@ -243,12 +264,18 @@ public class AdvancedVoiceProcessor {
         playbackThread = new Thread(() -> {
             android.os.Process.setThreadPriority(android.os.Process.THREAD_PRIORITY_URGENT_AUDIO);
             
+            byte[] playbackBuffer = new byte[CHUNK_SIZE * 2];
+            
             while (isProcessing.get() && !Thread.currentThread().isInterrupted()) {
                 try {
-                    byte[] processedAudio = outputQueue.take();
+                    if (!outputRing.awaitReadable(1, RING_WAIT_NANOS)) {
+                        continue;
+                    }
+                    
+                    int samples = outputRing.read(playbackBuffer, 0, playbackBuffer.length);
                     
-                    if (audioTrack != null && processedAudio.length > 0) {
-                        int bytesWritten = audioTrack.write(processedAudio, 0, processedAudio.length);
+                    if (audioTrack != null && samples > 0) {
+                        int bytesWritten = audioTrack.write(playbackBuffer, 0, samples * 2);
                         
                         if (bytesWritten < 0) {
                             Log.e(TAG, "AudioTrack write error: " + bytesWritten);
@@ -273,116 +300,9 @@ public class AdvancedVoiceProcessor {
         playbackThread.start();
     }
     
-    private byte[] applyAdvancedVoiceEffects(byte[] audioData, int length) {
-        // Convert bytes to 16-bit samples
-        short[] samples = new short[length / 2];
-        for (int i = 0; i < samples.length; i++) {
-            samples[i] = (short) ((audioData[i * 2 + 1] << 8) | (audioData[i * 2] & 0xFF));
-        }
-        
-        // Apply advanced voice effects
-        samples = applyPitchShift(samples);
-        samples = applyFormantShift(samples);
-        samples = applyWarmthEffect(samples);
-        samples = applyClarityEnhancement(samples);
-        samples = applyNoiseReduction(samples);
-        
-        // Convert back to bytes
-        byte[] result = new byte[length];
-        for (int i = 0; i < samples.length; i++) {
-            result[i * 2] = (byte) (samples[i] & 0xFF);
-            result[i * 2 + 1] = (byte) ((samples[i] >> 8) & 0xFF);
-        }
-        
-        return result;
-    }
-    
-    private short[] applyPitchShift(short[] samples) {
-        // Simple pitch shifting using linear interpolation
-        if (pitchShift == 1.0f) return samples;
-        
-        short[] result = new short[samples.length];
-        for (int i = 0; i < result.length; i++) {
-            float sourceIndex = i / pitchShift;
-            int index1 = (int) sourceIndex;
-            int index2 = Math.min(index1 + 1, samples.length - 1);
-            float fraction = sourceIndex - index1;
-            
-            if (index1 < samples.length) {
-                result[i] = (short) (samples[index1] * (1 - fraction) + samples[index2] * fraction);
-            }
-        }
-        return result;
-    }
-    
-    private short[] applyFormantShift(short[] samples) {
-        // Simulate formant shifting with frequency modulation
-        if (formantShift == 1.0f) return samples;
-        
-        short[] result = new short[samples.length];
-        for (int i = 0; i < samples.length; i++) {
-            float sample = samples[i];
-            
-            // Apply subtle frequency modulation to simulate formant shift
-            float modulation = (float) Math.sin(2 * Math.PI * i / (SAMPLE_RATE / 100.0f)) * 0.1f;
-            sample *= (1.0f + modulation * (formantShift - 1.0f));
-            
-            result[i] = (short) Math.max(-32767, Math.min(32767, sample));
-        }
-        return result;
-    }
-    
-    private short[] applyWarmthEffect(short[] samples) {
-        // Apply harmonic enhancement for warmth
-        if (warmth == 0.0f) return samples;
-        
-        short[] result = new short[samples.length];
-        for (int i = 0; i < samples.length; i++) {
-            float sample = samples[i] / 32767.0f;
-            
-            // Apply soft saturation for warmth
-            sample = (float) Math.tanh(sample * (1.0f + warmth));
-            
-            result[i] = (short) (sample * 32767.0f);
-        }
-        return result;
-    }
-    
-    private short[] applyClarityEnhancement(short[] samples) {
-        // Apply high-frequency emphasis for clarity
-        if (clarity == 1.0f) return samples;
-        
-        short[] result = new short[samples.length];
-        
-        // Simple high-pass filter for clarity
-        float alpha = 0.95f * clarity;
-        float prevSample = 0;
-        
-        float filtered = 0;
-        for (int i = 0; i < samples.length; i++) {
-            float sample = samples[i];
-            filtered = alpha * (filtered + sample - prevSample);
-            prevSample = sample;
-            
-            result[i] = (short) Math.max(-32767, Math.min(32767, filtered));
-        }
-        return result;
-    }
-    
-    private short[] applyNoiseReduction(short[] samples) {
-        // Simple noise gate
-        short[] result = new short[samples.length];
-        float threshold = 0.01f; // Adjust based on noise level
-        
-        for (int i = 0; i < samples.length; i++) {
-            float sample = Math.abs(samples[i] / 32767.0f);
-            if (sample < threshold) {
-                result[i] = 0; // Gate out low-level noise
-            } else {
-                result[i] = samples[i];
-            }
-        }
-        return result;
+    private void applyAdvancedVoiceEffects(byte[] audioData, int length) {
+        // Apply advanced voice effects in place through the preallocated work buffer
+        blockProcessor.process(effectChain, audioData, 0, length);
     }
     
     private void updatePerformanceMetrics(long latency) {
@@ -397,14 +317,18 @@ public class AdvancedVoiceProcessor {
     
     public void setVoiceProfile(VoiceProfile profile) {
         this.currentProfile = profile;
-        this.pitchShift = profile.pitchShift;
-        this.formantShift = profile.formantShift;
-        this.warmth = profile.warmth;
-        this.clarity = profile.clarity;
+        applyProfileParameters(profile);
         
         Log.d(TAG, "Voice profile set to: " + profile.name());
     }
     
+    private void applyProfileParameters(VoiceProfile profile) {
+        pitchStage.setPitchRatio(profile.pitchShift);
+        pitchStage.setFormantRatio(profile.formantShift);
+        warmthStage.setDrive(profile.warmth == 0.0f ? 0.0f : 1.0f + profile.warmth);
+        clarityStage.setClarity(profile.clarity);
+    }
+    
     public boolean isProcessing() {
         return isProcessing.get();
     }
@@ -7,12 +7,14 @@ import android.media.AudioTrack;
 import android.media.MediaRecorder;
 import android.util.Log;
 
+import com.voicechanger.dsp.PcmRingBuffer;
+
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
-import java.util.concurrent.BlockingQueue;
-import java.util.concurrent.LinkedBlockingQueue;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
 
 /**
@@ -35,6 +37,10 @@ public class AudioProcessor {
     // Processing chunk size (smaller for lower latency)
     private static final int CHUNK_SIZE = SAMPLE_RATE / 4; // 250ms chunks for balance between latency and API efficiency
     
+    // Ring capacity (~2s) and how long a parked audio thread waits before re-checking state
+    private static final int RING_CAPACITY = CHUNK_SIZE * 8;
+    private static final long RING_WAIT_NANOS = TimeUnit.MILLISECONDS.toNanos(100);
+    
     private AudioRecord audioRecord;
     private AudioTrack audioTrack;
     
@@ -43,9 +49,12 @@ public class AudioProcessor {
     private Thread playbackThread;
     private final AtomicBoolean isRunning = new AtomicBoolean(false);
     
-    // Audio data queues for buffering
-    private final BlockingQueue<byte[]> captureQueue = new LinkedBlockingQueue<>();
-    private final BlockingQueue<byte[]> playbackQueue = new LinkedBlockingQueue<>();
+    // Lock-free PCM rings between the audio threads and their peers
+    private final PcmRingBuffer captureRing = new PcmRingBuffer(RING_CAPACITY);
+    private final PcmRingBuffer playbackRing = new PcmRingBuffer(RING_CAPACITY);
+    
+    // Processed audio arrives from network callbacks on several threads; serialize them into the single-producer ring
+    private final Object playbackWriteLock = new Object();
     
     // Listeners
     private AudioProcessorListener listener;
@@ -120,9 +129,9 @@ public class AudioProcessor {
         
         isRunning.set(true);
         
-        // Clear any existing data in queues
-        captureQueue.clear();
-        playbackQueue.clear();
+        // Clear any existing data in the rings
+        captureRing.clear();
+        playbackRing.clear();
         
         // Start audio capture and playback
         try {
@@ -179,9 +188,9 @@ public class AudioProcessor {
             Log.w(TAG, "Thread interruption during shutdown", e);
         }
         
-        // Clear queues
-        captureQueue.clear();
-        playbackQueue.clear();
+        // Clear rings
+        captureRing.clear();
+        playbackRing.clear();
         
         Log.d(TAG, "Audio processing stopped");
     }
@@ -191,14 +200,16 @@ public class AudioProcessor {
             android.os.Process.setThreadPriority(android.os.Process.THREAD_PRIORITY_URGENT_AUDIO);
             
             byte[] buffer = new byte[CHUNK_SIZE * 2]; // 16-bit samples = 2 bytes per sample
-            ByteArrayOutputStream chunkStream = new ByteArrayOutputStream();
+            byte[] chunkBuffer = new byte[CHUNK_SIZE * 2];
+            int chunkFill = 0;
             
             while (isRunning.get() && !Thread.currentThread().isInterrupted()) {
                 try {
                     int bytesRead = audioRecord.read(buffer, 0, buffer.length);
                     
                     if (bytesRead > 0) {
-                        chunkStream.write(buffer, 0, bytesRead);
+                        // Hand samples to pull consumers; when nobody drains the ring, newer audio is dropped
+                        captureRing.write(buffer, 0, bytesRead);
                         
                         // Calculate and report audio level
                         float audioLevel = calculateAudioLevel(buffer, bytesRead);
@@ -206,22 +217,21 @@ public class AudioProcessor {
                             listener.onAudioLevelChanged(audioLevel);
                         }
                         
-                        // When we have enough data for a chunk, process it
-                        if (chunkStream.size() >= CHUNK_SIZE * 2) {
-                            byte[] chunk = chunkStream.toByteArray();
-                            
-                            // Add to capture queue for processing
-                            if (!captureQueue.offer(chunk)) {
-                                Log.w(TAG, "Capture queue full, dropping audio chunk");
-                            }
+                        // Assemble full chunks for the listener
+                        int offset = 0;
+                        while (offset < bytesRead) {
+                            int n = Math.min(bytesRead - offset, chunkBuffer.length - chunkFill);
+                            System.arraycopy(buffer, offset, chunkBuffer, chunkFill, n);
+                            chunkFill += n;
+                            offset += n;
                             
-                            // Notify listener of captured audio
-                            if (listener != null) {
-                                listener.onAudioCaptured(chunk);
+                            if (chunkFill == chunkBuffer.length) {
+                                // The listener keeps the chunk beyond this call, so it gets its own copy
+                                if (listener != null) {
+                                    listener.onAudioCaptured(Arrays.copyOf(chunkBuffer, chunkFill));
+                                }
+                                chunkFill = 0;
                             }
-                            
-                            // Reset for next chunk
-                            chunkStream.reset();
                         }
                         
                     } else if (bytesRead < 0) {
@@ -249,14 +259,19 @@ public class AudioProcessor {
         playbackThread = new Thread(() -> {
             android.os.Process.setThreadPriority(android.os.Process.THREAD_PRIORITY_URGENT_AUDIO);
             
+            byte[] playbackBuffer = new byte[CHUNK_SIZE * 2];
+            
             while (isRunning.get() && !Thread.currentThread().isInterrupted()) {
                 try {
                     // Wait for processed audio data
-                    byte[] audioData = playbackQueue.take();
+                    if (!playbackRing.awaitReadable(1, RING_WAIT_NANOS)) {
+                        continue;
+                    }
                     
-                    if (audioData != null && audioData.length > 0) {
+                    int samples = playbackRing.read(playbackBuffer, 0, playbackBuffer.length);
+                    if (samples > 0) {
                         // Play the processed audio
-                        int bytesWritten = audioTrack.write(audioData, 0, audioData.length);
+                        int bytesWritten = audioTrack.write(playbackBuffer, 0, samples * 2);
                         
                         if (bytesWritten < 0) {
                             Log.e(TAG, "AudioTrack write error: " + bytesWritten);
@@ -287,17 +302,27 @@ public class AudioProcessor {
      */
     public void queueProcessedAudio(byte[] processedAudio) {
         if (isRunning.get() && processedAudio != null && processedAudio.length > 0) {
-            if (!playbackQueue.offer(processedAudio)) {
-                Log.w(TAG, "Playback queue full, dropping processed audio");
+            int written;
+            synchronized (playbackWriteLock) {
+                written = playbackRing.write(processedAudio, 0, processedAudio.length);
+            }
+            if (written < processedAudio.length / 2) {
+                Log.w(TAG, "Playback buffer full, dropping processed audio");
             }
         }
     }
     
     /**
-     * Get the next captured audio chunk for processing
+     * Get the next captured audio chunk for processing, or null if a full chunk is not buffered yet.
+     * Must only be called from a single consumer thread.
      */
     public byte[] getNextCapturedChunk() {
-        return captureQueue.poll();
+        if (captureRing.availableToRead() < CHUNK_SIZE) {
+            return null;
+        }
+        byte[] chunk = new byte[CHUNK_SIZE * 2];
+        captureRing.read(chunk, 0, chunk.length);
+        return chunk;
     }
     
     private float calculateAudioLevel(byte[] audioData, int length) {
@@ -0,0 +1,166 @@
+package com.voicechanger.app;
+
+import android.content.res.AssetManager;
+import android.util.Log;
+
+import com.voicechanger.dsp.Resampler;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Impulse-response presets shipped as app assets, one WAV file per preset under
+ * {@code impulse_responses/} (16-bit PCM or 32-bit float; only the first channel is used).
+ * Responses are converted to the pipeline rate, normalized to unit energy so a preset does not
+ * change the level of broadband input, and cached after the first load.
+ */
+public class ImpulseResponseLibrary {
+    private static final String TAG = "ImpulseResponseLibrary";
+    private static final String ASSET_DIRECTORY = "impulse_responses/";
+    
+    // Preset ids, as used by the impulse_response template parameter
+    public static final int NONE = 0;
+    public static final int TELEPHONE = 1;
+    public static final int RADIO = 2;
+    public static final int ROOM = 3;
+    
+    private static final String[] PRESET_NAMES = {null, "telephone", "radio", "room"};
+    
+    private final AssetManager assets;
+    private final int sampleRate;
+    private final Map<Integer, float[]> cache = new HashMap<>();
+    
+    public ImpulseResponseLibrary(AssetManager assets, int sampleRate) {
+        this.assets = assets;
+        this.sampleRate = sampleRate;
+    }
+    
+    /**
+     * Response for a preset id, or null for NONE, unknown ids and presets that fail to load
+     */
+    public synchronized float[] get(int preset) {
+        if (preset <= NONE || preset >= PRESET_NAMES.length) {
+            return null;
+        }
+        if (cache.containsKey(preset)) {
+            return cache.get(preset);
+        }
+        
+        String path = ASSET_DIRECTORY + PRESET_NAMES[preset] + ".wav";
+        float[] response = null;
+        try {
+            response = normalize(load(path));
+            Log.d(TAG, "Loaded " + path + ": " + response.length + " samples");
+        } catch (IOException e) {
+            Log.w(TAG, "Impulse response " + path + " not available: " + e.getMessage());
+        }
+        // Failures are cached too, so a missing asset is not retried on every template switch
+        cache.put(preset, response);
+        return response;
+    }
+    
+    private float[] load(String path) throws IOException {
+        ByteBuffer wav = ByteBuffer.wrap(readAll(path)).order(ByteOrder.LITTLE_ENDIAN);
+        if (wav.remaining() < 12 || wav.getInt(0) != 0x46464952 || wav.getInt(8) != 0x45564157) {
+            throw new IOException("Not a RIFF/WAVE file");
+        }
+        
+        int format = 0;
+        int channels = 0;
+        int rate = 0;
+        int bits = 0;
+        int position = 12;
+        while (position + 8 <= wav.limit()) {
+            int id = wav.getInt(position);
+            int size = wav.getInt(position + 4);
+            int body = position + 8;
+            if (size < 0 || body + size > wav.limit()) {
+                throw new IOException("Truncated WAV chunk");
+            }
+            if (id == 0x20746D66) { // "fmt "
+                format = wav.getShort(body) & 0xFFFF;
+                channels = wav.getShort(body + 2) & 0xFFFF;
+                rate = wav.getInt(body + 4);
+                bits = wav.getShort(body + 14) & 0xFFFF;
+            } else if (id == 0x61746164) { // "data"
+                if (channels == 0) {
+                    throw new IOException("WAV data before format");
+                }
+                return resample(decode(wav, body, size, format, channels, bits), rate);
+            }
+            // Chunks are padded to an even size
+            position = body + size + (size & 1);
+        }
+        throw new IOException("WAV file has no data");
+    }
+    
+    private static float[] decode(ByteBuffer wav, int offset, int size, int format, int channels, int bits)
+            throws IOException {
+        boolean pcm16 = format == 1 && bits == 16;
+        boolean float32 = format == 3 && bits == 32;
+        if (!pcm16 && !float32) {
+            throw new IOException("Unsupported WAV format " + format + "/" + bits + " bit");
+        }
+        int frameBytes = channels * bits / 8;
+        float[] samples = new float[size / frameBytes];
+        for (int i = 0; i < samples.length; i++) {
+            int at = offset + i * frameBytes;
+            samples[i] = pcm16 ? wav.getShort(at) / 32768.0f : wav.getFloat(at);
+        }
+        return samples;
+    }
+    
+    private float[] resample(float[] response, int rate) {
+        if (rate == sampleRate) {
+            return response;
+        }
+        Resampler resampler = new Resampler(rate, sampleRate, Resampler.Quality.HIGH);
+        // Zeros after the response flush the filter; the filter delay is trimmed from the front
+        int latency = resampler.getLatency();
+        float[] input = new float[response.length + 2 * latency];
+        System.arraycopy(response, 0, input, 0, response.length);
+        float[] output = new float[resampler.getMaxOutput(input.length)];
+        int produced = resampler.process(input, 0, input.length, output, 0);
+        
+        int skip = (int) Math.round((double) latency * sampleRate / rate);
+        int length = (int) Math.min(produced - skip, Math.round((double) response.length * sampleRate / rate));
+        float[] converted = new float[Math.max(length, 0)];
+        System.arraycopy(output, skip, converted, 0, converted.length);
+        return converted;
+    }
+    
+    private static float[] normalize(float[] response) throws IOException {
+        double energy = 0.0;
+        for (float x : response) {
+            energy += x * x;
+        }
+        if (energy <= 0.0) {
+            throw new IOException("Impulse response is silent");
+        }
+        float scale = (float) (1.0 / Math.sqrt(energy));
+        for (int i = 0; i < response.length; i++) {
+            response[i] *= scale;
+        }
+        return response;
+    }
+    
+    private byte[] readAll(String path) throws IOException {
+        InputStream in = assets.open(path);
+        try {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] chunk = new byte[8192];
+            int count;
+            while ((count = in.read(chunk)) > 0) {
+                out.write(chunk, 0, count);
+            }
+            return out.toByteArray();
+        } finally {
+            in.close();
+        }
+    }
+}
@@ -8,10 +8,16 @@ import android.media.AudioTrack;
 import android.media.MediaRecorder;
 import android.util.Log;
 
-import java.util.concurrent.BlockingQueue;
+import com.voicechanger.dsp.AutomaticGainControl;
+import com.voicechanger.dsp.EchoCanceller;
+import com.voicechanger.dsp.EffectChain;
+import com.voicechanger.dsp.NoiseSuppressor;
+import com.voicechanger.dsp.PcmBlockProcessor;
+import com.voicechanger.dsp.PcmRingBuffer;
+
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
-import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicLong;
 
@@ -35,14 +41,18 @@ public class LiveCallOptimizer {
     // Ultra-small chunks for minimal latency (15.625ms)
     private static final int CHUNK_SIZE = SAMPLE_RATE / 64; // 15.625ms chunks
     
+    // Ring capacity and how long a parked audio thread waits before re-checking state
+    private static final int RING_CAPACITY = CHUNK_SIZE * 8;
+    private static final long RING_WAIT_NANOS = TimeUnit.MILLISECONDS.toNanos(50);
+    
     private Context context;
     private AudioRecord audioRecord;
     private AudioTrack audioTrack;
     private ExecutorService executorService;
     
-    // Optimized queues with minimal capacity
-    private final BlockingQueue<byte[]> inputQueue = new LinkedBlockingQueue<>(5);
-    private final BlockingQueue<byte[]> outputQueue = new LinkedBlockingQueue<>(5);
+    // Lock-free PCM rings: capture -> processing -> playback
+    private final PcmRingBuffer inputRing = new PcmRingBuffer(RING_CAPACITY);
+    private final PcmRingBuffer outputRing = new PcmRingBuffer(RING_CAPACITY);
     
     // Processing state
     private final AtomicBoolean isProcessing = new AtomicBoolean(false);
@@ -61,9 +71,20 @@ public class LiveCallOptimizer {
     // Optimization settings
     private boolean enableAdaptiveBuffering = true;
     private boolean enableNoiseReduction = true;
-    private boolean enableEchoCancellation = true;
+    private volatile boolean enableEchoCancellation = true;
     private boolean enableAutomaticGainControl = true;
     
+    // Real-time optimization stages (state is kept across chunks)
+    private final EchoCanceller echoCanceller = new EchoCanceller(SAMPLE_RATE);
+    
+    // 256-point frames keep the suppressor's delay at 16 ms
+    private final NoiseSuppressor noiseSuppressor = new NoiseSuppressor(SAMPLE_RATE, 256);
+    private final AutomaticGainControl gainControl = new AutomaticGainControl(SAMPLE_RATE, 10000.0f / 32767.0f, 0.1f, 10.0f);
+    private volatile EffectChain optimizationChain;
+    
+    // Preallocated work buffer for in-place processing on the capture thread
+    private final PcmBlockProcessor blockProcessor = new PcmBlockProcessor();
+    
     public interface LiveCallListener {
         void onLatencyUpdate(long currentLatency, long maxLatency);
         void onAudioLevelChanged(float inputLevel, float outputLevel);
@@ -77,6 +98,7 @@ public class LiveCallOptimizer {
         this.executorService = Executors.newFixedThreadPool(4);
         this.voiceCloningEngine = new VoiceCloningEngine(context);
         
+        rebuildOptimizationChain();
         initializeAudioComponents();
         Log.d(TAG, "LiveCallOptimizer initialized for ultra-low latency");
     }
@@ -142,13 +164,22 @@ public class LiveCallOptimizer {
         
         isProcessing.set(true);
         
-        // Clear queues and reset stats
-        inputQueue.clear();
-        outputQueue.clear();
+        // Clear rings and reset stats
+        inputRing.clear();
+        outputRing.clear();
         totalProcessedChunks.set(0);
         totalLatency.set(0);
         maxLatency.set(0);
         
+        // Allocate all working buffers up front so the audio threads never allocate
+        blockProcessor.prepare(CHUNK_SIZE);
+        
+        // Every optimisation stage starts the call clean, including those currently disabled,
+        // so nothing adapted to the previous call carries over
+        echoCanceller.reset();
+        noiseSuppressor.reset();
+        gainControl.reset();
+        
         // Start audio capture and playback
         try {
             audioRecord.startRecording();
@@ -216,9 +247,10 @@ public class LiveCallOptimizer {
             Log.w(TAG, "Thread interruption during shutdown", e);
         }
         
-        // Clear queues
-        inputQueue.clear();
-        outputQueue.clear();
+        // Clear rings and the echo canceller's reference, which is tied to this stream
+        inputRing.clear();
+        outputRing.clear();
+        echoCanceller.reset();
         
         Log.d(TAG, "Live call processing stopped");
     }
@@ -234,20 +266,20 @@ public class LiveCallOptimizer {
                     int bytesRead = audioRecord.read(buffer, 0, buffer.length);
                     
                     if (bytesRead > 0) {
-                        // Apply real-time optimizations
-                        byte[] optimizedAudio = applyRealTimeOptimizations(buffer, bytesRead);
-                        
-                        // Add to input queue
-                        if (!inputQueue.offer(optimizedAudio)) {
-                            Log.w(TAG, "Input queue full, dropping audio chunk");
-                        }
-                        
-                        // Calculate and report audio level
+                        // Calculate and report audio level before the buffer is processed
                         float audioLevel = calculateAudioLevel(buffer, bytesRead);
                         if (listener != null) {
                             listener.onAudioLevelChanged(audioLevel, 0.0f); // Output level will be updated in playback thread
                         }
                         
+                        // Apply real-time optimizations
+                        applyRealTimeOptimizations(buffer, bytesRead);
+                        
+                        // Add to input ring
+                        if (inputRing.write(buffer, 0, bytesRead) < bytesRead / 2) {
+                            Log.w(TAG, "Input buffer full, dropping audio");
+                        }
+                        
                     } else if (bytesRead < 0) {
                         Log.e(TAG, "AudioRecord read error: " + bytesRead);
                         break;
@@ -273,21 +305,25 @@ public class LiveCallOptimizer {
         processingThread = new Thread(() -> {
             android.os.Process.setThreadPriority(android.os.Process.THREAD_PRIORITY_URGENT_AUDIO);
             
+            byte[] workBuffer = new byte[CHUNK_SIZE * 2];
+            
             while (isProcessing.get() && !Thread.currentThread().isInterrupted()) {
                 try {
-                    byte[] audioData = inputQueue.take();
+                    if (!inputRing.awaitReadable(1, RING_WAIT_NANOS)) {
+                        continue;
+                    }
+                    
                     long startTime = System.nanoTime();
+                    int length = inputRing.read(workBuffer, 0, workBuffer.length) * 2;
                     
                     // Process audio through voice cloning engine
-                    voiceCloningEngine.processAudioChunk(audioData, audioData.length);
+                    voiceCloningEngine.processAudioChunk(workBuffer, length);
                     
                     // For now, we'll use the processed audio from voice cloning engine
                     // In a real implementation, we'd get the processed audio back
-                    byte[] processedAudio = audioData; // Placeholder
-                    
-                    // Add to output queue
-                    if (!outputQueue.offer(processedAudio)) {
-                        Log.w(TAG, "Output queue full, dropping processed audio");
+                    // Placeholder: forward the optimized input
+                    if (outputRing.write(workBuffer, 0, length) < length / 2) {
+                        Log.w(TAG, "Output buffer full, dropping processed audio");
                     }
                     
                     // Update latency metrics
@@ -318,20 +354,29 @@ public class LiveCallOptimizer {
         playbackThread = new Thread(() -> {
             android.os.Process.setThreadPriority(android.os.Process.THREAD_PRIORITY_URGENT_AUDIO);
             
+            byte[] playbackBuffer = new byte[CHUNK_SIZE * 2];
+            
             while (isProcessing.get() && !Thread.currentThread().isInterrupted()) {
                 try {
-                    byte[] audioData = outputQueue.take();
+                    if (!outputRing.awaitReadable(1, RING_WAIT_NANOS)) {
+                        continue;
+                    }
                     
-                    if (audioData != null && audioData.length > 0) {
+                    int length = outputRing.read(playbackBuffer, 0, playbackBuffer.length) * 2;
+                    
+                    if (length > 0) {
                         // Play the processed audio
-                        int bytesWritten = audioTrack.write(audioData, 0, audioData.length);
+                        int bytesWritten = audioTrack.write(playbackBuffer, 0, length);
                         
                         if (bytesWritten < 0) {
                             Log.e(TAG, "AudioTrack write error: " + bytesWritten);
+                        } else if (enableEchoCancellation) {
+                            // Far-end reference for the echo canceller on the capture thread
+                            echoCanceller.addReference(playbackBuffer, 0, bytesWritten);
                         }
                         
                         // Calculate and report output audio level
-                        float outputLevel = calculateAudioLevel(audioData, audioData.length);
+                        float outputLevel = calculateAudioLevel(playbackBuffer, length);
                         if (listener != null) {
                             listener.onAudioLevelChanged(0.0f, outputLevel); // Input level will be updated in capture thread
                         }
@@ -357,91 +402,28 @@ public class LiveCallOptimizer {
         playbackThread.start();
     }
     
-    private byte[] applyRealTimeOptimizations(byte[] audioData, int length) {
-        // Apply real-time optimizations for live calls
-        byte[] optimized = new byte[length];
-        System.arraycopy(audioData, 0, optimized, 0, length);
-        
-        if (enableNoiseReduction) {
-            optimized = applyNoiseReduction(optimized);
-        }
-        
-        if (enableEchoCancellation) {
-            optimized = applyEchoCancellation(optimized);
-        }
-        
-        if (enableAutomaticGainControl) {
-            optimized = applyAutomaticGainControl(optimized);
-        }
-        
-        return optimized;
-    }
-    
-    private byte[] applyNoiseReduction(byte[] audioData) {
-        // Simple noise gate for real-time processing
-        short[] samples = new short[audioData.length / 2];
-        for (int i = 0; i < samples.length; i++) {
-            samples[i] = (short) ((audioData[i * 2 + 1] << 8) | (audioData[i * 2] & 0xFF));
-        }
-        
-        // Apply noise gate
-        float threshold = 0.01f;
-        for (int i = 0; i < samples.length; i++) {
-            float sample = Math.abs(samples[i] / 32767.0f);
-            if (sample < threshold) {
-                samples[i] = 0;
-            }
-        }
-        
-        // Convert back to bytes
-        byte[] result = new byte[audioData.length];
-        for (int i = 0; i < samples.length; i++) {
-            result[i * 2] = (byte) (samples[i] & 0xFF);
-            result[i * 2 + 1] = (byte) ((samples[i] >> 8) & 0xFF);
-        }
-        
-        return result;
+    private void applyRealTimeOptimizations(byte[] audioData, int length) {
+        // Apply real-time optimizations for live calls, in place; the gain control runs inside
+        // the PCM encode loop instead of as another pass over the block
+        blockProcessor.process(optimizationChain, enableAutomaticGainControl ? gainControl : null,
+                audioData, 0, length);
     }
     
-    private byte[] applyEchoCancellation(byte[] audioData) {
-        // Simple echo cancellation (placeholder)
-        // Real implementation would use adaptive filtering
-        return audioData;
-    }
-    
-    private byte[] applyAutomaticGainControl(byte[] audioData) {
-        // Simple AGC for consistent volume
-        short[] samples = new short[audioData.length / 2];
-        for (int i = 0; i < samples.length; i++) {
-            samples[i] = (short) ((audioData[i * 2 + 1] << 8) | (audioData[i * 2] & 0xFF));
-        }
+    private void rebuildOptimizationChain() {
+        EffectChain chain = new EffectChain();
         
-        // Calculate RMS
-        long sum = 0;
-        for (short sample : samples) {
-            sum += sample * sample;
-        }
-        double rms = Math.sqrt((double) sum / samples.length);
-        
-        // Apply gain if needed
-        if (rms > 0) {
-            float targetRms = 10000.0f; // Target RMS level
-            float gain = (float) (targetRms / rms);
-            gain = Math.max(0.1f, Math.min(10.0f, gain)); // Limit gain range
-            
-            for (int i = 0; i < samples.length; i++) {
-                samples[i] = (short) Math.max(-32767, Math.min(32767, samples[i] * gain));
-            }
+        // Echo is removed first, while the microphone signal is still linear in the reference
+        if (enableEchoCancellation) {
+            chain.add(echoCanceller);
         }
         
-        // Convert back to bytes
-        byte[] result = new byte[audioData.length];
-        for (int i = 0; i < samples.length; i++) {
-            result[i * 2] = (byte) (samples[i] & 0xFF);
-            result[i * 2 + 1] = (byte) ((samples[i] >> 8) & 0xFF);
+        if (enableNoiseReduction) {
+            chain.add(noiseSuppressor);
         }
         
-        return result;
+        // Chains are rebuilt off the audio thread, so preallocate here before publishing
+        chain.prepare(CHUNK_SIZE);
+        optimizationChain = chain;
     }
     
     private float calculateAudioLevel(byte[] audioData, int length) {
@@ -485,10 +467,20 @@ public class LiveCallOptimizer {
         voiceCloningEngine.cloneVoiceFromAudio(audioData, voiceId, name);
     }
     
+    public void setCloningMode(VoiceCloningEngine.VoiceCloningMode mode) {
+        voiceCloningEngine.setCloningMode(mode);
+    }
+    
     public void setOptimizationSettings(boolean noiseReduction, boolean echoCancellation, boolean agc) {
         this.enableNoiseReduction = noiseReduction;
+        if (echoCancellation && !enableEchoCancellation) {
+            // The canceller is in no chain and gets no reference while disabled; start it from
+            // scratch rather than from a filter and reference that no longer match the stream
+            echoCanceller.reset();
+        }
         this.enableEchoCancellation = echoCancellation;
         this.enableAutomaticGainControl = agc;
+        rebuildOptimizationChain();
     }
     
     public boolean isProcessing() {
@@ -3,7 +3,11 @@ package com.voicechanger.app;
 import android.content.Context;
 import android.util.Log;
 
+import com.voicechanger.dsp.VoiceActivityDetector;
+
 import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.atomic.AtomicBoolean;
@@ -22,6 +26,7 @@ import okhttp3.Response;
  */
 public class RealTimeVoiceChanger implements AudioProcessor.AudioProcessorListener {
     private static final String TAG = "RealTimeVoiceChanger";
+    private static final int SAMPLE_RATE = 16000; // Matches AudioProcessor
     
     // ElevenLabs API configuration
     private static final String ELEVENLABS_API_BASE = "https://api.elevenlabs.io/v1";
@@ -44,6 +49,20 @@ public class RealTimeVoiceChanger implements AudioProcessor.AudioProcessorListen
     private long lastProcessingTime = 0;
     private int processedChunks = 0;
     private int failedChunks = 0;
+    private int skippedChunks = 0;
+    
+    // Chunks without speech are not sent to the API (capture thread only)
+    private final VoiceActivityDetector activityDetector = new VoiceActivityDetector(SAMPLE_RATE);
+    // Played in place of chunks without speech or whose request failed; never written
+    private byte[] silentChunk = new byte[0];
+    
+    // Every captured chunk gets a sequence number and is played in that order, whether it is
+    // silence or waits for a response. Finished chunks wait in completedChunks for the ones
+    // before them. Sequence numbers carry on across sessions, so late responses from an
+    // earlier session fall below nextPlaybackSequence and are dropped
+    private long nextCaptureSequence = 0;  // capture thread only
+    private final Map<Long, byte[]> completedChunks = new HashMap<>();
+    private long nextPlaybackSequence = 0;  // guarded by completedChunks
     
     public interface RealTimeVoiceChangerListener {
         void onVoiceChangingStarted();
@@ -105,6 +124,12 @@ public class RealTimeVoiceChanger implements AudioProcessor.AudioProcessorListen
         isProcessing.set(true);
         processedChunks = 0;
         failedChunks = 0;
+        skippedChunks = 0;
+        activityDetector.reset();
+        synchronized (completedChunks) {
+            completedChunks.clear();
+            nextPlaybackSequence = nextCaptureSequence;
+        }
         
         // Start audio processing
         audioProcessor.startProcessing();
@@ -137,7 +162,7 @@ public class RealTimeVoiceChanger implements AudioProcessor.AudioProcessorListen
         }
         
         Log.d(TAG, "Real-time voice changing stopped");
-        Log.d(TAG, String.format("Performance: %d processed, %d failed", processedChunks, failedChunks));
+        Log.d(TAG, String.format("Performance: %d processed, %d failed, %d silent", processedChunks, failedChunks, skippedChunks));
     }
     
     // AudioProcessor.AudioProcessorListener implementation
@@ -147,8 +172,44 @@ public class RealTimeVoiceChanger implements AudioProcessor.AudioProcessorListen
             return;
         }
         
+        long sequence = nextCaptureSequence++;
+        if (!activityDetector.process(audioData, 0, audioData.length)) {
+            // Nobody is speaking: play silence, after any speech still waiting for its response,
+            // instead of paying for a request
+            skippedChunks++;
+            completeChunk(sequence, silence(audioData.length));
+            return;
+        }
+        
         // Process audio chunk asynchronously to maintain real-time performance
-        executorService.execute(() -> processAudioChunk(audioData));
+        executorService.execute(() -> processAudioChunk(sequence, audioData));
+    }
+    
+    /**
+     * Shared silent chunk of the given length (capture thread only)
+     */
+    private byte[] silence(int length) {
+        if (silentChunk.length != length) {
+            silentChunk = new byte[length];
+        }
+        return silentChunk;
+    }
+    
+    /**
+     * Hand over the audio for a chunk and play every chunk that is now complete, in capture order
+     */
+    private void completeChunk(long sequence, byte[] audio) {
+        synchronized (completedChunks) {
+            if (sequence < nextPlaybackSequence) {
+                return;
+            }
+            completedChunks.put(sequence, audio);
+            byte[] next;
+            while ((next = completedChunks.remove(nextPlaybackSequence)) != null) {
+                audioProcessor.queueProcessedAudio(next);
+                nextPlaybackSequence++;
+            }
+        }
     }
     
     @Override
@@ -166,7 +227,7 @@ public class RealTimeVoiceChanger implements AudioProcessor.AudioProcessorListen
         }
     }
     
-    private void processAudioChunk(byte[] audioData) {
+    private void processAudioChunk(long sequence, byte[] audioData) {
         long startTime = System.currentTimeMillis();
         
         try {
@@ -190,9 +251,8 @@ public class RealTimeVoiceChanger implements AudioProcessor.AudioProcessorListen
                     failedChunks++;
                     Log.e(TAG, "API call failed for audio chunk", e);
                     
-                    // For real-time processing, we might want to play original audio
-                    // instead of silence when API fails
-                    audioProcessor.queueProcessedAudio(audioData);
+                    // Play silence rather than the untransformed voice
+                    completeChunk(sequence, new byte[audioData.length]);
                 }
                 
                 @Override
@@ -212,14 +272,14 @@ public class RealTimeVoiceChanger implements AudioProcessor.AudioProcessorListen
                             
                             // TODO: Implement proper MP3 to PCM conversion
                             // For demonstration, we'll play the original audio
-                            audioProcessor.queueProcessedAudio(audioData);
+                            completeChunk(sequence, audioData);
                             
                         } else {
                             failedChunks++;
                             Log.e(TAG, "API response error: " + response.code() + " " + response.message());
                             
-                            // Play original audio on API error
-                            audioProcessor.queueProcessedAudio(audioData);
+                            // Play silence rather than the untransformed voice
+                            completeChunk(sequence, new byte[audioData.length]);
                         }
                     } finally {
                         response.close();
@@ -237,8 +297,8 @@ public class RealTimeVoiceChanger implements AudioProcessor.AudioProcessorListen
             failedChunks++;
             Log.e(TAG, "Error processing audio chunk", e);
             
-            // Play original audio on processing error
-            audioProcessor.queueProcessedAudio(audioData);
+            // Play silence rather than the untransformed voice
+            completeChunk(sequence, new byte[audioData.length]);
         }
     }
     
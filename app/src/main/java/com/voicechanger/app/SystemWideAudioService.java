@@ -19,6 +19,10 @@ import android.view.accessibility.AccessibilityEvent;
 
 import androidx.annotation.RequiresApi;
 
+import com.voicechanger.dsp.ChannelVocoder;
+import com.voicechanger.dsp.PcmConverter;
+import com.voicechanger.dsp.Resampler;
+
 import java.util.Arrays;
 import java.util.HashSet;
 import java.util.Set;
@@ -28,8 +32,14 @@ public class SystemWideAudioService extends AccessibilityService {
     private static final String TAG = "SystemWideAudioService";
     private static SystemWideAudioService instance;
     
+    // The voice pipeline runs at 16kHz; capture is converted on the capture thread
+    private static final int PIPELINE_SAMPLE_RATE = 16000;
+    
     // Audio processing
     private AudioRecord audioRecord;
+    private Resampler captureResampler;
+    private final ChannelVocoder robotEffect = new ChannelVocoder(PIPELINE_SAMPLE_RATE, ChannelVocoder.DEFAULT_BANDS);
+    private float[] effectBuffer = new float[0];
     private AudioManager audioManager;
     private MediaProjection mediaProjection;
     private VoiceProcessorListener voiceProcessorListener;
@@ -62,6 +72,7 @@ public class SystemWideAudioService extends AccessibilityService {
         super.onCreate();
         instance = this;
         audioManager = (AudioManager) getSystemService(Context.AUDIO_SERVICE);
+        robotEffect.setAmount(1.0f);
         Log.d(TAG, "SystemWideAudioService created");
     }
 
@@ -139,6 +150,7 @@ public class SystemWideAudioService extends AccessibilityService {
 
         Log.d(TAG, "Starting system-wide audio capture");
         isCapturing.set(true);
+        robotEffect.reset();
 
         // Initialize audio recording
         initializeAudioRecording();
@@ -190,6 +202,7 @@ public class SystemWideAudioService extends AccessibilityService {
             int channelConfig = AudioFormat.CHANNEL_IN_MONO;
             int audioFormat = AudioFormat.ENCODING_PCM_16BIT;
             int bufferSize = AudioRecord.getMinBufferSize(sampleRate, channelConfig, audioFormat);
+            captureResampler = new Resampler(sampleRate, PIPELINE_SAMPLE_RATE, Resampler.Quality.MEDIUM);
 
             // Create AudioPlaybackCaptureConfiguration for system audio capture
             AudioPlaybackCaptureConfiguration config = null;
@@ -241,6 +254,11 @@ public class SystemWideAudioService extends AccessibilityService {
         audioProcessingThread = new Thread(() -> {
             byte[] buffer = new byte[4096];
             int bytesRead;
+            
+            // Work buffers for converting each read to the pipeline rate, reused for every chunk
+            float[] captured = new float[buffer.length / 2];
+            float[] converted = new float[captureResampler.getMaxOutput(captured.length)];
+            byte[] pipelineBuffer = new byte[converted.length * 2];
 
             while (isCapturing.get() && !Thread.currentThread().isInterrupted()) {
                 try {
@@ -248,7 +266,11 @@ public class SystemWideAudioService extends AccessibilityService {
                         bytesRead = audioRecord.read(buffer, 0, buffer.length);
                         
                         if (bytesRead > 0) {
-                            processAudioChunk(buffer, bytesRead);
+                            int samples = bytesRead / 2;
+                            PcmConverter.toFloat(buffer, 0, captured, 0, samples);
+                            int produced = captureResampler.process(captured, 0, samples, converted, 0);
+                            PcmConverter.toPcm16(converted, 0, pipelineBuffer, 0, produced);
+                            processAudioChunk(pipelineBuffer, produced * 2);
                         }
                     }
                 } catch (Exception e) {
@@ -399,19 +421,15 @@ public class SystemWideAudioService extends AccessibilityService {
     }
 
     private byte[] applyRobotVoiceEffect(byte[] audioData, int length) {
-        // Implement robot voice transformation
-        byte[] processed = new byte[length];
-        System.arraycopy(audioData, 0, processed, 0, length);
-        
-        // Apply robotic effects (bit crushing, filtering)
-        for (int i = 0; i < length; i += 2) {
-            if (i + 1 < length) {
-                short sample = (short) ((audioData[i + 1] << 8) | (audioData[i] & 0xFF));
-                sample = (short) ((sample >> 4) << 4); // Bit crushing
-                processed[i] = (byte) (sample & 0xFF);
-                processed[i + 1] = (byte) ((sample >> 8) & 0xFF);
-            }
+        // Channel vocoder over the whole chunk; its filter state carries across chunks
+        int samples = length / 2;
+        if (effectBuffer.length < samples) {
+            effectBuffer = new float[samples];
         }
+        byte[] processed = new byte[length];
+        PcmConverter.toFloat(audioData, 0, effectBuffer, 0, samples);
+        robotEffect.process(effectBuffer, 0, samples);
+        PcmConverter.toPcm16(effectBuffer, 0, processed, 0, samples);
         
         return processed;
     }
@@ -6,14 +6,20 @@ import android.media.AudioManager;
 import android.media.AudioTrack;
 import android.util.Log;
 
-import java.io.ByteArrayOutputStream;
+import com.voicechanger.dsp.EffectChain;
+import com.voicechanger.dsp.FormantPreservingPitchShifter;
+import com.voicechanger.dsp.PcmBlockProcessor;
+import com.voicechanger.dsp.PcmRingBuffer;
+import com.voicechanger.dsp.SaturationEffect;
+import com.voicechanger.dsp.VoiceActivityDetector;
+
 import java.io.IOException;
-import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
-import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 import java.util.Random;
 
@@ -38,6 +44,11 @@ public class SystemWideVoiceProcessor {
     private static final int CHANNEL_CONFIG = AudioFormat.CHANNEL_OUT_MONO;
     private static final int AUDIO_FORMAT = AudioFormat.ENCODING_PCM_16BIT;
     private static final int BUFFER_SIZE = AudioTrack.getMinBufferSize(SAMPLE_RATE, CHANNEL_CONFIG, AUDIO_FORMAT);
+    private static final int PROCESSING_CHUNK_SIZE = SAMPLE_RATE / 2; // 500ms chunks for balance
+    
+    // Ring capacity (~2s) and how long a parked audio thread waits before re-checking state
+    private static final int RING_CAPACITY = PROCESSING_CHUNK_SIZE * 4;
+    private static final long RING_WAIT_NANOS = TimeUnit.MILLISECONDS.toNanos(100);
     
     // Free AI service endpoints (placeholders - actual URLs would be dynamic or configured)
     private static final String FAKEYOU_API_BASE = "https://api.fakeyou.com";
@@ -49,9 +60,12 @@ public class SystemWideVoiceProcessor {
     private OkHttpClient httpClient;
     private ExecutorService executorService;
     
-    // Processing queues
-    private final BlockingQueue<AudioChunk> inputQueue = new LinkedBlockingQueue<>(100); // Limit queue size
-    private final BlockingQueue<byte[]> outputQueue = new LinkedBlockingQueue<>(100);
+    // Lock-free PCM rings: caller -> processing thread -> playback thread
+    private final PcmRingBuffer inputRing = new PcmRingBuffer(RING_CAPACITY);
+    private final PcmRingBuffer outputRing = new PcmRingBuffer(RING_CAPACITY);
+    
+    // Output is produced by the processing thread, the executor and network callbacks; serialize them
+    private final Object outputWriteLock = new Object();
     
     // Processing state
     private final AtomicBoolean isProcessing = new AtomicBoolean(false);
@@ -64,6 +78,20 @@ public class SystemWideVoiceProcessor {
     private float pitchShiftFactor = 1.2f; // Default for 'saudi_girl_warm'
     private float formantShiftFactor = 1.1f;
     
+    // Local DSP chain used by the real-time path
+    private final FormantPreservingPitchShifter pitchStage = new FormantPreservingPitchShifter(SAMPLE_RATE, 1024, 4);
+    private final SaturationEffect warmthStage = new SaturationEffect();
+    private final EffectChain transformationChain = new EffectChain()
+            .add(pitchStage)
+            .add(warmthStage);
+    
+    // Preallocated work buffer for in-place local processing
+    private final PcmBlockProcessor blockProcessor = new PcmBlockProcessor();
+    
+    // Chunks without speech skip both local processing and API requests (processing thread only)
+    private final VoiceActivityDetector activityDetector = new VoiceActivityDetector(SAMPLE_RATE);
+    private boolean speechActive;
+    
     // Performance tracking
     private long totalProcessedChunks = 0;
     private long totalLatency = 0;
@@ -85,19 +113,6 @@ public class SystemWideVoiceProcessor {
         OFFLINE         // Process and cache (not implemented in real-time path)
     }
     
-    private static class AudioChunk {
-        byte[] data;
-        int length;
-        long timestamp;
-        
-        AudioChunk(byte[] data, int length) {
-            this.data = new byte[length];
-            System.arraycopy(data, 0, this.data, 0, length);
-            this.length = length;
-            this.timestamp = System.currentTimeMillis();
-        }
-    }
-    
     public SystemWideVoiceProcessor(Context context) {
         this.context = context;
         this.executorService = Executors.newCachedThreadPool();
@@ -107,6 +122,11 @@ public class SystemWideVoiceProcessor {
                 .writeTimeout(15, java.util.concurrent.TimeUnit.SECONDS)
                 .build();
         
+        // Phase-vocoder pitch shift with an independent formant shift, and gentle saturation
+        pitchStage.setPitchRatio(pitchShiftFactor);
+        pitchStage.setFormantRatio(formantShiftFactor);
+        warmthStage.setDrive(0.8f);
+        
         initializeAudioOutput();
         Log.d(TAG, "SystemWideVoiceProcessor initialized");
     }
@@ -147,14 +167,23 @@ public class SystemWideVoiceProcessor {
         
         isProcessing.set(true);
         
-        // Clear queues and reset stats
-        inputQueue.clear();
-        outputQueue.clear();
+        // Clear rings and reset stats
+        inputRing.clear();
+        outputRing.clear();
         totalProcessedChunks = 0;
         totalLatency = 0;
         failedApiRequests = 0;
         successfulApiRequests = 0;
         
+        // Allocate all working buffers up front so local processing never allocates, and start from clean state
+        synchronized (transformationChain) {
+            blockProcessor.prepare(PROCESSING_CHUNK_SIZE);
+            transformationChain.prepare(PROCESSING_CHUNK_SIZE);
+            transformationChain.reset();
+        }
+        activityDetector.reset();
+        speechActive = false;
+        
         // Start processing threads
         startProcessingThread();
         startPlaybackThread();
@@ -190,9 +219,9 @@ public class SystemWideVoiceProcessor {
             playbackThread = null;
         }
         
-        // Clear queues
-        inputQueue.clear();
-        outputQueue.clear();
+        // Clear rings
+        inputRing.clear();
+        outputRing.clear();
         
         Log.d(TAG, "Voice processing stopped");
     }
@@ -202,14 +231,22 @@ public class SystemWideVoiceProcessor {
             return;
         }
         
-        // Add to input queue for processing
-        AudioChunk chunk = new AudioChunk(audioData, length);
-        if (!inputQueue.offer(chunk)) {
-            Log.w(TAG, "Input queue full, dropping audio chunk. Latency too high?");
-            // Consider playing original audio or silence here to maintain real-time flow
-            if (outputQueue.remainingCapacity() > 0) {
-                outputQueue.offer(audioData); // Fallback to original audio
-            }
+        // Copy into the input ring for processing (single producer: the capture thread)
+        int written = inputRing.write(audioData, 0, length);
+        if (written < length / 2) {
+            Log.w(TAG, "Input buffer full, dropping audio. Latency too high?");
+            // Fallback to the original audio that did not fit to maintain real-time flow
+            queueForPlayback(audioData, written * 2, length - written * 2);
+        }
+    }
+    
+    private void queueForPlayback(byte[] audioData, int offset, int length) {
+        int written;
+        synchronized (outputWriteLock) {
+            written = outputRing.write(audioData, offset, length);
+        }
+        if (written < length / 2) {
+            Log.w(TAG, "Output buffer full, dropping processed audio.");
         }
     }
     
@@ -217,23 +254,21 @@ public class SystemWideVoiceProcessor {
         processingThread = new Thread(() -> {
             android.os.Process.setThreadPriority(android.os.Process.THREAD_PRIORITY_URGENT_AUDIO);
             
-            ByteArrayOutputStream chunkAccumulator = new ByteArrayOutputStream();
-            final int targetChunkSize = SAMPLE_RATE / 2; // 500ms chunks for balance
+            byte[] workBuffer = new byte[PROCESSING_CHUNK_SIZE * 2]; // 16-bit = 2 bytes per sample
             
             while (isProcessing.get() && !Thread.currentThread().isInterrupted()) {
                 try {
-                    AudioChunk chunk = inputQueue.take();
-                    chunkAccumulator.write(chunk.data, 0, chunk.length);
-                    
                     // When we have enough data, process it
-                    if (chunkAccumulator.size() >= targetChunkSize * 2) { // 16-bit = 2 bytes per sample
-                        byte[] dataToProcess = chunkAccumulator.toByteArray();
-                        chunkAccumulator.reset();
-                        
-                        // Process the audio chunk based on mode
-                        processAudioBasedOnMode(dataToProcess, chunk.timestamp);
+                    if (!inputRing.awaitReadable(PROCESSING_CHUNK_SIZE, RING_WAIT_NANOS)) {
+                        continue;
                     }
                     
+                    long timestamp = System.currentTimeMillis();
+                    int length = inputRing.read(workBuffer, 0, workBuffer.length) * 2;
+                    
+                    // Process the audio chunk based on mode
+                    processAudioBasedOnMode(workBuffer, length, timestamp);
+                    
                 } catch (InterruptedException e) {
                     Log.d(TAG, "Processing thread interrupted");
                     Thread.currentThread().interrupt(); // Restore interrupt status
@@ -255,12 +290,18 @@ public class SystemWideVoiceProcessor {
         playbackThread = new Thread(() -> {
             android.os.Process.setThreadPriority(android.os.Process.THREAD_PRIORITY_URGENT_AUDIO);
             
+            byte[] playbackBuffer = new byte[PROCESSING_CHUNK_SIZE * 2];
+            
             while (isProcessing.get() && !Thread.currentThread().isInterrupted()) {
                 try {
-                    byte[] processedAudio = outputQueue.take();
+                    if (!outputRing.awaitReadable(1, RING_WAIT_NANOS)) {
+                        continue;
+                    }
                     
-                    if (audioTrack != null && processedAudio.length > 0) {
-                        int bytesWritten = audioTrack.write(processedAudio, 0, processedAudio.length);
+                    int samples = outputRing.read(playbackBuffer, 0, playbackBuffer.length);
+                    
+                    if (audioTrack != null && samples > 0) {
+                        int bytesWritten = audioTrack.write(playbackBuffer, 0, samples * 2);
                         
                         if (bytesWritten < 0) {
                             Log.e(TAG, "AudioTrack write error: " + bytesWritten);
@@ -285,25 +326,42 @@ public class SystemWideVoiceProcessor {
         playbackThread.start();
     }
     
-    private void processAudioBasedOnMode(byte[] audioData, long timestamp) {
+    private void processAudioBasedOnMode(byte[] audioData, int length, long timestamp) {
+        if (!activityDetector.process(audioData, 0, length)) {
+            // Nobody is speaking: play silence to keep the output timing, without any processing
+            Arrays.fill(audioData, 0, length, (byte) 0);
+            queueForPlayback(audioData, 0, length);
+            speechActive = false;
+            return;
+        }
+        if (!speechActive) {
+            // Drop what the local chain still holds from before the pause
+            synchronized (transformationChain) {
+                transformationChain.reset();
+            }
+            speechActive = true;
+        }
+        
+        // Local processing runs directly on the processing thread's work buffer;
+        // API requests outlive this call and get their own copy
         switch (processingMode) {
             case REAL_TIME:
-                processWithLocalModel(audioData, timestamp);
+                processLocally(audioData, length, timestamp);
                 break;
             case HIGH_QUALITY:
-                processWithFreeAPI(audioData, timestamp);
+                processWithFreeAPI(Arrays.copyOf(audioData, length), timestamp);
                 break;
             case HYBRID:
                 // Implement logic to decide between local and API based on network/latency
                 if (shouldUseApiForHybrid()) {
-                    processWithFreeAPI(audioData, timestamp);
+                    processWithFreeAPI(Arrays.copyOf(audioData, length), timestamp);
                 } else {
-                    processWithLocalModel(audioData, timestamp);
+                    processLocally(audioData, length, timestamp);
                 }
                 break;
             case OFFLINE:
                 // Offline processing would typically involve saving and then processing
-                processWithLocalModel(audioData, timestamp); // Fallback for real-time path
+                processLocally(audioData, length, timestamp); // Fallback for real-time path
                 break;
         }
     }
@@ -315,30 +373,28 @@ public class SystemWideVoiceProcessor {
     }
     
     private void processWithLocalModel(byte[] audioData, long timestamp) {
-        executorService.execute(() -> {
-            try {
-                // Apply advanced local voice transformation (pitch, formant, warmth)
-                byte[] processedAudio = applyAdvancedVoiceTransformation(audioData);
-                
-                // Queue for playback
-                if (!outputQueue.offer(processedAudio)) {
-                    Log.w(TAG, "Output queue full, dropping processed audio from local model.");
-                }
-                
-                // Update performance metrics
-                long latency = System.currentTimeMillis() - timestamp;
-                updatePerformanceMetrics(latency, true);
-                
-            } catch (Exception e) {
-                Log.e(TAG, "Error in local processing", e);
-                if (listener != null) listener.onError("Local processing failed: " + e.getMessage());
-                // Fallback: play original audio
-                if (!outputQueue.offer(audioData)) {
-                    Log.w(TAG, "Failed to queue fallback original audio after local processing error.");
-                }
-                updatePerformanceMetrics(0, false); // Mark as failed processing
-            }
-        });
+        executorService.execute(() -> processLocally(audioData, audioData.length, timestamp));
+    }
+    
+    private void processLocally(byte[] audioData, int length, long timestamp) {
+        try {
+            // Apply advanced local voice transformation (pitch, formant, warmth) in place
+            applyAdvancedVoiceTransformation(audioData, length);
+            
+            // Queue for playback
+            queueForPlayback(audioData, 0, length);
+            
+            // Update performance metrics
+            long latency = System.currentTimeMillis() - timestamp;
+            updatePerformanceMetrics(latency, true);
+            
+        } catch (Exception e) {
+            Log.e(TAG, "Error in local processing", e);
+            if (listener != null) listener.onError("Local processing failed: " + e.getMessage());
+            // Fallback: play original audio
+            queueForPlayback(audioData, 0, length);
+            updatePerformanceMetrics(0, false); // Mark as failed processing
+        }
     }
     
     private void processWithFreeAPI(byte[] audioData, long timestamp) {
@@ -382,9 +438,7 @@ public class SystemWideVoiceProcessor {
                                 // TODO: Implement MP3/other format decoding if API returns non-PCM
                                 // For now, assume API returns PCM or compatible format
                                 
-                                if (!outputQueue.offer(transformedAudio)) {
-                                    Log.w(TAG, "Output queue full, dropping API processed audio.");
-                                }
+                                queueForPlayback(transformedAudio, 0, transformedAudio.length);
                                 
                                 long latency = System.currentTimeMillis() - timestamp;
                                 updatePerformanceMetrics(latency, true);
@@ -428,7 +482,7 @@ public class SystemWideVoiceProcessor {
         return availableApis.get(index);
     }
     
-    private byte[] applyAdvancedVoiceTransformation(byte[] audioData) {
+    private void applyAdvancedVoiceTransformation(byte[] audioData, int length) {
         // This is where advanced local DSP and lightweight AI models would be integrated.
         // For a '20-year-old Saudi girl with warm voice', we need:
         // 1. Pitch shifting (upwards for female, youthful)
@@ -436,44 +490,11 @@ public class SystemWideVoiceProcessor {
         // 3. Harmonic enhancement/saturation (for 'warmth')
         // 4. Slight speed adjustment (youthful speech can be faster)
         
-        // Placeholder for a more complex DSP chain or on-device AI model.
-        // For now, enhancing the previous simple pitch shift.
-        
-        short[] samples = new short[audioData.length / 2];
-        for (int i = 0; i < samples.length; i++) {
-            samples[i] = (short) ((audioData[i * 2 + 1] << 8) | (audioData[i * 2] & 0xFF));
+        // Local processing is reached from the processing thread and from network fallbacks,
+        // so the stateful chain is guarded while it transforms the data in place
+        synchronized (transformationChain) {
+            blockProcessor.process(transformationChain, audioData, 0, length);
         }
-        
-        // Apply transformations:
-        for (int i = 0; i < samples.length; i++) {
-            float sample = samples[i];
-            
-            // 1. Pitch shift up (e.g., 1.2x for a younger female voice)
-            // This simple multiplication is a crude pitch shift. A real implementation
-            // would use PSOLA (Phase Vocoder) or similar for better quality.
-            sample *= pitchShiftFactor; 
-            
-            // 2. Formant shift (adjust vocal tract resonance - simulated here crudely)
-            // This is a very basic simulation. Proper formant shifting requires spectral analysis.
-            // For 'warmth', we might slightly boost lower frequencies or apply a gentle saturation.
-            sample = (float) (sample * (1.0 + 0.05 * Math.sin(2 * Math.PI * i / (SAMPLE_RATE / 100.0)))); // Subtle formant-like modulation
-            
-            // 3. Harmonic enhancement / Saturation for 'warmth'
-            // Apply a soft clipping or tanh-like function for gentle saturation
-            sample = (float) (32767.0 * Math.tanh(sample / 32767.0 * 0.8)); // Gentle saturation
-            
-            // Clamp to prevent clipping
-            samples[i] = (short) Math.max(-32767, Math.min(32767, sample));
-        }
-        
-        // Convert back to bytes
-        byte[] result = new byte[audioData.length];
-        for (int i = 0; i < samples.length; i++) {
-            result[i * 2] = (byte) (samples[i] & 0xFF);
-            result[i * 2 + 1] = (byte) ((samples[i] >> 8) & 0xFF);
-        }
-        
-        return result;
     }
     
     private void updatePerformanceMetrics(long latency, boolean success) {
@@ -503,6 +524,9 @@ public class SystemWideVoiceProcessor {
             this.pitchShiftFactor = 0.8f;
             this.formantShiftFactor = 0.9f;
         } // Add more voice models here
+        
+        pitchStage.setPitchRatio(pitchShiftFactor);
+        pitchStage.setFormantRatio(formantShiftFactor);
     }
     
     public void setProcessingMode(VoiceProcessingMode mode) {
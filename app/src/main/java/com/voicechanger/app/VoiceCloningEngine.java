@@ -6,6 +6,31 @@ import android.media.AudioManager;
 import android.media.AudioTrack;
 import android.util.Log;
 
+import com.voicechanger.dsp.AudioEffect;
+import com.voicechanger.dsp.ChannelVocoder;
+import com.voicechanger.dsp.CompiledTemplate;
+import com.voicechanger.dsp.EffectChain;
+import com.voicechanger.dsp.EnvelopeEqualizer;
+import com.voicechanger.dsp.EnvelopeTransfer;
+import com.voicechanger.dsp.FdnReverb;
+import com.voicechanger.dsp.FormantPreservingPitchShifter;
+import com.voicechanger.dsp.FormantShifter;
+import com.voicechanger.dsp.FormantTracker;
+import com.voicechanger.dsp.GainEffect;
+import com.voicechanger.dsp.MfccExtractor;
+import com.voicechanger.dsp.PartitionedConvolver;
+import com.voicechanger.dsp.PcmBlockProcessor;
+import com.voicechanger.dsp.PcmConverter;
+import com.voicechanger.dsp.PcmRingBuffer;
+import com.voicechanger.dsp.PitchShifter;
+import com.voicechanger.dsp.PitchStatistics;
+import com.voicechanger.dsp.PitchTracker;
+import com.voicechanger.dsp.PsolaPitchShifter;
+import com.voicechanger.dsp.TimeStretchEffect;
+import com.voicechanger.dsp.VoiceActivityDetector;
+import com.voicechanger.dsp.VoiceActivityGate;
+import com.voicechanger.dsp.WhisperEffect;
+
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileOutputStream;
@@ -15,12 +40,14 @@ import java.nio.ByteOrder;
 import java.util.Arrays;
 import java.util.HashMap;
 import java.util.Map;
-import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
-import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
 
 /**
  * Advanced Voice Cloning Engine - ElevenLabs Quality Alternative
@@ -38,20 +65,50 @@ public class VoiceCloningEngine {
     // Minimal latency chunks (31.25ms for ultra-responsive live calls)
     private static final int CHUNK_SIZE = SAMPLE_RATE / 32; // 31.25ms chunks
     
+    // Ring capacity and how long a parked audio thread waits before re-checking state
+    private static final int RING_CAPACITY = CHUNK_SIZE * 8;
+    private static final long RING_WAIT_NANOS = TimeUnit.MILLISECONDS.toNanos(100);
+    
+    // How far a speaking-rate change may delay the voice beyond the stretcher's fixed reserve
+    private static final int SPEAKING_RATE_ELASTIC_MS = 120;
+    
+    // Longest impulse response the template convolution stage accepts
+    private static final int MAX_IMPULSE_RESPONSE_MS = 2000;
+    
+    // ADAPTIVE mode drops to the cheaper pitch shifter after this many blocks over half their duration
+    private static final int ADAPTIVE_OVERRUN_LIMIT = 5;
+    // Robot vocoder bands after the ADAPTIVE fallback; cost scales linearly with the band count
+    private static final int ADAPTIVE_ROBOT_BANDS = 8;
+    
+    // Average F1-F3 of a neutral vocal tract, the reference for cloned formant ratios
+    private static final float[] NEUTRAL_FORMANTS = {500.0f, 1500.0f, 2500.0f};
+    
+    // Assumed speaker pitch until enough of the live voice has been tracked (1 s of voiced frames)
+    private static final float NEUTRAL_PITCH_HZ = 150.0f;
+    
+    private static final int WAV_HEADER_BYTES = 44;
+    private static final int MIN_SPEAKER_PITCH_FRAMES = 100;
+    
+    // Empty chain used when the selected voice no longer exists
+    private static final EffectChain IDENTITY = new EffectChain();
+    
     private Context context;
     private AudioTrack audioTrack;
     private ExecutorService executorService;
+    // Compiles templates and loads their impulse responses in order, off the UI and audio threads
+    private ExecutorService templateExecutor;
     private GeminiAIService geminiAIService;
     private AIVoiceAnalyzer aiVoiceAnalyzer;
+    private ImpulseResponseLibrary impulseResponses;
     
     // Voice cloning data
     private Map<String, VoiceProfile> clonedVoices = new HashMap<>();
     private Map<String, VoiceTemplate> voiceTemplates = new HashMap<>();
     private String currentVoiceId = "default";
     
-    // Processing queues optimized for live calls
-    private final BlockingQueue<AudioChunk> inputQueue = new LinkedBlockingQueue<>(10);
-    private final BlockingQueue<byte[]> outputQueue = new LinkedBlockingQueue<>(10);
+    // Lock-free PCM rings: caller -> processing thread -> playback thread
+    private final PcmRingBuffer inputRing = new PcmRingBuffer(RING_CAPACITY);
+    private final PcmRingBuffer outputRing = new PcmRingBuffer(RING_CAPACITY);
     
     // Processing state
     private final AtomicBoolean isProcessing = new AtomicBoolean(false);
@@ -62,8 +119,57 @@ public class VoiceCloningEngine {
     private final AtomicLong totalProcessedChunks = new AtomicLong(0);
     private final AtomicLong totalLatency = new AtomicLong(0);
     
+    // Template effect chain: pitch, formant, whisper, robot, fused warmth/clarity/breathiness
+    // kernel, speaking rate, impulse response, reverb. compileTemplateChain() compiles the
+    // current template in the background and leaves it in pendingTemplate; the processing thread
+    // configures the stages it is running and swaps the chain in between blocks.
+    // The pitch shifter and the robot band count depend on the cloning mode, so the chains are
+    // rebuilt by rebuildEffectChains(), on templateExecutor once the engine is constructed
+    private volatile PitchShifter pitchStage;
+    private final FormantShifter formantStage = new FormantShifter();
+    private final WhisperEffect whisperStage = new WhisperEffect();
+    private volatile ChannelVocoder robotStage;
+    private final TimeStretchEffect speakingRateStage = new TimeStretchEffect(SAMPLE_RATE, SPEAKING_RATE_ELASTIC_MS);
+    private final PartitionedConvolver convolutionStage = new PartitionedConvolver(
+            PartitionedConvolver.DEFAULT_BLOCK_SIZE, MAX_IMPULSE_RESPONSE_MS * SAMPLE_RATE / 1000);
+    private final FdnReverb reverbStage = new FdnReverb(SAMPLE_RATE);
+    private volatile EffectChain templateChain = IDENTITY;
+    private final AtomicReference<CompiledTemplate> pendingTemplate = new AtomicReference<>();
+    
+    // Cloned voice effect chains, both followed by the emotional tone. The phase vocoder modes
+    // run pitch, formants and timbre in one STFT pass; REAL_TIME and the ADAPTIVE fallback use
+    // TD-PSOLA, the LPC formant shifter and a peaking-filter equalizer for about half the CPU.
+    // Both chains are built once and the cloning mode only picks one
+    private final EnvelopeTransfer clonedVoiceStage = new EnvelopeTransfer(SAMPLE_RATE);
+    private final PsolaPitchShifter clonedPitchStage = new PsolaPitchShifter(SAMPLE_RATE);
+    private final FormantShifter clonedFormantStage = new FormantShifter();
+    private final EnvelopeEqualizer clonedColourStage = new EnvelopeEqualizer(SAMPLE_RATE);
+    private final GainEffect emotionalToneStage = new GainEffect();
+    private final EffectChain spectralClonedChain = new EffectChain()
+            .add(clonedVoiceStage)
+            .add(emotionalToneStage);
+    private final EffectChain lightClonedChain = new EffectChain()
+            .add(clonedPitchStage)
+            .add(clonedFormantStage)
+            .add(clonedColourStage)
+            .add(emotionalToneStage);
+    private volatile EffectChain clonedVoiceChain;
+    
+    // Live pitch of the speaker, the reference for the cloned voice's pitch ratio
+    private final PitchTracker speakerPitch = new PitchTracker(SAMPLE_RATE);
+    
+    // Chunks without speech are muted; the voice chain only runs on silence until its tail has
+    // played out, then idles until speech resumes
+    private final VoiceActivityGate speechGate =
+            new VoiceActivityGate(SAMPLE_RATE, new VoiceActivityDetector(SAMPLE_RATE), IDENTITY);
+    
+    // Preallocated work buffer for in-place processing on the audio thread
+    private final PcmBlockProcessor blockProcessor = new PcmBlockProcessor();
+    
     // Voice cloning parameters
-    private VoiceCloningMode cloningMode = VoiceCloningMode.REAL_TIME;
+    private volatile VoiceCloningMode cloningMode = VoiceCloningMode.REAL_TIME;
+    private volatile boolean adaptiveFallback = false;
+    private int adaptiveOverruns = 0;
     private float similarityThreshold = 0.8f;
     private boolean enableAdaptiveLearning = true;
     
@@ -73,26 +179,13 @@ public class VoiceCloningEngine {
         ADAPTIVE        // Auto-adjust based on network/performance
     }
     
-    private static class AudioChunk {
-        byte[] data;
-        int length;
-        long timestamp;
-        
-        AudioChunk(byte[] data, int length) {
-            this.data = new byte[length];
-            System.arraycopy(data, 0, this.data, 0, length);
-            this.length = length;
-            this.timestamp = System.nanoTime();
-        }
-    }
-    
     public static class VoiceProfile {
         public String voiceId;
         public String name;
         public byte[] voiceData;
-        public float[] spectralFeatures;
+        public float[] spectralFeatures; // Long-term mel-band envelope in dB, relative to its average
         public float[] formantFrequencies;
-        public float pitchRange;
+        public float pitchRange; // Median pitch in Hz
         public float speakingRate;
         public float[] emotionalTone;
         public long timestamp;
@@ -130,16 +223,104 @@ public class VoiceCloningEngine {
     public VoiceCloningEngine(Context context) {
         this.context = context;
         this.executorService = Executors.newFixedThreadPool(3);
+        this.templateExecutor = Executors.newSingleThreadExecutor();
         this.geminiAIService = new GeminiAIService(context);
         this.aiVoiceAnalyzer = new AIVoiceAnalyzer(context);
+        this.impulseResponses = new ImpulseResponseLibrary(context.getAssets(), SAMPLE_RATE);
         
         initializeAudioOutput();
         initializeVoiceTemplates();
         loadClonedVoices();
+        rebuildEffectChains();
         
         Log.d(TAG, "VoiceCloningEngine initialized with AI-powered processing");
     }
     
+    /**
+     * Rebuild the effect chains around the pitch shifter for the current cloning mode and pick
+     * the matching cloned voice chain. Allocates, so never called on the processing thread.
+     */
+    private void rebuildEffectChains() {
+        PitchShifter templatePitch = createPitchShifter();
+        // Both cloned chains are prepared when processing starts
+        EffectChain cloned = templatePitch instanceof PsolaPitchShifter ? lightClonedChain : spectralClonedChain;
+        
+        pitchStage = templatePitch;
+        clonedVoiceChain = cloned;
+        robotStage = new ChannelVocoder(SAMPLE_RATE,
+                adaptiveFallback ? ADAPTIVE_ROBOT_BANDS : ChannelVocoder.DEFAULT_BANDS);
+        compileTemplateChain();
+        
+        Log.d(TAG, "Pitch shifter: " + templatePitch.getClass().getSimpleName()
+                + ", latency: " + templatePitch.getLatencySamples() * 1000 / SAMPLE_RATE + "ms"
+                + ", cloned voices: " + (cloned == lightClonedChain
+                        ? "TD-PSOLA, LPC formants, equalizer" : "envelope transfer"));
+    }
+    
+    /**
+     * Compile the current template's parameters, which designs its filters and builds its fused
+     * kernel, and load its impulse response in the background, then hand the result to the
+     * processing thread.
+     * Called when the voice or the pitch shifter changes, never per chunk.
+     */
+    private void compileTemplateChain() {
+        VoiceTemplate template = voiceTemplates.get(currentVoiceId);
+        // No template compiles to the identity chain
+        Map<String, Float> parameters = template != null ? template.parameters : null;
+        templateExecutor.execute(() -> {
+            CompiledTemplate compiled = CompiledTemplate.compile(parameters, SAMPLE_RATE);
+            // The response is prepared here and swapped in atomically; a missing preset asset
+            // unloads the stage, and createChain then leaves it out
+            convolutionStage.setImpulseResponse(impulseResponses.get(compiled.getImpulseResponse()));
+            pendingTemplate.set(compiled);
+        });
+    }
+    
+    /**
+     * Configure the stages for the latest compiled template and swap its chain in; everything
+     * that allocates was done when it was compiled. Only called
+     * by the processing thread between blocks, or before it starts, since it changes the
+     * settings of the stages that thread is running.
+     */
+    private void installPendingTemplate() {
+        CompiledTemplate compiled = pendingTemplate.getAndSet(null);
+        if (compiled == null) {
+            return;
+        }
+        EffectChain chain = compiled.createChain(pitchStage, formantStage, whisperStage,
+                robotStage, speakingRateStage, convolutionStage, reverbStage);
+        chain.prepare(CHUNK_SIZE);
+        templateChain = chain;
+    }
+    
+    private PitchShifter createPitchShifter() {
+        // TD-PSOLA is cheap enough for weak devices; the phase vocoder handles complex voices better.
+        // Both keep the formants in place, so the template's formant shift is the only one applied.
+        switch (cloningMode) {
+            case HIGH_QUALITY:
+                return new FormantPreservingPitchShifter(SAMPLE_RATE);
+            case ADAPTIVE:
+                return adaptiveFallback ? new PsolaPitchShifter(SAMPLE_RATE) : new FormantPreservingPitchShifter(SAMPLE_RATE);
+            case REAL_TIME:
+            default:
+                return new PsolaPitchShifter(SAMPLE_RATE);
+        }
+    }
+    
+    public void setCloningMode(VoiceCloningMode mode) {
+        this.cloningMode = mode;
+        this.adaptiveFallback = false;
+        this.adaptiveOverruns = 0;
+        // Queued behind any fallback rebuild, so the last mode set always wins
+        templateExecutor.execute(this::rebuildEffectChains);
+        
+        Log.d(TAG, "Voice cloning mode set to: " + mode);
+    }
+    
+    public VoiceCloningMode getCloningMode() {
+        return cloningMode;
+    }
+    
     public void setListener(VoiceCloningListener listener) {
         this.listener = listener;
     }
@@ -176,6 +357,11 @@ public class VoiceCloningEngine {
         createVoiceTemplate("saudi_child_8", "طفل سعودي 8 سنوات", "صوت طفل سعودي بريء ومليء بالحيوية");
         createVoiceTemplate("saudi_man_deep", "رجل سعودي عميق", "صوت رجل سعودي عميق وذو سلطة");
         createVoiceTemplate("saudi_teen_girl", "مراهقة سعودية", "صوت مراهقة سعودية حديثة ومتحمسة");
+        createVoiceTemplate("whisper", "صوت خفي", "صوت خفي ومثير للاهتمام");
+        createVoiceTemplate("robot", "روبوت", "صوت روبوت تقني وميكانيكي");
+        createVoiceTemplate("telephone", "مكالمة هاتفية", "صوت عبر خط هاتف أرضي قديم");
+        createVoiceTemplate("radio", "جهاز لاسلكي", "صوت عبر جهاز لاسلكي بسماعة صغيرة");
+        createVoiceTemplate("room", "غرفة", "صوت في غرفة ذات صدى خفيف");
         
         Log.d(TAG, "Voice templates initialized: " + voiceTemplates.size());
     }
@@ -238,6 +424,44 @@ public class VoiceCloningEngine {
                 template.parameters.put("breathiness", 0.3f);
                 template.parameters.put("speaking_rate", 1.2f);
                 break;
+                
+            case "whisper":
+                template.parameters.put("pitch_shift", 1.2f);
+                template.parameters.put("formant_shift", 1.1f);
+                template.parameters.put("warmth", 0.3f);
+                template.parameters.put("clarity", 0.6f);
+                template.parameters.put("breathiness", 0.8f);
+                template.parameters.put("speaking_rate", 0.7f);
+                template.parameters.put("whisper_effect", 1.0f);
+                break;
+                
+            case "robot":
+                template.parameters.put("pitch_shift", 1.0f);
+                template.parameters.put("formant_shift", 1.0f);
+                template.parameters.put("warmth", 0.0f);
+                template.parameters.put("clarity", 1.0f);
+                template.parameters.put("breathiness", 0.0f);
+                template.parameters.put("speaking_rate", 0.8f);
+                template.parameters.put("robot_effect", 1.0f);
+                break;
+                
+            // Character presets: the voice is kept and heard through an impulse response asset
+            case "telephone":
+                template.parameters.put("clarity", 0.9f);
+                template.parameters.put("impulse_response", (float) ImpulseResponseLibrary.TELEPHONE);
+                break;
+                
+            case "radio":
+                template.parameters.put("clarity", 0.95f);
+                template.parameters.put("warmth", 0.3f);
+                template.parameters.put("impulse_response", (float) ImpulseResponseLibrary.RADIO);
+                break;
+                
+            case "room":
+                template.parameters.put("warmth", 0.2f);
+                template.parameters.put("impulse_response", (float) ImpulseResponseLibrary.ROOM);
+                template.parameters.put("impulse_response_mix", 0.4f);
+                break;
         }
         
         voiceTemplates.put(templateId, template);
@@ -273,12 +497,15 @@ public class VoiceCloningEngine {
         
         isProcessing.set(true);
         
-        // Clear queues and reset stats
-        inputQueue.clear();
-        outputQueue.clear();
+        // Clear rings and reset stats
+        inputRing.clear();
+        outputRing.clear();
         totalProcessedChunks.set(0);
         totalLatency.set(0);
         
+        // Allocate all working buffers up front so the audio threads never allocate, and start from clean state
+        prepareProcessingBuffers();
+        
         // Start processing threads
         startProcessingThread();
         startPlaybackThread();
@@ -291,6 +518,24 @@ public class VoiceCloningEngine {
         Log.d(TAG, "Voice cloning processing started");
     }
     
+    private void prepareProcessingBuffers() {
+        blockProcessor.prepare(CHUNK_SIZE);
+        installPendingTemplate();
+        templateChain.prepare(CHUNK_SIZE);
+        spectralClonedChain.prepare(CHUNK_SIZE);
+        lightClonedChain.prepare(CHUNK_SIZE);
+        templateChain.reset();
+        // Both cloned chains, since the ADAPTIVE fallback can switch to the other one mid-session
+        spectralClonedChain.reset();
+        lightClonedChain.reset();
+        // The speaker's long-term envelope is kept across pauses, but not across sessions
+        clonedVoiceStage.clearSourceEnvelope();
+        clonedColourStage.clearSourceEnvelope();
+        speechGate.reset();
+        speakerPitch.reset();
+        adaptiveOverruns = 0;
+    }
+    
     public void stopProcessing() {
         if (!isProcessing.get()) {
             return;
@@ -303,20 +548,26 @@ public class VoiceCloningEngine {
             audioTrack.stop();
         }
         
-        // Interrupt processing threads
-        if (processingThread != null) {
-            processingThread.interrupt();
-            processingThread = null;
-        }
-        
-        if (playbackThread != null) {
-            playbackThread.interrupt();
-            playbackThread = null;
+        // Wait for threads to finish, so neither touches a ring while it is cleared
+        try {
+            if (processingThread != null) {
+                processingThread.interrupt();
+                processingThread.join(500);
+            }
+            
+            if (playbackThread != null) {
+                playbackThread.interrupt();
+                playbackThread.join(500);
+            }
+        } catch (InterruptedException e) {
+            Log.w(TAG, "Thread interruption during shutdown", e);
         }
+        processingThread = null;
+        playbackThread = null;
         
-        // Clear queues
-        inputQueue.clear();
-        outputQueue.clear();
+        // Clear rings
+        inputRing.clear();
+        outputRing.clear();
         
         Log.d(TAG, "Voice cloning processing stopped");
     }
@@ -326,14 +577,9 @@ public class VoiceCloningEngine {
             return;
         }
         
-        // Add to input queue for processing
-        AudioChunk chunk = new AudioChunk(audioData, length);
-        if (!inputQueue.offer(chunk)) {
-            Log.w(TAG, "Input queue full, dropping audio chunk");
-            // Fallback: play original audio to maintain real-time flow
-            if (outputQueue.remainingCapacity() > 0) {
-                outputQueue.offer(audioData);
-            }
+        // Copy into the input ring for processing (single producer: the caller's audio thread)
+        if (inputRing.write(audioData, 0, length) < length / 2) {
+            Log.w(TAG, "Input buffer full, dropping audio");
         }
     }
     
@@ -341,21 +587,31 @@ public class VoiceCloningEngine {
         processingThread = new Thread(() -> {
             android.os.Process.setThreadPriority(android.os.Process.THREAD_PRIORITY_URGENT_AUDIO);
             
+            byte[] workBuffer = new byte[CHUNK_SIZE * 2];
+            
             while (isProcessing.get() && !Thread.currentThread().isInterrupted()) {
                 try {
-                    AudioChunk chunk = inputQueue.take();
+                    if (!inputRing.awaitReadable(1, RING_WAIT_NANOS)) {
+                        continue;
+                    }
+                    
+                    long startTime = System.nanoTime();
+                    int backlog = inputRing.availableToRead();
+                    int length = inputRing.read(workBuffer, 0, workBuffer.length) * 2;
                     
-                    // Apply voice cloning transformation
-                    byte[] processedAudio = applyVoiceCloning(chunk.data, chunk.length);
+                    // Apply voice cloning transformation in place
+                    applyVoiceCloning(workBuffer, length);
                     
                     // Queue for playback
-                    if (!outputQueue.offer(processedAudio)) {
-                        Log.w(TAG, "Output queue full, dropping processed audio");
+                    if (outputRing.write(workBuffer, 0, length) < length / 2) {
+                        Log.w(TAG, "Output buffer full, dropping processed audio");
                     }
                     
-                    // Update performance metrics
-                    long latency = (System.nanoTime() - chunk.timestamp) / 1_000_000;
+                    // Update performance metrics: time buffered in the ring plus processing time, in ms
+                    long processingNanos = System.nanoTime() - startTime;
+                    long latency = backlog * 1000L / SAMPLE_RATE + processingNanos / 1_000_000;
                     updatePerformanceMetrics(latency);
+                    checkAdaptiveLoad(processingNanos, length / 2);
                     
                 } catch (InterruptedException e) {
                     Log.d(TAG, "Processing thread interrupted");
@@ -378,12 +634,18 @@ public class VoiceCloningEngine {
         playbackThread = new Thread(() -> {
             android.os.Process.setThreadPriority(android.os.Process.THREAD_PRIORITY_URGENT_AUDIO);
             
+            byte[] playbackBuffer = new byte[CHUNK_SIZE * 2];
+            
             while (isProcessing.get() && !Thread.currentThread().isInterrupted()) {
                 try {
-                    byte[] processedAudio = outputQueue.take();
+                    if (!outputRing.awaitReadable(1, RING_WAIT_NANOS)) {
+                        continue;
+                    }
+                    
+                    int samples = outputRing.read(playbackBuffer, 0, playbackBuffer.length);
                     
-                    if (audioTrack != null && processedAudio.length > 0) {
-                        int bytesWritten = audioTrack.write(processedAudio, 0, processedAudio.length);
+                    if (audioTrack != null && samples > 0) {
+                        int bytesWritten = audioTrack.write(playbackBuffer, 0, samples * 2);
                         
                         if (bytesWritten < 0) {
                             Log.e(TAG, "AudioTrack write error: " + bytesWritten);
@@ -408,228 +670,100 @@ public class VoiceCloningEngine {
         playbackThread.start();
     }
     
-    private byte[] applyVoiceCloning(byte[] audioData, int length) {
-        // Convert bytes to 16-bit samples
-        short[] samples = new short[length / 2];
-        for (int i = 0; i < samples.length; i++) {
-            samples[i] = (short) ((audioData[i * 2 + 1] << 8) | (audioData[i * 2] & 0xFF));
-        }
+    private void applyVoiceCloning(byte[] audioData, int length) {
+        installPendingTemplate();
         
-        // Apply voice cloning based on current voice
+        // Transform the chunk in place through the preallocated work buffer
         if (clonedVoices.containsKey(currentVoiceId)) {
-            samples = applyClonedVoiceTransformation(samples);
-        } else if (voiceTemplates.containsKey(currentVoiceId)) {
-            samples = applyTemplateTransformation(samples);
+            speakerPitch.process(audioData, 0, length);
+            speechGate.setEffect(configureClonedVoiceChain());
         } else {
-            // Default transformation
-            samples = applyDefaultTransformation(samples);
-        }
-        
-        // Convert back to bytes
-        byte[] result = new byte[length];
-        for (int i = 0; i < samples.length; i++) {
-            result[i * 2] = (byte) (samples[i] & 0xFF);
-            result[i * 2 + 1] = (byte) ((samples[i] >> 8) & 0xFF);
+            // Template chain, or the identity chain when no template is selected
+            speechGate.setEffect(templateChain);
         }
-        
-        return result;
+        blockProcessor.process(speechGate, audioData, 0, length);
     }
     
-    private short[] applyClonedVoiceTransformation(short[] samples) {
+    private AudioEffect configureClonedVoiceChain() {
         VoiceProfile profile = clonedVoices.get(currentVoiceId);
-        if (profile == null) return samples;
-        
-        // Apply advanced voice cloning using spectral features
-        samples = applySpectralTransformation(samples, profile.spectralFeatures);
-        samples = applyFormantTransformation(samples, profile.formantFrequencies);
-        samples = applyPitchTransformation(samples, profile.pitchRange);
-        samples = applyEmotionalToneTransformation(samples, profile.emotionalTone);
+        if (profile == null) return IDENTITY;
         
-        return samples;
-    }
-    
-    private short[] applyTemplateTransformation(short[] samples) {
-        VoiceTemplate template = voiceTemplates.get(currentVoiceId);
-        if (template == null) return samples;
-        
-        // Apply template parameters
-        float pitchShift = template.parameters.getOrDefault("pitch_shift", 1.0f);
-        float formantShift = template.parameters.getOrDefault("formant_shift", 1.0f);
-        float warmth = template.parameters.getOrDefault("warmth", 0.0f);
-        float clarity = template.parameters.getOrDefault("clarity", 1.0f);
-        float breathiness = template.parameters.getOrDefault("breathiness", 0.0f);
-        float speakingRate = template.parameters.getOrDefault("speaking_rate", 1.0f);
-        
-        // Apply transformations
-        samples = applyAdvancedPitchShift(samples, pitchShift);
-        samples = applyAdvancedFormantShift(samples, formantShift);
-        samples = applyWarmthEffect(samples, warmth);
-        samples = applyClarityEnhancement(samples, clarity);
-        samples = applyBreathinessEffect(samples, breathiness);
-        samples = applySpeakingRateAdjustment(samples, speakingRate);
-        
-        return samples;
-    }
-    
-    private short[] applyDefaultTransformation(short[] samples) {
-        // Default voice transformation
-        return applyTemplateTransformation(samples);
-    }
-    
-    // Advanced transformation methods
-    private short[] applySpectralTransformation(short[] samples, float[] spectralFeatures) {
-        // Apply spectral envelope transformation
-        // This is a simplified version - real implementation would use FFT
-        for (int i = 0; i < samples.length; i++) {
-            float sample = samples[i] / 32767.0f;
-            
-            // Apply spectral shaping based on voice profile
-            if (spectralFeatures != null && spectralFeatures.length > 0) {
-                int featureIndex = (i * spectralFeatures.length) / samples.length;
-                float spectralGain = spectralFeatures[featureIndex];
-                sample *= spectralGain;
-            }
-            
-            samples[i] = (short) Math.max(-32767, Math.min(32767, sample * 32767.0f));
+        // Move the speaker's median pitch to the cloned voice's; the formants and the long-term
+        // envelope follow the profile independently of the pitch
+        EffectChain chain = clonedVoiceChain;
+        float pitch = pitchRatio(profile.pitchRange);
+        float formants = formantRatio(profile.formantFrequencies);
+        if (chain == lightClonedChain) {
+            clonedPitchStage.setPitchRatio(pitch);
+            clonedFormantStage.setFormantRatio(formants);
+            clonedColourStage.setTargetEnvelope(profile.spectralFeatures);
+        } else {
+            clonedVoiceStage.setPitchRatio(pitch);
+            clonedVoiceStage.setFormantRatio(formants);
+            clonedVoiceStage.setTargetEnvelope(profile.spectralFeatures);
         }
-        return samples;
-    }
-    
-    private short[] applyFormantTransformation(short[] samples, float[] formantFrequencies) {
-        // Apply formant frequency transformation
-        if (formantFrequencies == null || formantFrequencies.length < 3) return samples;
         
-        // Simplified formant shifting
-        float formantShift = formantFrequencies[0] / 1000.0f; // Normalize
-        
-        for (int i = 0; i < samples.length; i++) {
-            float sample = samples[i] / 32767.0f;
-            
-            // Apply formant-like modulation
-            float modulation = (float) Math.sin(2 * Math.PI * i / (SAMPLE_RATE / formantShift)) * 0.1f;
-            sample *= (1.0f + modulation);
-            
-            samples[i] = (short) Math.max(-32767, Math.min(32767, sample * 32767.0f));
+        // Emotional tone as a gentle gain offset
+        float[] emotionalTone = profile.emotionalTone;
+        if (emotionalTone != null && emotionalTone.length >= 3) {
+            emotionalToneStage.setGain(1.0f + (emotionalTone[0] - emotionalTone[1]) * 0.1f);
+        } else {
+            emotionalToneStage.setGain(1.0f);
         }
-        return samples;
-    }
-    
-    private short[] applyPitchTransformation(short[] samples, float pitchRange) {
-        // Apply pitch transformation based on voice profile
-        float pitchShift = pitchRange / 100.0f; // Normalize
         
-        return applyAdvancedPitchShift(samples, pitchShift);
+        return chain;
     }
     
-    private short[] applyEmotionalToneTransformation(short[] samples, float[] emotionalTone) {
-        // Apply emotional tone transformation
-        if (emotionalTone == null || emotionalTone.length < 3) return samples;
-        
-        float happiness = emotionalTone[0];
-        float sadness = emotionalTone[1];
-        float anger = emotionalTone[2];
-        
-        for (int i = 0; i < samples.length; i++) {
-            float sample = samples[i] / 32767.0f;
-            
-            // Apply emotional modulation
-            float emotionalModulation = (happiness - sadness) * 0.1f;
-            sample *= (1.0f + emotionalModulation);
-            
-            samples[i] = (short) Math.max(-32767, Math.min(32767, sample * 32767.0f));
+    /**
+     * Average ratio of the profile's first three formants to a neutral voice, kept in a sane range.
+     * Formants the analysis did not find (0) are left out.
+     */
+    private static float formantRatio(float[] formantFrequencies) {
+        if (formantFrequencies == null || formantFrequencies.length < NEUTRAL_FORMANTS.length) {
+            return 1.0f;
         }
-        return samples;
-    }
-    
-    private short[] applyAdvancedPitchShift(short[] samples, float pitchShift) {
-        if (pitchShift == 1.0f) return samples;
         
-        short[] result = new short[samples.length];
-        for (int i = 0; i < result.length; i++) {
-            float sourceIndex = i / pitchShift;
-            int index1 = (int) sourceIndex;
-            int index2 = Math.min(index1 + 1, samples.length - 1);
-            float fraction = sourceIndex - index1;
-            
-            if (index1 < samples.length) {
-                result[i] = (short) (samples[index1] * (1 - fraction) + samples[index2] * fraction);
+        float sum = 0.0f;
+        int count = 0;
+        for (int i = 0; i < NEUTRAL_FORMANTS.length; i++) {
+            if (formantFrequencies[i] > 0.0f) {
+                sum += formantFrequencies[i] / NEUTRAL_FORMANTS[i];
+                count++;
             }
         }
-        return result;
-    }
-    
-    private short[] applyAdvancedFormantShift(short[] samples, float formantShift) {
-        if (formantShift == 1.0f) return samples;
-        
-        short[] result = new short[samples.length];
-        for (int i = 0; i < samples.length; i++) {
-            float sample = samples[i] / 32767.0f;
-            
-            // Apply formant-like modulation
-            float modulation = (float) Math.sin(2 * Math.PI * i / (SAMPLE_RATE / 100.0f)) * 0.1f;
-            sample *= (1.0f + modulation * (formantShift - 1.0f));
-            
-            result[i] = (short) Math.max(-32767, Math.min(32767, sample * 32767.0f));
-        }
-        return result;
-    }
-    
-    private short[] applyWarmthEffect(short[] samples, float warmth) {
-        if (warmth == 0.0f) return samples;
-        
-        short[] result = new short[samples.length];
-        for (int i = 0; i < samples.length; i++) {
-            float sample = samples[i] / 32767.0f;
-            
-            // Apply soft saturation for warmth
-            sample = (float) Math.tanh(sample * (1.0f + warmth));
-            
-            result[i] = (short) (sample * 32767.0f);
+        if (count == 0) {
+            return 1.0f;
         }
-        return result;
+        return Math.max(0.7f, Math.min(1.4f, sum / count));
     }
     
-    private short[] applyClarityEnhancement(short[] samples, float clarity) {
-        if (clarity == 1.0f) return samples;
-        
-        short[] result = new short[samples.length];
-        
-        // Simple high-pass filter for clarity
-        float alpha = 0.95f * clarity;
-        float prevSample = 0;
-        float filtered = 0;
-        
-        for (int i = 0; i < samples.length; i++) {
-            float sample = samples[i] / 32767.0f;
-            filtered = alpha * (filtered + sample - prevSample);
-            prevSample = sample;
-            
-            result[i] = (short) Math.max(-32767, Math.min(32767, filtered * 32767.0f));
+    /**
+     * Ratio of the profile's median pitch to the speaker's, kept within an octave
+     */
+    private float pitchRatio(float targetPitch) {
+        if (!(targetPitch > 0.0f)) {
+            return 1.0f;
         }
-        return result;
+        PitchStatistics speaker = speakerPitch.getStatistics();
+        float sourcePitch = speaker.getVoicedCount() >= MIN_SPEAKER_PITCH_FRAMES
+                ? speaker.getMedian() : NEUTRAL_PITCH_HZ;
+        return Math.max(0.5f, Math.min(2.0f, targetPitch / sourcePitch));
     }
     
-    private short[] applyBreathinessEffect(short[] samples, float breathiness) {
-        if (breathiness == 0.0f) return samples;
+    private void checkAdaptiveLoad(long processingNanos, int samples) {
+        if (cloningMode != VoiceCloningMode.ADAPTIVE || adaptiveFallback) return;
         
-        short[] result = new short[samples.length];
-        for (int i = 0; i < samples.length; i++) {
-            float sample = samples[i] / 32767.0f;
-            
-            // Add breathiness by mixing with noise
-            float noise = (float) (Math.random() * 2.0 - 1.0) * breathiness * 0.1f;
-            sample = sample * (1.0f - breathiness) + noise;
-            
-            result[i] = (short) Math.max(-32767, Math.min(32767, sample * 32767.0f));
+        // Falling behind if a block takes more than half its own duration to process
+        long budgetNanos = samples * 1_000_000_000L / SAMPLE_RATE / 2;
+        adaptiveOverruns = processingNanos > budgetNanos ? adaptiveOverruns + 1 : 0;
+        if (adaptiveOverruns >= ADAPTIVE_OVERRUN_LIMIT) {
+            Log.w(TAG, "Processing too slow for the phase vocoder, switching to TD-PSOLA and "
+                    + ADAPTIVE_ROBOT_BANDS + " robot bands");
+            // Build the cheaper stages in the background; this thread only picks up the new
+            // references, the cloned chain at the next block and the template chain once compiled
+            adaptiveFallback = true;
+            templateExecutor.execute(this::rebuildEffectChains);
         }
-        return result;
-    }
-    
-    private short[] applySpeakingRateAdjustment(short[] samples, float speakingRate) {
-        if (speakingRate == 1.0f) return samples;
-        
-        // Apply time stretching/compression
-        return applyAdvancedPitchShift(samples, speakingRate);
     }
     
     private void updatePerformanceMetrics(long latency) {
@@ -645,12 +779,19 @@ public class VoiceCloningEngine {
     // Public methods for voice management
     public void setCurrentVoice(String voiceId) {
         this.currentVoiceId = voiceId;
+        compileTemplateChain();
         Log.d(TAG, "Current voice set to: " + voiceId);
     }
     
     public void cloneVoiceFromAudio(byte[] audioData, String voiceId, String name) {
         executorService.execute(() -> {
             try {
+                // Pitch is measured locally; the AI analysis supplies the remaining traits
+                float medianPitch = extractPitchRange(audioData);
+                // Formants and the spectral envelope are measured in the background while the AI analysis runs
+                Future<float[]> formantJob = executorService.submit(() -> extractFormantFrequencies(audioData));
+                Future<float[]> spectralJob = executorService.submit(() -> extractSpectralFeatures(audioData));
+                
                 // Use AI to analyze the voice sample
                 geminiAIService.analyzeVoiceCharacteristics(audioData, "wav", new GeminiAIService.VoiceAnalysisListener() {
                     @Override
@@ -659,7 +800,8 @@ public class VoiceCloningEngine {
                         VoiceProfile profile = new VoiceProfile(voiceId, name);
                         
                         // Map AI analysis to voice profile
-                        profile.pitchRange = result.pitchLevel * 100; // Convert to Hz range
+                        // Measured pitch; the AI's relative pitch level only if the sample had no voiced speech
+                        profile.pitchRange = medianPitch > 0.0f ? medianPitch : result.pitchLevel * NEUTRAL_PITCH_HZ;
                         profile.speakingRate = result.speakingRate;
                         profile.emotionalTone = new float[]{
                             result.emotionalTone.equals("happy") ? 0.8f : 0.2f,
@@ -668,8 +810,8 @@ public class VoiceCloningEngine {
                         };
                         
                         // Extract additional features
-                        profile.spectralFeatures = extractSpectralFeatures(audioData);
-                        profile.formantFrequencies = extractFormantFrequencies(audioData);
+                        profile.spectralFeatures = awaitAnalysis(spectralJob, "Spectral");
+                        profile.formantFrequencies = awaitAnalysis(formantJob, "Formant");
                         
                         // Store voice profile
                         clonedVoices.put(voiceId, profile);
@@ -715,7 +857,7 @@ public class VoiceCloningEngine {
             
             // Create analysis result from existing profile
             GeminiAIService.VoiceAnalysisResult analysis = new GeminiAIService.VoiceAnalysisResult();
-            analysis.pitchLevel = sourceProfile.pitchRange / 100.0f;
+            analysis.pitchLevel = sourceProfile.pitchRange / NEUTRAL_PITCH_HZ;
             analysis.speakingRate = sourceProfile.speakingRate;
             analysis.warmth = 0.5f; // Default
             analysis.clarity = 0.8f; // Default
@@ -737,6 +879,9 @@ public class VoiceCloningEngine {
                     
                     // Store the AI-generated template
                     voiceTemplates.put(template.templateId, voiceTemplate);
+                    if (template.templateId.equals(currentVoiceId)) {
+                        compileTemplateChain();
+                    }
                     
                     Log.d(TAG, "AI-generated template created: " + template.name);
                 }
@@ -758,22 +903,79 @@ public class VoiceCloningEngine {
     }
     
     // Voice analysis methods (simplified implementations)
+    /**
+     * Long-term mel-band envelope of a voice sample in dB relative to its average, or null if
+     * the sample is silent
+     */
     private float[] extractSpectralFeatures(byte[] audioData) {
-        // Simplified spectral feature extraction
-        // Real implementation would use FFT and spectral analysis
-        return new float[]{1.0f, 0.8f, 0.6f, 0.4f, 0.2f};
+        float[] samples = toSamples(audioData);
+        MfccExtractor extractor = new MfccExtractor(SAMPLE_RATE);
+        if (extractor.process(samples, 0, samples.length) == 0) {
+            return null;
+        }
+        
+        float[] envelope = new float[extractor.getBandCount()];
+        extractor.getEnvelope(envelope);
+        Log.d(TAG, "Sample envelope over " + extractor.getFrameCount() + " frames: " + Arrays.toString(envelope));
+        return envelope;
     }
     
+    /**
+     * Median F1-F4 of a voice sample in Hz (0 for a formant never found), or null if the sample
+     * has too little voiced speech
+     */
     private float[] extractFormantFrequencies(byte[] audioData) {
-        // Simplified formant frequency extraction
-        // Real implementation would use LPC analysis
-        return new float[]{800.0f, 1200.0f, 2500.0f};
+        float[] samples = toSamples(audioData);
+        FormantTracker tracker = new FormantTracker(SAMPLE_RATE);
+        int frames = tracker.process(samples, 0, samples.length);
+        if (frames == 0) {
+            return null;
+        }
+        
+        float[] formants = new float[FormantTracker.FORMANTS];
+        for (int i = 0; i < formants.length; i++) {
+            PitchStatistics track = tracker.getStatistics(i);
+            formants[i] = track.getVoicedCount() > 0 ? track.getMedian() : 0.0f;
+        }
+        Log.d(TAG, "Sample formants over " + frames + " voiced frames: " + Arrays.toString(formants));
+        return formants;
     }
     
+    private float[] awaitAnalysis(Future<float[]> job, String name) {
+        try {
+            return job.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return null;
+        } catch (ExecutionException e) {
+            Log.e(TAG, name + " analysis failed", e.getCause());
+            return null;
+        }
+    }
+    
+    /**
+     * Median pitch of a voice sample in Hz, or 0 if it has too little voiced speech
+     */
     private float extractPitchRange(byte[] audioData) {
-        // Simplified pitch range extraction
-        // Real implementation would use pitch detection algorithms
-        return 150.0f; // Hz
+        float[] samples = toSamples(audioData);
+        PitchStatistics pitch = PitchTracker.track(samples, 0, samples.length, SAMPLE_RATE).getStatistics();
+        if (pitch.getVoicedCount() == 0) {
+            return 0.0f;
+        }
+        Log.d(TAG, "Sample pitch: median " + pitch.getMedian() + " Hz, range " + pitch.getRangeSemitones()
+                + " semitones, " + Math.round(pitch.getVoicedFraction() * 100) + "% voiced");
+        return pitch.getMedian();
+    }
+    
+    /**
+     * Decode a 16-bit mono voice sample at the pipeline rate, skipping a canonical WAV header
+     */
+    private static float[] toSamples(byte[] audioData) {
+        int offset = audioData.length >= WAV_HEADER_BYTES && audioData[0] == 'R' && audioData[1] == 'I'
+                && audioData[2] == 'F' && audioData[3] == 'F' ? WAV_HEADER_BYTES : 0;
+        float[] samples = new float[(audioData.length - offset) / 2];
+        PcmConverter.toFloat(audioData, offset, samples, 0, samples.length);
+        return samples;
     }
     
     private float extractSpeakingRate(byte[] audioData) {
@@ -798,11 +1000,17 @@ public class VoiceCloningEngine {
             File profileFile = new File(voicesDir, profile.voiceId + ".voice");
             FileOutputStream fos = new FileOutputStream(profileFile);
             
-            // Save profile data (simplified)
+            // One field per line: id, name, then the analysed voice the cloned chains are set from
             fos.write(profile.voiceId.getBytes());
             fos.write("\n".getBytes());
             fos.write(profile.name.getBytes());
             fos.write("\n".getBytes());
+            fos.write(Float.toString(profile.pitchRange).getBytes());
+            fos.write("\n".getBytes());
+            fos.write(joinFloats(profile.spectralFeatures).getBytes());
+            fos.write("\n".getBytes());
+            fos.write(joinFloats(profile.formantFrequencies).getBytes());
+            fos.write("\n".getBytes());
             
             fos.close();
             
@@ -819,20 +1027,56 @@ public class VoiceCloningEngine {
             fis.close();
             
             String content = new String(data);
-            String[] lines = content.split("\n");
+            // Keep trailing empty fields, which stand for features that were never analysed
+            String[] lines = content.split("\n", -1);
             
             if (lines.length >= 2) {
                 VoiceProfile profile = new VoiceProfile(lines[0], lines[1]);
+                // Profiles saved before the features were stored have only the first two lines
+                if (lines.length >= 5) {
+                    profile.pitchRange = Float.parseFloat(lines[2]);
+                    profile.spectralFeatures = parseFloats(lines[3]);
+                    profile.formantFrequencies = parseFloats(lines[4]);
+                }
                 return profile;
             }
             
-        } catch (IOException e) {
+        } catch (IOException | NumberFormatException e) {
             Log.e(TAG, "Error loading voice profile", e);
         }
         
         return null;
     }
     
+    /**
+     * Comma-separated values, or an empty string for a missing array
+     */
+    private static String joinFloats(float[] values) {
+        if (values == null) {
+            return "";
+        }
+        StringBuilder builder = new StringBuilder();
+        for (int i = 0; i < values.length; i++) {
+            if (i > 0) {
+                builder.append(',');
+            }
+            builder.append(values[i]);
+        }
+        return builder.toString();
+    }
+    
+    private static float[] parseFloats(String line) {
+        if (line.isEmpty()) {
+            return null;
+        }
+        String[] fields = line.split(",");
+        float[] values = new float[fields.length];
+        for (int i = 0; i < fields.length; i++) {
+            values[i] = Float.parseFloat(fields[i]);
+        }
+        return values;
+    }
+    
     public boolean isProcessing() {
         return isProcessing.get();
     }
@@ -858,6 +1102,10 @@ public class VoiceCloningEngine {
             executorService.shutdown();
         }
         
+        if (templateExecutor != null) {
+            templateExecutor.shutdown();
+        }
+        
         Log.d(TAG, "VoiceCloningEngine released");
     }
 }
@@ -279,6 +279,47 @@ public class VoiceTemplateManager {
         deepScary.parameters.put("emotional_tone", 0.1f); // Scary
         deepScary.parameters.put("reverb_effect", 0.5f);
         voiceTemplates.put(deepScary.id, deepScary);
+        
+        // مكالمة هاتفية
+        VoiceTemplate telephone = new VoiceTemplate(
+            "telephone", 
+            "مكالمة هاتفية", 
+            "صوت عبر خط هاتف أرضي قديم", 
+            "Special Effects", 
+            "Arabic"
+        );
+        telephone.parameters.put("clarity", 0.9f);
+        telephone.parameters.put("emotional_tone", 0.5f); // Neutral
+        telephone.parameters.put("impulse_response", (float) ImpulseResponseLibrary.TELEPHONE);
+        voiceTemplates.put(telephone.id, telephone);
+        
+        // جهاز لاسلكي
+        VoiceTemplate radio = new VoiceTemplate(
+            "radio", 
+            "جهاز لاسلكي", 
+            "صوت عبر جهاز لاسلكي بسماعة صغيرة", 
+            "Special Effects", 
+            "Arabic"
+        );
+        radio.parameters.put("clarity", 0.95f);
+        radio.parameters.put("warmth", 0.3f);
+        radio.parameters.put("emotional_tone", 0.5f); // Neutral
+        radio.parameters.put("impulse_response", (float) ImpulseResponseLibrary.RADIO);
+        voiceTemplates.put(radio.id, radio);
+        
+        // غرفة
+        VoiceTemplate room = new VoiceTemplate(
+            "room", 
+            "غرفة", 
+            "صوت في غرفة ذات صدى خفيف", 
+            "Special Effects", 
+            "Arabic"
+        );
+        room.parameters.put("warmth", 0.2f);
+        room.parameters.put("emotional_tone", 0.5f); // Neutral
+        room.parameters.put("impulse_response", (float) ImpulseResponseLibrary.ROOM);
+        room.parameters.put("impulse_response_mix", 0.4f);
+        voiceTemplates.put(room.id, room);
     }
     
     // Public methods
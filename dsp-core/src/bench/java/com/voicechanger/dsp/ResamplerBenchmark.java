@@ -0,0 +1,47 @@
+package com.voicechanger.dsp;
+
+/**
+ * Throughput of {@link Resampler} on the JVM for the conversions the app makes, at every
+ * quality: capture rates down to the 16 kHz pipeline and the pipeline back up to playback.
+ * Input is fed in 10 ms blocks. Run with {@code ./gradlew :dsp-core:benchResampler}.
+ */
+public final class ResamplerBenchmark {
+    private static final int[][] CONVERSIONS = {{48000, 16000}, {44100, 16000}, {16000, 48000}, {16000, 44100}};
+    private static final int SECONDS = 10;
+    // Untimed runs first, so the JIT has compiled the resampler before anything is measured
+    private static final int WARMUP_RUNS = 5;
+    private static final int RUNS = 5;
+    
+    private ResamplerBenchmark() {
+    }
+    
+    public static void main(String[] args) {
+        for (int[] rates : CONVERSIONS) {
+            int inputRate = rates[0];
+            int outputRate = rates[1];
+            float[] input = Signals.speechLike(inputRate, SECONDS * inputRate, 140.0, 1);
+            int block = inputRate / 100;
+            
+            for (Resampler.Quality quality : Resampler.Quality.values()) {
+                Resampler resampler = new Resampler(inputRate, outputRate, quality);
+                float[] output = new float[resampler.getMaxOutput(block)];
+                long best = Long.MAX_VALUE;
+                long produced = 0;
+                for (int run = -WARMUP_RUNS; run < RUNS; run++) {
+                    resampler.reset();
+                    produced = 0;
+                    long start = System.nanoTime();
+                    for (int i = 0; i + block <= input.length; i += block) {
+                        produced += resampler.process(input, i, block, output, 0);
+                    }
+                    long elapsed = System.nanoTime() - start;
+                    if (run >= 0) {
+                        best = Math.min(best, elapsed);
+                    }
+                }
+                System.out.printf("%5d -> %5d Hz %-6s: %6.1f ns per output sample, %6.0fx real time%n",
+                        inputRate, outputRate, quality, (double) best / produced, SECONDS * 1e9 / best);
+            }
+        }
+    }
+}
@@ -0,0 +1,31 @@
+package com.voicechanger.dsp;
+
+import java.util.Random;
+
+/**
+ * Deterministic test signals for the benchmarks
+ */
+final class Signals {
+    private Signals() {
+    }
+    
+    /**
+     * Voiced speech stand-in: a harmonic buzz with slow vibrato and some noise, shaped into
+     * syllables of about a third of a second separated by pauses
+     */
+    static float[] speechLike(int sampleRate, int length, double f0, long seed) {
+        Random random = new Random(seed);
+        float[] out = new float[length];
+        double phase = 0.0;
+        for (int i = 0; i < length; i++) {
+            double syllable = Math.max(0.0, Math.sin(2.0 * Math.PI * i / (0.7 * sampleRate)));
+            phase += 2.0 * Math.PI * f0 * (1.0 + 0.1 * Math.sin(i / (0.2 * sampleRate))) / sampleRate;
+            double voiced = 0.0;
+            for (int h = 1; h < 12; h++) {
+                voiced += Math.sin(h * phase) / h;
+            }
+            out[i] = (float) (0.25 * syllable * (0.6 * voiced + 0.3 * random.nextGaussian()));
+        }
+        return out;
+    }
+}
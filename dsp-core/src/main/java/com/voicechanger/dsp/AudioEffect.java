@@ -0,0 +1,26 @@
+package com.voicechanger.dsp;
+
+/**
+ * A single stage of the voice processing chain.
+ * Effects work in place on normalized float samples (-1..1) and keep their state
+ * between calls, so a stream can be fed in blocks of any size.
+ */
+public interface AudioEffect {
+    
+    /**
+     * Process {@code length} samples starting at {@code offset}, in place
+     */
+    void process(float[] samples, int offset, int length);
+    
+    /**
+     * Preallocate any working memory needed for blocks of up to {@code maxBlockSize} samples.
+     * Called once before a stream starts so that {@link #process} does not allocate.
+     */
+    default void prepare(int maxBlockSize) {
+    }
+    
+    /**
+     * Clear all internal state, e.g. when a stream is restarted
+     */
+    void reset();
+}
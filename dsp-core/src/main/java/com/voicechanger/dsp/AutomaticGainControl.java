@@ -0,0 +1,208 @@
+package com.voicechanger.dsp;
+
+import java.util.Arrays;
+
+/**
+ * Streaming automatic gain control followed by a look-ahead peak limiter, in a single pass.
+ * The level is followed per sample; the gain moves towards {@code targetRms / level} with
+ * separate attack (gain falling) and release (gain rising) times, waits for the hold time after
+ * each reduction before rising again, and stays frozen while the level is below the gate so
+ * pauses and background noise are not pulled up.
+ *
+ * The limiter delays the signal by {@link #LOOKAHEAD_MS} and lowers its gain ahead of any
+ * peak that would exceed the ceiling, so peaks are caught without clipping. The per-sample
+ * {@link #process(float)} lets fused kernels run the stage inside their own loop.
+ */
+public class AutomaticGainControl implements AudioEffect {
+    public static final float LOOKAHEAD_MS = 2.0f;
+    
+    private static final float DETECTOR_MS = 10.0f;
+    private static final int CONTROL_INTERVAL = 16;
+    private static final float LIMITER_RELEASE_MS = 50.0f;
+    private static final float CEILING = 0.95f;
+    
+    private final int sampleRate;
+    private final float targetRms;
+    private final float minGain;
+    private final float maxGain;
+    
+    private final float detectorCoeff;
+    private float attackCoeff;
+    private float releaseCoeff;
+    private float gateLevel;
+    private int holdSamples;
+    
+    // Gain control state
+    private float power;
+    private float gain = 1.0f;
+    private float gainStep;
+    private int controlCountdown;
+    private int holdRemaining;
+    
+    // Look-ahead limiter: delay line and a monotonic queue for the smallest gain in the window
+    private final int lookahead;
+    private final float limiterAttackCoeff;
+    private final float limiterReleaseCoeff;
+    private final float[] delayLine;
+    private final float[] queueGain;
+    private final long[] queueTime;
+    private int queueHead;
+    private int queueSize;
+    private int delayIndex;
+    private long time;
+    private float limiterGain = 1.0f;
+    
+    /**
+     * @param sampleRate stream sample rate
+     * @param targetRms level the gain steers towards
+     * @param minGain lowest gain applied
+     * @param maxGain highest gain applied
+     */
+    public AutomaticGainControl(int sampleRate, float targetRms, float minGain, float maxGain) {
+        if (targetRms <= 0.0f || minGain <= 0.0f || maxGain < minGain) {
+            throw new IllegalArgumentException("Invalid gain control range");
+        }
+        this.sampleRate = sampleRate;
+        this.targetRms = targetRms;
+        this.minGain = minGain;
+        this.maxGain = maxGain;
+        this.detectorCoeff = coefficient(DETECTOR_MS);
+        
+        this.lookahead = Math.max(1, Math.round(LOOKAHEAD_MS * sampleRate / 1000.0f));
+        // Reach the held gain within the look-ahead window
+        this.limiterAttackCoeff = 1.0f - (float) Math.exp(-4.0 / lookahead);
+        this.limiterReleaseCoeff = coefficient(LIMITER_RELEASE_MS);
+        delayLine = new float[lookahead];
+        queueGain = new float[lookahead + 1];
+        queueTime = new long[lookahead + 1];
+        
+        setTimes(5.0f, 300.0f);
+        setGate(0.003f, 150.0f);
+        reset();
+    }
+    
+    /**
+     * Time constants of gain reduction and recovery, in milliseconds
+     */
+    public void setTimes(float attackMs, float releaseMs) {
+        // Per control interval rather than per sample
+        attackCoeff = 1.0f - (float) Math.pow(1.0f - coefficient(attackMs), CONTROL_INTERVAL);
+        releaseCoeff = 1.0f - (float) Math.pow(1.0f - coefficient(releaseMs), CONTROL_INTERVAL);
+    }
+    
+    /**
+     * Level below which the gain is frozen, and how long the gain is held after a reduction
+     */
+    public void setGate(float threshold, float holdMs) {
+        gateLevel = threshold;
+        holdSamples = Math.round(holdMs * sampleRate / 1000.0f);
+    }
+    
+    /**
+     * Current gain of the level control, excluding the limiter
+     */
+    public float getGain() {
+        return gain;
+    }
+    
+    /**
+     * Algorithmic delay between input and output, in samples
+     */
+    public int getLatencySamples() {
+        return lookahead;
+    }
+    
+    @Override
+    public void process(float[] samples, int offset, int length) {
+        for (int i = offset; i < offset + length; i++) {
+            samples[i] = process(samples[i]);
+        }
+    }
+    
+    /**
+     * Process one sample; the result belongs to the input {@link #getLatencySamples()} earlier
+     */
+    public float process(float x) {
+        power += (x * x - power) * detectorCoeff;
+        if (--controlCountdown <= 0) {
+            updateControl();
+        }
+        gain += gainStep;
+        
+        float y = x * gain;
+        float magnitude = Math.abs(y);
+        float needed = magnitude > CEILING ? CEILING / magnitude : 1.0f;
+        
+        // Smallest needed gain from the sample leaving the delay line to the one entering it
+        if (queueSize > 0 && queueTime[queueHead] < time - lookahead) {
+            queueHead = queueHead == lookahead ? 0 : queueHead + 1;
+            queueSize--;
+        }
+        int tail = queueHead + queueSize;
+        if (tail > lookahead) tail -= lookahead + 1;
+        while (queueSize > 0) {
+            int last = tail == 0 ? lookahead : tail - 1;
+            if (queueGain[last] < needed) break;
+            tail = last;
+            queueSize--;
+        }
+        queueGain[tail] = needed;
+        queueTime[tail] = time;
+        queueSize++;
+        float held = queueGain[queueHead];
+        
+        float coeff = held < limiterGain ? limiterAttackCoeff : limiterReleaseCoeff;
+        limiterGain += (held - limiterGain) * coeff;
+        
+        float out = delayLine[delayIndex] * limiterGain;
+        delayLine[delayIndex] = y;
+        delayIndex = delayIndex + 1 == lookahead ? 0 : delayIndex + 1;
+        time++;
+        
+        // The smoothed gain lands just short of the target; never let that through as clipping
+        return Math.max(-CEILING, Math.min(CEILING, out));
+    }
+    
+    /**
+     * Pick the gain target once per control interval and ramp towards it linearly, so the
+     * square root and the division by the level run once per interval rather than per sample
+     */
+    private void updateControl() {
+        controlCountdown = CONTROL_INTERVAL;
+        float level = (float) Math.sqrt(power);
+        float coeff;
+        float target = Math.max(minGain, Math.min(maxGain, targetRms / level));
+        if (level < gateLevel) {
+            // Gate closed: hold the current gain
+            coeff = 0.0f;
+        } else if (target < gain) {
+            coeff = attackCoeff;
+            holdRemaining = holdSamples;
+        } else if (holdRemaining > 0) {
+            coeff = 0.0f;
+            holdRemaining -= CONTROL_INTERVAL;
+        } else {
+            coeff = releaseCoeff;
+        }
+        gainStep = (target - gain) * coeff / CONTROL_INTERVAL;
+    }
+    
+    @Override
+    public void reset() {
+        power = 0.0f;
+        gain = 1.0f;
+        gainStep = 0.0f;
+        controlCountdown = 0;
+        holdRemaining = 0;
+        Arrays.fill(delayLine, 0.0f);
+        queueHead = 0;
+        queueSize = 0;
+        delayIndex = 0;
+        time = 0;
+        limiterGain = 1.0f;
+    }
+    
+    private float coefficient(float ms) {
+        return 1.0f - (float) Math.exp(-1000.0 / (Math.max(ms, 0.01f) * sampleRate));
+    }
+}
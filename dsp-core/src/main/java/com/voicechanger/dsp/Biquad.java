@@ -0,0 +1,166 @@
+package com.voicechanger.dsp;
+
+/**
+ * Second-order IIR section (RBJ audio EQ cookbook designs) in transposed direct form II.
+ * The design is cached: calling {@link #design} again with the same arguments does not
+ * recompute the coefficients. Filter state is carried across blocks.
+ *
+ * The JVM gives no control over flush-to-zero, so the state is flushed explicitly after
+ * each block: a tail below 1e-15 is cleared long before it decays into the denormal range
+ * and stalls the FPU during silence.
+ */
+public final class Biquad {
+    public static final int LOW_PASS = 0;
+    public static final int HIGH_PASS = 1;
+    public static final int PEAKING = 2;
+    public static final int LOW_SHELF = 3;
+    public static final int HIGH_SHELF = 4;
+    /** Band-pass with 0 dB gain at the centre frequency */
+    public static final int BAND_PASS = 5;
+    
+    /** Q of a maximally flat (Butterworth) section */
+    public static final float BUTTERWORTH_Q = 0.70710678f;
+    
+    private static final float DENORMAL_THRESHOLD = 1e-15f;
+    
+    // Cached design
+    private int type = -1;
+    private float sampleRate;
+    private float frequency;
+    private float q;
+    private float gainDb;
+    
+    // Normalized coefficients (a0 == 1); starts as a pass-through
+    private float b0 = 1.0f;
+    private float b1;
+    private float b2;
+    private float a1;
+    private float a2;
+    
+    private float z1;
+    private float z2;
+    
+    /**
+     * Design the section. {@code gainDb} is ignored by the low-pass, high-pass and band-pass
+     * types; shelves use {@code q} as their slope (0.707 gives the steepest monotonic shelf).
+     */
+    public void design(int type, float sampleRate, float frequency, float q, float gainDb) {
+        if (type == this.type && sampleRate == this.sampleRate && frequency == this.frequency
+                && q == this.q && gainDb == this.gainDb) {
+            return;
+        }
+        if (type < LOW_PASS || type > BAND_PASS || sampleRate <= 0.0f || q <= 0.0f) {
+            throw new IllegalArgumentException("Invalid biquad design");
+        }
+        this.type = type;
+        this.sampleRate = sampleRate;
+        this.frequency = frequency;
+        this.q = q;
+        this.gainDb = gainDb;
+        
+        double f = Math.max(1.0, Math.min(frequency, 0.49 * sampleRate));
+        double w0 = 2.0 * Math.PI * f / sampleRate;
+        double cos = Math.cos(w0);
+        double alpha = Math.sin(w0) / (2.0 * q);
+        double a = Math.pow(10.0, gainDb / 40.0);
+        double sqrtA2Alpha = 2.0 * Math.sqrt(a) * alpha;
+        
+        double nb0, nb1, nb2, na0, na1, na2;
+        switch (type) {
+            case LOW_PASS:
+                nb0 = (1.0 - cos) / 2.0;
+                nb1 = 1.0 - cos;
+                nb2 = nb0;
+                na0 = 1.0 + alpha;
+                na1 = -2.0 * cos;
+                na2 = 1.0 - alpha;
+                break;
+            case HIGH_PASS:
+                nb0 = (1.0 + cos) / 2.0;
+                nb1 = -(1.0 + cos);
+                nb2 = nb0;
+                na0 = 1.0 + alpha;
+                na1 = -2.0 * cos;
+                na2 = 1.0 - alpha;
+                break;
+            case PEAKING:
+                nb0 = 1.0 + alpha * a;
+                nb1 = -2.0 * cos;
+                nb2 = 1.0 - alpha * a;
+                na0 = 1.0 + alpha / a;
+                na1 = -2.0 * cos;
+                na2 = 1.0 - alpha / a;
+                break;
+            case LOW_SHELF:
+                nb0 = a * ((a + 1.0) - (a - 1.0) * cos + sqrtA2Alpha);
+                nb1 = 2.0 * a * ((a - 1.0) - (a + 1.0) * cos);
+                nb2 = a * ((a + 1.0) - (a - 1.0) * cos - sqrtA2Alpha);
+                na0 = (a + 1.0) + (a - 1.0) * cos + sqrtA2Alpha;
+                na1 = -2.0 * ((a - 1.0) + (a + 1.0) * cos);
+                na2 = (a + 1.0) + (a - 1.0) * cos - sqrtA2Alpha;
+                break;
+            case BAND_PASS:
+                nb0 = alpha;
+                nb1 = 0.0;
+                nb2 = -alpha;
+                na0 = 1.0 + alpha;
+                na1 = -2.0 * cos;
+                na2 = 1.0 - alpha;
+                break;
+            case HIGH_SHELF:
+            default:
+                nb0 = a * ((a + 1.0) + (a - 1.0) * cos + sqrtA2Alpha);
+                nb1 = -2.0 * a * ((a - 1.0) + (a + 1.0) * cos);
+                nb2 = a * ((a + 1.0) + (a - 1.0) * cos - sqrtA2Alpha);
+                na0 = (a + 1.0) - (a - 1.0) * cos + sqrtA2Alpha;
+                na1 = 2.0 * ((a - 1.0) - (a + 1.0) * cos);
+                na2 = (a + 1.0) - (a - 1.0) * cos - sqrtA2Alpha;
+                break;
+        }
+        
+        b0 = (float) (nb0 / na0);
+        b1 = (float) (nb1 / na0);
+        b2 = (float) (nb2 / na0);
+        a1 = (float) (na1 / na0);
+        a2 = (float) (na2 / na0);
+    }
+    
+    /**
+     * Filter one sample. Callers running their own loop must call {@link #flushDenormals()}
+     * after each block.
+     */
+    public float process(float x) {
+        float y = b0 * x + z1;
+        z1 = b1 * x - a1 * y + z2;
+        z2 = b2 * x - a2 * y;
+        return y;
+    }
+    
+    /**
+     * Filter {@code length} samples starting at {@code offset}, in place
+     */
+    public void process(float[] samples, int offset, int length) {
+        float c0 = b0, c1 = b1, c2 = b2, d1 = a1, d2 = a2;
+        float s1 = z1, s2 = z2;
+        for (int i = offset; i < offset + length; i++) {
+            float x = samples[i];
+            float y = c0 * x + s1;
+            s1 = c1 * x - d1 * y + s2;
+            s2 = c2 * x - d2 * y;
+            samples[i] = y;
+        }
+        z1 = s1;
+        z2 = s2;
+        flushDenormals();
+    }
+    
+    public void flushDenormals() {
+        if (Math.abs(z1) < DENORMAL_THRESHOLD) z1 = 0.0f;
+        if (Math.abs(z2) < DENORMAL_THRESHOLD) z2 = 0.0f;
+    }
+    
+    public void reset() {
+        z1 = 0.0f;
+        z2 = 0.0f;
+    }
+}
@@ -0,0 +1,74 @@
+package com.voicechanger.dsp;
+
+/**
+ * Spectral envelope by cepstral liftering: the log magnitude spectrum is transformed to the
+ * real cepstrum, everything above the lifter quefrency (the harmonics of the pitch) is dropped
+ * and the rest is transformed back. The lifter must stay below the shortest pitch period of
+ * interest. Two real FFTs per estimate; estimating does not allocate.
+ */
+public final class CepstralEnvelope {
+    // Keeps the logarithm of empty bins finite
+    private static final float MAGNITUDE_FLOOR = 1e-9f;
+    
+    private final int fftSize;
+    private final int lifter;
+    private final RealFft fft;
+    private final float[] cepstrum;
+    
+    /**
+     * @param fftSize size of the spectra the magnitudes come from, a power of two
+     * @param lifter highest quefrency kept, in samples
+     */
+    public CepstralEnvelope(int fftSize, int lifter) {
+        if (lifter < 1 || lifter >= fftSize / 2) {
+            throw new IllegalArgumentException("Lifter must be between 1 and fftSize / 2: " + lifter);
+        }
+        this.fftSize = fftSize;
+        this.lifter = lifter;
+        this.fft = RealFft.forSize(fftSize);
+        this.cepstrum = new float[fftSize];
+    }
+    
+    /**
+     * Smoothed natural-log envelope of a magnitude spectrum
+     *
+     * @param magnitude bins 0 to fftSize / 2
+     * @param logEnvelope receives the same number of bins; may be {@code magnitude}
+     */
+    public void estimate(float[] magnitude, float[] logEnvelope) {
+        int half = fftSize / 2;
+        
+        // The log spectrum is real and even, so it packs with zero imaginary parts
+        cepstrum[0] = (float) Math.log(magnitude[0] + MAGNITUDE_FLOOR);
+        cepstrum[1] = (float) Math.log(magnitude[half] + MAGNITUDE_FLOOR);
+        for (int k = 1; k < half; k++) {
+            cepstrum[2 * k] = (float) Math.log(magnitude[k] + MAGNITUDE_FLOOR);
+            cepstrum[2 * k + 1] = 0.0f;
+        }
+        fft.inverse(cepstrum);
+        
+        // Keep quefrencies up to the lifter at both ends of the even cepstrum, halving the edge
+        float scale = 1.0f / fftSize;
+        cepstrum[0] *= scale;
+        for (int n = 1; n < lifter; n++) {
+            cepstrum[n] *= scale;
+            cepstrum[fftSize - n] *= scale;
+        }
+        cepstrum[lifter] *= 0.5f * scale;
+        cepstrum[fftSize - lifter] *= 0.5f * scale;
+        for (int n = lifter + 1; n < fftSize - lifter; n++) {
+            cepstrum[n] = 0.0f;
+        }
+        fft.forward(cepstrum);
+        
+        logEnvelope[0] = cepstrum[0];
+        logEnvelope[half] = cepstrum[1];
+        for (int k = 1; k < half; k++) {
+            logEnvelope[k] = cepstrum[2 * k];
+        }
+    }
+    
+    public int getLifter() {
+        return lifter;
+    }
+}
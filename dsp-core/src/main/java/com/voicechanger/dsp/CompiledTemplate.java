@@ -0,0 +1,276 @@
+package com.voicechanger.dsp;
+
+import java.util.Map;
+
+/**
+ * A voice template's parameter map resolved into primitive values once, when the template is
+ * selected, instead of on every block. Compiling also designs the filters and builds the
+ * {@link TemplateKernel} that fuses the per-sample stages, so {@link #createChain} only
+ * configures the stateful stages and chains the ones that are not identities.
+ */
+public final class CompiledTemplate {
+    public static final String PITCH_SHIFT = "pitch_shift";
+    public static final String FORMANT_SHIFT = "formant_shift";
+    public static final String WARMTH = "warmth";
+    public static final String CLARITY = "clarity";
+    public static final String BREATHINESS = "breathiness";
+    public static final String SPEAKING_RATE = "speaking_rate";
+    public static final String WHISPER_EFFECT = "whisper_effect";
+    public static final String ROBOT_EFFECT = "robot_effect";
+    public static final String ROBOT_MODE = "robot_mode";
+    public static final String REVERB_EFFECT = "reverb_effect";
+    public static final String IMPULSE_RESPONSE = "impulse_response";
+    public static final String IMPULSE_RESPONSE_MIX = "impulse_response_mix";
+    public static final String EQ_LOW = "eq_low";
+    public static final String EQ_MID = "eq_mid";
+    public static final String EQ_HIGH = "eq_high";
+    
+    // Three-band template EQ: low shelf, presence peak and high shelf; gains are in dB
+    private static final float EQ_LOW_FREQUENCY = 200.0f;
+    private static final float EQ_MID_FREQUENCY = 1500.0f;
+    private static final float EQ_MID_Q = 1.0f;
+    private static final float EQ_HIGH_FREQUENCY = 4000.0f;
+    
+    private final int sampleRate;
+    
+    private final float pitchShift;
+    private final float formantShift;
+    private final float warmth;
+    private final float clarity;
+    private final float breathiness;
+    private final float speakingRate;
+    private final float whisper;
+    private final float robot;
+    private final int robotMode;
+    private final float reverb;
+    private final int impulseResponse;
+    private final float impulseResponseMix;
+    private final float eqLow;
+    private final float eqMid;
+    private final float eqHigh;
+    
+    // Fused warmth/clarity/EQ/breathiness stage, null when all of them are neutral
+    private final TemplateKernel kernel;
+    
+    private CompiledTemplate(int sampleRate, float pitchShift, float formantShift, float warmth,
+                             float clarity, float breathiness, float speakingRate, float whisper,
+                             float robot, int robotMode, float reverb, int impulseResponse, float impulseResponseMix,
+                             float eqLow, float eqMid, float eqHigh) {
+        this.sampleRate = sampleRate;
+        this.pitchShift = pitchShift;
+        this.formantShift = formantShift;
+        this.warmth = warmth;
+        this.clarity = clarity;
+        this.breathiness = breathiness;
+        this.speakingRate = speakingRate;
+        this.whisper = whisper;
+        this.robot = robot;
+        this.robotMode = robotMode;
+        this.reverb = reverb;
+        this.impulseResponse = impulseResponse;
+        this.impulseResponseMix = impulseResponseMix;
+        this.eqLow = eqLow;
+        this.eqMid = eqMid;
+        this.eqHigh = eqHigh;
+        
+        FilterBank filters = createFilters();
+        this.kernel = warmth != 0.0f || filters.size() > 0 || breathiness != 0.0f
+                ? new TemplateKernel(warmth == 0.0f ? 0.0f : 1.0f + warmth, filters, breathiness)
+                : null;
+    }
+    
+    /**
+     * Resolve a template parameter map and build its fused kernel; missing keys take their
+     * neutral value. Allocates, so call it off the audio thread.
+     */
+    public static CompiledTemplate compile(Map<String, Float> parameters, int sampleRate) {
+        return new CompiledTemplate(
+                sampleRate,
+                get(parameters, PITCH_SHIFT, 1.0f),
+                get(parameters, FORMANT_SHIFT, 1.0f),
+                get(parameters, WARMTH, 0.0f),
+                get(parameters, CLARITY, 1.0f),
+                get(parameters, BREATHINESS, 0.0f),
+                get(parameters, SPEAKING_RATE, 1.0f),
+                get(parameters, WHISPER_EFFECT, 0.0f),
+                get(parameters, ROBOT_EFFECT, 0.0f),
+                Math.round(get(parameters, ROBOT_MODE, ChannelVocoder.VOCODER)),
+                get(parameters, REVERB_EFFECT, 0.0f),
+                Math.round(get(parameters, IMPULSE_RESPONSE, 0.0f)),
+                get(parameters, IMPULSE_RESPONSE_MIX, 1.0f),
+                get(parameters, EQ_LOW, 0.0f),
+                get(parameters, EQ_MID, 0.0f),
+                get(parameters, EQ_HIGH, 0.0f));
+    }
+    
+    private static float get(Map<String, Float> parameters, String key, float defaultValue) {
+        if (parameters == null) return defaultValue;
+        Float value = parameters.get(key);
+        return value != null ? value : defaultValue;
+    }
+    
+    /**
+     * Configure the given stateful stages and chain the ones that change the signal:
+     * pitch, formant, whisper, robot, the fused warmth/clarity/EQ/breathiness kernel, speaking
+     * rate, impulse response, then reverb, last so its tail is not time-stretched.
+     * The stages are reused so their streaming state survives a template switch. A
+     * {@link FormantPreservingPitchShifter} also takes the formant shift, so the formant stage is
+     * left out and the formants move by the formant shift alone. The impulse response stage is
+     * only chained if the caller has loaded the template's response into it. The kernel built
+     * by {@link #compile} is chained as is, so each compiled template backs one chain.
+     *
+     * Since the stages are reconfigured, call this on the thread that processes them, between
+     * blocks; compiling and loading the response can happen anywhere.
+     */
+    public EffectChain createChain(PitchShifter pitchStage, FormantShifter formantStage,
+                                   WhisperEffect whisperStage, ChannelVocoder robotStage,
+                                   TimeStretchEffect speakingRateStage,
+                                   PartitionedConvolver convolutionStage, FdnReverb reverbStage) {
+        EffectChain chain = new EffectChain();
+        
+        boolean pitched = pitchShift != 1.0f && pitchShift > 0.0f;
+        boolean formantShifted = formantShift != 1.0f && formantShift > 0.0f;
+        if (pitched && pitchStage instanceof FormantPreservingPitchShifter) {
+            // Excitation and envelope are moved separately in one STFT pass
+            FormantPreservingPitchShifter shifter = (FormantPreservingPitchShifter) pitchStage;
+            shifter.setPitchRatio(pitchShift);
+            shifter.setFormantRatio(formantShifted ? formantShift : 1.0f);
+            chain.add(shifter);
+        } else {
+            if (pitched) {
+                pitchStage.setPitchRatio(pitchShift);
+                chain.add(pitchStage);
+            }
+            if (formantShifted) {
+                formantStage.setFormantRatio(formantShift);
+                chain.add(formantStage);
+            }
+        }
+        if (whisper > 0.0f) {
+            whisperStage.setAmount(Math.min(whisper, 1.0f));
+            chain.add(whisperStage);
+        }
+        if (robot > 0.0f) {
+            robotStage.setAmount(Math.min(robot, 1.0f));
+            robotStage.setMode(robotMode == ChannelVocoder.RING_MODULATOR
+                    ? ChannelVocoder.RING_MODULATOR : ChannelVocoder.VOCODER);
+            chain.add(robotStage);
+        }
+        if (kernel != null) {
+            chain.add(kernel);
+        }
+        if (speakingRate != 1.0f && speakingRate > 0.0f) {
+            speakingRateStage.setRate(speakingRate);
+            chain.add(speakingRateStage);
+        }
+        if (impulseResponse > 0 && impulseResponseMix > 0.0f && convolutionStage.hasImpulseResponse()) {
+            convolutionStage.setMix(impulseResponseMix);
+            chain.add(convolutionStage);
+        }
+        if (reverb > 0.0f) {
+            reverbStage.setAmount(Math.min(reverb, 1.0f));
+            chain.add(reverbStage);
+        }
+        return chain;
+    }
+    
+    /**
+     * Clarity high-pass followed by the EQ bands that are not flat
+     */
+    private FilterBank createFilters() {
+        FilterBank filters = new FilterBank();
+        if (clarity != 1.0f) {
+            filters.add(section(Biquad.HIGH_PASS, ClarityFilter.cornerFrequency(clarity, sampleRate),
+                    Biquad.BUTTERWORTH_Q, 0.0f));
+        }
+        if (eqLow != 0.0f) {
+            filters.add(section(Biquad.LOW_SHELF, EQ_LOW_FREQUENCY, Biquad.BUTTERWORTH_Q, eqLow));
+        }
+        if (eqMid != 0.0f) {
+            filters.add(section(Biquad.PEAKING, EQ_MID_FREQUENCY, EQ_MID_Q, eqMid));
+        }
+        if (eqHigh != 0.0f) {
+            filters.add(section(Biquad.HIGH_SHELF, EQ_HIGH_FREQUENCY, Biquad.BUTTERWORTH_Q, eqHigh));
+        }
+        return filters;
+    }
+    
+    private Biquad section(int type, float frequency, float q, float gainDb) {
+        Biquad biquad = new Biquad();
+        biquad.design(type, sampleRate, frequency, q, gainDb);
+        return biquad;
+    }
+    
+    /**
+     * The fused per-sample stage, or null if the template leaves all of it neutral
+     */
+    TemplateKernel getKernel() {
+        return kernel;
+    }
+    
+    public float getPitchShift() {
+        return pitchShift;
+    }
+    
+    public float getFormantShift() {
+        return formantShift;
+    }
+    
+    public float getWarmth() {
+        return warmth;
+    }
+    
+    public float getClarity() {
+        return clarity;
+    }
+    
+    public float getBreathiness() {
+        return breathiness;
+    }
+    
+    public float getSpeakingRate() {
+        return speakingRate;
+    }
+    
+    public float getWhisper() {
+        return whisper;
+    }
+    
+    public float getRobot() {
+        return robot;
+    }
+    
+    /**
+     * {@link ChannelVocoder#VOCODER} or {@link ChannelVocoder#RING_MODULATOR}
+     */
+    public int getRobotMode() {
+        return robotMode;
+    }
+    
+    public float getReverb() {
+        return reverb;
+    }
+    
+    /**
+     * Impulse-response preset id; 0 for none
+     */
+    public int getImpulseResponse() {
+        return impulseResponse;
+    }
+    
+    public float getImpulseResponseMix() {
+        return impulseResponseMix;
+    }
+    
+    public float getEqLow() {
+        return eqLow;
+    }
+    
+    public float getEqMid() {
+        return eqMid;
+    }
+    
+    public float getEqHigh() {
+        return eqHigh;
+    }
+}
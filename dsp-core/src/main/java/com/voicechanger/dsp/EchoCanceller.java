@@ -0,0 +1,465 @@
+package com.voicechanger.dsp;
+
+import java.util.Arrays;
+
+/**
+ * Acoustic echo canceller for full-duplex streams. A partitioned-block frequency-domain adaptive
+ * filter (PBFDAF) models the echo path from the far-end reference and its estimate is subtracted
+ * from the microphone signal processed by {@link #process}.
+ *
+ * The playback side hands every block it plays to {@link #addReference}; the capture side
+ * consumes exactly one reference sample per microphone sample, so both streams stay in lockstep
+ * as long as they share a clock. The bulk delay between the two is found by cross-correlating
+ * their envelopes and removed before the filter, so the filter only has to cover the echo tail.
+ * Adaptation is frozen while the far end is silent and during double talk. Double talk is
+ * flagged by a Geigel detector whose threshold follows the echo path: the median ratio of
+ * microphone to reference peaks is tracked while the far end talks, and a near-end peak more
+ * than {@value #DOUBLE_TALK_MARGIN_DB} dB above it is double talk. The reference peak is taken
+ * over the whole delay range until the bulk delay is known, then over the span the filter
+ * covers. A loud echo path (speakerphone, under 6 dB of loss) therefore does not look like
+ * permanent double talk, and a quiet one (headset) still catches a soft near-end talker.
+ *
+ * Microphone samples are handled in blocks of about 8 ms; the output is delayed by one block.
+ * The work per block is fixed: four FFTs plus one multiply-accumulate pass per partition.
+ */
+public class EchoCanceller implements AudioEffect {
+    public static final int DEFAULT_TAIL_MS = 64;
+    public static final int MAX_DELAY_MS = 400;
+    
+    private static final float STEP_SIZE = 0.5f;
+    private static final float POWER_SMOOTHING = 0.9f;
+    
+    // Far-end mean square below which the filter does not adapt (-60 dBFS)
+    private static final float FAR_ACTIVE_POWER = 1e-6f;
+    
+    // Geigel detector: double talk when the near-end peak exceeds the tracked echo path gain
+    // by the margin. The gain starts where the classic fixed threshold of 0.5 would be
+    private static final float DOUBLE_TALK_MARGIN_DB = 6.0f;
+    private static final float INITIAL_ECHO_GAIN = 0.25f;
+    private static final float ECHO_GAIN_STEP_DB_PER_SECOND = 3.0f;
+    private static final int DOUBLE_TALK_HOLD_MS = 60;
+    
+    // Delay estimation works on envelope points of a quarter block
+    private static final int ENVELOPE_POINTS_PER_BLOCK = 4;
+    private static final float ENVELOPE_MEAN_SMOOTHING = 0.98f;
+    private static final float CORRELATION_SMOOTHING = 0.998f;
+    private static final float MIN_DELAY_CORRELATION = 0.3f;
+    private static final int DELAY_CONFIRM_BLOCKS = 25;
+    
+    private final int blockSize;
+    private final int fftSize;
+    private final int partitions;
+    private final RealFft fft;
+    private final float regularization;
+    private final int doubleTalkHoldBlocks;
+    private final float doubleTalkMargin;
+    private final float echoGainStep;
+    
+    // Far-end reference: queue from the playback thread and history on the capture side
+    private final PcmRingBuffer referenceQueue;
+    private final int maxQueued;
+    private final float[] referenceBlock;
+    private final float[] history;
+    private final int historyMask;
+    private long historyEnd;
+    
+    // Microphone FIFOs
+    private final float[] nearIn;
+    private final float[] nearOut;
+    private int fifoPosition;
+    
+    // Adaptive filter: frequency-domain delay line and weights, both in packed RealFft layout
+    private final float[][] spectra;
+    private final float[][] weights;
+    private final float[] power;
+    private final float[] blockPeaks;
+    // Raw reference block peaks over the bulk delay range plus the tail, for the detector
+    private final float[] windowPeaks;
+    private int windowNewest;
+    private int newest;
+    private int constrainNext;
+    private final float[] frame;
+    private final float[] echo;
+    private final float[] error;
+    
+    private int doubleTalkHold;
+    // Peak ratio of microphone to reference while only the echo is heard
+    private float echoGain;
+    
+    // Envelope cross-correlation delay estimator
+    private final int envelopeSize;
+    private final int maxLag;
+    private final float[] farEnvelope;
+    private final float[] correlation;
+    private int farEnvelopeHead;
+    private float nearMean;
+    private float farMean;
+    private float nearVariance;
+    private float farVariance;
+    private int candidateDelay;
+    private int candidateBlocks;
+    private int delaySamples;
+    private boolean delayKnown;
+    
+    public EchoCanceller(int sampleRate) {
+        this(sampleRate, DEFAULT_TAIL_MS);
+    }
+    
+    /**
+     * @param sampleRate stream sample rate
+     * @param tailMs length of the echo tail the filter covers after the bulk delay
+     */
+    public EchoCanceller(int sampleRate, int tailMs) {
+        if (sampleRate < 8000 || tailMs <= 0) {
+            throw new IllegalArgumentException("Invalid echo canceller configuration");
+        }
+        this.blockSize = Integer.highestOneBit(sampleRate / 100);
+        this.fftSize = 2 * blockSize;
+        this.partitions = (tailMs * sampleRate / 1000 + blockSize - 1) / blockSize;
+        this.fft = RealFft.forSize(fftSize);
+        this.regularization = fftSize * FAR_ACTIVE_POWER;
+        this.doubleTalkHoldBlocks = DOUBLE_TALK_HOLD_MS * sampleRate / 1000 / blockSize;
+        this.doubleTalkMargin = (float) Math.pow(10.0, DOUBLE_TALK_MARGIN_DB / 20.0);
+        this.echoGainStep = (float) Math.pow(10.0, ECHO_GAIN_STEP_DB_PER_SECOND / 20.0 * blockSize / sampleRate);
+        
+        int maxDelay = MAX_DELAY_MS * sampleRate / 1000;
+        this.maxQueued = maxDelay;
+        referenceQueue = new PcmRingBuffer(2 * maxDelay);
+        referenceBlock = new float[blockSize];
+        int historySize = Integer.highestOneBit(maxDelay + fftSize) << 1;
+        history = new float[historySize];
+        historyMask = historySize - 1;
+        
+        nearIn = new float[blockSize];
+        nearOut = new float[blockSize];
+        
+        spectra = new float[partitions][fftSize];
+        weights = new float[partitions][fftSize];
+        power = new float[fftSize / 2 + 1];
+        blockPeaks = new float[partitions];
+        windowPeaks = new float[maxDelay / blockSize + partitions + 1];
+        frame = new float[fftSize];
+        echo = new float[fftSize];
+        error = new float[fftSize];
+        
+        envelopeSize = blockSize / ENVELOPE_POINTS_PER_BLOCK;
+        maxLag = maxDelay / envelopeSize;
+        farEnvelope = new float[maxLag + 1];
+        correlation = new float[maxLag + 1];
+        
+        reset();
+    }
+    
+    /**
+     * Queue far-end PCM as it is handed to the output device. Called from the playback thread.
+     */
+    public void addReference(byte[] pcm, int byteOffset, int lengthBytes) {
+        referenceQueue.write(pcm, byteOffset, lengthBytes);
+    }
+    
+    /**
+     * Queue far-end samples as they are handed to the output device. Called from the playback thread.
+     */
+    public void addReference(float[] samples, int offset, int length) {
+        referenceQueue.write(samples, offset, length);
+    }
+    
+    /**
+     * Bulk delay currently removed from the reference, in samples
+     */
+    public int getDelaySamples() {
+        return delaySamples;
+    }
+    
+    public boolean isDoubleTalk() {
+        return doubleTalkHold > 0;
+    }
+    
+    /**
+     * Algorithmic delay between input and output, in samples
+     */
+    public int getLatencySamples() {
+        return blockSize;
+    }
+    
+    @Override
+    public void process(float[] samples, int offset, int length) {
+        for (int i = offset; i < offset + length; i++) {
+            nearIn[fifoPosition] = samples[i];
+            samples[i] = nearOut[fifoPosition];
+            if (++fifoPosition == blockSize) {
+                fifoPosition = 0;
+                processBlock();
+            }
+        }
+    }
+    
+    private void processBlock() {
+        pullReference();
+        estimateDelay();
+        
+        // Reference frame of two blocks ending at the delayed position
+        long end = historyEnd - delaySamples;
+        float farPower = 0.0f;
+        float farPeak = 0.0f;
+        for (int j = 0; j < fftSize; j++) {
+            float x = history[(int) (end - fftSize + j) & historyMask];
+            frame[j] = x;
+            if (j >= blockSize) {
+                farPower += x * x;
+                farPeak = Math.max(farPeak, Math.abs(x));
+            }
+        }
+        farPower /= blockSize;
+        
+        newest = (newest + 1) % partitions;
+        float[] spectrum = spectra[newest];
+        System.arraycopy(frame, 0, spectrum, 0, fftSize);
+        fft.forward(spectrum);
+        blockPeaks[newest] = farPeak;
+        updatePower(spectrum);
+        
+        // Echo estimate: sum of each partition's weights times its delayed reference spectrum
+        Arrays.fill(echo, 0.0f);
+        for (int p = 0; p < partitions; p++) {
+            multiplyAccumulate(weights[p], spectra[(newest - p + partitions) % partitions], echo);
+        }
+        fft.inverse(echo);
+        
+        float scale = 1.0f / fftSize;
+        float nearEnergy = 0.0f;
+        float errorEnergy = 0.0f;
+        float nearPeak = 0.0f;
+        for (int n = 0; n < blockSize; n++) {
+            float d = nearIn[n];
+            float e = d - scale * echo[blockSize + n];
+            error[n] = 0.0f;
+            error[blockSize + n] = e;
+            nearEnergy += d * d;
+            errorEnergy += e * e;
+            nearPeak = Math.max(nearPeak, Math.abs(d));
+        }
+        
+        // Never output more than came in, e.g. right after the echo path changed
+        if (errorEnergy <= nearEnergy) {
+            System.arraycopy(error, blockSize, nearOut, 0, blockSize);
+        } else {
+            System.arraycopy(nearIn, 0, nearOut, 0, blockSize);
+        }
+        
+        // The echo can come from anywhere in the delay range until the bulk delay is known
+        float referencePeak = 0.0f;
+        for (float peak : delayKnown ? blockPeaks : windowPeaks) {
+            referencePeak = Math.max(referencePeak, peak);
+        }
+        boolean farActive = farPower > FAR_ACTIVE_POWER;
+        if (farActive) {
+            trackEchoGain(nearPeak / referencePeak);
+        }
+        if (nearPeak > doubleTalkMargin * echoGain * referencePeak) {
+            doubleTalkHold = doubleTalkHoldBlocks;
+        } else if (doubleTalkHold > 0) {
+            doubleTalkHold--;
+        }
+        
+        if (farActive && doubleTalkHold == 0) {
+            adapt();
+        }
+    }
+    
+    /**
+     * Step the echo path's peak gain towards the median ratio by a few dB per second, slow
+     * enough that a burst of double talk barely moves it
+     */
+    private void trackEchoGain(float ratio) {
+        echoGain = ratio > echoGain ? echoGain * echoGainStep : echoGain / echoGainStep;
+    }
+    
+    private void pullReference() {
+        // Drop reference the capture side can no longer align, e.g. after a capture stall
+        int excess = referenceQueue.availableToRead() - maxQueued;
+        while (excess > 0) {
+            excess -= referenceQueue.read(referenceBlock, 0, Math.min(excess, blockSize));
+        }
+        
+        int count = referenceQueue.read(referenceBlock, 0, blockSize);
+        Arrays.fill(referenceBlock, count, blockSize, 0.0f);
+        for (int n = 0; n < blockSize; n++) {
+            history[(int) (historyEnd + n) & historyMask] = referenceBlock[n];
+        }
+        historyEnd += blockSize;
+        float peak = 0.0f;
+        for (int n = 0; n < blockSize; n++) {
+            peak = Math.max(peak, Math.abs(referenceBlock[n]));
+        }
+        windowNewest = (windowNewest + 1) % windowPeaks.length;
+        windowPeaks[windowNewest] = peak;
+    }
+    
+    /**
+     * Per-bin reference power for the step normalization; rises at once so a bin that suddenly
+     * gains energy is not over-adapted, and decays smoothly
+     */
+    private void updatePower(float[] spectrum) {
+        int nyquist = fftSize / 2;
+        for (int k = 0; k <= nyquist; k++) {
+            float p;
+            if (k == 0) {
+                p = spectrum[0] * spectrum[0];
+            } else if (k == nyquist) {
+                p = spectrum[1] * spectrum[1];
+            } else {
+                p = spectrum[2 * k] * spectrum[2 * k] + spectrum[2 * k + 1] * spectrum[2 * k + 1];
+            }
+            power[k] = p > power[k] ? p : POWER_SMOOTHING * power[k] + (1.0f - POWER_SMOOTHING) * p;
+        }
+    }
+    
+    /**
+     * Normalized update of every partition, with the gradient constraint applied to one
+     * partition per block in turn so the cost per block stays fixed
+     */
+    private void adapt() {
+        fft.forward(error);
+        
+        int nyquist = fftSize / 2;
+        for (int p = 0; p < partitions; p++) {
+            float[] x = spectra[(newest - p + partitions) % partitions];
+            float[] w = weights[p];
+            w[0] += STEP_SIZE * x[0] * error[0] / (partitions * power[0] + regularization);
+            w[1] += STEP_SIZE * x[1] * error[1] / (partitions * power[nyquist] + regularization);
+            for (int k = 1; k < nyquist; k++) {
+                float xr = x[2 * k];
+                float xi = x[2 * k + 1];
+                float er = error[2 * k];
+                float ei = error[2 * k + 1];
+                float mu = STEP_SIZE / (partitions * power[k] + regularization);
+                // conj(X) * E
+                w[2 * k] += mu * (xr * er + xi * ei);
+                w[2 * k + 1] += mu * (xr * ei - xi * er);
+            }
+        }
+        
+        // Keep only the first block of taps so the block convolution stays linear
+        float[] w = weights[constrainNext];
+        fft.inverse(w);
+        float scale = 1.0f / fftSize;
+        for (int n = 0; n < blockSize; n++) {
+            w[n] *= scale;
+        }
+        Arrays.fill(w, blockSize, fftSize, 0.0f);
+        fft.forward(w);
+        constrainNext = (constrainNext + 1) % partitions;
+    }
+    
+    private static void multiplyAccumulate(float[] w, float[] x, float[] out) {
+        out[0] += w[0] * x[0];
+        out[1] += w[1] * x[1];
+        for (int k = 2; k < w.length; k += 2) {
+            float wr = w[k], wi = w[k + 1];
+            float xr = x[k], xi = x[k + 1];
+            out[k] += wr * xr - wi * xi;
+            out[k + 1] += wr * xi + wi * xr;
+        }
+    }
+    
+    /**
+     * Correlate mean-removed envelopes of the microphone and the raw reference over all lags,
+     * and move the bulk delay once a lag outside the filter span has won for long enough
+     */
+    private void estimateDelay() {
+        int lags = maxLag + 1;
+        for (int s = 0; s < blockSize; s += envelopeSize) {
+            float near = 0.0f;
+            float far = 0.0f;
+            for (int n = s; n < s + envelopeSize; n++) {
+                near += Math.abs(nearIn[n]);
+                far += Math.abs(referenceBlock[n]);
+            }
+            near /= envelopeSize;
+            far /= envelopeSize;
+            nearMean = ENVELOPE_MEAN_SMOOTHING * nearMean + (1.0f - ENVELOPE_MEAN_SMOOTHING) * near;
+            farMean = ENVELOPE_MEAN_SMOOTHING * farMean + (1.0f - ENVELOPE_MEAN_SMOOTHING) * far;
+            near -= nearMean;
+            far -= farMean;
+            
+            farEnvelopeHead = (farEnvelopeHead + 1) % lags;
+            farEnvelope[farEnvelopeHead] = far;
+            nearVariance = CORRELATION_SMOOTHING * nearVariance + near * near;
+            farVariance = CORRELATION_SMOOTHING * farVariance + far * far;
+            for (int lag = 0; lag < lags; lag++) {
+                int index = farEnvelopeHead - lag;
+                if (index < 0) index += lags;
+                correlation[lag] = CORRELATION_SMOOTHING * correlation[lag] + near * farEnvelope[index];
+            }
+        }
+        
+        int best = 0;
+        for (int lag = 1; lag < lags; lag++) {
+            if (correlation[lag] > correlation[best]) best = lag;
+        }
+        float norm = (float) Math.sqrt(nearVariance * farVariance) + 1e-12f;
+        if (doubleTalkHold > 0 || correlation[best] / norm < MIN_DELAY_CORRELATION) {
+            candidateBlocks = 0;
+            return;
+        }
+        
+        int onset = best * envelopeSize;
+        if (Math.abs(onset - candidateDelay) > blockSize) {
+            candidateDelay = onset;
+            candidateBlocks = 0;
+            return;
+        }
+        
+        // Only move when the echo onset leaves the span the filter covers; the filter itself
+        // follows smaller shifts, and the correlation peak is too broad to track them
+        boolean covered = onset >= delaySamples && onset < delaySamples + Math.max(1, partitions - 2) * blockSize;
+        if (++candidateBlocks < DELAY_CONFIRM_BLOCKS) {
+            return;
+        }
+        delayKnown = true;
+        if (!covered) {
+            // Leave one block of taps in front of the echo onset and start the filter over
+            delaySamples = Math.max(0, onset - blockSize);
+            clearFilter();
+        }
+    }
+    
+    private void clearFilter() {
+        for (int p = 0; p < partitions; p++) {
+            Arrays.fill(spectra[p], 0.0f);
+            Arrays.fill(weights[p], 0.0f);
+        }
+        Arrays.fill(power, 0.0f);
+        Arrays.fill(blockPeaks, 0.0f);
+        doubleTalkHold = 0;
+    }
+    
+    @Override
+    public void reset() {
+        referenceQueue.clear();
+        Arrays.fill(history, 0.0f);
+        Arrays.fill(windowPeaks, 0.0f);
+        windowNewest = 0;
+        historyEnd = 0;
+        Arrays.fill(nearIn, 0.0f);
+        Arrays.fill(nearOut, 0.0f);
+        fifoPosition = 0;
+        clearFilter();
+        echoGain = INITIAL_ECHO_GAIN;
+        newest = 0;
+        constrainNext = 0;
+        
+        Arrays.fill(farEnvelope, 0.0f);
+        Arrays.fill(correlation, 0.0f);
+        farEnvelopeHead = 0;
+        nearMean = 0.0f;
+        farMean = 0.0f;
+        nearVariance = 0.0f;
+        farVariance = 0.0f;
+        candidateDelay = 0;
+        candidateBlocks = 0;
+        delaySamples = 0;
+        delayKnown = false;
+    }
+}
@@ -0,0 +1,47 @@
+package com.voicechanger.dsp;
+
+import java.util.Arrays;
+
+/**
+ * Ordered chain of effects applied to the same buffer in place.
+ * Build the chain before processing starts; processing itself never allocates.
+ */
+public class EffectChain implements AudioEffect {
+    private AudioEffect[] effects = new AudioEffect[0];
+    
+    public EffectChain add(AudioEffect effect) {
+        if (effect == null) {
+            throw new IllegalArgumentException("effect == null");
+        }
+        AudioEffect[] grown = Arrays.copyOf(effects, effects.length + 1);
+        grown[effects.length] = effect;
+        effects = grown;
+        return this;
+    }
+    
+    @Override
+    public void process(float[] samples, int offset, int length) {
+        AudioEffect[] stages = effects;
+        for (int i = 0; i < stages.length; i++) {
+            stages[i].process(samples, offset, length);
+        }
+    }
+    
+    @Override
+    public void prepare(int maxBlockSize) {
+        for (AudioEffect effect : effects) {
+            effect.prepare(maxBlockSize);
+        }
+    }
+    
+    @Override
+    public void reset() {
+        for (AudioEffect effect : effects) {
+            effect.reset();
+        }
+    }
+    
+    public int size() {
+        return effects.length;
+    }
+}
@@ -0,0 +1,136 @@
+package com.voicechanger.dsp;
+
+/**
+ * Time-domain counterpart of {@link EnvelopeTransfer} for chains that cannot afford an STFT:
+ * a cascade of {@value #SECTIONS} peaking filters, spaced evenly on the mel scale, that moves
+ * the long-term envelope of its input towards a target mel-band envelope in dB, as from
+ * {@link MfccExtractor#getEnvelope}.
+ *
+ * The input's own envelope is measured by an {@link MfccExtractor} that analyses one frame
+ * every {@value #ANALYSIS_HOP_MS} ms, so the measurement costs almost nothing, and is smoothed
+ * to the same coefficients as the target. After every analysed frame the difference, clamped to
+ * {@value #MAX_CORRECTION_DB} dB and without its average, sets the section gains. The input
+ * envelope outlives {@link #reset()}; {@link #clearSourceEnvelope()} starts it afresh for a new
+ * session. Processing never allocates.
+ */
+public class EnvelopeEqualizer implements AudioEffect {
+    private static final int SECTIONS = 8;
+    private static final float LOWEST_HZ = 200.0f;
+    private static final float HIGHEST_HZ = 5000.0f;
+    private static final int ANALYSIS_HOP_MS = 100;
+    // Frames of input envelope needed before the filters move, about a second of speech
+    private static final int MIN_FRAMES = 10;
+    private static final float MAX_CORRECTION_DB = 12.0f;
+    
+    private final int sampleRate;
+    private final MfccExtractor analyser;
+    private final int bands;
+    private final float[] bandCentres;
+    private final float[] sourceDb;
+    private final float[] correction;
+    
+    private final float[] centres = new float[SECTIONS];
+    private final float q;
+    private final Biquad[] sections = new Biquad[SECTIONS];
+    private final FilterBank filters = new FilterBank();
+    
+    private volatile float[] targetEnvelope;
+    private boolean active;
+    
+    public EnvelopeEqualizer(int sampleRate) {
+        this.sampleRate = sampleRate;
+        this.analyser = new MfccExtractor(sampleRate, sampleRate * MfccExtractor.DEFAULT_FRAME_MS / 1000,
+                sampleRate * ANALYSIS_HOP_MS / 1000, MfccExtractor.DEFAULT_BANDS, MfccExtractor.DEFAULT_COEFFICIENTS);
+        this.bands = analyser.getBandCount();
+        MelFilterBank bank = analyser.getFilterBank();
+        bandCentres = new float[bands];
+        for (int b = 0; b < bands; b++) {
+            bandCentres[b] = bank.getCentre(b);
+        }
+        sourceDb = new float[bands];
+        correction = new float[bands];
+        
+        double low = MelFilterBank.toMel(LOWEST_HZ);
+        double high = MelFilterBank.toMel(Math.min(HIGHEST_HZ, 0.4f * sampleRate));
+        for (int i = 0; i < SECTIONS; i++) {
+            centres[i] = (float) MelFilterBank.fromMel(low + (high - low) * i / (SECTIONS - 1));
+            sections[i] = new Biquad();
+            filters.add(sections[i]);
+        }
+        // Each section spans about the distance to its neighbours
+        double octaves = Math.log(centres[SECTIONS - 1] / centres[0]) / Math.log(2.0) / (SECTIONS - 1);
+        double width = Math.pow(2.0, octaves);
+        this.q = (float) (Math.sqrt(width) / (width - 1.0));
+    }
+    
+    /**
+     * Long-term envelope to move towards, one dB value per mel band relative to the average
+     * level, or null to keep the input's colour. The array is read, not copied.
+     */
+    public void setTargetEnvelope(float[] envelope) {
+        if (envelope != null && envelope.length != bands) {
+            throw new IllegalArgumentException("Target envelope needs " + bands + " bands: " + envelope.length);
+        }
+        this.targetEnvelope = envelope;
+    }
+    
+    public float[] getTargetEnvelope() {
+        return targetEnvelope;
+    }
+    
+    @Override
+    public void process(float[] samples, int offset, int length) {
+        float[] target = targetEnvelope;
+        if (analyser.process(samples, offset, length) > 0 || (target == null) == active) {
+            design(target);
+        }
+        if (active) {
+            filters.process(samples, offset, length);
+            filters.flushDenormals();
+        }
+    }
+    
+    /**
+     * Set the section gains from the target and the input envelope measured so far
+     */
+    private void design(float[] target) {
+        if (target == null || analyser.getFrameCount() < MIN_FRAMES) {
+            active = false;
+            return;
+        }
+        analyser.getEnvelope(sourceDb);
+        float mean = 0.0f;
+        for (int b = 0; b < bands; b++) {
+            correction[b] = Math.max(-MAX_CORRECTION_DB, Math.min(MAX_CORRECTION_DB, target[b] - sourceDb[b]));
+            mean += correction[b];
+        }
+        mean /= bands;
+        
+        int b = 0;
+        for (int i = 0; i < SECTIONS; i++) {
+            float hz = centres[i];
+            while (b < bands - 2 && bandCentres[b + 1] <= hz) {
+                b++;
+            }
+            float fraction = Math.max(0.0f, Math.min(1.0f, (hz - bandCentres[b]) / (bandCentres[b + 1] - bandCentres[b])));
+            float gainDb = correction[b] + fraction * (correction[b + 1] - correction[b]) - mean;
+            sections[i].design(Biquad.PEAKING, sampleRate, hz, q, gainDb);
+        }
+        active = true;
+    }
+    
+    /**
+     * Forget the input's long-term envelope, e.g. when a new session starts; the filters stay
+     * flat until about a second of speech has been measured again. Only call this while the
+     * stage is not processing.
+     */
+    public void clearSourceEnvelope() {
+        analyser.reset();
+        active = false;
+    }
+    
+    @Override
+    public void reset() {
+        filters.reset();
+    }
+}
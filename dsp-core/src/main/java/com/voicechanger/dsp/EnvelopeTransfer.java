@@ -0,0 +1,201 @@
+package com.voicechanger.dsp;
+
+import java.util.Arrays;
+
+/**
+ * Timbre conversion on top of {@link FormantPreservingPitchShifter}, so pitch, formants and
+ * colour cost one analysis/synthesis pass. After the excitation is shifted and the warped
+ * envelope put back, each frame is corrected towards a target long-term envelope.
+ *
+ * The target is a speaker's mel-band envelope in dB, as from {@link MfccExtractor#getEnvelope}.
+ * The input's own long-term envelope is measured on the same mel bands from the frames already
+ * at hand and smoothed the same way, keeping cepstral coefficients c1 to c12. Their difference,
+ * clamped to {@value #MAX_CORRECTION_DB} dB, is mapped onto the bins through a table built once,
+ * so each frame keeps its phonetic shape and only the speaker's average colour changes.
+ *
+ * The input envelope outlives {@link #reset()} and bypassed stretches, so pauses in speech do
+ * not restart it; {@link #clearSourceEnvelope()} starts it afresh for a new session.
+ * Processing never allocates.
+ */
+public class EnvelopeTransfer extends FormantPreservingPitchShifter {
+    private static final float MAX_CORRECTION_DB = 12.0f;
+    // Averaging time of the input's long-term envelope
+    private static final float SOURCE_SECONDS = 5.0f;
+    // Frame power (relative to fftSize squared) below about -60 dBFS is silence
+    private static final double SILENCE_POWER = 4e-7;
+    
+    private final float[] centres;
+    private final int bands;
+    private final MelFilterBank filterBank;
+    private final float sourceRate;
+    // Orthonormal DCT of the mel bands, up to the same coefficient as the target's
+    private final float[][] dct;
+    
+    // Per-frame work arrays
+    private final float[] power;
+    private final float[] bandDb;
+    private final float[] correction;
+    
+    // Mel band below each bin and the interpolation weight of the band above
+    private final int[] binBand;
+    private final float[] binFraction;
+    
+    // Input long-term envelope, its cepstrally smoothed shape, and the same read at
+    // centre / formant ratio
+    private final float[] sourceDb;
+    private final float[] smoothedDb;
+    private final int[] warpBand;
+    private final float[] warpFraction;
+    private int sourceFrames;
+    
+    private volatile float[] targetEnvelope;
+    private float warpedRatio = Float.NaN;
+    private float[] frameTarget;
+    
+    public EnvelopeTransfer(int sampleRate) {
+        this(sampleRate, DEFAULT_FFT_SIZE, DEFAULT_OVERLAP);
+    }
+    
+    /**
+     * @param fftSize frame length, a power of two
+     * @param overlap frames per {@code fftSize} samples, at least 4
+     */
+    public EnvelopeTransfer(int sampleRate, int fftSize, int overlap) {
+        super(sampleRate, fftSize, overlap);
+        this.filterBank = MelFilterBank.forSize(sampleRate, fftSize, MfccExtractor.DEFAULT_BANDS);
+        this.bands = filterBank.getBandCount();
+        this.sourceRate = (float) sampleRate / hopSize;
+        this.dct = MfccExtractor.dctBasis(MfccExtractor.DEFAULT_COEFFICIENTS, bands);
+        
+        centres = new float[bands];
+        for (int b = 0; b < bands; b++) {
+            centres[b] = filterBank.getCentre(b);
+        }
+        binBand = new int[bins];
+        binFraction = new float[bins];
+        for (int k = 0; k < bins; k++) {
+            locate((float) k * sampleRate / fftSize, k, binBand, binFraction);
+        }
+        
+        power = new float[bins];
+        bandDb = new float[bands];
+        correction = new float[bands];
+        sourceDb = new float[bands];
+        smoothedDb = new float[bands];
+        warpBand = new int[bands];
+        warpFraction = new float[bands];
+    }
+    
+    /**
+     * Band below {@code hz} and the weight of the band above, clamped at the outer centres
+     */
+    private void locate(float hz, int index, int[] band, float[] fraction) {
+        int b = 0;
+        while (b < bands - 2 && centres[b + 1] <= hz) {
+            b++;
+        }
+        band[index] = b;
+        fraction[index] = Math.max(0.0f, Math.min(1.0f, (hz - centres[b]) / (centres[b + 1] - centres[b])));
+    }
+    
+    /**
+     * Long-term envelope to move towards, one dB value per mel band relative to the average
+     * level, or null to keep the input's colour. The array is read, not copied.
+     */
+    public void setTargetEnvelope(float[] envelope) {
+        if (envelope != null && envelope.length != bands) {
+            throw new IllegalArgumentException("Target envelope needs " + bands + " bands: " + envelope.length);
+        }
+        this.targetEnvelope = envelope;
+    }
+    
+    public float[] getTargetEnvelope() {
+        return targetEnvelope;
+    }
+    
+    @Override
+    protected boolean isShaping() {
+        boolean shaping = super.isShaping();
+        frameTarget = targetEnvelope;
+        return shaping || frameTarget != null;
+    }
+    
+    @Override
+    protected void shapeSpectrum(float[] analysisMagnitude, float[] synthesisMagnitude, float ratio) {
+        super.shapeSpectrum(analysisMagnitude, synthesisMagnitude, ratio);
+        float[] target = frameTarget;
+        if (target == null || !updateSource(analysisMagnitude)) {
+            return;
+        }
+        
+        if (frameFormantRatio != warpedRatio) {
+            for (int b = 0; b < bands; b++) {
+                locate(centres[b] / frameFormantRatio, b, warpBand, warpFraction);
+            }
+            warpedRatio = frameFormantRatio;
+        }
+        
+        // Target minus the warped input envelope, both relative to their average, as linear gains
+        float mean = 0.0f;
+        for (int b = 0; b < bands; b++) {
+            int w = warpBand[b];
+            correction[b] = smoothedDb[w] + warpFraction[b] * (smoothedDb[w + 1] - smoothedDb[w]);
+            mean += correction[b];
+        }
+        mean /= bands;
+        for (int b = 0; b < bands; b++) {
+            float db = Math.max(-MAX_CORRECTION_DB, Math.min(MAX_CORRECTION_DB, target[b] - (correction[b] - mean)));
+            correction[b] = (float) Math.pow(10.0, db / 20.0);
+        }
+        
+        for (int k = 0; k < bins; k++) {
+            int b = binBand[k];
+            synthesisMagnitude[k] *= correction[b] + binFraction[k] * (correction[b + 1] - correction[b]);
+        }
+    }
+    
+    /**
+     * Fold a non-silent frame into the input's long-term mel envelope and smooth it
+     *
+     * @return whether the long-term envelope has any frames yet
+     */
+    private boolean updateSource(float[] magnitude) {
+        double total = 0.0;
+        for (int k = 0; k < bins; k++) {
+            power[k] = magnitude[k] * magnitude[k];
+            total += power[k];
+        }
+        if (total >= SILENCE_POWER * fftSize * fftSize) {
+            filterBank.apply(power, bandDb);
+            sourceFrames++;
+            // Plain mean until the averaging window is full, then exponential
+            float alpha = Math.max(1.0f / sourceFrames, 1.0f / (SOURCE_SECONDS * sourceRate));
+            for (int b = 0; b < bands; b++) {
+                float db = (float) (10.0 * Math.log10(bandDb[b] + 1e-10));
+                sourceDb[b] += alpha * (db - sourceDb[b]);
+            }
+            
+            // Without c0 the smoothed envelope is relative to its average, like the target
+            Arrays.fill(smoothedDb, 0.0f);
+            for (int c = 1; c < dct.length; c++) {
+                float[] basis = dct[c];
+                float coefficient = 0.0f;
+                for (int b = 0; b < bands; b++) {
+                    coefficient += basis[b] * sourceDb[b];
+                }
+                for (int b = 0; b < bands; b++) {
+                    smoothedDb[b] += coefficient * basis[b];
+                }
+            }
+        }
+        return sourceFrames > 0;
+    }
+    
+    /**
+     * Forget the input's long-term envelope, e.g. when a new session starts; the next
+     * non-silent frame starts it again. Only call this while the stage is not processing.
+     */
+    public void clearSourceEnvelope() {
+        sourceFrames = 0;
+    }
+}
@@ -0,0 +1,147 @@
+package com.voicechanger.dsp;
+
+import java.util.Arrays;
+
+/**
+ * Feedback delay network reverb: eight delay lines of mutually prime lengths are fed back
+ * through a Householder matrix, which mixes every line into every other at O(N) cost and is
+ * lossless, so the decay is set entirely by a gain and a one-pole damping filter in each line.
+ * The damping makes high frequencies die away faster than low ones, as in a real room.
+ *
+ * All delay memory is allocated up front. The amount sets both the decay time and the wet
+ * level; an amount of 0 bypasses the stage.
+ */
+public class FdnReverb implements AudioEffect {
+    private static final int LINES = 8;
+    
+    // Line lengths before rounding up to a prime, so no two lines share echo times
+    private static final float[] DELAY_MS = {23.3f, 28.9f, 33.7f, 37.9f, 42.1f, 47.3f, 53.9f, 59.7f};
+    
+    // Broadband decay time (RT60) at amount 0 and 1, and how much sooner the top end dies out
+    private static final float MIN_DECAY_SECONDS = 0.3f;
+    private static final float MAX_DECAY_SECONDS = 2.0f;
+    private static final float HIGH_DECAY_RATIO = 0.35f;
+    
+    private static final float MAX_WET = 0.5f;
+    // Keeps the network output at about the input RMS at the longest decay
+    private static final float INPUT_GAIN = 0.35f;
+    // Tiny bias fed into the loop so a decaying tail never reaches denormal values
+    private static final float ANTI_DENORMAL = 1e-20f;
+    
+    private final int sampleRate;
+    
+    // All lines share one buffer; line i occupies [start[i], start[i] + lineLength[i])
+    private final float[] buffer;
+    private final int[] start = new int[LINES];
+    private final int[] lineLength = new int[LINES];
+    private final int[] position = new int[LINES];
+    
+    // Per-line loop gain and damping pole, and the damping filter state
+    private final float[] gain = new float[LINES];
+    private final float[] damping = new float[LINES];
+    private final float[] state = new float[LINES];
+    
+    private volatile float amount = 0.0f;
+    private float latchedAmount = Float.NaN;
+    private float wet;
+    
+    public FdnReverb(int sampleRate) {
+        this.sampleRate = sampleRate;
+        int total = 0;
+        for (int i = 0; i < LINES; i++) {
+            start[i] = total;
+            lineLength[i] = nextPrime(Math.round(DELAY_MS[i] * sampleRate / 1000.0f));
+            total += lineLength[i];
+        }
+        buffer = new float[total];
+    }
+    
+    /**
+     * Reverb amount from 0 (dry) to 1 (longest decay, most wet signal)
+     */
+    public void setAmount(float amount) {
+        this.amount = Math.max(0.0f, Math.min(1.0f, amount));
+    }
+    
+    public float getAmount() {
+        return amount;
+    }
+    
+    @Override
+    public void process(float[] samples, int offset, int length) {
+        float a = amount;
+        if (a <= 0.0f) {
+            return;
+        }
+        if (a != latchedAmount) {
+            configure(a);
+        }
+        
+        final float[] buf = buffer;
+        final float mix = 2.0f / LINES;
+        for (int n = offset; n < offset + length; n++) {
+            float x = samples[n];
+            
+            // Read each line through its loss filter
+            float sum = 0.0f;
+            float out = 0.0f;
+            for (int i = 0; i < LINES; i++) {
+                float s = gain[i] * buf[start[i] + position[i]] + damping[i] * state[i];
+                state[i] = s;
+                sum += s;
+                out += (i & 1) == 0 ? s : -s;
+            }
+            
+            // Householder feedback: each line gets its own output minus 2/N of the total
+            float feedback = x * INPUT_GAIN - sum * mix + ANTI_DENORMAL;
+            for (int i = 0; i < LINES; i++) {
+                int p = position[i];
+                buf[start[i] + p] = state[i] + feedback;
+                position[i] = p + 1 == lineLength[i] ? 0 : p + 1;
+            }
+            
+            samples[n] = x + wet * out;
+        }
+    }
+    
+    /**
+     * Loop gains for the decay time at DC and a damping pole for the shorter decay at Nyquist
+     */
+    private void configure(float a) {
+        latchedAmount = a;
+        wet = MAX_WET * a;
+        float decay = MIN_DECAY_SECONDS + a * (MAX_DECAY_SECONDS - MIN_DECAY_SECONDS);
+        for (int i = 0; i < LINES; i++) {
+            double seconds = (double) lineLength[i] / sampleRate;
+            double low = Math.pow(10.0, -3.0 * seconds / decay);
+            double high = Math.pow(10.0, -3.0 * seconds / (decay * HIGH_DECAY_RATIO));
+            // g (1 - b) / (1 - b z^-1) has gain g at DC and g (1 - b) / (1 + b) at Nyquist
+            double r = high / low;
+            double b = (1.0 - r) / (1.0 + r);
+            gain[i] = (float) (low * (1.0 - b));
+            damping[i] = (float) b;
+        }
+    }
+    
+    @Override
+    public void reset() {
+        Arrays.fill(buffer, 0.0f);
+        Arrays.fill(position, 0);
+        Arrays.fill(state, 0.0f);
+    }
+    
+    private static int nextPrime(int n) {
+        for (int candidate = Math.max(n, 2); ; candidate++) {
+            boolean prime = true;
+            for (int d = 2; d * d <= candidate; d++) {
+                if (candidate % d == 0) {
+                    prime = false;
+                    break;
+                }
+            }
+            if (prime) {
+                return candidate;
+            }
+        }
+    }
+}
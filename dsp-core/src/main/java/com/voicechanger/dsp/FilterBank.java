@@ -0,0 +1,58 @@
+package com.voicechanger.dsp;
+
+import java.util.Arrays;
+
+/**
+ * Cascade of {@link Biquad} sections, e.g. a multi-band EQ.
+ * Build the bank before processing starts; processing itself never allocates.
+ */
+public class FilterBank implements AudioEffect {
+    private Biquad[] sections = new Biquad[0];
+    
+    public FilterBank add(Biquad section) {
+        if (section == null) {
+            throw new IllegalArgumentException("section == null");
+        }
+        Biquad[] grown = Arrays.copyOf(sections, sections.length + 1);
+        grown[sections.length] = section;
+        sections = grown;
+        return this;
+    }
+    
+    /**
+     * Filter one sample through every section. Callers running their own loop must call
+     * {@link #flushDenormals()} after each block.
+     */
+    public float process(float x) {
+        Biquad[] bank = sections;
+        for (int k = 0; k < bank.length; k++) {
+            x = bank[k].process(x);
+        }
+        return x;
+    }
+    
+    @Override
+    public void process(float[] samples, int offset, int length) {
+        Biquad[] bank = sections;
+        for (int k = 0; k < bank.length; k++) {
+            bank[k].process(samples, offset, length);
+        }
+    }
+    
+    public void flushDenormals() {
+        for (Biquad section : sections) {
+            section.flushDenormals();
+        }
+    }
+    
+    @Override
+    public void reset() {
+        for (Biquad section : sections) {
+            section.reset();
+        }
+    }
+    
+    public int size() {
+        return sections.length;
+    }
+}
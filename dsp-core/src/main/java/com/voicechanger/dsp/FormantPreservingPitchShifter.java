@@ -0,0 +1,100 @@
+package com.voicechanger.dsp;
+
+/**
+ * Phase-vocoder pitch shifter that moves only the excitation. Each frame's envelope is
+ * estimated once by {@link CepstralEnvelope}; after the bins are shifted the envelope they
+ * carried is divided out and the input envelope is put back, warped by an independent formant
+ * ratio. A pitch ratio of 1.5 therefore keeps the formants in place instead of raising them by
+ * half, and pitch and formants cost one analysis/synthesis pass rather than two stages.
+ *
+ * Each frame keeps the level it had before the envelope correction. The stage only bypasses
+ * when both ratios are 1.0. Processing never allocates.
+ */
+public class FormantPreservingPitchShifter extends PhaseVocoderPitchShifter {
+    // Highest quefrency kept by the envelope lifter; below the period of a 600 Hz voice
+    private static final float LIFTER_MS = 1.6f;
+    // Largest change any bin gets from the envelope correction
+    private static final float MAX_GAIN_DB = 24.0f;
+    
+    private final CepstralEnvelope envelope;
+    private final float[] logEnvelope;
+    private final float maxGain;
+    private final float maxLevel;
+    
+    private volatile float formantRatio = 1.0f;
+    // Formant ratio of the current frame
+    protected float frameFormantRatio = 1.0f;
+    
+    public FormantPreservingPitchShifter(int sampleRate) {
+        this(sampleRate, DEFAULT_FFT_SIZE, DEFAULT_OVERLAP);
+    }
+    
+    /**
+     * @param fftSize frame length, a power of two
+     * @param overlap frames per {@code fftSize} samples, at least 4
+     */
+    public FormantPreservingPitchShifter(int sampleRate, int fftSize, int overlap) {
+        super(fftSize, overlap);
+        int lifter = Math.max(1, Math.min(fftSize / 2 - 1, Math.round(LIFTER_MS * sampleRate / 1000.0f)));
+        this.envelope = new CepstralEnvelope(fftSize, lifter);
+        this.logEnvelope = new float[bins];
+        this.maxGain = (float) (MAX_GAIN_DB * Math.log(10.0) / 20.0);
+        this.maxLevel = (float) Math.exp(maxGain);
+    }
+    
+    /**
+     * Set the formant ratio, e.g. 1.2 moves the envelope 20% up whatever the pitch ratio
+     */
+    public void setFormantRatio(float formantRatio) {
+        this.formantRatio = formantRatio;
+    }
+    
+    public float getFormantRatio() {
+        return formantRatio;
+    }
+    
+    @Override
+    protected boolean isShaping() {
+        float ratio = formantRatio;
+        frameFormantRatio = ratio > 0.0f ? ratio : 1.0f;
+        return frameFormantRatio != 1.0f;
+    }
+    
+    @Override
+    protected void shapeSpectrum(float[] analysisMagnitude, float[] synthesisMagnitude, float ratio) {
+        envelope.estimate(analysisMagnitude, logEnvelope);
+        int last = bins - 1;
+        float pitchStep = 1.0f / ratio;
+        float formantStep = 1.0f / frameFormantRatio;
+        double before = 0.0;
+        double after = 0.0;
+        for (int k = 0; k < bins; k++) {
+            float magnitude = synthesisMagnitude[k];
+            if (magnitude == 0.0f) continue;
+            // Envelope the bin should have, over the one its shifted content carries
+            float gain = interpolate(logEnvelope, Math.min(last, k * formantStep))
+                    - interpolate(logEnvelope, Math.min(last, k * pitchStep));
+            gain = Math.max(-maxGain, Math.min(maxGain, gain));
+            before += magnitude * magnitude;
+            magnitude *= (float) Math.exp(gain);
+            after += magnitude * magnitude;
+            synthesisMagnitude[k] = magnitude;
+        }
+        
+        // Harmonics landing off the formant peaks change the frame's level; keep it as it was
+        if (after > 0.0) {
+            float level = (float) Math.min(maxLevel, Math.sqrt(before / after));
+            for (int k = 0; k < bins; k++) {
+                synthesisMagnitude[k] *= level;
+            }
+        }
+    }
+    
+    private static float interpolate(float[] values, float position) {
+        int i = (int) position;
+        if (i >= values.length - 1) {
+            return values[values.length - 1];
+        }
+        return values[i] + (position - i) * (values[i + 1] - values[i]);
+    }
+}
@@ -0,0 +1,229 @@
+package com.voicechanger.dsp;
+
+import java.util.Arrays;
+
+/**
+ * Streaming LPC formant shifter.
+ * Every hop an all-pole model of the last frame is estimated; the input is whitened with the
+ * prediction-error filter A(z) and resynthesized through A(D(z)), where D(z) is a first-order
+ * allpass. The warp moves the spectral envelope by the formant ratio while the residual keeps
+ * the pitch. Written out, the synthesis filter is {@code (1 - lambda z^-1)^p / N(z)} with
+ * {@code lambda = (1 - ratio) / (1 + ratio)}.
+ *
+ * Filter state persists across blocks and analysis is causal, so there is no added latency.
+ * The cost is fixed by the order: three order-p filters per sample plus one autocorrelation
+ * and Levinson recursion per hop.
+ */
+public class FormantShifter implements AudioEffect {
+    public static final int DEFAULT_ORDER = 16;
+    public static final int DEFAULT_FRAME_SIZE = 512;
+    public static final int DEFAULT_HOP_SIZE = 128;
+    
+    private static final double BANDWIDTH_EXPANSION = 0.994;
+    private static final double WHITE_NOISE_CORRECTION = 1.0001;
+    private static final double SILENCE_ENERGY = 1e-9;
+    
+    private final int order;
+    private final int frameSize;
+    private final int hopSize;
+    
+    // Analysis frame
+    private final float[] window;
+    private final float[] frameRing;
+    private final float[] windowed;
+    private int frameWritePos;
+    private int hopCounter;
+    
+    private final double[] autocorrelation;
+    private final double[] lpc;
+    private final double[] levinsonScratch;
+    
+    // Warped synthesis filter, rebuilt when the ratio changes
+    private final double[][] warpMatrix;
+    private final double[] polynomial;
+    private final double[] numerator;
+    private final double[] denominator;
+    private float warpedRatio = Float.NaN;
+    
+    // Filter histories: input, residual and output
+    private final double[] inputHistory;
+    private final double[] residualHistory;
+    private final double[] outputHistory;
+    private final int historyMask;
+    private int historyPos;
+    
+    private boolean active;
+    private volatile float formantRatio = 1.0f;
+    
+    public FormantShifter() {
+        this(DEFAULT_ORDER, DEFAULT_FRAME_SIZE, DEFAULT_HOP_SIZE);
+    }
+    
+    /**
+     * @param order LPC order
+     * @param frameSize analysis frame length, a power of two
+     * @param hopSize samples between coefficient updates
+     */
+    public FormantShifter(int order, int frameSize, int hopSize) {
+        if (Integer.bitCount(frameSize) != 1 || order >= frameSize || hopSize <= 0) {
+            throw new IllegalArgumentException("Invalid formant shifter configuration");
+        }
+        this.order = order;
+        this.frameSize = frameSize;
+        this.hopSize = hopSize;
+        
+        window = Window.hann(frameSize);
+        frameRing = new float[frameSize];
+        windowed = new float[frameSize];
+        
+        autocorrelation = new double[order + 1];
+        lpc = new double[order + 1];
+        levinsonScratch = new double[order + 1];
+        
+        warpMatrix = new double[order + 1][order + 1];
+        polynomial = new double[order + 1];
+        numerator = new double[order + 1];
+        denominator = new double[order + 1];
+        
+        int historySize = Integer.highestOneBit(order) << 1;
+        inputHistory = new double[historySize];
+        residualHistory = new double[historySize];
+        outputHistory = new double[historySize];
+        historyMask = historySize - 1;
+        
+        reset();
+    }
+    
+    /**
+     * Set the formant ratio, e.g. 1.2 moves all formants 20% up
+     */
+    public void setFormantRatio(float formantRatio) {
+        this.formantRatio = formantRatio;
+    }
+    
+    public float getFormantRatio() {
+        return formantRatio;
+    }
+    
+    @Override
+    public void process(float[] samples, int offset, int length) {
+        float ratio = formantRatio;
+        boolean bypass = ratio == 1.0f || ratio <= 0.0f;
+        if (!bypass && !active) {
+            // Resume from the dry signal with fresh coefficients
+            active = true;
+            analyze(ratio);
+        }
+        active = !bypass;
+        
+        for (int i = offset; i < offset + length; i++) {
+            float x = samples[i];
+            frameRing[frameWritePos] = x;
+            frameWritePos = (frameWritePos + 1) & (frameSize - 1);
+            
+            inputHistory[historyPos] = x;
+            if (bypass) {
+                residualHistory[historyPos] = x;
+                outputHistory[historyPos] = x;
+            } else {
+                // Whiten with A(z)
+                double residual = x;
+                for (int k = 1; k <= order; k++) {
+                    residual += lpc[k] * inputHistory[(historyPos - k) & historyMask];
+                }
+                residualHistory[historyPos] = residual;
+                
+                // Resynthesize through (1 - lambda z^-1)^p / N(z)
+                double y = 0.0;
+                for (int k = 0; k <= order; k++) {
+                    y += numerator[k] * residualHistory[(historyPos - k) & historyMask];
+                }
+                for (int k = 1; k <= order; k++) {
+                    y -= denominator[k] * outputHistory[(historyPos - k) & historyMask];
+                }
+                outputHistory[historyPos] = y;
+                samples[i] = (float) y;
+            }
+            historyPos = (historyPos + 1) & historyMask;
+            
+            if (++hopCounter >= hopSize) {
+                hopCounter = 0;
+                if (!bypass) analyze(ratio);
+            }
+        }
+    }
+    
+    private void analyze(float ratio) {
+        // Oldest sample first
+        for (int n = 0; n < frameSize; n++) {
+            windowed[n] = frameRing[(frameWritePos + n) & (frameSize - 1)] * window[n];
+        }
+        Lpc.autocorrelate(windowed, 0, frameSize, autocorrelation, order);
+        
+        if (autocorrelation[0] < SILENCE_ENERGY * frameSize) {
+            // Silence: flat model, the filters reduce to a pure warp of white noise
+            lpc[0] = 1.0;
+            Arrays.fill(lpc, 1, order + 1, 0.0);
+        } else {
+            autocorrelation[0] *= WHITE_NOISE_CORRECTION;
+            Lpc.levinson(autocorrelation, order, lpc, levinsonScratch);
+            Lpc.bandwidthExpand(lpc, order, BANDWIDTH_EXPANSION);
+        }
+        
+        if (ratio != warpedRatio) {
+            computeWarpMatrix((1.0 - ratio) / (1.0 + ratio));
+            warpedRatio = ratio;
+        }
+        
+        // N(z) = sum_k a[k] (z^-1 - lambda)^k (1 - lambda z^-1)^(p-k), normalized to N[0] = 1
+        for (int j = 0; j <= order; j++) {
+            double sum = 0.0;
+            for (int k = 0; k <= order; k++) {
+                sum += lpc[k] * warpMatrix[k][j];
+            }
+            denominator[j] = sum;
+        }
+        double gain = 1.0 / denominator[0];
+        for (int j = 0; j <= order; j++) {
+            denominator[j] *= gain;
+            numerator[j] = warpMatrix[0][j] * gain;
+        }
+    }
+    
+    /**
+     * Row k holds the coefficients of (z^-1 - lambda)^k (1 - lambda z^-1)^(p-k)
+     */
+    private void computeWarpMatrix(double lambda) {
+        for (int k = 0; k <= order; k++) {
+            Arrays.fill(polynomial, 0.0);
+            polynomial[0] = 1.0;
+            int degree = 0;
+            for (int m = 0; m < order; m++) {
+                // Multiply by (c0 + c1 z^-1)
+                double c0 = m < k ? -lambda : 1.0;
+                double c1 = m < k ? 1.0 : -lambda;
+                for (int j = degree + 1; j >= 1; j--) {
+                    polynomial[j] = polynomial[j] * c0 + polynomial[j - 1] * c1;
+                }
+                polynomial[0] *= c0;
+                degree++;
+            }
+            System.arraycopy(polynomial, 0, warpMatrix[k], 0, order + 1);
+        }
+    }
+    
+    @Override
+    public void reset() {
+        Arrays.fill(frameRing, 0.0f);
+        Arrays.fill(inputHistory, 0.0);
+        Arrays.fill(residualHistory, 0.0);
+        Arrays.fill(outputHistory, 0.0);
+        Arrays.fill(lpc, 0.0);
+        lpc[0] = 1.0;
+        frameWritePos = 0;
+        hopCounter = 0;
+        historyPos = 0;
+        active = false;
+        warpedRatio = Float.NaN;
+    }
+}
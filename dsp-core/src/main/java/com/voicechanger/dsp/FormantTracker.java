@@ -0,0 +1,277 @@
+package com.voicechanger.dsp;
+
+import java.util.Arrays;
+
+/**
+ * Streaming formant tracker. Every hop the last frame is pre-emphasized, windowed and fitted
+ * with an all-pole model by Levinson-Durbin. Its poles are found by {@link Lpc#roots}, started
+ * from the previous frame's so the solver usually converges in a few iterations, and each pole
+ * with a narrow enough bandwidth becomes a formant candidate. Candidates are assigned to the
+ * F1-F4 tracks in frequency order by a small dynamic program that keeps them close to each
+ * track's running estimate and may leave a track empty, so one missed or spurious pole does
+ * not shift every formant above it.
+ *
+ * Only voiced frames are analysed. Each track feeds a {@link PitchStatistics}, giving the
+ * speaker's median and range per formant. Processing never allocates.
+ */
+public class FormantTracker {
+    public static final int FORMANTS = 4;
+    public static final int DEFAULT_FRAME_MS = 25;
+    public static final int DEFAULT_HOP_MS = 10;
+    
+    private static final double PRE_EMPHASIS = 0.97;
+    private static final double WHITE_NOISE_CORRECTION = 1.0001;
+    private static final double SILENCE_POWER = 1e-6;
+    // Lag-1 correlation of the raw frame above this marks voiced speech, dominated by low frequencies
+    private static final double VOICING_CORRELATION = 0.6;
+    
+    private static final double MIN_FORMANT_HZ = 90.0;
+    private static final double MAX_BANDWIDTH_HZ = 600.0;
+    
+    // Typical adult F1-F4, the starting track estimates
+    private static final float[] INITIAL_FORMANTS = {500.0f, 1500.0f, 2500.0f, 3500.0f};
+    // Track smoothing, and the costs (in log frequency) of leaving a track or a candidate unused
+    private static final double TRACK_SMOOTHING = 0.3;
+    private static final double MISS_COST = 1.0;
+    private static final double SKIP_COST = 0.2;
+    
+    private final float sampleRate;
+    private final int order;
+    private final int frameSize;
+    private final int hopSize;
+    private final float[] window;
+    
+    private final float[] history;
+    private final int historyMask;
+    private long written;
+    private int untilHop;
+    
+    // LPC analysis
+    private final float[] frame;
+    private final double[] autocorrelation;
+    private final double[] lpc;
+    private final double[] levinsonScratch;
+    private final double[] rootRe;
+    private final double[] rootIm;
+    private boolean rootsValid;
+    
+    // Candidates of the current frame (log Hz, ascending) and the assignment table
+    private final double[] candidates;
+    private final double[][] cost;
+    private final byte[][] move;
+    
+    private final double[] track = new double[FORMANTS];
+    private final float[] formants = new float[FORMANTS];
+    private final PitchStatistics[] statistics = new PitchStatistics[FORMANTS];
+    
+    public FormantTracker(int sampleRate) {
+        this(sampleRate, 2 + sampleRate / 1000, sampleRate * DEFAULT_FRAME_MS / 1000,
+                sampleRate * DEFAULT_HOP_MS / 1000);
+    }
+    
+    /**
+     * @param order LPC order; about two poles per kHz of bandwidth plus two
+     * @param frameSize analysis frame length in samples
+     * @param hopSize samples between analyses
+     */
+    public FormantTracker(int sampleRate, int order, int frameSize, int hopSize) {
+        if (sampleRate <= 0 || order < 2 * FORMANTS || frameSize <= order || hopSize <= 0) {
+            throw new IllegalArgumentException("Invalid formant tracker configuration");
+        }
+        this.sampleRate = sampleRate;
+        this.order = order;
+        this.frameSize = frameSize;
+        this.hopSize = hopSize;
+        this.window = Window.hamming(frameSize);
+        
+        int historySize = Integer.highestOneBit(frameSize) << 1;
+        history = new float[historySize];
+        historyMask = historySize - 1;
+        
+        frame = new float[frameSize];
+        autocorrelation = new double[order + 1];
+        lpc = new double[order + 1];
+        levinsonScratch = new double[order + 1];
+        rootRe = new double[order];
+        rootIm = new double[order];
+        
+        candidates = new double[order / 2];
+        cost = new double[candidates.length + 1][FORMANTS + 1];
+        move = new byte[candidates.length + 1][FORMANTS + 1];
+        for (int i = 0; i < FORMANTS; i++) {
+            statistics[i] = new PitchStatistics();
+        }
+        reset();
+    }
+    
+    /**
+     * Analyse a block of samples
+     *
+     * @return the number of voiced frames analysed during the block
+     */
+    public int process(float[] samples, int offset, int length) {
+        int frames = 0;
+        for (int i = offset; i < offset + length; i++) {
+            frames += push(samples[i]);
+        }
+        return frames;
+    }
+    
+    /**
+     * Analyse a block of 16-bit little-endian PCM
+     *
+     * @return the number of voiced frames analysed during the block
+     */
+    public int process(byte[] pcm, int byteOffset, int lengthBytes) {
+        int frames = 0;
+        for (int b = byteOffset; b + 1 < byteOffset + lengthBytes; b += 2) {
+            frames += push((short) ((pcm[b + 1] << 8) | (pcm[b] & 0xFF)) / 32768.0f);
+        }
+        return frames;
+    }
+    
+    private int push(float sample) {
+        history[(int) written & historyMask] = sample;
+        written++;
+        if (--untilHop > 0) {
+            return 0;
+        }
+        untilHop = hopSize;
+        if (written <= frameSize || !analyzeFrame()) {
+            return 0;
+        }
+        for (int i = 0; i < FORMANTS; i++) {
+            statistics[i].add(formants[i]);
+        }
+        return 1;
+    }
+    
+    private boolean analyzeFrame() {
+        // Voicing check on the raw frame, then pre-emphasis and window
+        long start = written - frameSize;
+        double power = 0.0;
+        double lagOne = 0.0;
+        float previous = history[(int) (start - 1) & historyMask];
+        for (int n = 0; n < frameSize; n++) {
+            float x = history[(int) (start + n) & historyMask];
+            power += x * x;
+            lagOne += x * previous;
+            frame[n] = (float) (x - PRE_EMPHASIS * previous) * window[n];
+            previous = x;
+        }
+        if (power < SILENCE_POWER * frameSize || lagOne < VOICING_CORRELATION * power) {
+            return false;
+        }
+        
+        Lpc.autocorrelate(frame, 0, frameSize, autocorrelation, order);
+        autocorrelation[0] *= WHITE_NOISE_CORRECTION;
+        if (Lpc.levinson(autocorrelation, order, lpc, levinsonScratch) <= 0.0) {
+            return false;
+        }
+        rootsValid = Lpc.roots(lpc, order, rootRe, rootIm, rootsValid);
+        if (!rootsValid) {
+            return false;
+        }
+        
+        // One candidate per upper-half-plane pole with a formant-like bandwidth, ascending
+        int count = 0;
+        for (int k = 0; k < order; k++) {
+            if (rootIm[k] <= 0.0) continue;
+            double radius = Math.sqrt(rootRe[k] * rootRe[k] + rootIm[k] * rootIm[k]);
+            double frequency = Math.atan2(rootIm[k], rootRe[k]) * sampleRate / (2.0 * Math.PI);
+            double bandwidth = -Math.log(radius) * sampleRate / Math.PI;
+            if (frequency < MIN_FORMANT_HZ || bandwidth > MAX_BANDWIDTH_HZ || count == candidates.length) {
+                continue;
+            }
+            double value = Math.log(frequency);
+            int at = count++;
+            while (at > 0 && candidates[at - 1] > value) {
+                candidates[at] = candidates[at - 1];
+                at--;
+            }
+            candidates[at] = value;
+        }
+        assign(count);
+        return true;
+    }
+    
+    /**
+     * Monotone alignment of candidates to tracks: each step uses a candidate for the next
+     * track, skips a candidate or leaves a track empty; the cheapest path wins
+     */
+    private void assign(int count) {
+        for (int i = 0; i <= count; i++) {
+            for (int t = 0; t <= FORMANTS; t++) {
+                double best = i == 0 && t == 0 ? 0.0 : Double.MAX_VALUE;
+                byte step = 0;
+                if (i > 0 && t > 0) {
+                    double c = cost[i - 1][t - 1] + Math.abs(candidates[i - 1] - track[t - 1]);
+                    if (c < best) {
+                        best = c;
+                        step = 1;
+                    }
+                }
+                if (i > 0 && cost[i - 1][t] + SKIP_COST < best) {
+                    best = cost[i - 1][t] + SKIP_COST;
+                    step = 2;
+                }
+                if (t > 0 && cost[i][t - 1] + MISS_COST < best) {
+                    best = cost[i][t - 1] + MISS_COST;
+                    step = 3;
+                }
+                cost[i][t] = best;
+                move[i][t] = step;
+            }
+        }
+        
+        int i = count;
+        int t = FORMANTS;
+        while (t > 0) {
+            switch (move[i][t]) {
+                case 1:
+                    i--;
+                    t--;
+                    formants[t] = (float) Math.exp(candidates[i]);
+                    track[t] += TRACK_SMOOTHING * (candidates[i] - track[t]);
+                    break;
+                case 2:
+                    i--;
+                    break;
+                default:
+                    t--;
+                    formants[t] = 0.0f;
+                    break;
+            }
+        }
+    }
+    
+    /**
+     * Copy the most recent voiced frame's F1-F4 into {@code out}; 0 for a formant not found
+     */
+    public void getFormants(float[] out) {
+        System.arraycopy(formants, 0, out, 0, FORMANTS);
+    }
+    
+    /**
+     * Statistics of one track since the last reset, {@code formant} 0 for F1 to 3 for F4
+     */
+    public PitchStatistics getStatistics(int formant) {
+        return statistics[formant];
+    }
+    
+    public int getHopSize() {
+        return hopSize;
+    }
+    
+    public void reset() {
+        Arrays.fill(history, 0.0f);
+        written = 0;
+        untilHop = hopSize;
+        rootsValid = false;
+        for (int i = 0; i < FORMANTS; i++) {
+            track[i] = Math.log(INITIAL_FORMANTS[i]);
+            formants[i] = 0.0f;
+            statistics[i].reset();
+        }
+    }
+}
@@ -0,0 +1,31 @@
+package com.voicechanger.dsp;
+
+/**
+ * Constant gain stage
+ */
+public class GainEffect implements AudioEffect {
+    private float gain = 1.0f;
+    
+    public void setGain(float gain) {
+        this.gain = gain;
+    }
+    
+    public float getGain() {
+        return gain;
+    }
+    
+    @Override
+    public void process(float[] samples, int offset, int length) {
+        if (gain == 1.0f) return;
+        
+        float g = gain;
+        for (int i = offset; i < offset + length; i++) {
+            samples[i] *= g;
+        }
+    }
+    
+    @Override
+    public void reset() {
+        // Stateless
+    }
+}
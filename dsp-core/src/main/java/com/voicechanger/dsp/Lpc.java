@@ -0,0 +1,139 @@
+package com.voicechanger.dsp;
+
+/**
+ * Linear prediction helpers: autocorrelation, Levinson-Durbin recursion and root finding.
+ * Coefficients follow the prediction-error filter convention
+ * {@code A(z) = 1 + a[1] z^-1 + ... + a[p] z^-p}. Nothing here allocates.
+ */
+public final class Lpc {
+    private static final int ROOT_ITERATIONS = 100;
+    private static final double ROOT_TOLERANCE = 1e-9;
+    
+    private Lpc() {
+    }
+    
+    /**
+     * Autocorrelation {@code r[0..maxLag]} of {@code x[offset..offset+length)}
+     */
+    public static void autocorrelate(float[] x, int offset, int length, double[] r, int maxLag) {
+        for (int lag = 0; lag <= maxLag; lag++) {
+            double sum = 0.0;
+            for (int i = offset + lag; i < offset + length; i++) {
+                sum += x[i] * x[i - lag];
+            }
+            r[lag] = sum;
+        }
+    }
+    
+    /**
+     * Levinson-Durbin recursion. Fills {@code a[0..order]} (with {@code a[0] = 1}) from the
+     * autocorrelation {@code r}; {@code scratch} must hold {@code order + 1} values.
+     *
+     * @return the final prediction error power, or 0 if {@code r[0]} is not positive
+     */
+    public static double levinson(double[] r, int order, double[] a, double[] scratch) {
+        a[0] = 1.0;
+        for (int k = 1; k <= order; k++) {
+            a[k] = 0.0;
+        }
+        
+        double error = r[0];
+        if (error <= 0.0) return 0.0;
+        
+        for (int i = 1; i <= order; i++) {
+            double acc = r[i];
+            for (int j = 1; j < i; j++) {
+                acc += a[j] * r[i - j];
+            }
+            double reflection = -acc / error;
+            
+            System.arraycopy(a, 0, scratch, 0, i);
+            for (int j = 1; j < i; j++) {
+                a[j] = scratch[j] + reflection * scratch[i - j];
+            }
+            a[i] = reflection;
+            
+            error *= 1.0 - reflection * reflection;
+            if (error <= 0.0) break;
+        }
+        return error;
+    }
+    
+    /**
+     * Roots of {@code z^order + a[1] z^(order-1) + ... + a[order]}, i.e. the poles of
+     * {@code 1/A(z)}, by Durand-Kerner iteration. With {@code warmStart} the values already in
+     * {@code re}/{@code im} are the starting guesses, e.g. the previous frame's roots, which
+     * usually converge in a few iterations; otherwise a spread of points inside the unit circle
+     * is used.
+     *
+     * @return true if the iteration converged
+     */
+    public static boolean roots(double[] a, int order, double[] re, double[] im, boolean warmStart) {
+        if (!warmStart) {
+            // Powers of a point off the real axis, so no two guesses coincide or are conjugate
+            double gr = 0.4, gi = 0.9;
+            double zr = 1.0, zi = 0.0;
+            for (int i = 0; i < order; i++) {
+                double t = zr * gr - zi * gi;
+                zi = zr * gi + zi * gr;
+                zr = t;
+                re[i] = zr;
+                im[i] = zi;
+            }
+        }
+        
+        for (int iteration = 0; iteration < ROOT_ITERATIONS; iteration++) {
+            double largestStep = 0.0;
+            for (int i = 0; i < order; i++) {
+                double zr = re[i], zi = im[i];
+                
+                // Horner evaluation of the monic polynomial at z
+                double pr = 1.0, pi = 0.0;
+                for (int k = 1; k <= order; k++) {
+                    double t = pr * zr - pi * zi + a[k];
+                    pi = pr * zi + pi * zr;
+                    pr = t;
+                }
+                
+                // Product of the distances to the other roots
+                double qr = 1.0, qi = 0.0;
+                for (int j = 0; j < order; j++) {
+                    if (j == i) continue;
+                    double dr = zr - re[j], di = zi - im[j];
+                    double t = qr * dr - qi * di;
+                    qi = qr * di + qi * dr;
+                    qr = t;
+                }
+                
+                double norm = qr * qr + qi * qi;
+                if (norm == 0.0) {
+                    // Coincident guesses; nudge this one apart
+                    re[i] += 1e-6;
+                    largestStep = Double.MAX_VALUE;
+                    continue;
+                }
+                double sr = (pr * qr + pi * qi) / norm;
+                double si = (pi * qr - pr * qi) / norm;
+                re[i] = zr - sr;
+                im[i] = zi - si;
+                largestStep = Math.max(largestStep, sr * sr + si * si);
+            }
+            if (largestStep < ROOT_TOLERANCE * ROOT_TOLERANCE) {
+                return true;
+            }
+        }
+        return false;
+    }
+    
+    /**
+     * Scale {@code a[k]} by {@code gamma^k}, widening formant bandwidths and moving poles away
+     * from the unit circle
+     */
+    public static void bandwidthExpand(double[] a, int order, double gamma) {
+        double g = gamma;
+        for (int k = 1; k <= order; k++) {
+            a[k] *= g;
+            g *= gamma;
+        }
+    }
+}
@@ -0,0 +1,119 @@
+package com.voicechanger.dsp;
+
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Triangular filters spaced evenly on the mel scale from 0 Hz to Nyquist, applied to the power
+ * spectrum of a real FFT. Each filter is stored as its first bin and its nonzero weights only,
+ * so a frame costs about two multiply-adds per FFT bin whatever the band count.
+ *
+ * Instances are immutable and shared per configuration through {@link #forSize}; applying a
+ * bank does not allocate.
+ */
+public final class MelFilterBank {
+    private static final ConcurrentHashMap<String, MelFilterBank> CACHE = new ConcurrentHashMap<>();
+    
+    private final int fftSize;
+    private final int bands;
+    private final float[] centres;
+    private final int[] firstBin;
+    private final float[][] weights;
+    
+    public MelFilterBank(int sampleRate, int fftSize, int bands) {
+        if (sampleRate <= 0 || fftSize < 4 || Integer.bitCount(fftSize) != 1 || bands < 1
+                || bands > fftSize / 4) {
+            throw new IllegalArgumentException("Invalid mel filter bank configuration");
+        }
+        this.fftSize = fftSize;
+        this.bands = bands;
+        
+        // Band b rises from edge b to its peak at edge b + 1 and falls to zero at edge b + 2
+        double top = toMel(sampleRate / 2.0);
+        double[] edges = new double[bands + 2];
+        for (int i = 0; i < edges.length; i++) {
+            edges[i] = fromMel(top * i / (bands + 1)) * fftSize / sampleRate;
+        }
+        
+        centres = new float[bands];
+        firstBin = new int[bands];
+        weights = new float[bands][];
+        for (int b = 0; b < bands; b++) {
+            double low = edges[b];
+            double peak = edges[b + 1];
+            double high = edges[b + 2];
+            int first = (int) Math.floor(low) + 1;
+            int last = Math.min(fftSize / 2, (int) Math.ceil(high) - 1);
+            // Filters narrower than a bin still take their nearest bin
+            if (last < first) {
+                first = last = (int) Math.round(peak);
+            }
+            centres[b] = (float) (peak * sampleRate / fftSize);
+            firstBin[b] = first;
+            weights[b] = new float[last - first + 1];
+            for (int k = first; k <= last; k++) {
+                double w = k <= peak ? (k - low) / (peak - low) : (high - k) / (high - peak);
+                weights[b][k - first] = (float) Math.max(0.0, Math.min(1.0, w));
+            }
+            if (first == last) {
+                weights[b][0] = 1.0f;
+            }
+        }
+    }
+    
+    /**
+     * Shared instance for a configuration; filters are built once per configuration and process
+     */
+    public static MelFilterBank forSize(int sampleRate, int fftSize, int bands) {
+        String key = sampleRate + "/" + fftSize + "/" + bands;
+        MelFilterBank bank = CACHE.get(key);
+        if (bank == null) {
+            bank = new MelFilterBank(sampleRate, fftSize, bands);
+            MelFilterBank existing = CACHE.putIfAbsent(key, bank);
+            if (existing != null) {
+                bank = existing;
+            }
+        }
+        return bank;
+    }
+    
+    public static double toMel(double hz) {
+        return 2595.0 * Math.log10(1.0 + hz / 700.0);
+    }
+    
+    public static double fromMel(double mel) {
+        return 700.0 * (Math.pow(10.0, mel / 2595.0) - 1.0);
+    }
+    
+    public int getFftSize() {
+        return fftSize;
+    }
+    
+    public int getBandCount() {
+        return bands;
+    }
+    
+    /**
+     * Centre frequency of a band in Hz
+     */
+    public float getCentre(int band) {
+        return centres[band];
+    }
+    
+    /**
+     * Band energies of a power spectrum
+     *
+     * @param power bins 0 to fftSize / 2
+     * @param energies receives one value per band
+     */
+    public void apply(float[] power, float[] energies) {
+        for (int b = 0; b < bands; b++) {
+            float[] w = weights[b];
+            int first = firstBin[b];
+            float sum = 0.0f;
+            for (int k = 0; k < w.length; k++) {
+                sum += w[k] * power[first + k];
+            }
+            energies[b] = sum;
+        }
+    }
+}
@@ -0,0 +1,281 @@
+package com.voicechanger.dsp;
+
+import java.util.Arrays;
+
+/**
+ * Streaming mel-frequency cepstral analysis. Every hop the last frame is Hann-windowed,
+ * zero-padded to a power of two and transformed; its power spectrum goes through a shared
+ * {@link MelFilterBank}, the band energies are taken to decibels and an orthonormal DCT turns
+ * them into cepstral coefficients. Frames below about -60 dBFS are skipped.
+ *
+ * The coefficients of the analysed frames are averaged in one pass, however long the input.
+ * Without c0 their inverse DCT is the speaker's smoothed long-term envelope: one dB value per
+ * mel band, relative to the average level. {@link #analyze} gives the same features for a
+ * single frame. Processing never allocates.
+ */
+public class MfccExtractor {
+    public static final int DEFAULT_FRAME_MS = 25;
+    public static final int DEFAULT_HOP_MS = 10;
+    public static final int DEFAULT_BANDS = 26;
+    public static final int DEFAULT_COEFFICIENTS = 13;
+    
+    // Mean power below about -60 dBFS is silence
+    private static final double SILENCE_POWER = 1e-6;
+    // Keeps the logarithm of empty bands finite, about -100 dB
+    private static final float POWER_FLOOR = 1e-10f;
+    
+    private final int frameSize;
+    private final int hopSize;
+    private final int bands;
+    private final int coefficients;
+    private final float[] window;
+    private final RealFft fft;
+    private final MelFilterBank filterBank;
+    // Orthonormal DCT-II, coefficients by bands
+    private final float[][] dct;
+    
+    private final float[] history;
+    private final int historyMask;
+    private long written;
+    private int untilHop;
+    
+    private final float[] spectrum;
+    private final float[] power;
+    private final float[] energies;
+    private final float[] mfcc;
+    private final double[] sum;
+    private int frames;
+    
+    public MfccExtractor(int sampleRate) {
+        this(sampleRate, sampleRate * DEFAULT_FRAME_MS / 1000, sampleRate * DEFAULT_HOP_MS / 1000,
+                DEFAULT_BANDS, DEFAULT_COEFFICIENTS);
+    }
+    
+    /**
+     * @param frameSize analysis frame length in samples
+     * @param hopSize samples between analyses
+     * @param bands mel bands
+     * @param coefficients cepstral coefficients kept, including c0
+     */
+    public MfccExtractor(int sampleRate, int frameSize, int hopSize, int bands, int coefficients) {
+        if (sampleRate <= 0 || frameSize < 4 || hopSize <= 0 || coefficients < 1 || coefficients > bands) {
+            throw new IllegalArgumentException("Invalid MFCC configuration");
+        }
+        this.frameSize = frameSize;
+        this.hopSize = hopSize;
+        this.bands = bands;
+        this.coefficients = coefficients;
+        this.window = Window.hann(frameSize);
+        
+        int fftSize = Integer.highestOneBit(frameSize - 1) << 1;
+        this.fft = RealFft.forSize(fftSize);
+        this.filterBank = MelFilterBank.forSize(sampleRate, fftSize, bands);
+        
+        dct = dctBasis(coefficients, bands);
+        
+        int historySize = Integer.highestOneBit(frameSize) << 1;
+        history = new float[historySize];
+        historyMask = historySize - 1;
+        
+        spectrum = new float[fftSize];
+        power = new float[fftSize / 2 + 1];
+        energies = new float[bands];
+        mfcc = new float[coefficients];
+        sum = new double[coefficients];
+        reset();
+    }
+    
+    /**
+     * Orthonormal DCT-II basis, coefficients by bands; its transpose is the inverse
+     */
+    static float[][] dctBasis(int coefficients, int bands) {
+        float[][] basis = new float[coefficients][bands];
+        for (int c = 0; c < coefficients; c++) {
+            double scale = Math.sqrt((c == 0 ? 1.0 : 2.0) / bands);
+            for (int b = 0; b < bands; b++) {
+                basis[c][b] = (float) (scale * Math.cos(Math.PI * c * (b + 0.5) / bands));
+            }
+        }
+        return basis;
+    }
+    
+    /**
+     * Analyse a block of samples
+     *
+     * @return the number of frames analysed during the block
+     */
+    public int process(float[] samples, int offset, int length) {
+        int analysed = 0;
+        for (int i = offset; i < offset + length; i++) {
+            analysed += push(samples[i]);
+        }
+        return analysed;
+    }
+    
+    /**
+     * Analyse a block of 16-bit little-endian PCM
+     *
+     * @return the number of frames analysed during the block
+     */
+    public int process(byte[] pcm, int byteOffset, int lengthBytes) {
+        int analysed = 0;
+        for (int b = byteOffset; b + 1 < byteOffset + lengthBytes; b += 2) {
+            analysed += push((short) ((pcm[b + 1] << 8) | (pcm[b] & 0xFF)) / 32768.0f);
+        }
+        return analysed;
+    }
+    
+    private int push(float sample) {
+        history[(int) written & historyMask] = sample;
+        written++;
+        if (--untilHop > 0) {
+            return 0;
+        }
+        untilHop = hopSize;
+        if (written < frameSize) {
+            return 0;
+        }
+        
+        long start = written - frameSize;
+        for (int n = 0; n < frameSize; n++) {
+            spectrum[n] = history[(int) (start + n) & historyMask];
+        }
+        if (!analyzeSpectrum()) {
+            return 0;
+        }
+        for (int c = 0; c < coefficients; c++) {
+            sum[c] += mfcc[c];
+        }
+        frames++;
+        return 1;
+    }
+    
+    /**
+     * Cepstral coefficients of one frame of {@code getFrameSize()} samples, without touching
+     * the streaming state or the averages
+     *
+     * @param out receives {@code getCoefficientCount()} values
+     * @return false, leaving {@code out} untouched, if the frame is silent
+     */
+    public boolean analyze(float[] samples, int offset, float[] out) {
+        System.arraycopy(samples, offset, spectrum, 0, frameSize);
+        if (!analyzeSpectrum()) {
+            return false;
+        }
+        System.arraycopy(mfcc, 0, out, 0, coefficients);
+        return true;
+    }
+    
+    /**
+     * Window and transform the frame at the start of {@code spectrum}, then fill {@code mfcc}
+     */
+    private boolean analyzeSpectrum() {
+        double frameEnergy = 0.0;
+        for (int n = 0; n < frameSize; n++) {
+            float x = spectrum[n];
+            frameEnergy += x * x;
+            spectrum[n] = x * window[n];
+        }
+        if (frameEnergy < SILENCE_POWER * frameSize) {
+            return false;
+        }
+        Arrays.fill(spectrum, frameSize, spectrum.length, 0.0f);
+        fft.forward(spectrum);
+        
+        int half = spectrum.length / 2;
+        power[0] = spectrum[0] * spectrum[0];
+        power[half] = spectrum[1] * spectrum[1];
+        for (int k = 1; k < half; k++) {
+            float re = spectrum[2 * k];
+            float im = spectrum[2 * k + 1];
+            power[k] = re * re + im * im;
+        }
+        filterBank.apply(power, energies);
+        for (int b = 0; b < bands; b++) {
+            energies[b] = (float) (10.0 * Math.log10(energies[b] + POWER_FLOOR));
+        }
+        
+        for (int c = 0; c < coefficients; c++) {
+            float[] basis = dct[c];
+            float value = 0.0f;
+            for (int b = 0; b < bands; b++) {
+                value += basis[b] * energies[b];
+            }
+            mfcc[c] = value;
+        }
+        return true;
+    }
+    
+    /**
+     * Copy the most recent analysed frame's coefficients into {@code out}
+     */
+    public void getMfcc(float[] out) {
+        System.arraycopy(mfcc, 0, out, 0, coefficients);
+    }
+    
+    /**
+     * Copy the coefficients averaged over every analysed frame since the last reset into
+     * {@code out}; zeros before the first frame
+     */
+    public void getMeanMfcc(float[] out) {
+        for (int c = 0; c < coefficients; c++) {
+            out[c] = frames == 0 ? 0.0f : (float) (sum[c] / frames);
+        }
+    }
+    
+    /**
+     * Long-term spectral envelope since the last reset, smoothed by keeping only the first
+     * coefficients: one value per mel band in dB relative to the average level
+     *
+     * @param out receives {@code getBandCount()} values
+     */
+    public void getEnvelope(float[] out) {
+        Arrays.fill(out, 0, bands, 0.0f);
+        if (frames == 0) {
+            return;
+        }
+        for (int c = 1; c < coefficients; c++) {
+            float mean = (float) (sum[c] / frames);
+            float[] basis = dct[c];
+            for (int b = 0; b < bands; b++) {
+                out[b] += mean * basis[b];
+            }
+        }
+    }
+    
+    /**
+     * Frames analysed since the last reset
+     */
+    public int getFrameCount() {
+        return frames;
+    }
+    
+    public int getFrameSize() {
+        return frameSize;
+    }
+    
+    public int getHopSize() {
+        return hopSize;
+    }
+    
+    public int getBandCount() {
+        return bands;
+    }
+    
+    public int getCoefficientCount() {
+        return coefficients;
+    }
+    
+    public MelFilterBank getFilterBank() {
+        return filterBank;
+    }
+    
+    public void reset() {
+        Arrays.fill(history, 0.0f);
+        written = 0;
+        untilHop = hopSize;
+        Arrays.fill(mfcc, 0.0f);
+        Arrays.fill(sum, 0.0);
+        frames = 0;
+    }
+}
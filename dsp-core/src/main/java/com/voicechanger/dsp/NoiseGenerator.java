@@ -0,0 +1,64 @@
+package com.voicechanger.dsp;
+
+/**
+ * Seedable xorshift64* noise source with white and pink outputs.
+ * Each instance owns its state, so pipelines running on different threads never contend
+ * on a shared {@code Random}; one instance must not be shared between threads.
+ */
+public final class NoiseGenerator {
+    private static final float INT24_TO_FLOAT = 1.0f / (1 << 23);
+    
+    // Brings the pink filter's output to roughly the white level
+    private static final float PINK_GAIN = 0.33f;
+    
+    private long state;
+    
+    // Paul Kellet's three-pole pink noise filter
+    private float pink0;
+    private float pink1;
+    private float pink2;
+    
+    public NoiseGenerator() {
+        this(System.nanoTime());
+    }
+    
+    public NoiseGenerator(long seed) {
+        setSeed(seed);
+    }
+    
+    public void setSeed(long seed) {
+        // The all-zero state is a fixed point of xorshift; scramble the seed and avoid it
+        long s = seed * 0x9E3779B97F4A7C15L;
+        state = s == 0 ? 0x9E3779B97F4A7C15L : s;
+        pink0 = 0.0f;
+        pink1 = 0.0f;
+        pink2 = 0.0f;
+    }
+    
+    public long nextLong() {
+        long x = state;
+        x ^= x >>> 12;
+        x ^= x << 25;
+        x ^= x >>> 27;
+        state = x;
+        return x * 0x2545F4914F6CDD1DL;
+    }
+    
+    /**
+     * Uniform white noise in [-1, 1)
+     */
+    public float nextWhite() {
+        return (int) (nextLong() >>> 40) * INT24_TO_FLOAT - 1.0f;
+    }
+    
+    /**
+     * Pink (-3 dB/octave) noise with about the same RMS level as {@link #nextWhite}
+     */
+    public float nextPink() {
+        float white = nextWhite();
+        pink0 = 0.99765f * pink0 + white * 0.0990460f;
+        pink1 = 0.96300f * pink1 + white * 0.2965164f;
+        pink2 = 0.57000f * pink2 + white * 1.0526913f;
+        return (pink0 + pink1 + pink2 + white * 0.1848f) * PINK_GAIN;
+    }
+}
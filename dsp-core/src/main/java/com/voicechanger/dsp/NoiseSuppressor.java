@@ -0,0 +1,160 @@
+package com.voicechanger.dsp;
+
+import java.util.Arrays;
+
+/**
+ * Spectral noise suppressor. The noise power of each bin is tracked by minimum statistics: the
+ * smoothed periodogram's minimum over about {@code 1.5 s}, kept as a ring of sub-window minima
+ * and corrected for its bias, so the estimate follows slowly changing noise even while speech is
+ * present. Each bin is then scaled by a Wiener gain driven by a decision-directed a-priori SNR,
+ * which avoids the musical noise of plain spectral subtraction.
+ *
+ * All work is per bin and per frame with no periodic rescans, so the cost of every hop is the
+ * same. Strength sets how deep the gain may go; 0 bypasses the stage.
+ */
+public class NoiseSuppressor extends StftEffect {
+    public static final int DEFAULT_FFT_SIZE = 512;
+    
+    private static final int OVERLAP = 4;
+    
+    // Minimum statistics: the search window is split into this many sub-windows
+    private static final int SUBWINDOWS = 8;
+    private static final float SEARCH_WINDOW_SECONDS = 1.5f;
+    private static final float POWER_SMOOTHING = 0.85f;
+    private static final float NOISE_BIAS = 1.5f;
+    private static final float MIN_POWER = 1e-10f;
+    
+    // Decision-directed weight of the previous frame's clean-speech estimate
+    private static final float DECISION_DIRECTED = 0.98f;
+    
+    // Gain floor at full strength
+    private static final float MAX_ATTENUATION_DB = 20.0f;
+    
+    private final int subwindowFrames;
+    
+    // Per-bin tracker state
+    private final float[] smoothedPower;
+    private final float[] currentMinimum;
+    private final float[] subwindowMinima;
+    private final float[] previousClean;
+    private int subwindow;
+    private int subwindowFrame;
+    private int warmupFrames;
+    
+    private volatile float strength = 1.0f;
+    private float gainFloor;
+    
+    public NoiseSuppressor(int sampleRate) {
+        this(sampleRate, DEFAULT_FFT_SIZE);
+    }
+    
+    /**
+     * @param sampleRate stream sample rate
+     * @param fftSize frame length, a power of two; the stage delays its output by this much
+     */
+    public NoiseSuppressor(int sampleRate, int fftSize) {
+        super(fftSize, OVERLAP);
+        float framesPerSecond = (float) sampleRate / hopSize;
+        this.subwindowFrames = Math.max(1, Math.round(SEARCH_WINDOW_SECONDS * framesPerSecond / SUBWINDOWS));
+        
+        smoothedPower = new float[bins];
+        currentMinimum = new float[bins];
+        subwindowMinima = new float[SUBWINDOWS * bins];
+        previousClean = new float[bins];
+        
+        reset();
+    }
+    
+    /**
+     * How strongly noise is suppressed, from 0 (off) to 1 (gain floor of -20 dB)
+     */
+    public void setStrength(float strength) {
+        this.strength = Math.max(0.0f, Math.min(1.0f, strength));
+    }
+    
+    public float getStrength() {
+        return strength;
+    }
+    
+    @Override
+    protected boolean isBypassed() {
+        float s = strength;
+        gainFloor = (float) Math.pow(10.0, -MAX_ATTENUATION_DB * s / 20.0);
+        return s == 0.0f;
+    }
+    
+    @Override
+    protected void processSpectrum(float[] spectrum) {
+        int nyquist = bins - 1;
+        int ring = subwindow * bins;
+        
+        for (int k = 0; k < bins; k++) {
+            int re = k == nyquist ? 1 : 2 * k;
+            int im = 2 * k + 1;
+            boolean complex = k != 0 && k != nyquist;
+            
+            float power = spectrum[re] * spectrum[re];
+            if (complex) {
+                power += spectrum[im] * spectrum[im];
+            }
+            
+            // Noise estimate: bias-corrected minimum of the smoothed power over the search window
+            float smoothed;
+            if (warmupFrames > 0) {
+                smoothed = power;
+                currentMinimum[k] = power;
+                for (int u = 0; u < SUBWINDOWS; u++) {
+                    subwindowMinima[u * bins + k] = power;
+                }
+            } else {
+                smoothed = POWER_SMOOTHING * smoothedPower[k] + (1.0f - POWER_SMOOTHING) * power;
+                currentMinimum[k] = Math.min(currentMinimum[k], smoothed);
+            }
+            smoothedPower[k] = smoothed;
+            
+            float minimum = currentMinimum[k];
+            for (int u = k; u < subwindowMinima.length; u += bins) {
+                minimum = Math.min(minimum, subwindowMinima[u]);
+            }
+            float noise = Math.max(NOISE_BIAS * minimum, MIN_POWER);
+            
+            // Decision-directed a-priori SNR and Wiener gain
+            float posteriori = power / noise;
+            float priori = DECISION_DIRECTED * previousClean[k] / noise
+                    + (1.0f - DECISION_DIRECTED) * Math.max(posteriori - 1.0f, 0.0f);
+            float gain = Math.max(priori / (1.0f + priori), gainFloor);
+            previousClean[k] = gain * gain * power;
+            
+            spectrum[re] *= gain;
+            if (complex) {
+                spectrum[im] *= gain;
+            }
+            
+            if (subwindowFrame == subwindowFrames - 1) {
+                // Close the sub-window: its minimum replaces the oldest one in the ring
+                subwindowMinima[ring + k] = currentMinimum[k];
+                currentMinimum[k] = smoothed;
+            }
+        }
+        
+        if (warmupFrames > 0) {
+            warmupFrames--;
+        }
+        if (++subwindowFrame == subwindowFrames) {
+            subwindowFrame = 0;
+            subwindow = (subwindow + 1) % SUBWINDOWS;
+        }
+    }
+    
+    @Override
+    protected void resetSpectralState() {
+        Arrays.fill(smoothedPower, 0.0f);
+        Arrays.fill(currentMinimum, 0.0f);
+        Arrays.fill(subwindowMinima, 0.0f);
+        Arrays.fill(previousClean, 0.0f);
+        subwindow = 0;
+        subwindowFrame = 0;
+        // Frames until the FIFO holds only real input; until then the tracker restarts each frame
+        warmupFrames = OVERLAP;
+    }
+}
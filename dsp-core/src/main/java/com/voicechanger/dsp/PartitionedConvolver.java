@@ -0,0 +1,204 @@
+package com.voicechanger.dsp;
+
+import java.util.Arrays;
+
+/**
+ * Zero-latency convolution with an impulse response, e.g. a telephone, radio or room
+ * character. The first {@code blockSize} taps are applied directly per sample; the rest of the
+ * response is split into partitions of {@code blockSize} taps that are applied by uniformly
+ * partitioned overlap-save FFT convolution. The tail for a block only needs input from earlier
+ * blocks, so it is computed when a block completes and the output is never delayed.
+ *
+ * Cost is known in advance and bounded by the construction parameters: per sample
+ * {@code blockSize} multiply-adds for the head, and per block one forward and one inverse
+ * {@code 2 * blockSize} real FFT plus {@code blockSize + 1} complex multiply-adds per tail
+ * partition in use. All buffers are allocated up front; responses are prepared on the calling
+ * thread by {@link #setImpulseResponse} and swapped in without interrupting the stream.
+ */
+public class PartitionedConvolver implements AudioEffect {
+    public static final int DEFAULT_BLOCK_SIZE = 64;
+    
+    private final int blockSize;
+    private final int fftSize;
+    private final int maxPartitions;
+    private final RealFft fft;
+    
+    private volatile Kernel kernel;
+    private volatile float mix = 1.0f;
+    
+    // Head: doubled ring so the last blockSize inputs are always contiguous, oldest first
+    private final float[] history;
+    private int historyIndex;
+    
+    // Tail: the current and previous input blocks, the spectra of recent overlap-save frames
+    // (newest at spectrumIndex) and the tail output for the block being played
+    private final float[] currentBlock;
+    private final float[] previousBlock;
+    private final float[][] spectra;
+    private int spectrumIndex;
+    private final float[] accumulator;
+    private final float[] tailOutput;
+    private int blockPosition;
+    
+    /**
+     * @param blockSize head length and partition size, a power of two
+     * @param maxLength longest impulse response that will be loaded, in samples
+     */
+    public PartitionedConvolver(int blockSize, int maxLength) {
+        if (blockSize < 2 || Integer.bitCount(blockSize) != 1 || maxLength < 1) {
+            throw new IllegalArgumentException("Invalid convolver configuration");
+        }
+        this.blockSize = blockSize;
+        this.fftSize = 2 * blockSize;
+        this.maxPartitions = Math.max(0, (maxLength - 1) / blockSize);
+        this.fft = RealFft.forSize(fftSize);
+        
+        history = new float[2 * blockSize];
+        currentBlock = new float[blockSize];
+        previousBlock = new float[blockSize];
+        spectra = new float[Math.max(1, maxPartitions)][fftSize];
+        accumulator = new float[fftSize];
+        tailOutput = new float[blockSize];
+    }
+    
+    /**
+     * Load a response; taps beyond the maximum length given at construction are dropped.
+     * Pass null to unload, which makes the stage pass its input through.
+     */
+    public void setImpulseResponse(float[] response) {
+        kernel = response == null ? null : new Kernel(response);
+    }
+    
+    public boolean hasImpulseResponse() {
+        return kernel != null;
+    }
+    
+    /**
+     * Share of the convolved signal in the output, from 0 (dry) to 1 (fully convolved)
+     */
+    public void setMix(float mix) {
+        this.mix = Math.max(0.0f, Math.min(1.0f, mix));
+    }
+    
+    public float getMix() {
+        return mix;
+    }
+    
+    public int getLatencySamples() {
+        return 0;
+    }
+    
+    @Override
+    public void process(float[] samples, int offset, int length) {
+        Kernel k = kernel;
+        if (k == null) {
+            return;
+        }
+        float wet = mix;
+        float dry = 1.0f - wet;
+        final float[] head = k.head;
+        final float[] h = history;
+        final int size = blockSize;
+        
+        for (int n = offset; n < offset + length; n++) {
+            float x = samples[n];
+            h[historyIndex] = x;
+            h[historyIndex + size] = x;
+            historyIndex = historyIndex + 1 == size ? 0 : historyIndex + 1;
+            
+            float y = tailOutput[blockPosition];
+            for (int t = 0; t < size; t++) {
+                y += head[t] * h[historyIndex + t];
+            }
+            samples[n] = dry * x + wet * y;
+            
+            currentBlock[blockPosition] = x;
+            if (++blockPosition == size) {
+                blockPosition = 0;
+                computeTail(k);
+            }
+        }
+    }
+    
+    /**
+     * Overlap-save over the block that just completed: store the spectrum of the last two
+     * blocks, sum its products with the partitions against the older spectra, and keep the
+     * last half of the inverse transform as the tail for the next block
+     */
+    private void computeTail(Kernel k) {
+        spectrumIndex = spectrumIndex == 0 ? spectra.length - 1 : spectrumIndex - 1;
+        float[] frame = spectra[spectrumIndex];
+        System.arraycopy(previousBlock, 0, frame, 0, blockSize);
+        System.arraycopy(currentBlock, 0, frame, blockSize, blockSize);
+        System.arraycopy(currentBlock, 0, previousBlock, 0, blockSize);
+        fft.forward(frame);
+        
+        int partitions = k.partitions.length;
+        if (partitions == 0) {
+            Arrays.fill(tailOutput, 0.0f);
+            return;
+        }
+        Arrays.fill(accumulator, 0.0f);
+        for (int j = 0; j < partitions; j++) {
+            int index = spectrumIndex + j;
+            if (index >= spectra.length) index -= spectra.length;
+            multiplyAccumulate(spectra[index], k.partitions[j], accumulator);
+        }
+        fft.inverse(accumulator);
+        System.arraycopy(accumulator, blockSize, tailOutput, 0, blockSize);
+    }
+    
+    private static void multiplyAccumulate(float[] a, float[] b, float[] acc) {
+        acc[0] += a[0] * b[0];
+        acc[1] += a[1] * b[1];
+        for (int i = 2; i < acc.length; i += 2) {
+            float ar = a[i];
+            float ai = a[i + 1];
+            float br = b[i];
+            float bi = b[i + 1];
+            acc[i] += ar * br - ai * bi;
+            acc[i + 1] += ar * bi + ai * br;
+        }
+    }
+    
+    @Override
+    public void reset() {
+        Arrays.fill(history, 0.0f);
+        historyIndex = 0;
+        Arrays.fill(currentBlock, 0.0f);
+        Arrays.fill(previousBlock, 0.0f);
+        for (float[] spectrum : spectra) {
+            Arrays.fill(spectrum, 0.0f);
+        }
+        Arrays.fill(tailOutput, 0.0f);
+        blockPosition = 0;
+    }
+    
+    /**
+     * A response split into the reversed head taps and the spectra of the tail partitions
+     */
+    private final class Kernel {
+        final float[] head = new float[blockSize];
+        final float[][] partitions;
+        
+        Kernel(float[] response) {
+            int length = Math.min(response.length, (maxPartitions + 1) * blockSize);
+            for (int t = 0; t < Math.min(length, blockSize); t++) {
+                head[blockSize - 1 - t] = response[t];
+            }
+            
+            int count = Math.max(0, (length - 1) / blockSize);
+            partitions = new float[count][fftSize];
+            // The inverse transform is unscaled; fold its 1/N in here
+            float scale = 1.0f / fftSize;
+            for (int j = 0; j < count; j++) {
+                int from = (j + 1) * blockSize;
+                int taps = Math.min(blockSize, length - from);
+                for (int t = 0; t < taps; t++) {
+                    partitions[j][t] = response[from + t] * scale;
+                }
+                fft.forward(partitions[j]);
+            }
+        }
+    }
+}
@@ -0,0 +1,66 @@
+package com.voicechanger.dsp;
+
+/**
+ * Runs effects over 16-bit PCM in place through a preallocated float work buffer.
+ * After {@link #prepare(int)} no call allocates; longer inputs are processed in
+ * consecutive blocks of the prepared size.
+ */
+public class PcmBlockProcessor {
+    private float[] workBuffer = new float[0];
+    
+    /**
+     * Allocate the work buffer for blocks of up to {@code maxBlockSize} samples
+     */
+    public void prepare(int maxBlockSize) {
+        if (maxBlockSize <= 0) {
+            throw new IllegalArgumentException("maxBlockSize must be positive: " + maxBlockSize);
+        }
+        if (workBuffer.length != maxBlockSize) {
+            workBuffer = new float[maxBlockSize];
+        }
+    }
+    
+    /**
+     * Process {@code lengthBytes} bytes of PCM starting at {@code byteOffset}, in place
+     */
+    public void process(AudioEffect effect, byte[] pcm, int byteOffset, int lengthBytes) {
+        process(effect, null, pcm, byteOffset, lengthBytes);
+    }
+    
+    /**
+     * As {@link #process(AudioEffect, byte[], int, int)}, with {@code gainControl} (if not null)
+     * applied after the effect inside the PCM encode loop rather than as a separate pass
+     */
+    public void process(AudioEffect effect, AutomaticGainControl gainControl, byte[] pcm, int byteOffset,
+            int lengthBytes) {
+        if (workBuffer.length == 0) {
+            throw new IllegalStateException("prepare() must be called before process()");
+        }
+        
+        float[] work = workBuffer;
+        int remaining = lengthBytes / 2;
+        int position = byteOffset;
+        while (remaining > 0) {
+            int count = Math.min(remaining, work.length);
+            PcmConverter.toFloat(pcm, position, work, 0, count);
+            effect.process(work, 0, count);
+            if (gainControl == null) {
+                PcmConverter.toPcm16(work, 0, pcm, position, count);
+            } else {
+                for (int i = 0; i < count; i++) {
+                    short sample = PcmConverter.toShort(gainControl.process(work[i]));
+                    int b = position + i * 2;
+                    pcm[b] = (byte) (sample & 0xFF);
+                    pcm[b + 1] = (byte) ((sample >> 8) & 0xFF);
+                }
+            }
+            
+            position += count * 2;
+            remaining -= count;
+        }
+    }
+    
+    public int getMaxBlockSize() {
+        return workBuffer.length;
+    }
+}
@@ -0,0 +1,54 @@
+package com.voicechanger.dsp;
+
+/**
+ * Conversion between 16-bit little-endian PCM and normalized float samples
+ */
+public final class PcmConverter {
+    private static final float SCALE = 32767.0f;
+    private static final float INV_SCALE = 1.0f / SCALE;
+    
+    private PcmConverter() {
+    }
+    
+    /**
+     * Decode {@code count} samples of 16-bit little-endian PCM into floats
+     */
+    public static void toFloat(byte[] pcm, int byteOffset, float[] dst, int dstOffset, int count) {
+        for (int i = 0; i < count; i++) {
+            int b = byteOffset + i * 2;
+            short sample = (short) ((pcm[b + 1] << 8) | (pcm[b] & 0xFF));
+            dst[dstOffset + i] = sample * INV_SCALE;
+        }
+    }
+    
+    /**
+     * Encode {@code count} floats as 16-bit little-endian PCM, clamping to the valid range
+     */
+    public static void toPcm16(float[] src, int srcOffset, byte[] pcm, int byteOffset, int count) {
+        for (int i = 0; i < count; i++) {
+            short sample = toShort(src[srcOffset + i]);
+            int b = byteOffset + i * 2;
+            pcm[b] = (byte) (sample & 0xFF);
+            pcm[b + 1] = (byte) ((sample >> 8) & 0xFF);
+        }
+    }
+    
+    public static void toFloat(short[] src, int srcOffset, float[] dst, int dstOffset, int count) {
+        for (int i = 0; i < count; i++) {
+            dst[dstOffset + i] = src[srcOffset + i] * INV_SCALE;
+        }
+    }
+    
+    public static void toShort(float[] src, int srcOffset, short[] dst, int dstOffset, int count) {
+        for (int i = 0; i < count; i++) {
+            dst[dstOffset + i] = toShort(src[srcOffset + i]);
+        }
+    }
+    
+    public static short toShort(float sample) {
+        float scaled = sample * SCALE;
+        if (scaled > SCALE) return (short) 32767;
+        if (scaled < -SCALE) return (short) -32767;
+        return (short) scaled;
+    }
+}
@@ -0,0 +1,220 @@
+package com.voicechanger.dsp;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Single-producer/single-consumer ring buffer of 16-bit PCM samples.
+ * Reads and writes are wait-free and never allocate; the optional await methods
+ * park the calling thread at the edges (empty/full) instead of spinning.
+ *
+ * Exactly one thread may write and exactly one thread may read at a time.
+ */
+public class PcmRingBuffer {
+    private static final float SCALE = 32767.0f;
+    private static final float INV_SCALE = 1.0f / SCALE;
+    
+    private final short[] buffer;
+    private final int mask;
+    
+    // Monotonic sample counters; the consumer owns readIndex, the producer owns writeIndex
+    private final AtomicLong readIndex = new AtomicLong();
+    private final AtomicLong writeIndex = new AtomicLong();
+    
+    // Threads parked at the edges, woken by the other side
+    private volatile Thread waitingReader;
+    private volatile Thread waitingWriter;
+    
+    /**
+     * @param minCapacity minimum number of samples; rounded up to a power of two
+     */
+    public PcmRingBuffer(int minCapacity) {
+        if (minCapacity <= 0 || minCapacity > (1 << 30)) {
+            throw new IllegalArgumentException("Invalid capacity: " + minCapacity);
+        }
+        int capacity = Integer.highestOneBit(minCapacity);
+        if (capacity < minCapacity) {
+            capacity <<= 1;
+        }
+        buffer = new short[capacity];
+        mask = capacity - 1;
+    }
+    
+    public int capacity() {
+        return buffer.length;
+    }
+    
+    public int availableToRead() {
+        return (int) (writeIndex.get() - readIndex.get());
+    }
+    
+    public int availableToWrite() {
+        return buffer.length - availableToRead();
+    }
+    
+    /**
+     * Write up to {@code lengthBytes / 2} samples of 16-bit little-endian PCM.
+     *
+     * @return number of samples written (less than requested when the buffer is full)
+     */
+    public int write(byte[] pcm, int byteOffset, int lengthBytes) {
+        long w = writeIndex.get();
+        int count = Math.min(lengthBytes / 2, buffer.length - (int) (w - readIndex.get()));
+        for (int i = 0; i < count; i++) {
+            int b = byteOffset + i * 2;
+            buffer[(int) (w + i) & mask] = (short) ((pcm[b + 1] << 8) | (pcm[b] & 0xFF));
+        }
+        publishWrite(w + count);
+        return count;
+    }
+    
+    /**
+     * Write up to {@code count} samples
+     *
+     * @return number of samples written
+     */
+    public int write(short[] src, int offset, int count) {
+        long w = writeIndex.get();
+        int n = Math.min(count, buffer.length - (int) (w - readIndex.get()));
+        int start = (int) w & mask;
+        int first = Math.min(n, buffer.length - start);
+        System.arraycopy(src, offset, buffer, start, first);
+        System.arraycopy(src, offset + first, buffer, 0, n - first);
+        publishWrite(w + n);
+        return n;
+    }
+    
+    /**
+     * Write up to {@code count} normalized float samples, clamping to the PCM range
+     *
+     * @return number of samples written
+     */
+    public int write(float[] src, int offset, int count) {
+        long w = writeIndex.get();
+        int n = Math.min(count, buffer.length - (int) (w - readIndex.get()));
+        for (int i = 0; i < n; i++) {
+            buffer[(int) (w + i) & mask] = PcmConverter.toShort(src[offset + i]);
+        }
+        publishWrite(w + n);
+        return n;
+    }
+    
+    /**
+     * Read up to {@code maxBytes / 2} samples as 16-bit little-endian PCM.
+     *
+     * @return number of samples read
+     */
+    public int read(byte[] pcm, int byteOffset, int maxBytes) {
+        long r = readIndex.get();
+        int count = Math.min(maxBytes / 2, (int) (writeIndex.get() - r));
+        for (int i = 0; i < count; i++) {
+            short sample = buffer[(int) (r + i) & mask];
+            int b = byteOffset + i * 2;
+            pcm[b] = (byte) (sample & 0xFF);
+            pcm[b + 1] = (byte) ((sample >> 8) & 0xFF);
+        }
+        publishRead(r + count);
+        return count;
+    }
+    
+    /**
+     * Read up to {@code count} samples
+     *
+     * @return number of samples read
+     */
+    public int read(short[] dst, int offset, int count) {
+        long r = readIndex.get();
+        int n = Math.min(count, (int) (writeIndex.get() - r));
+        int start = (int) r & mask;
+        int first = Math.min(n, buffer.length - start);
+        System.arraycopy(buffer, start, dst, offset, first);
+        System.arraycopy(buffer, 0, dst, offset + first, n - first);
+        publishRead(r + n);
+        return n;
+    }
+    
+    /**
+     * Read up to {@code count} samples as normalized floats
+     *
+     * @return number of samples read
+     */
+    public int read(float[] dst, int offset, int count) {
+        long r = readIndex.get();
+        int n = Math.min(count, (int) (writeIndex.get() - r));
+        for (int i = 0; i < n; i++) {
+            dst[offset + i] = buffer[(int) (r + i) & mask] * INV_SCALE;
+        }
+        publishRead(r + n);
+        return n;
+    }
+    
+    /**
+     * Block the consumer until at least {@code samples} can be read.
+     *
+     * @return true if the data is available, false on timeout
+     */
+    public boolean awaitReadable(int samples, long timeoutNanos) throws InterruptedException {
+        if (availableToRead() >= samples) return true;
+        
+        long deadline = System.nanoTime() + timeoutNanos;
+        waitingReader = Thread.currentThread();
+        try {
+            while (availableToRead() < samples) {
+                long remaining = deadline - System.nanoTime();
+                if (remaining <= 0) return false;
+                LockSupport.parkNanos(this, remaining);
+                if (Thread.interrupted()) throw new InterruptedException();
+            }
+            return true;
+        } finally {
+            waitingReader = null;
+        }
+    }
+    
+    /**
+     * Block the producer until at least {@code samples} can be written.
+     *
+     * @return true if the space is available, false on timeout
+     */
+    public boolean awaitWritable(int samples, long timeoutNanos) throws InterruptedException {
+        if (availableToWrite() >= samples) return true;
+        
+        long deadline = System.nanoTime() + timeoutNanos;
+        waitingWriter = Thread.currentThread();
+        try {
+            while (availableToWrite() < samples) {
+                long remaining = deadline - System.nanoTime();
+                if (remaining <= 0) return false;
+                LockSupport.parkNanos(this, remaining);
+                if (Thread.interrupted()) throw new InterruptedException();
+            }
+            return true;
+        } finally {
+            waitingWriter = null;
+        }
+    }
+    
+    /**
+     * Discard all buffered samples. Only call while neither side is active.
+     */
+    public void clear() {
+        readIndex.set(writeIndex.get());
+    }
+    
+    private void publishWrite(long newWriteIndex) {
+        // Volatile store orders the sample writes before the index and the waiter check after it
+        writeIndex.set(newWriteIndex);
+        Thread reader = waitingReader;
+        if (reader != null) {
+            LockSupport.unpark(reader);
+        }
+    }
+    
+    private void publishRead(long newReadIndex) {
+        readIndex.set(newReadIndex);
+        Thread writer = waitingWriter;
+        if (writer != null) {
+            LockSupport.unpark(writer);
+        }
+    }
+}
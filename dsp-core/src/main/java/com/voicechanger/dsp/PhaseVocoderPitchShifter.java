@@ -0,0 +1,213 @@
+package com.voicechanger.dsp;
+
+import java.util.Arrays;
+
+/**
+ * Streaming STFT phase-vocoder pitch shifter on the shared {@link StftEffect} framing.
+ * Each hop the last {@code fftSize} input samples are analysed and every spectral peak is
+ * moved, together with the bins around it, from its true frequency {@code f} to
+ * {@code ratio * f}. The bins of a peak keep their shape and relative phases and the whole
+ * region is rotated by the phase the shift has accumulated, so consecutive frames stay
+ * coherent and the overlap-add keeps unity gain: shifted audio has the level of bypassed
+ * audio. Duration is preserved and block boundaries are seamless; the output is delayed by
+ * exactly {@code fftSize} samples.
+ *
+ * A ratio of exactly 1.0 passes the input through with the same delay without doing any FFTs.
+ * Subclasses can reshape the shifted magnitudes of each frame in the same pass through
+ * {@link #shapeSpectrum}.
+ */
+public class PhaseVocoderPitchShifter extends StftEffect implements PitchShifter {
+    public static final int DEFAULT_FFT_SIZE = 512;
+    public static final int DEFAULT_OVERLAP = 4;
+    
+    private static final double TWO_PI = 2.0 * Math.PI;
+    
+    private final double expectedPhaseAdvance;
+    
+    // Analysis phase of each bin in the previous frame
+    private final double[] lastPhase;
+    // Phase rotation accumulated by the peak region each analysis bin belonged to, this frame
+    // and the previous one
+    private double[] rotation;
+    private double[] lastRotation;
+    
+    // Per-frame work arrays
+    private final float[] analysisMagnitude;
+    private final float[] analysisFrequency;
+    private final float[] analysisPhase;
+    private final float[] synthesisMagnitude;
+    private final float[] synthesisPhase;
+    private final int[] peaks;
+    
+    private volatile float pitchRatio = 1.0f;
+    private float frameRatio = 1.0f;
+    
+    public PhaseVocoderPitchShifter() {
+        this(DEFAULT_FFT_SIZE, DEFAULT_OVERLAP);
+    }
+    
+    /**
+     * @param fftSize frame length, a power of two
+     * @param overlap frames per {@code fftSize} samples, at least 4
+     */
+    public PhaseVocoderPitchShifter(int fftSize, int overlap) {
+        super(fftSize, overlap);
+        this.expectedPhaseAdvance = TWO_PI * hopSize / fftSize;
+        
+        lastPhase = new double[bins];
+        rotation = new double[bins];
+        lastRotation = new double[bins];
+        analysisMagnitude = new float[bins];
+        analysisFrequency = new float[bins];
+        analysisPhase = new float[bins];
+        synthesisMagnitude = new float[bins];
+        synthesisPhase = new float[bins];
+        peaks = new int[bins];
+        
+        reset();
+    }
+    
+    @Override
+    public void setPitchRatio(float pitchRatio) {
+        this.pitchRatio = pitchRatio;
+    }
+    
+    @Override
+    public float getPitchRatio() {
+        return pitchRatio;
+    }
+    
+    @Override
+    protected boolean isBypassed() {
+        // Latch the ratio so a whole frame uses the same value
+        float ratio = pitchRatio;
+        frameRatio = ratio > 0.0f ? ratio : 1.0f;
+        boolean shaping = isShaping();
+        return frameRatio == 1.0f && !shaping;
+    }
+    
+    /**
+     * Checked once per frame, the place to latch shaping parameters; return true if
+     * {@link #shapeSpectrum} changes the frame, which keeps the stage running at a ratio of 1.0
+     */
+    protected boolean isShaping() {
+        return false;
+    }
+    
+    /**
+     * Reshape one frame before resynthesis
+     *
+     * @param analysisMagnitude magnitudes of the input bins
+     * @param synthesisMagnitude magnitudes after the shift, bin {@code k} coming from about
+     *                           {@code k / ratio}; modified in place
+     */
+    protected void shapeSpectrum(float[] analysisMagnitude, float[] synthesisMagnitude, float ratio) {
+    }
+    
+    @Override
+    protected void processSpectrum(float[] spectrum) {
+        float ratio = frameRatio;
+        int nyquist = bins - 1;
+        
+        // Analysis: magnitude, phase and true frequency (in bins) of each bin
+        for (int k = 0; k < bins; k++) {
+            double re;
+            double im;
+            if (k == 0) {
+                re = spectrum[0];
+                im = 0.0;
+            } else if (k == nyquist) {
+                re = spectrum[1];
+                im = 0.0;
+            } else {
+                re = spectrum[2 * k];
+                im = spectrum[2 * k + 1];
+            }
+            double phase = Math.atan2(im, re);
+            
+            double delta = phase - lastPhase[k];
+            lastPhase[k] = phase;
+            delta -= k * expectedPhaseAdvance;
+            
+            // Map the phase deviation into +/- pi
+            long wraps = (long) (delta / Math.PI);
+            if (wraps >= 0) wraps += wraps & 1;
+            else wraps -= wraps & 1;
+            delta -= Math.PI * wraps;
+            
+            analysisMagnitude[k] = (float) Math.sqrt(re * re + im * im);
+            analysisPhase[k] = (float) phase;
+            analysisFrequency[k] = (float) (k + overlap * delta / TWO_PI);
+        }
+        
+        int peakCount = 0;
+        for (int k = 1; k < nyquist; k++) {
+            float m = analysisMagnitude[k];
+            if (m > analysisMagnitude[k - 1] && m >= analysisMagnitude[k + 1]) {
+                peaks[peakCount++] = k;
+            }
+        }
+        
+        for (int k = 0; k < bins; k++) {
+            synthesisMagnitude[k] = 0.0f;
+            synthesisPhase[k] = 0.0f;
+        }
+        double[] previous = lastRotation;
+        lastRotation = rotation;
+        rotation = previous;
+        
+        // Move each peak's region, from the lowest bin after the previous peak to the lowest
+        // bin before the next, by a whole number of bins; the rotation advances by the exact
+        // shift per hop. Where regions collide when shifting down, the stronger bin wins.
+        int regionStart = 0;
+        for (int i = 0; i < peakCount; i++) {
+            int peak = peaks[i];
+            int regionEnd = nyquist;
+            if (i + 1 < peakCount) {
+                regionEnd = peak;
+                for (int k = peak + 1; k < peaks[i + 1]; k++) {
+                    if (analysisMagnitude[k] < analysisMagnitude[regionEnd]) {
+                        regionEnd = k;
+                    }
+                }
+            }
+            
+            double shift = analysisFrequency[peak] * (ratio - 1.0f);
+            int binShift = (int) Math.round(shift);
+            double peakRotation = lastRotation[peak] + TWO_PI * shift / overlap;
+            peakRotation -= TWO_PI * Math.floor(peakRotation / TWO_PI);
+            
+            for (int k = regionStart; k <= regionEnd; k++) {
+                rotation[k] = peakRotation;
+                int target = k + binShift;
+                if (target >= 0 && target < bins && analysisMagnitude[k] > synthesisMagnitude[target]) {
+                    synthesisMagnitude[target] = analysisMagnitude[k];
+                    synthesisPhase[target] = (float) (analysisPhase[k] + peakRotation);
+                }
+            }
+            regionStart = regionEnd + 1;
+        }
+        
+        shapeSpectrum(analysisMagnitude, synthesisMagnitude, ratio);
+        
+        for (int k = 0; k < bins; k++) {
+            float magnitude = synthesisMagnitude[k];
+            float re = (float) (magnitude * Math.cos(synthesisPhase[k]));
+            if (k == 0) {
+                spectrum[0] = re;
+            } else if (k == nyquist) {
+                spectrum[1] = re;
+            } else {
+                spectrum[2 * k] = re;
+                spectrum[2 * k + 1] = (float) (magnitude * Math.sin(synthesisPhase[k]));
+            }
+        }
+    }
+    
+    @Override
+    protected void resetSpectralState() {
+        Arrays.fill(lastPhase, 0.0);
+        Arrays.fill(rotation, 0.0);
+        Arrays.fill(lastRotation, 0.0);
+    }
+}
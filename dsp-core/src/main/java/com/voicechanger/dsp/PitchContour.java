@@ -0,0 +1,48 @@
+package com.voicechanger.dsp;
+
+/**
+ * Frame-by-frame pitch of a recording, as produced by {@link PitchTracker#track}: one
+ * frequency (0 when unvoiced) and one voicing probability per hop, plus the range statistics
+ * over the whole recording.
+ */
+public final class PitchContour {
+    private final float[] frequencies;
+    private final float[] voicing;
+    private final int frames;
+    private final float frameRate;
+    private final PitchStatistics statistics;
+    
+    PitchContour(float[] frequencies, float[] voicing, int frames, float frameRate, PitchStatistics statistics) {
+        this.frequencies = frequencies;
+        this.voicing = voicing;
+        this.frames = frames;
+        this.frameRate = frameRate;
+        this.statistics = statistics;
+    }
+    
+    public int getFrameCount() {
+        return frames;
+    }
+    
+    /**
+     * Frames per second
+     */
+    public float getFrameRate() {
+        return frameRate;
+    }
+    
+    /**
+     * Fundamental frequency of a frame in Hz, 0 if the frame is unvoiced
+     */
+    public float getFrequency(int frame) {
+        return frequencies[frame];
+    }
+    
+    public float getVoicingProbability(int frame) {
+        return voicing[frame];
+    }
+    
+    public PitchStatistics getStatistics() {
+        return statistics;
+    }
+}
@@ -0,0 +1,239 @@
+package com.voicechanger.dsp;
+
+import java.util.Arrays;
+
+/**
+ * Streaming pitch-period estimator and pitch-mark (epoch) placer for time-domain pitch shifting.
+ * The period is re-estimated every hop by normalized autocorrelation, computed as an FFT
+ * cross-correlation so a hop costs three real FFTs rather than a product per lag; marks are
+ * placed one period apart and snapped to the local waveform peak. In unvoiced or silent regions marks
+ * are placed at a fixed spacing and flagged as unvoiced.
+ *
+ * Mark positions are absolute sample indices counted from the first pushed sample.
+ */
+public class PitchMarkTracker {
+    private static final float VOICING_THRESHOLD = 0.6f;
+    private static final float OCTAVE_TOLERANCE = 0.9f;
+    private static final double SILENCE_ENERGY = 1e-6;
+    private static final int MARK_CAPACITY = 64;
+    
+    private final int minPeriod;
+    private final int maxPeriod;
+    private final int unvoicedPeriod;
+    private final int windowSize;
+    private final int hopSize;
+    
+    private final float[] history;
+    private final int historyMask;
+    private long written;
+    
+    // Autocorrelation work arrays: the frame, its spectrum and its leading window's spectrum
+    private final RealFft fft;
+    private final float[] frame;
+    private final float[] frameSpectrum;
+    private final float[] leadSpectrum;
+    private final double[] energyPrefix;
+    private final float[] correlation;
+    private int period;
+    private float confidence;
+    
+    // Marks ring, oldest at markTail
+    private final long[] markPositions = new long[MARK_CAPACITY];
+    private final int[] markPeriods = new int[MARK_CAPACITY];
+    private final boolean[] markVoiced = new boolean[MARK_CAPACITY];
+    private long markHead;
+    private long markTail;
+    private long lastMark;
+    
+    public PitchMarkTracker(int sampleRate) {
+        this(sampleRate, 70.0f, 400.0f);
+    }
+    
+    public PitchMarkTracker(int sampleRate, float minFrequency, float maxFrequency) {
+        minPeriod = Math.max(2, (int) (sampleRate / maxFrequency));
+        maxPeriod = (int) Math.ceil(sampleRate / minFrequency);
+        unvoicedPeriod = sampleRate / 100;
+        windowSize = maxPeriod;
+        hopSize = Math.max(1, maxPeriod / 2);
+        
+        int historySize = Integer.highestOneBit((windowSize + maxPeriod) * 2 - 1) << 1;
+        history = new float[historySize];
+        historyMask = historySize - 1;
+        
+        frame = new float[windowSize + maxPeriod];
+        int fftSize = Integer.highestOneBit(frame.length - 1) << 1;
+        fft = RealFft.forSize(fftSize);
+        frameSpectrum = new float[fftSize];
+        leadSpectrum = new float[fftSize];
+        energyPrefix = new double[frame.length + 1];
+        correlation = new float[maxPeriod + 2];
+        
+        reset();
+    }
+    
+    /**
+     * Add one sample; updates the period estimate every hop and places new marks
+     */
+    public void push(float sample) {
+        history[(int) written & historyMask] = sample;
+        written++;
+        
+        if (written % hopSize == 0 && written >= frame.length) {
+            estimatePeriod();
+        }
+        placeMark();
+    }
+    
+    private void estimatePeriod() {
+        long start = written - frame.length;
+        for (int i = 0; i < frame.length; i++) {
+            frame[i] = history[(int) (start + i) & historyMask];
+        }
+        for (int i = 0; i < frame.length; i++) {
+            energyPrefix[i + 1] = energyPrefix[i] + frame[i] * frame[i];
+        }
+        
+        double referenceEnergy = energyPrefix[windowSize];
+        if (referenceEnergy / windowSize < SILENCE_ENERGY) {
+            period = 0;
+            confidence = 0.0f;
+            return;
+        }
+        
+        // sum over the window of x[i] x[i + lag], as the inverse of conj(Lead) * Frame; the
+        // transform is long enough that no lag wraps around
+        System.arraycopy(frame, 0, frameSpectrum, 0, frame.length);
+        Arrays.fill(frameSpectrum, frame.length, frameSpectrum.length, 0.0f);
+        System.arraycopy(frame, 0, leadSpectrum, 0, windowSize);
+        Arrays.fill(leadSpectrum, windowSize, leadSpectrum.length, 0.0f);
+        fft.forward(frameSpectrum);
+        fft.forward(leadSpectrum);
+        frameSpectrum[0] *= leadSpectrum[0];
+        frameSpectrum[1] *= leadSpectrum[1];
+        for (int k = 2; k < frameSpectrum.length; k += 2) {
+            float fr = frameSpectrum[k];
+            float fi = frameSpectrum[k + 1];
+            float lr = leadSpectrum[k];
+            float li = leadSpectrum[k + 1];
+            frameSpectrum[k] = fr * lr + fi * li;
+            frameSpectrum[k + 1] = fi * lr - fr * li;
+        }
+        fft.inverse(frameSpectrum);
+        float scale = 1.0f / frameSpectrum.length;
+        
+        // Normalized autocorrelation over the candidate lags
+        float best = 0.0f;
+        for (int lag = minPeriod; lag <= maxPeriod; lag++) {
+            double sum = frameSpectrum[lag] * scale;
+            double lagEnergy = energyPrefix[lag + windowSize] - energyPrefix[lag];
+            float r = (float) (sum / Math.sqrt(referenceEnergy * lagEnergy + 1e-12));
+            correlation[lag] = r;
+            if (r > best) best = r;
+        }
+        
+        confidence = best;
+        if (best < VOICING_THRESHOLD) {
+            period = 0;
+            return;
+        }
+        
+        // Prefer the shortest lag close to the best peak to avoid picking sub-harmonics
+        for (int lag = minPeriod; lag <= maxPeriod; lag++) {
+            float r = correlation[lag];
+            boolean peak = (lag == minPeriod || r >= correlation[lag - 1])
+                    && (lag == maxPeriod || r >= correlation[lag + 1]);
+            if (peak && r >= OCTAVE_TOLERANCE * best) {
+                period = lag;
+                return;
+            }
+        }
+    }
+    
+    private void placeMark() {
+        boolean voiced = period > 0;
+        int spacing = voiced ? period : unvoicedPeriod;
+        int radius = voiced ? spacing / 4 : 0;
+        long candidate = lastMark + spacing;
+        if (candidate + radius >= written) return;
+        
+        // Snap voiced marks to the waveform peak around the expected position
+        long mark = candidate;
+        if (radius > 0) {
+            float peak = Float.NEGATIVE_INFINITY;
+            for (long n = candidate - radius; n <= candidate + radius; n++) {
+                float value = history[(int) n & historyMask];
+                if (value > peak) {
+                    peak = value;
+                    mark = n;
+                }
+            }
+        }
+        
+        if (markHead - markTail == MARK_CAPACITY) {
+            markTail++; // Consumer is not dropping marks; discard the oldest
+        }
+        int slot = (int) markHead & (MARK_CAPACITY - 1);
+        markPositions[slot] = mark;
+        markPeriods[slot] = spacing;
+        markVoiced[slot] = voiced;
+        markHead++;
+        lastMark = mark;
+    }
+    
+    public int getMarkCount() {
+        return (int) (markHead - markTail);
+    }
+    
+    /**
+     * Position of the {@code index}-th buffered mark, oldest first
+     */
+    public long getMarkPosition(int index) {
+        return markPositions[(int) (markTail + index) & (MARK_CAPACITY - 1)];
+    }
+    
+    public int getMarkPeriod(int index) {
+        return markPeriods[(int) (markTail + index) & (MARK_CAPACITY - 1)];
+    }
+    
+    public boolean isMarkVoiced(int index) {
+        return markVoiced[(int) (markTail + index) & (MARK_CAPACITY - 1)];
+    }
+    
+    /**
+     * Discard marks that lie before {@code position}
+     */
+    public void dropMarksBefore(long position) {
+        while (markTail < markHead && markPositions[(int) markTail & (MARK_CAPACITY - 1)] < position) {
+            markTail++;
+        }
+    }
+    
+    /**
+     * Current period estimate in samples, or 0 when unvoiced
+     */
+    public int getPeriod() {
+        return period;
+    }
+    
+    public float getConfidence() {
+        return confidence;
+    }
+    
+    public int getMinPeriod() {
+        return minPeriod;
+    }
+    
+    public int getMaxPeriod() {
+        return maxPeriod;
+    }
+    
+    public void reset() {
+        Arrays.fill(history, 0.0f);
+        written = 0;
+        period = 0;
+        confidence = 0.0f;
+        markHead = 0;
+        markTail = 0;
+        lastMark = 0;
+    }
+}
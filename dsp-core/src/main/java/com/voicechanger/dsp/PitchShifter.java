@@ -0,0 +1,21 @@
+package com.voicechanger.dsp;
+
+/**
+ * A streaming pitch shifter that keeps the duration of the signal unchanged.
+ * Implementations carry their analysis/synthesis state across calls and delay
+ * the signal by a fixed, known number of samples.
+ */
+public interface PitchShifter extends AudioEffect {
+    
+    /**
+     * Set the pitch ratio, e.g. 2.0 for one octave up, 0.5 for one octave down
+     */
+    void setPitchRatio(float pitchRatio);
+    
+    float getPitchRatio();
+    
+    /**
+     * Algorithmic delay between input and output, in samples
+     */
+    int getLatencySamples();
+}
@@ -0,0 +1,99 @@
+package com.voicechanger.dsp;
+
+import java.util.Arrays;
+
+/**
+ * Running statistics of a frequency track over analysis frames (a pitch or a formant, 20 Hz to
+ * 5 kHz): voiced share, exact extremes, and percentiles from a histogram of 10-cent bins, so the
+ * median and the range stay cheap to query however long the input is. Octave errors in single
+ * frames do not move the percentiles.
+ */
+public class PitchStatistics {
+    private static final float LOWEST_HZ = 20.0f;
+    private static final int BINS_PER_OCTAVE = 120;
+    private static final int OCTAVES = 8;
+    
+    private final int[] histogram = new int[BINS_PER_OCTAVE * OCTAVES];
+    private int frames;
+    private int voicedFrames;
+    private float min = Float.NaN;
+    private float max = Float.NaN;
+    
+    /**
+     * Count one frame; a frequency of 0 marks it unvoiced
+     */
+    public void add(float frequency) {
+        frames++;
+        if (frequency <= 0.0f) {
+            return;
+        }
+        voicedFrames++;
+        min = voicedFrames == 1 ? frequency : Math.min(min, frequency);
+        max = voicedFrames == 1 ? frequency : Math.max(max, frequency);
+        double octaves = Math.log(frequency / LOWEST_HZ) / Math.log(2.0);
+        int bin = (int) (octaves * BINS_PER_OCTAVE);
+        histogram[Math.max(0, Math.min(histogram.length - 1, bin))]++;
+    }
+    
+    public int getFrameCount() {
+        return frames;
+    }
+    
+    public int getVoicedCount() {
+        return voicedFrames;
+    }
+    
+    public float getVoicedFraction() {
+        return frames == 0 ? 0.0f : (float) voicedFrames / frames;
+    }
+    
+    /**
+     * Lowest voiced frequency, or NaN before the first voiced frame
+     */
+    public float getMin() {
+        return min;
+    }
+    
+    public float getMax() {
+        return max;
+    }
+    
+    /**
+     * Frequency below which {@code fraction} of the voiced frames lie, to within 10 cents;
+     * NaN before the first voiced frame
+     */
+    public float getPercentile(float fraction) {
+        if (voicedFrames == 0) {
+            return Float.NaN;
+        }
+        int target = Math.max(1, (int) Math.ceil(Math.max(0.0f, Math.min(1.0f, fraction)) * voicedFrames));
+        int seen = 0;
+        int bin = 0;
+        while ((seen += histogram[bin]) < target) {
+            bin++;
+        }
+        return (float) (LOWEST_HZ * Math.pow(2.0, (bin + 0.5) / BINS_PER_OCTAVE));
+    }
+    
+    public float getMedian() {
+        return getPercentile(0.5f);
+    }
+    
+    /**
+     * Speaking range between the 5th and 95th percentiles, in semitones
+     */
+    public float getRangeSemitones() {
+        if (voicedFrames == 0) {
+            return 0.0f;
+        }
+        return (float) (12.0 * Math.log(getPercentile(0.95f) / getPercentile(0.05f)) / Math.log(2.0));
+    }
+    
+    public void reset() {
+        Arrays.fill(histogram, 0);
+        frames = 0;
+        voicedFrames = 0;
+        min = Float.NaN;
+        max = Float.NaN;
+    }
+}
@@ -0,0 +1,348 @@
+package com.voicechanger.dsp;
+
+import java.util.Arrays;
+
+/**
+ * Streaming YIN fundamental-frequency tracker. Input is low-passed, which keeps formants from
+ * masquerading as the period, and every hop the last frame is analysed in two steps. The
+ * difference function is first searched on the signal decimated to about eight samples per
+ * period of the highest tracked pitch: built from an FFT cross-correlation and prefix energies,
+ * so a frame costs three small real FFTs rather than a product per lag, then normalized by its
+ * cumulative mean. That grid is too coarse to resolve a period between two lags, whose dip then
+ * looks shallow next to the one an octave below, so every coarse dip is re-measured at the
+ * full rate over the lags around it. The period is the first refined dip below
+ * {@value #THRESHOLD}, refined further by parabolic interpolation; periods outside the tracked
+ * range are unvoiced. The depth of the dip gives the voicing probability.
+ *
+ * Voiced frames feed a {@link PitchStatistics}, so a live stream yields the speaker's median
+ * and range as it goes. Processing never allocates.
+ */
+public class PitchTracker {
+    public static final float DEFAULT_MIN_HZ = 60.0f;
+    public static final float DEFAULT_MAX_HZ = 500.0f;
+    public static final int DEFAULT_HOP_MS = 10;
+    
+    // First normalized-difference dip below this is taken as the period
+    private static final float THRESHOLD = 0.15f;
+    // Frames whose best dip is above this are unvoiced
+    private static final float VOICED_THRESHOLD = 0.3f;
+    // Coarse dips above this are not worth refining
+    private static final float CANDIDATE_THRESHOLD = 0.6f;
+    // Mean power below about -60 dBFS is silence
+    private static final double SILENCE_POWER = 1e-6;
+    // Analysis rate relative to the highest tracked frequency, and the anti-alias cutoff
+    private static final int SAMPLES_PER_PERIOD = 8;
+    private static final float CUTOFF_RATIO = 0.3f;
+    
+    private final float sampleRate;
+    private final float minFrequency;
+    private final float maxFrequency;
+    private final float analysisRate;
+    private final int decimation;
+    private final FilterBank antiAlias = new FilterBank();
+    private final int minLag;
+    private final int maxLag;
+    private final int window;
+    private final int frameLength;
+    private final int hopSize;
+    private final RealFft fft;
+    
+    // Low-passed input at the full rate; the coarse frame takes every decimation-th sample
+    private final float[] history;
+    private final int historyMask;
+    private long written;
+    private int untilHop;
+    
+    // Frame spectrum, its leading window's spectrum, prefix energies, the normalized difference
+    // and the cumulative mean it was normalized by
+    private final float[] frame;
+    private final float[] lead;
+    private final double[] energy;
+    private final float[] difference;
+    private final double[] meanDifference;
+    // The frame at the full rate, the normalized full-rate difference around a coarse dip with
+    // one lag of margin either side, and the interpolated period and depth of its minimum
+    private final float[] fineFrame;
+    private final float[] fineDifference;
+    private double finePeriod;
+    private float fineDip;
+    
+    private final PitchStatistics statistics = new PitchStatistics();
+    private float frequency;
+    private float voicingProbability;
+    
+    public PitchTracker(int sampleRate) {
+        this(sampleRate, DEFAULT_MIN_HZ, DEFAULT_MAX_HZ, sampleRate * DEFAULT_HOP_MS / 1000);
+    }
+    
+    /**
+     * @param minFrequency lowest tracked frequency; the frame is two of its periods long
+     * @param maxFrequency highest tracked frequency
+     * @param hopSize samples between analyses
+     */
+    public PitchTracker(int sampleRate, float minFrequency, float maxFrequency, int hopSize) {
+        if (sampleRate <= 0 || minFrequency <= 0.0f || maxFrequency <= minFrequency
+                || maxFrequency > sampleRate / 4.0f || hopSize <= 0) {
+            throw new IllegalArgumentException("Invalid pitch tracker configuration");
+        }
+        this.sampleRate = sampleRate;
+        this.minFrequency = minFrequency;
+        this.maxFrequency = maxFrequency;
+        this.decimation = Math.max(1, (int) (sampleRate / (SAMPLES_PER_PERIOD * maxFrequency)));
+        this.analysisRate = (float) sampleRate / decimation;
+        if (decimation > 1) {
+            for (int section = 0; section < 2; section++) {
+                Biquad lowPass = new Biquad();
+                lowPass.design(Biquad.LOW_PASS, sampleRate, CUTOFF_RATIO * analysisRate, Biquad.BUTTERWORTH_Q, 0.0f);
+                antiAlias.add(lowPass);
+            }
+        }
+        this.minLag = Math.max(2, (int) (analysisRate / maxFrequency));
+        this.maxLag = (int) Math.ceil(analysisRate / minFrequency);
+        this.window = maxLag;
+        // One lag beyond the range for the interpolation
+        this.frameLength = window + maxLag + 1;
+        this.hopSize = hopSize;
+        
+        int fftSize = Integer.highestOneBit(frameLength - 1) << 1;
+        this.fft = RealFft.forSize(fftSize);
+        frame = new float[fftSize];
+        lead = new float[fftSize];
+        energy = new double[frameLength + 1];
+        difference = new float[maxLag + 2];
+        meanDifference = new double[maxLag + 2];
+        fineFrame = new float[frameLength * decimation];
+        fineDifference = new float[2 * decimation + 1];
+        
+        int historySize = Integer.highestOneBit(frameLength * decimation - 1) << 1;
+        history = new float[historySize];
+        historyMask = historySize - 1;
+        reset();
+    }
+    
+    /**
+     * Analyse a block of samples
+     *
+     * @return the number of frames completed during the block
+     */
+    public int process(float[] samples, int offset, int length) {
+        int frames = 0;
+        for (int i = offset; i < offset + length; i++) {
+            frames += push(samples[i]);
+        }
+        antiAlias.flushDenormals();
+        return frames;
+    }
+    
+    /**
+     * Analyse a block of 16-bit little-endian PCM
+     *
+     * @return the number of frames completed during the block
+     */
+    public int process(byte[] pcm, int byteOffset, int lengthBytes) {
+        int frames = 0;
+        for (int b = byteOffset; b + 1 < byteOffset + lengthBytes; b += 2) {
+            frames += push((short) ((pcm[b + 1] << 8) | (pcm[b] & 0xFF)) / 32768.0f);
+        }
+        antiAlias.flushDenormals();
+        return frames;
+    }
+    
+    private int push(float sample) {
+        history[(int) written & historyMask] = antiAlias.process(sample);
+        written++;
+        if (--untilHop > 0) {
+            return 0;
+        }
+        untilHop = hopSize;
+        if (written < (long) frameLength * decimation) {
+            return 0;
+        }
+        analyzeFrame();
+        statistics.add(frequency);
+        return 1;
+    }
+    
+    private void analyzeFrame() {
+        long start = written - (long) frameLength * decimation;
+        energy[0] = 0.0;
+        for (int n = 0; n < frameLength; n++) {
+            float x = history[(int) (start + (long) n * decimation) & historyMask];
+            frame[n] = x;
+            energy[n + 1] = energy[n] + x * x;
+        }
+        
+        double windowEnergy = energy[window];
+        if (windowEnergy < SILENCE_POWER * window) {
+            frequency = 0.0f;
+            voicingProbability = 0.0f;
+            return;
+        }
+        
+        // r(tau) = sum over the window of x[j] x[j + tau], as the inverse of conj(Lead) * Frame
+        Arrays.fill(frame, frameLength, frame.length, 0.0f);
+        System.arraycopy(frame, 0, lead, 0, window);
+        Arrays.fill(lead, window, lead.length, 0.0f);
+        fft.forward(frame);
+        fft.forward(lead);
+        frame[0] *= lead[0];
+        frame[1] *= lead[1];
+        for (int k = 2; k < frame.length; k += 2) {
+            float fr = frame[k];
+            float fi = frame[k + 1];
+            float lr = lead[k];
+            float li = lead[k + 1];
+            frame[k] = fr * lr + fi * li;
+            frame[k + 1] = fi * lr - fr * li;
+        }
+        fft.inverse(frame);
+        
+        // Cumulative mean normalized difference d'(tau) = d(tau) tau / sum d(1..tau)
+        float scale = 1.0f / frame.length;
+        double running = 0.0;
+        difference[0] = 1.0f;
+        for (int tau = 1; tau <= maxLag + 1; tau++) {
+            double d = windowEnergy + (energy[tau + window] - energy[tau]) - 2.0 * frame[tau] * scale;
+            d = Math.max(d, 0.0);
+            running += d;
+            meanDifference[tau] = running / tau;
+            difference[tau] = running > 0.0 ? (float) (d * tau / running) : 1.0f;
+        }
+        
+        for (int n = 0; n < fineFrame.length; n++) {
+            fineFrame[n] = history[(int) (start + n) & historyMask];
+        }
+        
+        // Refine each coarse dip in turn; the first one deep enough at the full rate wins
+        double period = 0.0;
+        float dip = Float.MAX_VALUE;
+        for (int tau = minLag; tau <= maxLag; tau++) {
+            float value = difference[tau];
+            if (value >= CANDIDATE_THRESHOLD || value > difference[tau - 1] || value >= difference[tau + 1]) {
+                continue;
+            }
+            refine(tau);
+            if (fineDip < dip) {
+                dip = fineDip;
+                period = finePeriod;
+            }
+            if (fineDip < THRESHOLD) {
+                break;
+            }
+        }
+        
+        if (period == 0.0) {
+            frequency = 0.0f;
+            voicingProbability = 0.0f;
+            return;
+        }
+        voicingProbability = Math.max(0.0f, Math.min(1.0f, 1.0f - dip));
+        if (dip > VOICED_THRESHOLD) {
+            frequency = 0.0f;
+            return;
+        }
+        
+        float f = (float) (sampleRate / period);
+        frequency = f >= minFrequency && f <= maxFrequency ? f : 0.0f;
+    }
+    
+    /**
+     * Measure the normalized difference at every full-rate lag within one coarse lag of
+     * {@code tau} and set {@code finePeriod} and {@code fineDip} from its minimum
+     */
+    private void refine(int tau) {
+        int first = (tau - 1) * decimation;
+        int span = window * decimation;
+        for (int i = 0; i < fineDifference.length; i++) {
+            int lag = first + i;
+            double d = 0.0;
+            for (int j = 0; j < span; j++) {
+                float delta = fineFrame[j] - fineFrame[j + lag];
+                d += delta * delta;
+            }
+            // The full-rate sum covers decimation times as many samples as the coarse mean
+            double position = (double) lag / decimation;
+            int below = (int) position;
+            double mean = meanDifference[below] + (position - below) * (meanDifference[below + 1] - meanDifference[below]);
+            fineDifference[i] = mean > 0.0 ? (float) (d / (decimation * mean)) : 1.0f;
+        }
+        
+        int best = 1;
+        for (int i = 2; i < fineDifference.length - 1; i++) {
+            if (fineDifference[i] < fineDifference[best]) {
+                best = i;
+            }
+        }
+        float a = fineDifference[best - 1];
+        float b = fineDifference[best];
+        float c = fineDifference[best + 1];
+        float curvature = a - 2.0f * b + c;
+        finePeriod = first + best;
+        if (curvature > 0.0f) {
+            finePeriod += 0.5f * (a - c) / curvature;
+        }
+        fineDip = b;
+    }
+    
+    /**
+     * Fundamental frequency of the most recent frame in Hz, 0 if it was unvoiced
+     */
+    public float getFrequency() {
+        return frequency;
+    }
+    
+    /**
+     * How periodic the most recent frame was, from 0 (noise or silence) to 1
+     */
+    public float getVoicingProbability() {
+        return voicingProbability;
+    }
+    
+    /**
+     * Statistics over every frame since the last reset
+     */
+    public PitchStatistics getStatistics() {
+        return statistics;
+    }
+    
+    public int getHopSize() {
+        return hopSize;
+    }
+    
+    /**
+     * Input samples spanned by one analysis frame
+     */
+    public int getLatencySamples() {
+        return frameLength * decimation;
+    }
+    
+    public void reset() {
+        Arrays.fill(history, 0.0f);
+        written = 0;
+        untilHop = hopSize;
+        antiAlias.reset();
+        frequency = 0.0f;
+        voicingProbability = 0.0f;
+        statistics.reset();
+    }
+    
+    /**
+     * Pitch contour of a whole recording, one frame per default hop
+     */
+    public static PitchContour track(float[] samples, int offset, int length, int sampleRate) {
+        PitchTracker tracker = new PitchTracker(sampleRate);
+        int capacity = length / tracker.hopSize + 1;
+        float[] frequencies = new float[capacity];
+        float[] voicing = new float[capacity];
+        int frames = 0;
+        for (int i = offset; i < offset + length; i += tracker.hopSize) {
+            if (tracker.process(samples, i, Math.min(tracker.hopSize, offset + length - i)) > 0) {
+                frequencies[frames] = tracker.frequency;
+                voicing[frames] = tracker.voicingProbability;
+                frames++;
+            }
+        }
+        return new PitchContour(frequencies, voicing, frames, (float) sampleRate / tracker.hopSize,
+                tracker.statistics);
+    }
+}
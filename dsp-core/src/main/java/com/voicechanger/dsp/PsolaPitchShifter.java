@@ -0,0 +1,154 @@
+package com.voicechanger.dsp;
+
+import java.util.Arrays;
+
+/**
+ * Time-domain pitch-synchronous overlap-add (TD-PSOLA) pitch shifter.
+ * Two-period Hann grains are taken around the marks of a {@link PitchMarkTracker} and
+ * overlap-added at a spacing of {@code period / ratio}, so pitch changes while duration does
+ * not. Where the grains leave gaps (ratio below 1) the sum is normalized by the window sum so
+ * the level does not dip. Cost is a few operations per sample plus one autocorrelation per
+ * tracker hop.
+ *
+ * The output is delayed by two maximum pitch periods.
+ */
+public class PsolaPitchShifter implements PitchShifter {
+    private static final int WINDOW_TABLE_SIZE = 1024;
+    private static final float MIN_WINDOW_SUM = 1e-3f;
+    
+    private final PitchMarkTracker tracker;
+    private final int maxPeriod;
+    private final int latency;
+    
+    private final float[] window = new float[WINDOW_TABLE_SIZE + 1];
+    private final float[] history;
+    private final int historyMask;
+    private final float[] accumulator;
+    private final float[] windowSum;
+    private final int outputMask;
+    
+    private long inputCount;
+    private long nextSynthesisMark;
+    
+    private volatile float pitchRatio = 1.0f;
+    
+    public PsolaPitchShifter(int sampleRate) {
+        this(new PitchMarkTracker(sampleRate));
+    }
+    
+    public PsolaPitchShifter(PitchMarkTracker tracker) {
+        this.tracker = tracker;
+        this.maxPeriod = tracker.getMaxPeriod();
+        this.latency = 2 * maxPeriod;
+        
+        for (int i = 0; i <= WINDOW_TABLE_SIZE; i++) {
+            window[i] = (float) (0.5 - 0.5 * Math.cos(2.0 * Math.PI * i / WINDOW_TABLE_SIZE));
+        }
+        
+        // Grains read up to three periods behind the emitted sample and write up to two ahead
+        int historySize = Integer.highestOneBit(8 * maxPeriod - 1) << 1;
+        history = new float[historySize];
+        historyMask = historySize - 1;
+        int outputSize = Integer.highestOneBit(4 * maxPeriod - 1) << 1;
+        accumulator = new float[outputSize];
+        windowSum = new float[outputSize];
+        outputMask = outputSize - 1;
+        
+        reset();
+    }
+    
+    @Override
+    public void setPitchRatio(float pitchRatio) {
+        this.pitchRatio = pitchRatio;
+    }
+    
+    @Override
+    public float getPitchRatio() {
+        return pitchRatio;
+    }
+    
+    @Override
+    public int getLatencySamples() {
+        return latency;
+    }
+    
+    @Override
+    public void process(float[] samples, int offset, int length) {
+        float ratio = pitchRatio;
+        boolean bypass = ratio == 1.0f || ratio <= 0.0f;
+        
+        for (int i = offset; i < offset + length; i++) {
+            history[(int) inputCount & historyMask] = samples[i];
+            tracker.push(samples[i]);
+            inputCount++;
+            
+            // Input time of the sample emitted now
+            long position = inputCount - 1 - latency;
+            int slot = (int) position & outputMask;
+            
+            if (bypass) {
+                samples[i] = history[(int) position & historyMask];
+                nextSynthesisMark = position + 1;
+            } else {
+                while (nextSynthesisMark - maxPeriod <= position) {
+                    addGrain(ratio, position);
+                }
+                float weight = windowSum[slot];
+                samples[i] = weight > MIN_WINDOW_SUM
+                        ? accumulator[slot] / Math.min(weight, 1.0f)
+                        : history[(int) position & historyMask];
+            }
+            accumulator[slot] = 0.0f;
+            windowSum[slot] = 0.0f;
+            
+            tracker.dropMarksBefore(position - 2 * maxPeriod);
+        }
+    }
+    
+    private void addGrain(float ratio, long position) {
+        long target = nextSynthesisMark;
+        
+        // Nearest analysis mark whose whole grain has been received
+        int best = -1;
+        long bestDistance = Long.MAX_VALUE;
+        for (int m = 0; m < tracker.getMarkCount(); m++) {
+            long mark = tracker.getMarkPosition(m);
+            if (mark + tracker.getMarkPeriod(m) > inputCount) break;
+            long distance = Math.abs(mark - target);
+            if (distance < bestDistance) {
+                bestDistance = distance;
+                best = m;
+            }
+        }
+        if (best < 0) {
+            // Nothing to copy yet; the dry signal fills the gap
+            nextSynthesisMark += maxPeriod / 2;
+            return;
+        }
+        
+        long mark = tracker.getMarkPosition(best);
+        int period = tracker.getMarkPeriod(best);
+        float step = WINDOW_TABLE_SIZE / (2.0f * period);
+        for (int j = -period; j < period; j++) {
+            long destination = target + j;
+            if (destination < position) continue; // Already emitted
+            float w = window[(int) ((j + period) * step)];
+            int slot = (int) destination & outputMask;
+            accumulator[slot] += w * history[(int) (mark + j) & historyMask];
+            windowSum[slot] += w;
+        }
+        
+        // Unvoiced grains keep their original spacing
+        nextSynthesisMark += tracker.isMarkVoiced(best) ? Math.max(1, Math.round(period / ratio)) : period;
+    }
+    
+    @Override
+    public void reset() {
+        tracker.reset();
+        Arrays.fill(history, 0.0f);
+        Arrays.fill(accumulator, 0.0f);
+        Arrays.fill(windowSum, 0.0f);
+        inputCount = 0;
+        nextSynthesisMark = 0;
+    }
+}
@@ -0,0 +1,182 @@
+package com.voicechanger.dsp;
+
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * In-place FFT of real signals. An N-point real transform is computed as an N/2-point complex
+ * FFT over the even/odd sample pairs followed by a split step, so it costs about half of a
+ * complex FFT of the same size.
+ *
+ * Spectra use the packed layout: {@code data[0]} is the DC bin, {@code data[1]} the Nyquist bin
+ * (both purely real) and {@code data[2k], data[2k + 1]} are the real and imaginary parts of
+ * bin {@code k} for {@code 0 < k < N/2}. Instances are immutable and shared per size through
+ * {@link #forSize}; transforms do not allocate.
+ */
+public final class RealFft {
+    private static final ConcurrentHashMap<Integer, RealFft> CACHE = new ConcurrentHashMap<>();
+    
+    private final int size;
+    private final int half;
+    
+    // Tables of the N/2-point complex transform
+    private final int[] bitReverse;
+    private final float[] cosTable;
+    private final float[] sinTable;
+    
+    // Split twiddles exp(-2 pi i k / N) for k = 0..N/4
+    private final float[] splitCos;
+    private final float[] splitSin;
+    
+    public RealFft(int size) {
+        if (size < 4 || Integer.bitCount(size) != 1) {
+            throw new IllegalArgumentException("Real FFT size must be a power of two >= 4: " + size);
+        }
+        this.size = size;
+        this.half = size / 2;
+        
+        bitReverse = new int[half];
+        int bits = Integer.numberOfTrailingZeros(half);
+        for (int i = 0; i < half; i++) {
+            bitReverse[i] = bits == 0 ? 0 : Integer.reverse(i) >>> (32 - bits);
+        }
+        
+        cosTable = new float[half / 2];
+        sinTable = new float[half / 2];
+        for (int i = 0; i < half / 2; i++) {
+            double angle = -2.0 * Math.PI * i / half;
+            cosTable[i] = (float) Math.cos(angle);
+            sinTable[i] = (float) Math.sin(angle);
+        }
+        
+        splitCos = new float[half / 2 + 1];
+        splitSin = new float[half / 2 + 1];
+        for (int k = 0; k <= half / 2; k++) {
+            double angle = -2.0 * Math.PI * k / size;
+            splitCos[k] = (float) Math.cos(angle);
+            splitSin[k] = (float) Math.sin(angle);
+        }
+    }
+    
+    /**
+     * Shared instance for {@code size}; tables are built once per size and process
+     */
+    public static RealFft forSize(int size) {
+        RealFft fft = CACHE.get(size);
+        if (fft == null) {
+            fft = new RealFft(size);
+            RealFft existing = CACHE.putIfAbsent(size, fft);
+            if (existing != null) {
+                fft = existing;
+            }
+        }
+        return fft;
+    }
+    
+    public int size() {
+        return size;
+    }
+    
+    /**
+     * Forward transform of {@code size} real samples into the packed spectrum, in place.
+     * No scaling is applied.
+     */
+    public void forward(float[] data) {
+        complexTransform(data, false);
+        
+        float z0r = data[0];
+        float z0i = data[1];
+        data[0] = z0r + z0i;
+        data[1] = z0r - z0i;
+        
+        for (int k = 1; k <= half / 2; k++) {
+            int a = 2 * k;
+            int b = 2 * (half - k);
+            float ar = data[a], ai = data[a + 1];
+            float br = data[b], bi = data[b + 1];
+            
+            // Even and odd half-spectra: Ze = (Z[k] + conj(Z[M-k])) / 2, Zo = (Z[k] - conj(Z[M-k])) / 2i
+            float er = 0.5f * (ar + br);
+            float ei = 0.5f * (ai - bi);
+            float or = 0.5f * (ai + bi);
+            float oi = -0.5f * (ar - br);
+            
+            // X[k] = Ze + W^k Zo, X[M-k] = conj(Ze - W^k Zo)
+            float wr = splitCos[k], wi = splitSin[k];
+            float tr = or * wr - oi * wi;
+            float ti = or * wi + oi * wr;
+            data[a] = er + tr;
+            data[a + 1] = ei + ti;
+            data[b] = er - tr;
+            data[b + 1] = ti - ei;
+        }
+    }
+    
+    /**
+     * Inverse transform of a packed spectrum back to {@code size} real samples, in place.
+     * No 1/N scaling is applied, so {@code inverse(forward(x)) == N * x}.
+     */
+    public void inverse(float[] data) {
+        float dc = data[0];
+        float nyquist = data[1];
+        data[0] = dc + nyquist;
+        data[1] = dc - nyquist;
+        
+        for (int k = 1; k <= half / 2; k++) {
+            int a = 2 * k;
+            int b = 2 * (half - k);
+            float ar = data[a], ai = data[a + 1];
+            float br = data[b], bi = data[b + 1];
+            
+            // Undo the split: Ze = X[k] + conj(X[M-k]), Zo = conj(W^k) (X[k] - conj(X[M-k]))
+            float er = ar + br;
+            float ei = ai - bi;
+            float dr = ar - br;
+            float di = ai + bi;
+            float wr = splitCos[k], wi = -splitSin[k];
+            float or = dr * wr - di * wi;
+            float oi = dr * wi + di * wr;
+            
+            // Z[k] = Ze + i Zo, Z[M-k] = conj(Ze) + i conj(Zo)
+            data[a] = er - oi;
+            data[a + 1] = ei + or;
+            data[b] = er + oi;
+            data[b + 1] = or - ei;
+        }
+        
+        complexTransform(data, true);
+    }
+    
+    /**
+     * N/2-point complex FFT on interleaved (re, im) pairs
+     */
+    private void complexTransform(float[] data, boolean inverse) {
+        for (int i = 0; i < half; i++) {
+            int j = bitReverse[i];
+            if (j > i) {
+                int a = 2 * i;
+                int b = 2 * j;
+                float t = data[a]; data[a] = data[b]; data[b] = t;
+                t = data[a + 1]; data[a + 1] = data[b + 1]; data[b + 1] = t;
+            }
+        }
+        
+        float sign = inverse ? -1.0f : 1.0f;
+        for (int span = 1; span < half; span <<= 1) {
+            int step = half / (span << 1);
+            for (int start = 0; start < half; start += span << 1) {
+                for (int k = 0; k < span; k++) {
+                    float wr = cosTable[k * step];
+                    float wi = sign * sinTable[k * step];
+                    int a = 2 * (start + k);
+                    int b = a + 2 * span;
+                    float tr = data[b] * wr - data[b + 1] * wi;
+                    float ti = data[b] * wi + data[b + 1] * wr;
+                    data[b] = data[a] - tr;
+                    data[b + 1] = data[a + 1] - ti;
+                    data[a] += tr;
+                    data[a + 1] += ti;
+                }
+            }
+        }
+    }
+}
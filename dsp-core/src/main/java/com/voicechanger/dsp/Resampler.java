@@ -0,0 +1,200 @@
+package com.voicechanger.dsp;
+
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Streaming polyphase sample-rate converter for rational ratios, e.g. 44.1 or 48 kHz capture
+ * to the 16 kHz pipeline and back. The ratio is reduced to {@code L/M} and a Kaiser-windowed
+ * sinc is precomputed as L phases, one per output position between two input samples, so each
+ * output sample is a single dot product against the input history. The stopband starts at the
+ * lower of the two Nyquist frequencies: downsampling does not alias and upsampling leaves no
+ * images.
+ *
+ * Tables depend only on the reduced ratio and the quality, and are shared between instances.
+ */
+public class Resampler {
+    
+    /**
+     * Filter length (in samples at the lower rate) and Kaiser beta of each tier. Longer filters
+     * have a narrower transition band, so more of the band below Nyquist is kept.
+     */
+    public enum Quality {
+        /** About 60 dB rejection, flat to roughly 60% of the lower Nyquist */
+        FAST(16, 6.0),
+        /** About 80 dB rejection, flat to roughly 75% of the lower Nyquist */
+        MEDIUM(32, 8.0),
+        /** About 100 dB rejection, flat to roughly 85% of the lower Nyquist */
+        HIGH(64, 10.0);
+        
+        final int taps;
+        final double beta;
+        
+        Quality(int taps, double beta) {
+            this.taps = taps;
+            this.beta = beta;
+        }
+    }
+    
+    // Largest reduced interpolation factor; covers every pair of common audio rates
+    public static final int MAX_PHASES = 1024;
+    
+    private static final ConcurrentHashMap<Long, Table> TABLES = new ConcurrentHashMap<>();
+    
+    private final Table table;
+    
+    // Doubled ring so the last `taps` inputs are always contiguous, oldest first
+    private final float[] history;
+    private int writeIndex;
+    
+    // Position of the next output after the newest input, in 1/L input samples
+    private int phase;
+    
+    public Resampler(int inputRate, int outputRate, Quality quality) {
+        this.table = table(inputRate, outputRate, quality);
+        this.history = new float[2 * table.taps];
+    }
+    
+    /**
+     * Largest number of samples {@link #process} can produce from {@code inputLength} inputs
+     */
+    public int getMaxOutput(int inputLength) {
+        return (int) (((long) inputLength * table.phases + table.step - 1) / table.step) + 1;
+    }
+    
+    /**
+     * Filter delay, in input samples
+     */
+    public int getLatency() {
+        return table.taps / 2;
+    }
+    
+    /**
+     * Convert {@code inLength} inputs; returns the number of samples written to {@code output},
+     * which must have room for {@link #getMaxOutput(int)} of them
+     */
+    public int process(float[] input, int inOffset, int inLength, float[] output, int outOffset) {
+        final Table t = table;
+        final float[] coefficients = t.coefficients;
+        final float[] h = history;
+        final int taps = t.taps;
+        int w = writeIndex;
+        int p = phase;
+        int out = outOffset;
+        
+        for (int i = inOffset; i < inOffset + inLength; i++) {
+            float x = input[i];
+            h[w] = x;
+            h[w + taps] = x;
+            w = w + 1 == taps ? 0 : w + 1;
+            
+            while (p < t.phases) {
+                int c = p * taps;
+                float sum = 0.0f;
+                for (int k = 0; k < taps; k++) {
+                    sum += coefficients[c + k] * h[w + k];
+                }
+                output[out++] = sum;
+                p += t.step;
+            }
+            p -= t.phases;
+        }
+        
+        writeIndex = w;
+        phase = p;
+        return out - outOffset;
+    }
+    
+    public void reset() {
+        Arrays.fill(history, 0.0f);
+        writeIndex = 0;
+        phase = 0;
+    }
+    
+    private static Table table(int inputRate, int outputRate, Quality quality) {
+        if (inputRate <= 0 || outputRate <= 0) {
+            throw new IllegalArgumentException("Sample rates must be positive");
+        }
+        int gcd = gcd(inputRate, outputRate);
+        int phases = outputRate / gcd;
+        int step = inputRate / gcd;
+        if (phases > MAX_PHASES) {
+            throw new IllegalArgumentException("Unsupported ratio " + inputRate + " -> " + outputRate);
+        }
+        long key = ((long) phases << 32) | ((long) step << 2) | quality.ordinal();
+        Table table = TABLES.get(key);
+        if (table == null) {
+            table = new Table(phases, step, quality);
+            Table existing = TABLES.putIfAbsent(key, table);
+            if (existing != null) {
+                table = existing;
+            }
+        }
+        return table;
+    }
+    
+    private static int gcd(int a, int b) {
+        while (b != 0) {
+            int r = a % b;
+            a = b;
+            b = r;
+        }
+        return a;
+    }
+    
+    private static final class Table {
+        final int phases;
+        final int step;
+        final int taps;
+        final float[] coefficients;
+        
+        Table(int phases, int step, Quality quality) {
+            this.phases = phases;
+            this.step = step;
+            
+            // Filter length is set at the lower rate, so decimation needs proportionally more taps
+            double decimation = Math.max(1.0, (double) step / phases);
+            int length = (int) Math.ceil(quality.taps * decimation);
+            this.taps = length + (length & 1);
+            
+            // Kaiser design: place the transition band just below the lower Nyquist
+            double attenuation = quality.beta / 0.1102 + 8.7;
+            double transition = (attenuation - 8.0) / (2.285 * quality.taps * Math.PI);
+            double cutoff = (1.0 - transition / 2.0) / decimation;
+            
+            coefficients = new float[phases * taps];
+            double half = taps / 2.0;
+            double norm = besselI0(quality.beta);
+            for (int p = 0; p < phases; p++) {
+                double fraction = (double) p / phases;
+                double sum = 0.0;
+                for (int k = 0; k < taps; k++) {
+                    // Distance from the output position to input k (oldest first)
+                    double u = half - 1 - k + fraction;
+                    double r = u / half;
+                    double window = r <= -1.0 || r >= 1.0 ? 0.0 : besselI0(quality.beta * Math.sqrt(1.0 - r * r)) / norm;
+                    double x = Math.PI * cutoff * u;
+                    double sinc = x == 0.0 ? 1.0 : Math.sin(x) / x;
+                    double value = cutoff * sinc * window;
+                    coefficients[p * taps + k] = (float) value;
+                    sum += value;
+                }
+                // Unity gain at DC for every phase
+                for (int k = 0; k < taps; k++) {
+                    coefficients[p * taps + k] /= (float) sum;
+                }
+            }
+        }
+    }
+    
+    private static double besselI0(double x) {
+        double sum = 1.0;
+        double term = 1.0;
+        double q = x * x / 4.0;
+        for (int k = 1; k < 50 && term > 1e-12 * sum; k++) {
+            term *= q / ((double) k * k);
+            sum += term;
+        }
+        return sum;
+    }
+}
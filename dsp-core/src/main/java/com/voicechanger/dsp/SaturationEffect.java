@@ -0,0 +1,70 @@
+package com.voicechanger.dsp;
+
+/**
+ * Soft saturation (tanh) used for vocal warmth, evaluated through {@link TanhTable}.
+ * A drive of 0 bypasses the stage.
+ *
+ * With oversampling enabled the signal is shaped at twice the sample rate: midpoints are
+ * interpolated with a 4-tap half-band kernel and the shaped stream is decimated through a
+ * [1/4, 1/2, 1/4] low-pass, which keeps most of the generated harmonics from folding back.
+ * This delays the output by two samples.
+ */
+public class SaturationEffect implements AudioEffect {
+    private float drive = 0.0f;
+    private boolean oversampling = false;
+    
+    // Oversampler state: the last three inputs and the previous shaped midpoint
+    private float x0;
+    private float x1;
+    private float x2;
+    private float previousMid;
+    
+    public void setDrive(float drive) {
+        this.drive = drive;
+    }
+    
+    public void setOversampling(boolean oversampling) {
+        if (this.oversampling != oversampling) {
+            this.oversampling = oversampling;
+            reset();
+        }
+    }
+    
+    @Override
+    public void process(float[] samples, int offset, int length) {
+        if (drive == 0.0f) return;
+        
+        float d = drive;
+        if (!oversampling) {
+            for (int i = offset; i < offset + length; i++) {
+                samples[i] = TanhTable.tanh(samples[i] * d);
+            }
+            return;
+        }
+        
+        float a = x2, b = x1, c = x0;
+        float prevMid = previousMid;
+        for (int i = offset; i < offset + length; i++) {
+            float x = samples[i];
+            // Midpoint between b and c, then output the sample at b
+            float mid = TanhTable.tanh((9.0f * (b + c) - a - x) * (1.0f / 16.0f) * d);
+            samples[i] = 0.25f * (prevMid + mid) + 0.5f * TanhTable.tanh(b * d);
+            prevMid = mid;
+            a = b;
+            b = c;
+            c = x;
+        }
+        x2 = a;
+        x1 = b;
+        x0 = c;
+        previousMid = prevMid;
+    }
+    
+    @Override
+    public void reset() {
+        x0 = 0.0f;
+        x1 = 0.0f;
+        x2 = 0.0f;
+        previousMid = 0.0f;
+    }
+}
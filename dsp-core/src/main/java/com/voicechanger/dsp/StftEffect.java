@@ -0,0 +1,144 @@
+package com.voicechanger.dsp;
+
+import java.util.Arrays;
+
+/**
+ * Shared streaming STFT framing for spectral stages: an input FIFO, Hann analysis and synthesis
+ * windows, the real FFT and a persistent overlap-add accumulator. Subclasses only modify the
+ * packed spectrum of each frame (see {@link RealFft} for the layout). A frame is processed every
+ * {@code fftSize / overlap} samples, so the cost per hop is fixed; block size does not affect
+ * the result and the output is delayed by exactly {@code fftSize} samples.
+ *
+ * With the spectrum left untouched the output equals the delayed input. While
+ * {@link #isBypassed()} returns true the stage passes the dry signal with the same delay and
+ * skips the FFTs.
+ */
+public abstract class StftEffect implements AudioEffect {
+    protected final int fftSize;
+    protected final int overlap;
+    protected final int hopSize;
+    protected final int bins;
+    
+    private final RealFft fft;
+    private final float[] window;
+    private final int fifoStart;
+    private final float outputScale;
+    
+    // Streaming state
+    private final float[] inFifo;
+    private final float[] outFifo;
+    private final float[] outputAccum;
+    private final float[] frame;
+    private int rover;
+    private boolean bypassed = true;
+    
+    /**
+     * @param fftSize frame length, a power of two
+     * @param overlap frames per {@code fftSize} samples, at least 4 so the squared Hann
+     *                windows add up to a constant
+     */
+    protected StftEffect(int fftSize, int overlap) {
+        if (overlap < 4 || fftSize % overlap != 0) {
+            throw new IllegalArgumentException("Overlap must be at least 4 and divide the FFT size");
+        }
+        this.fft = RealFft.forSize(fftSize);
+        this.fftSize = fftSize;
+        this.overlap = overlap;
+        this.hopSize = fftSize / overlap;
+        this.bins = fftSize / 2 + 1;
+        this.window = Window.hann(fftSize);
+        this.fifoStart = fftSize - hopSize;
+        
+        // Squared Hann windows at this overlap sum to 3/8 * overlap; the inverse FFT adds fftSize
+        this.outputScale = 8.0f / (3.0f * overlap * fftSize);
+        
+        inFifo = new float[fftSize];
+        outFifo = new float[fftSize];
+        outputAccum = new float[fftSize * 2];
+        frame = new float[fftSize];
+    }
+    
+    /**
+     * Modify one frame's packed spectrum in place
+     */
+    protected abstract void processSpectrum(float[] spectrum);
+    
+    /**
+     * Checked once per frame; return true to pass the dry signal through
+     */
+    protected boolean isBypassed() {
+        return false;
+    }
+    
+    /**
+     * Clear subclass state that must not carry over a bypassed stretch or a reset
+     */
+    protected void resetSpectralState() {
+    }
+    
+    /**
+     * Algorithmic delay between input and output, in samples
+     */
+    public int getLatencySamples() {
+        return fftSize;
+    }
+    
+    public int getFftSize() {
+        return fftSize;
+    }
+    
+    @Override
+    public void process(float[] samples, int offset, int length) {
+        for (int i = offset; i < offset + length; i++) {
+            inFifo[rover] = samples[i];
+            samples[i] = outFifo[rover - fifoStart];
+            rover++;
+            
+            if (rover >= fftSize) {
+                rover = fifoStart;
+                processFrame();
+                
+                // Slide the input window by one hop
+                System.arraycopy(inFifo, hopSize, inFifo, 0, fifoStart);
+            }
+        }
+    }
+    
+    private void processFrame() {
+        if (isBypassed()) {
+            // Dry signal with the same delay: oldest hop of the current window
+            System.arraycopy(inFifo, 0, outFifo, 0, hopSize);
+            if (!bypassed) {
+                Arrays.fill(outputAccum, 0.0f);
+                resetSpectralState();
+                bypassed = true;
+            }
+            return;
+        }
+        bypassed = false;
+        
+        for (int k = 0; k < fftSize; k++) {
+            frame[k] = inFifo[k] * window[k];
+        }
+        fft.forward(frame);
+        processSpectrum(frame);
+        fft.inverse(frame);
+        
+        // Windowed overlap-add
+        for (int k = 0; k < fftSize; k++) {
+            outputAccum[k] += outputScale * window[k] * frame[k];
+        }
+        System.arraycopy(outputAccum, 0, outFifo, 0, hopSize);
+        System.arraycopy(outputAccum, hopSize, outputAccum, 0, fftSize);
+    }
+    
+    @Override
+    public void reset() {
+        Arrays.fill(inFifo, 0.0f);
+        Arrays.fill(outFifo, 0.0f);
+        Arrays.fill(outputAccum, 0.0f);
+        resetSpectralState();
+        rover = fifoStart;
+        bypassed = true;
+    }
+}
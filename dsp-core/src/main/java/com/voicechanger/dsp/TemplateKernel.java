@@ -0,0 +1,59 @@
+package com.voicechanger.dsp;
+
+/**
+ * Fused per-sample stages of a voice template: warmth saturation, the clarity high-pass and
+ * EQ filter bank, and breathiness noise, applied in that order in a single pass over the block.
+ * Parameters and filter coefficients are fixed at construction and stages that were compiled
+ * out cost nothing; only the filter memories change between calls.
+ */
+public final class TemplateKernel implements AudioEffect {
+    private final float drive;
+    private final FilterBank filters;
+    private final float dry;
+    private final float noiseLevel;
+    private final boolean saturate;
+    private final boolean filter;
+    private final boolean addNoise;
+    
+    private final NoiseGenerator noise = new NoiseGenerator();
+    
+    /**
+     * @param drive saturation drive, 0 to skip the stage
+     * @param filters clarity and EQ sections, empty to skip the stage
+     * @param breathiness noise mix, 0 to skip the stage
+     */
+    TemplateKernel(float drive, FilterBank filters, float breathiness) {
+        this.drive = drive;
+        this.filters = filters;
+        this.dry = 1.0f - breathiness;
+        this.noiseLevel = breathiness * 0.1f;
+        this.saturate = drive != 0.0f;
+        this.filter = filters.size() > 0;
+        this.addNoise = breathiness != 0.0f;
+    }
+    
+    @Override
+    public void process(float[] samples, int offset, int length) {
+        for (int i = offset; i < offset + length; i++) {
+            float x = samples[i];
+            if (saturate) {
+                x = TanhTable.tanh(x * drive);
+            }
+            if (filter) {
+                x = filters.process(x);
+            }
+            if (addNoise) {
+                x = x * dry + noise.nextWhite() * noiseLevel;
+            }
+            samples[i] = x;
+        }
+        if (filter) {
+            filters.flushDenormals();
+        }
+    }
+    
+    @Override
+    public void reset() {
+        filters.reset();
+    }
+}
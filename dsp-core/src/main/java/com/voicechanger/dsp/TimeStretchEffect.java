@@ -0,0 +1,67 @@
+package com.voicechanger.dsp;
+
+/**
+ * In-place speaking-rate stage for real-time chains, backed by an elastic
+ * {@link WsolaTimeStretcher}. Each block is written to the stretcher and the same number of
+ * samples is read back. The stretcher keeps enough delay in reserve that a block is always
+ * available, and never lets the delay grow more than {@code elasticMs} beyond that reserve,
+ * so a sustained rate change falls back to the natural rate instead of queueing without bound.
+ */
+public class TimeStretchEffect implements AudioEffect {
+    private final WsolaTimeStretcher stretcher;
+    private final int elasticSamples;
+    private int reserve;
+
+    /**
+     * @param sampleRate stream sample rate
+     * @param elasticMs how far the delay may grow beyond the reserve, in milliseconds
+     */
+    public TimeStretchEffect(int sampleRate, int elasticMs) {
+        // 20 ms frames with a 5 ms alignment search keep the reserve small
+        int frameSize = (sampleRate / 50) & ~1;
+        this.stretcher = new WsolaTimeStretcher(frameSize, sampleRate / 200);
+        this.elasticSamples = Math.max(frameSize, elasticMs * sampleRate / 1000);
+        prepare(frameSize);
+    }
+
+    public void setRate(float rate) {
+        stretcher.setRate(rate);
+    }
+
+    public float getRate() {
+        return stretcher.getRate();
+    }
+
+    /**
+     * Delay currently held by the stretcher, in samples
+     */
+    public int getLatencySamples() {
+        return stretcher.getLatency();
+    }
+
+    @Override
+    public void process(float[] samples, int offset, int length) {
+        stretcher.write(samples, offset, length);
+        int count = stretcher.read(samples, offset, length);
+        for (int i = offset + count; i < offset + length; i++) {
+            // Only reachable with blocks larger than the prepared size
+            samples[i] = 0.0f;
+        }
+    }
+
+    @Override
+    public void prepare(int maxBlockSize) {
+        int minLatency = stretcher.getStructuralLatency() + maxBlockSize;
+        if (minLatency != reserve) {
+            reserve = minLatency;
+            stretcher.setLatencyLimits(minLatency, minLatency + elasticSamples);
+            reset();
+        }
+    }
+
+    @Override
+    public void reset() {
+        stretcher.reset();
+        stretcher.padOutput(reserve);
+    }
+}
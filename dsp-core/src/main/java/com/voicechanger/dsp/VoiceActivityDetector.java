@@ -0,0 +1,159 @@
+package com.voicechanger.dsp;
+
+/**
+ * Streaming voice activity detector. Input is analysed in frames of about 16 ms; each frame
+ * gets one vote per feature that stands out from the tracked background: energy above the
+ * noise floor, zero-crossing rate away from the background's, and spectral flatness (in the
+ * speech band) below the background's. Two votes make a speech frame, and speech is reported
+ * for a hangover period after the last one so word endings and short pauses are kept.
+ *
+ * The background is learned from non-speech frames; the energy floor also follows any drop
+ * at once, and creeps up slowly during speech so a sudden steady noise is not locked in.
+ */
+public class VoiceActivityDetector {
+    private static final int FRAME_MS = 16;
+    private static final int HANGOVER_MS = 240;
+    
+    private static final float ENERGY_THRESHOLD_DB = 10.0f;
+    private static final float TONALITY_THRESHOLD_DB = 4.0f;
+    private static final float ZCR_THRESHOLD = 0.1f;
+    private static final float ABSOLUTE_SILENCE_DB = -65.0f;
+    
+    private static final float BACKGROUND_SMOOTHING = 0.05f;
+    private static final float ENERGY_CREEP_DB = 0.01f;
+    private static final float BAND_LOW_HZ = 250.0f;
+    private static final float BAND_HIGH_HZ = 4000.0f;
+    
+    private final int frameSize;
+    private final int hangoverFrames;
+    private final int bandLow;
+    private final int bandHigh;
+    private final RealFft fft;
+    private final float[] window;
+    private final float[] frame;
+    private final float[] spectrum;
+    private int fill;
+    
+    // Background references
+    private float noiseEnergyDb;
+    private float noiseTonalityDb;
+    private float noiseZcr;
+    private boolean initialized;
+    
+    private int hangover;
+    private boolean speech;
+    
+    public VoiceActivityDetector(int sampleRate) {
+        this.frameSize = Integer.highestOneBit(sampleRate * FRAME_MS / 1000);
+        this.hangoverFrames = HANGOVER_MS * sampleRate / 1000 / frameSize;
+        this.bandLow = Math.max(1, Math.round(BAND_LOW_HZ * frameSize / sampleRate));
+        this.bandHigh = Math.min(frameSize / 2 - 1, Math.round(BAND_HIGH_HZ * frameSize / sampleRate));
+        this.fft = RealFft.forSize(frameSize);
+        this.window = Window.hann(frameSize);
+        this.frame = new float[frameSize];
+        this.spectrum = new float[frameSize];
+        reset();
+    }
+    
+    /**
+     * Analyse a block of samples
+     *
+     * @return true if any part of the block was speech (including hangover)
+     */
+    public boolean process(float[] samples, int offset, int length) {
+        boolean any = speech;
+        for (int i = offset; i < offset + length; i++) {
+            frame[fill++] = samples[i];
+            if (fill == frameSize) {
+                fill = 0;
+                analyzeFrame();
+                any |= speech;
+            }
+        }
+        return any;
+    }
+    
+    /**
+     * Analyse a block of 16-bit little-endian PCM
+     *
+     * @return true if any part of the block was speech (including hangover)
+     */
+    public boolean process(byte[] pcm, int byteOffset, int lengthBytes) {
+        boolean any = speech;
+        for (int b = byteOffset; b + 1 < byteOffset + lengthBytes; b += 2) {
+            frame[fill++] = (short) ((pcm[b + 1] << 8) | (pcm[b] & 0xFF)) / 32768.0f;
+            if (fill == frameSize) {
+                fill = 0;
+                analyzeFrame();
+                any |= speech;
+            }
+        }
+        return any;
+    }
+    
+    /**
+     * Decision for the most recent complete frame, including hangover
+     */
+    public boolean isSpeech() {
+        return speech;
+    }
+    
+    private void analyzeFrame() {
+        float energy = 0.0f;
+        int crossings = 0;
+        for (int n = 0; n < frameSize; n++) {
+            float x = frame[n];
+            energy += x * x;
+            if (n > 0 && (x >= 0.0f) != (frame[n - 1] >= 0.0f)) {
+                crossings++;
+            }
+            spectrum[n] = x * window[n];
+        }
+        float energyDb = 10.0f * (float) Math.log10(energy / frameSize + 1e-12f);
+        float zcr = (float) crossings / frameSize;
+        
+        // Spectral flatness over the speech band: log of geometric over arithmetic mean power
+        fft.forward(spectrum);
+        double logSum = 0.0;
+        double sum = 0.0;
+        for (int k = bandLow; k <= bandHigh; k++) {
+            double p = spectrum[2 * k] * spectrum[2 * k] + spectrum[2 * k + 1] * spectrum[2 * k + 1] + 1e-20;
+            logSum += Math.log(p);
+            sum += p;
+        }
+        int bins = bandHigh - bandLow + 1;
+        float tonalityDb = (float) (10.0 / Math.log(10.0) * (Math.log(sum / bins) - logSum / bins));
+        
+        if (!initialized) {
+            noiseEnergyDb = energyDb;
+            noiseTonalityDb = tonalityDb;
+            noiseZcr = zcr;
+            initialized = true;
+        }
+        noiseEnergyDb = Math.min(noiseEnergyDb, energyDb);
+        
+        int votes = 0;
+        if (energyDb - noiseEnergyDb > ENERGY_THRESHOLD_DB) votes++;
+        if (tonalityDb - noiseTonalityDb > TONALITY_THRESHOLD_DB) votes++;
+        if (Math.abs(zcr - noiseZcr) > ZCR_THRESHOLD) votes++;
+        boolean speechFrame = votes >= 2 && energyDb > ABSOLUTE_SILENCE_DB;
+        
+        if (speechFrame) {
+            hangover = hangoverFrames;
+            noiseEnergyDb += ENERGY_CREEP_DB;
+        } else {
+            noiseEnergyDb += (energyDb - noiseEnergyDb) * BACKGROUND_SMOOTHING;
+            noiseTonalityDb += (tonalityDb - noiseTonalityDb) * BACKGROUND_SMOOTHING;
+            noiseZcr += (zcr - noiseZcr) * BACKGROUND_SMOOTHING;
+            if (hangover > 0) hangover--;
+        }
+        speech = speechFrame || hangover > 0;
+    }
+    
+    public void reset() {
+        fill = 0;
+        initialized = false;
+        hangover = 0;
+        speech = false;
+    }
+}
@@ -0,0 +1,126 @@
+package com.voicechanger.dsp;
+
+import java.util.Arrays;
+
+/**
+ * Runs an expensive stage only while there is speech. Each block is first passed to a
+ * {@link VoiceActivityDetector}; speech blocks go through the wrapped effect. When speech ends
+ * the effect keeps running on silence until what it still holds (its latency, a stretched word
+ * ending, a reverb or convolution tail) has played out or {@code maxTailMs} has passed, then the
+ * output fades out and the effect is left idle until speech resumes. Opening and closing ramp
+ * the output over a few milliseconds so neither clicks. The effect is never reset by the gate;
+ * after a full drain its buffers only hold silence.
+ */
+public class VoiceActivityGate implements AudioEffect {
+    public static final int DEFAULT_RAMP_MS = 5;
+    public static final int DEFAULT_MAX_TAIL_MS = 3000;
+    
+    // A drained block whose peak is below about -80 dBFS ends the tail
+    private static final float TAIL_SILENCE = 1e-4f;
+    
+    private final VoiceActivityDetector detector;
+    private final float rampStep;
+    private final int maxTail;
+    private volatile AudioEffect effect;
+    
+    private float gain;
+    private int tailRemaining;
+    
+    public VoiceActivityGate(int sampleRate, VoiceActivityDetector detector, AudioEffect effect) {
+        this(sampleRate, detector, effect, DEFAULT_RAMP_MS, DEFAULT_MAX_TAIL_MS);
+    }
+    
+    /**
+     * @param rampMs fade-in and fade-out time
+     * @param maxTailMs longest the effect is run on silence after speech ends
+     */
+    public VoiceActivityGate(int sampleRate, VoiceActivityDetector detector, AudioEffect effect,
+                             int rampMs, int maxTailMs) {
+        if (detector == null || effect == null) {
+            throw new IllegalArgumentException("detector and effect are required");
+        }
+        if (sampleRate <= 0 || rampMs < 0 || maxTailMs < 0) {
+            throw new IllegalArgumentException("Invalid gate timing");
+        }
+        this.detector = detector;
+        this.effect = effect;
+        this.rampStep = 1.0f / Math.max(1, rampMs * sampleRate / 1000);
+        this.maxTail = maxTailMs * sampleRate / 1000;
+    }
+    
+    /**
+     * Swap the gated effect; the new one should already be prepared
+     */
+    public void setEffect(AudioEffect effect) {
+        if (effect == null) {
+            throw new IllegalArgumentException("effect == null");
+        }
+        this.effect = effect;
+    }
+    
+    /**
+     * Whether the effect is running: during speech, its tail and the fade-out
+     */
+    public boolean isOpen() {
+        return tailRemaining > 0 || gain > 0.0f;
+    }
+    
+    @Override
+    public void process(float[] samples, int offset, int length) {
+        AudioEffect stage = effect;
+        boolean speech = detector.process(samples, offset, length);
+        if (speech) {
+            tailRemaining = maxTail;
+        } else {
+            Arrays.fill(samples, offset, offset + length, 0.0f);
+            if (!isOpen()) {
+                return;
+            }
+        }
+        
+        stage.process(samples, offset, length);
+        
+        if (!speech && tailRemaining > 0) {
+            tailRemaining -= length;
+            float peak = 0.0f;
+            for (int i = offset; i < offset + length; i++) {
+                peak = Math.max(peak, Math.abs(samples[i]));
+            }
+            if (peak < TAIL_SILENCE) {
+                tailRemaining = 0;
+            }
+        }
+        ramp(samples, offset, length, speech || tailRemaining > 0 ? 1.0f : 0.0f);
+    }
+    
+    /**
+     * Move the output gain towards {@code target} by one ramp step per sample
+     */
+    private void ramp(float[] samples, int offset, int length, float target) {
+        if (gain == target) {
+            if (target == 0.0f) {
+                Arrays.fill(samples, offset, offset + length, 0.0f);
+            }
+            return;
+        }
+        float g = gain;
+        for (int i = offset; i < offset + length; i++) {
+            g = target > g ? Math.min(target, g + rampStep) : Math.max(target, g - rampStep);
+            samples[i] *= g;
+        }
+        gain = g;
+    }
+    
+    @Override
+    public void prepare(int maxBlockSize) {
+        effect.prepare(maxBlockSize);
+    }
+    
+    @Override
+    public void reset() {
+        detector.reset();
+        effect.reset();
+        gain = 0.0f;
+        tailRemaining = 0;
+    }
+}
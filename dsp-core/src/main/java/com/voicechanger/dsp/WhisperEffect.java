@@ -0,0 +1,152 @@
+package com.voicechanger.dsp;
+
+import java.util.Arrays;
+
+/**
+ * Whisper by LPC excitation replacement: every hop an all-pole model of the last frame is
+ * estimated and white noise, scaled to the frame's prediction error, is played through
+ * {@code 1/A(z)}. The result keeps the vocal-tract envelope but has no pitch, and is mixed
+ * with the dry signal by the whisper amount. Analysis is causal, so there is no added latency.
+ * An amount of 0 bypasses the stage.
+ */
+public class WhisperEffect implements AudioEffect {
+    public static final int DEFAULT_ORDER = 12;
+    public static final int DEFAULT_FRAME_SIZE = 512;
+    public static final int DEFAULT_HOP_SIZE = 128;
+    
+    private static final double BANDWIDTH_EXPANSION = 0.994;
+    private static final double WHITE_NOISE_CORRECTION = 1.0001;
+    private static final double SILENCE_ENERGY = 1e-9;
+    
+    private final int order;
+    private final int frameSize;
+    private final int hopSize;
+    
+    // Analysis frame
+    private final float[] window;
+    private final float[] frameRing;
+    private final float[] windowed;
+    private int frameWritePos;
+    private int hopCounter;
+    
+    private final double[] autocorrelation;
+    private final double[] lpc;
+    private final double[] levinsonScratch;
+    
+    // Noise excitation, its gain (ramped towards the latest estimate) and the synthesis filter history
+    private final NoiseGenerator noise = new NoiseGenerator();
+    private final double excitationScale;
+    private final float gainStep;
+    private float targetGain;
+    private float gain;
+    private final double[] outputHistory;
+    private final int historyMask;
+    private int historyPos;
+    
+    private volatile float amount = 0.0f;
+    
+    public WhisperEffect() {
+        this(DEFAULT_ORDER, DEFAULT_FRAME_SIZE, DEFAULT_HOP_SIZE);
+    }
+    
+    /**
+     * @param order LPC order
+     * @param frameSize analysis frame length, a power of two
+     * @param hopSize samples between coefficient updates
+     */
+    public WhisperEffect(int order, int frameSize, int hopSize) {
+        if (Integer.bitCount(frameSize) != 1 || order >= frameSize || hopSize <= 0) {
+            throw new IllegalArgumentException("Invalid whisper configuration");
+        }
+        this.order = order;
+        this.frameSize = frameSize;
+        this.hopSize = hopSize;
+        this.gainStep = 1.0f / hopSize;
+        
+        window = Window.hann(frameSize);
+        frameRing = new float[frameSize];
+        windowed = new float[frameSize];
+        
+        autocorrelation = new double[order + 1];
+        lpc = new double[order + 1];
+        levinsonScratch = new double[order + 1];
+        
+        // Residual power per sample is error / sum(w^2) = error / (3N/8); uniform noise has power 1/3
+        excitationScale = 8.0 / frameSize;
+        
+        int historySize = Integer.highestOneBit(order) << 1;
+        outputHistory = new double[historySize];
+        historyMask = historySize - 1;
+        
+        reset();
+    }
+    
+    /**
+     * Set the whisper mix, 0 (dry) to 1 (fully whispered)
+     */
+    public void setAmount(float amount) {
+        this.amount = amount;
+    }
+    
+    public float getAmount() {
+        return amount;
+    }
+    
+    @Override
+    public void process(float[] samples, int offset, int length) {
+        float wet = amount;
+        if (wet == 0.0f) return;
+        float dry = 1.0f - wet;
+        
+        for (int i = offset; i < offset + length; i++) {
+            float x = samples[i];
+            frameRing[frameWritePos] = x;
+            frameWritePos = (frameWritePos + 1) & (frameSize - 1);
+            
+            gain += (targetGain - gain) * gainStep;
+            double y = gain * noise.nextWhite();
+            for (int k = 1; k <= order; k++) {
+                y -= lpc[k] * outputHistory[(historyPos - k) & historyMask];
+            }
+            outputHistory[historyPos] = y;
+            historyPos = (historyPos + 1) & historyMask;
+            samples[i] = dry * x + wet * (float) y;
+            
+            if (++hopCounter >= hopSize) {
+                hopCounter = 0;
+                analyze();
+            }
+        }
+    }
+    
+    private void analyze() {
+        // Oldest sample first
+        for (int n = 0; n < frameSize; n++) {
+            windowed[n] = frameRing[(frameWritePos + n) & (frameSize - 1)] * window[n];
+        }
+        Lpc.autocorrelate(windowed, 0, frameSize, autocorrelation, order);
+        
+        if (autocorrelation[0] < SILENCE_ENERGY * frameSize) {
+            // Silence: keep the envelope, fade the noise out
+            targetGain = 0.0f;
+            return;
+        }
+        autocorrelation[0] *= WHITE_NOISE_CORRECTION;
+        double error = Lpc.levinson(autocorrelation, order, lpc, levinsonScratch);
+        Lpc.bandwidthExpand(lpc, order, BANDWIDTH_EXPANSION);
+        targetGain = (float) Math.sqrt(Math.max(error, 0.0) * excitationScale);
+    }
+    
+    @Override
+    public void reset() {
+        Arrays.fill(frameRing, 0.0f);
+        Arrays.fill(outputHistory, 0.0);
+        Arrays.fill(lpc, 0.0);
+        lpc[0] = 1.0;
+        frameWritePos = 0;
+        hopCounter = 0;
+        historyPos = 0;
+        targetGain = 0.0f;
+        gain = 0.0f;
+    }
+}
@@ -0,0 +1,58 @@
+package com.voicechanger.dsp;
+
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Cached analysis windows. Windows are periodic (DFT-even), which is what overlap-add
+ * framing expects: a Hann window at 50% or 75% overlap sums to a constant.
+ *
+ * The returned arrays are shared between all callers and must not be modified.
+ */
+public final class Window {
+    private static final ConcurrentHashMap<Integer, float[]> HANN = new ConcurrentHashMap<>();
+    private static final ConcurrentHashMap<Integer, float[]> HAMMING = new ConcurrentHashMap<>();
+    
+    private Window() {
+    }
+    
+    /**
+     * Periodic Hann window of {@code size} samples
+     */
+    public static float[] hann(int size) {
+        float[] window = HANN.get(size);
+        if (window == null) {
+            window = cosineWindow(size, 0.5, 0.5);
+            float[] existing = HANN.putIfAbsent(size, window);
+            if (existing != null) {
+                window = existing;
+            }
+        }
+        return window;
+    }
+    
+    /**
+     * Periodic Hamming window of {@code size} samples
+     */
+    public static float[] hamming(int size) {
+        float[] window = HAMMING.get(size);
+        if (window == null) {
+            window = cosineWindow(size, 0.54, 0.46);
+            float[] existing = HAMMING.putIfAbsent(size, window);
+            if (existing != null) {
+                window = existing;
+            }
+        }
+        return window;
+    }
+    
+    private static float[] cosineWindow(int size, double a0, double a1) {
+        if (size <= 0) {
+            throw new IllegalArgumentException("Window size must be positive: " + size);
+        }
+        float[] window = new float[size];
+        for (int i = 0; i < size; i++) {
+            window[i] = (float) (a0 - a1 * Math.cos(2.0 * Math.PI * i / size));
+        }
+        return window;
+    }
+}
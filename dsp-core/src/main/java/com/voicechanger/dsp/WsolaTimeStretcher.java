@@ -0,0 +1,320 @@
+package com.voicechanger.dsp;
+
+import java.util.Arrays;
+
+/**
+ * Streaming WSOLA (waveform-similarity overlap-add) time-scale modification.
+ * Hann frames are overlap-added at a fixed synthesis hop of half a frame; each frame is taken
+ * from around {@code rate} analysis hops further into the input, shifted by up to
+ * {@code searchRadius} samples so that it lines up with the natural continuation of the previous
+ * frame. A rate above 1 speaks faster, below 1 slower; pitch is not changed.
+ *
+ * Input is pushed with {@link #write} and the stretched signal pulled with {@link #read}.
+ * Without latency limits the stretcher is unbounded, which suits offline rendering (see
+ * {@link #stretch}). With {@link #setLatencyLimits} it becomes elastic for real-time use: voiced
+ * frames only follow the rate while the delay stays within the limits, and silent frames are
+ * stretched or compressed to steer the delay back (towards the upper limit when speeding up,
+ * so there is headroom to consume, and towards the lower limit otherwise).
+ */
+public class WsolaTimeStretcher {
+    public static final int DEFAULT_FRAME_SIZE = 512;
+    public static final int DEFAULT_SEARCH_RADIUS = 128;
+
+    public static final float MIN_RATE = 0.25f;
+    public static final float MAX_RATE = 4.0f;
+
+    // Frames quieter than this (RMS) are treated as pauses in elastic mode
+    private static final float SILENCE_RMS = 0.01f;
+    private static final float SILENCE_STRETCH_RATE = 0.5f;
+    private static final float SILENCE_COMPRESS_RATE = 2.0f;
+
+    // Coarse lag step of the similarity search, refined around the best coarse lag
+    private static final int SEARCH_STEP = 4;
+
+    private final int frameSize;
+    private final int hopSize;
+    private final int searchRadius;
+    private final float[] window;
+    private final float silenceEnergy;
+
+    // Input FIFO; inputStart is the stream position of input[0]
+    private final float[] input;
+    private long inputStart;
+    private int inputLength;
+
+    // Output FIFO; only grows when the reader falls behind an unbounded stretcher
+    private float[] output;
+    private int outputStart;
+    private int outputEnd;
+
+    private final float[] overlapAdd;
+    private double analysisPosition;
+    private long previousFrameStart;
+    private boolean firstFrame;
+
+    private int minLatency;
+    private int maxLatency;
+
+    private volatile float rate = 1.0f;
+
+    public WsolaTimeStretcher() {
+        this(DEFAULT_FRAME_SIZE, DEFAULT_SEARCH_RADIUS);
+    }
+
+    /**
+     * @param frameSize frame length, even; about 20-40 ms suits speech
+     * @param searchRadius largest shift, in samples, tried when aligning a frame
+     */
+    public WsolaTimeStretcher(int frameSize, int searchRadius) {
+        if (frameSize < 16 || frameSize % 2 != 0 || searchRadius < 0) {
+            throw new IllegalArgumentException("Invalid WSOLA configuration");
+        }
+        this.frameSize = frameSize;
+        this.hopSize = frameSize / 2;
+        this.searchRadius = searchRadius;
+        this.window = Window.hann(frameSize);
+        this.silenceEnergy = SILENCE_RMS * SILENCE_RMS * frameSize;
+
+        // Enough for one frame at the largest analysis hop plus the search on both sides
+        input = new float[(int) (MAX_RATE * hopSize) + 2 * frameSize + 4 * searchRadius];
+        output = new float[4 * frameSize];
+        overlapAdd = new float[frameSize];
+
+        reset();
+    }
+
+    public void setRate(float rate) {
+        this.rate = rate;
+    }
+
+    public float getRate() {
+        return rate;
+    }
+
+    /**
+     * Make the stretcher elastic. {@code maxLatency} is a hard cap (within one hop) on the delay
+     * between a sample being written and read back; {@code minLatency} is the delay kept in
+     * reserve so a reader pulling fixed blocks never runs dry. Pass 0 for both to disable.
+     */
+    public void setLatencyLimits(int minLatency, int maxLatency) {
+        if (maxLatency != 0 && maxLatency < minLatency + frameSize) {
+            throw new IllegalArgumentException("maxLatency must exceed minLatency by at least one frame");
+        }
+        this.minLatency = minLatency;
+        this.maxLatency = maxLatency;
+        if (maxLatency > 0 && output.length < maxLatency + frameSize) {
+            output = new float[maxLatency + frameSize];
+        }
+    }
+
+    /**
+     * Smallest delay the stretcher needs before it can emit a frame
+     */
+    public int getStructuralLatency() {
+        return frameSize + searchRadius;
+    }
+
+    /**
+     * Current delay: input not yet consumed by the analysis plus output not yet read
+     */
+    public int getLatency() {
+        long pendingInput = inputStart + inputLength - (long) analysisPosition;
+        return (int) Math.max(0, pendingInput) + (outputEnd - outputStart);
+    }
+
+    public int availableToRead() {
+        return outputEnd - outputStart;
+    }
+
+    public void write(float[] samples, int offset, int length) {
+        while (length > 0) {
+            compactInput();
+            int count = Math.min(length, input.length - inputLength);
+            System.arraycopy(samples, offset, input, inputLength, count);
+            inputLength += count;
+            offset += count;
+            length -= count;
+
+            while (canSynthesize()) {
+                synthesizeFrame();
+            }
+        }
+    }
+
+    /**
+     * Copy up to {@code length} stretched samples; returns the number copied
+     */
+    public int read(float[] samples, int offset, int length) {
+        int count = Math.min(length, outputEnd - outputStart);
+        System.arraycopy(output, outputStart, samples, offset, count);
+        outputStart += count;
+        if (outputStart == outputEnd) {
+            outputStart = 0;
+            outputEnd = 0;
+        }
+        return count;
+    }
+
+    /**
+     * Queue {@code count} samples of silence for the reader, e.g. to pre-roll a fixed-block reader
+     */
+    public void padOutput(int count) {
+        ensureOutputSpace(count);
+        Arrays.fill(output, outputEnd, outputEnd + count, 0.0f);
+        outputEnd += count;
+    }
+
+    private boolean canSynthesize() {
+        long nominal = (long) Math.floor(analysisPosition);
+        return nominal + searchRadius + frameSize <= inputStart + inputLength;
+    }
+
+    private void synthesizeFrame() {
+        long nominal = (long) Math.floor(analysisPosition);
+        long start = firstFrame ? nominal : findBestStart(nominal);
+        int base = (int) (start - inputStart);
+
+        float energy = 0.0f;
+        for (int n = 0; n < frameSize; n++) {
+            float x = input[base + n];
+            energy += x * x;
+            overlapAdd[n] += window[n] * x;
+        }
+
+        ensureOutputSpace(hopSize);
+        System.arraycopy(overlapAdd, 0, output, outputEnd, hopSize);
+        outputEnd += hopSize;
+        System.arraycopy(overlapAdd, hopSize, overlapAdd, 0, frameSize - hopSize);
+        Arrays.fill(overlapAdd, frameSize - hopSize, frameSize, 0.0f);
+
+        previousFrameStart = start;
+        firstFrame = false;
+        analysisPosition += hopSize * frameRate(energy < silenceEnergy);
+    }
+
+    /**
+     * Rate for the next analysis hop, bounded by the latency limits in elastic mode
+     */
+    private float frameRate(boolean silent) {
+        float r = Math.max(MIN_RATE, Math.min(MAX_RATE, rate));
+        if (maxLatency == 0) return r;
+
+        int latency = getLatency();
+        if (silent) {
+            // Steer the delay towards where the requested rate needs it
+            int target = r > 1.0f ? maxLatency - hopSize : minLatency;
+            if (latency < target - hopSize) return SILENCE_STRETCH_RATE;
+            if (latency > target + hopSize) return SILENCE_COMPRESS_RATE;
+            return 1.0f;
+        }
+        // Each hop changes the delay by hopSize * (1 - r); stay inside the limits
+        float change = hopSize * (1.0f - r);
+        if (latency + change > maxLatency || latency + change < minLatency) return 1.0f;
+        return r;
+    }
+
+    /**
+     * Start of the frame near {@code nominal} that best continues the previous frame, by
+     * normalized cross-correlation over the overlap, searched coarse-to-fine
+     */
+    private long findBestStart(long nominal) {
+        long lowest = Math.max(nominal - searchRadius, inputStart);
+        long highest = nominal + searchRadius;
+        int reference = (int) (previousFrameStart + hopSize - inputStart);
+
+        long best = nominal;
+        float bestScore = Float.NEGATIVE_INFINITY;
+        for (long candidate = lowest; candidate <= highest; candidate += SEARCH_STEP) {
+            float score = similarity(reference, (int) (candidate - inputStart));
+            if (score > bestScore) {
+                bestScore = score;
+                best = candidate;
+            }
+        }
+        long coarse = best;
+        long from = Math.max(coarse - SEARCH_STEP + 1, lowest);
+        long to = Math.min(coarse + SEARCH_STEP - 1, highest);
+        for (long candidate = from; candidate <= to; candidate++) {
+            if (candidate == coarse) continue;
+            float score = similarity(reference, (int) (candidate - inputStart));
+            if (score > bestScore) {
+                bestScore = score;
+                best = candidate;
+            }
+        }
+        return best;
+    }
+
+    private float similarity(int reference, int candidate) {
+        float correlation = 0.0f;
+        float energy = 1e-9f;
+        for (int n = 0; n < hopSize; n++) {
+            float c = input[candidate + n];
+            correlation += input[reference + n] * c;
+            energy += c * c;
+        }
+        return correlation / (float) Math.sqrt(energy);
+    }
+
+    private void compactInput() {
+        // Keep the natural continuation of the last frame and the next search range
+        long keepFrom = (long) Math.floor(analysisPosition) - searchRadius;
+        if (!firstFrame) {
+            keepFrom = Math.min(keepFrom, previousFrameStart + hopSize);
+        }
+        int drop = (int) Math.min(Math.max(0, keepFrom - inputStart), inputLength);
+        if (drop > 0) {
+            System.arraycopy(input, drop, input, 0, inputLength - drop);
+            inputLength -= drop;
+            inputStart += drop;
+        }
+    }
+
+    private void ensureOutputSpace(int count) {
+        if (outputEnd + count <= output.length) return;
+        int pending = outputEnd - outputStart;
+        if (pending + count > output.length) {
+            // Unbounded mode with a reader that is behind
+            float[] grown = new float[Math.max(output.length * 2, pending + count)];
+            System.arraycopy(output, outputStart, grown, 0, pending);
+            output = grown;
+        } else {
+            System.arraycopy(output, outputStart, output, 0, pending);
+        }
+        outputStart = 0;
+        outputEnd = pending;
+    }
+
+    public void reset() {
+        // Half a frame of leading silence so the first frame's fade-in covers no signal
+        Arrays.fill(input, 0.0f);
+        inputStart = -hopSize;
+        inputLength = hopSize;
+        Arrays.fill(overlapAdd, 0.0f);
+        outputStart = 0;
+        outputEnd = 0;
+        analysisPosition = -hopSize;
+        previousFrameStart = -hopSize;
+        firstFrame = true;
+    }
+
+    /**
+     * Offline rendering of a whole signal at a constant rate, with a wider search for quality
+     */
+    public static float[] stretch(float[] signal, float rate) {
+        WsolaTimeStretcher stretcher = new WsolaTimeStretcher(DEFAULT_FRAME_SIZE, 2 * DEFAULT_SEARCH_RADIUS);
+        stretcher.setRate(rate);
+        stretcher.write(signal, 0, signal.length);
+        // Flush the last frames with silence
+        float[] tail = new float[stretcher.getStructuralLatency() + stretcher.frameSize];
+        stretcher.write(tail, 0, tail.length);
+
+        int length = Math.round(signal.length / Math.max(MIN_RATE, Math.min(MAX_RATE, rate)));
+        float[] result = new float[length];
+        // Skip the leading half frame of silence added by reset()
+        float[] skip = new float[stretcher.hopSize];
+        stretcher.read(skip, 0, skip.length);
+        stretcher.read(result, 0, length);
+        return result;
+    }
+}
@@ -0,0 +1,75 @@
+package com.voicechanger.dsp;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class AutomaticGainControlTest {
+    private static final int SAMPLE_RATE = 16000;
+    private static final float TARGET_RMS = 0.1f;
+    
+    @Test
+    public void loudAndQuietInputsConvergeOnTheTarget() {
+        for (float amplitude : new float[] {0.7f, 0.04f}) {
+            AutomaticGainControl agc = new AutomaticGainControl(SAMPLE_RATE, TARGET_RMS, 0.1f, 10.0f);
+            float[] samples = sine(300.0, amplitude, 3 * SAMPLE_RATE);
+            agc.process(samples, 0, samples.length);
+            double rms = rms(samples, 2 * SAMPLE_RATE);
+            assertEquals("output level for amplitude " + amplitude, 20.0 * Math.log10(TARGET_RMS),
+                    20.0 * Math.log10(rms), 1.0);
+        }
+    }
+    
+    @Test
+    public void gainIsFrozenBelowTheGate() {
+        AutomaticGainControl agc = new AutomaticGainControl(SAMPLE_RATE, TARGET_RMS, 0.1f, 10.0f);
+        float[] samples = sine(300.0, 0.001f, SAMPLE_RATE);
+        agc.process(samples, 0, samples.length);
+        assertEquals(1.0f, agc.getGain(), 0.0);
+    }
+    
+    @Test
+    public void limiterCatchesASuddenPeak() {
+        AutomaticGainControl agc = new AutomaticGainControl(SAMPLE_RATE, TARGET_RMS, 0.1f, 10.0f);
+        // Settle on a quiet passage, so the gain is high when the burst arrives
+        float[] samples = sine(300.0, 0.03f, 2 * SAMPLE_RATE);
+        for (int n = SAMPLE_RATE; n < SAMPLE_RATE + 800; n++) {
+            samples[n] *= 30.0f;
+        }
+        agc.process(samples, 0, samples.length);
+        for (int n = 0; n < samples.length; n++) {
+            assertTrue("sample " + n + " = " + samples[n], Math.abs(samples[n]) <= 0.95f);
+        }
+    }
+    
+    @Test
+    public void outputIsDelayedByTheLookAhead() {
+        AutomaticGainControl agc = new AutomaticGainControl(SAMPLE_RATE, TARGET_RMS, 1.0f, 1.0f);
+        float[] samples = new float[200];
+        samples[50] = 0.5f;
+        for (int n = 0; n < samples.length; n++) {
+            samples[n] = agc.process(samples[n]);
+        }
+        int latency = agc.getLatencySamples();
+        assertEquals(Math.round(AutomaticGainControl.LOOKAHEAD_MS * SAMPLE_RATE / 1000.0f), latency);
+        assertEquals(0.5f, samples[50 + latency], 1e-6);
+        assertEquals(0.0f, samples[50], 0.0);
+    }
+    
+    private static float[] sine(double frequency, float amplitude, int length) {
+        float[] samples = new float[length];
+        for (int n = 0; n < length; n++) {
+            samples[n] = (float) (amplitude * Math.sin(2.0 * Math.PI * frequency * n / SAMPLE_RATE));
+        }
+        return samples;
+    }
+    
+    private static double rms(float[] signal, int from) {
+        double energy = 0.0;
+        for (int n = from; n < signal.length; n++) {
+            energy += signal[n] * signal[n];
+        }
+        return Math.sqrt(energy / (signal.length - from));
+    }
+}
@@ -0,0 +1,132 @@
+package com.voicechanger.dsp;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class BiquadTest {
+    private static final int SAMPLE_RATE = 16000;
+    
+    @Test
+    public void lowAndHighPassCornersAreThreeDecibelsDown() {
+        Biquad lowPass = design(Biquad.LOW_PASS, 1000.0f, Biquad.BUTTERWORTH_Q, 0.0f);
+        assertEquals(0.0, gainDb(lowPass, 100.0), 0.1);
+        assertEquals(-3.01, gainDb(lowPass, 1000.0), 0.1);
+        assertTrue(gainDb(lowPass, 4000.0) < -22.0);
+        
+        Biquad highPass = design(Biquad.HIGH_PASS, 1000.0f, Biquad.BUTTERWORTH_Q, 0.0f);
+        assertEquals(0.0, gainDb(highPass, 6000.0), 0.1);
+        assertEquals(-3.01, gainDb(highPass, 1000.0), 0.1);
+        assertTrue(gainDb(highPass, 250.0) < -22.0);
+    }
+    
+    @Test
+    public void peakAndShelvesReachTheirGain() {
+        Biquad peak = design(Biquad.PEAKING, 1500.0f, 1.0f, 6.0f);
+        assertEquals(6.0, gainDb(peak, 1500.0), 0.05);
+        assertEquals(0.0, gainDb(peak, 60.0), 0.1);
+        
+        Biquad lowShelf = design(Biquad.LOW_SHELF, 200.0f, Biquad.BUTTERWORTH_Q, -9.0f);
+        assertEquals(-9.0, gainDb(lowShelf, 20.0), 0.2);
+        assertEquals(0.0, gainDb(lowShelf, 5000.0), 0.1);
+        
+        Biquad highShelf = design(Biquad.HIGH_SHELF, 4000.0f, Biquad.BUTTERWORTH_Q, 4.0f);
+        assertEquals(4.0, gainDb(highShelf, 7800.0), 0.2);
+        assertEquals(0.0, gainDb(highShelf, 100.0), 0.1);
+    }
+    
+    @Test
+    public void bandPassPeaksAtUnityGain() {
+        Biquad bandPass = design(Biquad.BAND_PASS, 1000.0f, 2.0f, 0.0f);
+        assertEquals(0.0, gainDb(bandPass, 1000.0), 0.05);
+        assertTrue(gainDb(bandPass, 250.0) < -15.0);
+        assertTrue(gainDb(bandPass, 4000.0) < -15.0);
+    }
+    
+    @Test
+    public void perSampleAndBlockProcessingAgree() {
+        Biquad block = design(Biquad.PEAKING, 800.0f, 2.0f, -5.0f);
+        Biquad single = design(Biquad.PEAKING, 800.0f, 2.0f, -5.0f);
+        float[] samples = noise(1000);
+        float[] expected = new float[samples.length];
+        for (int n = 0; n < samples.length; n++) {
+            expected[n] = single.process(samples[n]);
+        }
+        block.process(samples, 0, 300);
+        block.process(samples, 300, 700);
+        for (int n = 0; n < samples.length; n++) {
+            assertEquals(expected[n], samples[n], 1e-6);
+        }
+    }
+    
+    @Test
+    public void tailIsFlushedToZeroInSilence() {
+        Biquad lowPass = design(Biquad.LOW_PASS, 100.0f, 4.0f, 0.0f);
+        float[] samples = new float[SAMPLE_RATE];
+        samples[0] = 1.0f;
+        for (int offset = 0; offset < samples.length; offset += 500) {
+            lowPass.process(samples, offset, 500);
+        }
+        // A ringing tail would otherwise decay through the denormal range for a long time
+        assertEquals(0.0f, samples[samples.length - 1], 0.0);
+    }
+    
+    @Test
+    public void bankCascadesItsSections() {
+        FilterBank bank = new FilterBank()
+                .add(design(Biquad.HIGH_PASS, 300.0f, Biquad.BUTTERWORTH_Q, 0.0f))
+                .add(design(Biquad.PEAKING, 2000.0f, 1.0f, 6.0f));
+        Biquad first = design(Biquad.HIGH_PASS, 300.0f, Biquad.BUTTERWORTH_Q, 0.0f);
+        Biquad second = design(Biquad.PEAKING, 2000.0f, 1.0f, 6.0f);
+        assertEquals(2, bank.size());
+        
+        float[] samples = noise(500);
+        float[] expected = samples.clone();
+        first.process(expected, 0, expected.length);
+        second.process(expected, 0, expected.length);
+        bank.process(samples, 0, samples.length);
+        for (int n = 0; n < samples.length; n++) {
+            assertEquals(expected[n], samples[n], 1e-6);
+        }
+    }
+    
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsInvalidDesign() {
+        new Biquad().design(Biquad.PEAKING, SAMPLE_RATE, 1000.0f, 0.0f, 3.0f);
+    }
+    
+    private static Biquad design(int type, float frequency, float q, float gainDb) {
+        Biquad biquad = new Biquad();
+        biquad.design(type, SAMPLE_RATE, frequency, q, gainDb);
+        return biquad;
+    }
+    
+    /**
+     * Steady-state gain at {@code frequency}, from the RMS of a filtered sine after it settles
+     */
+    private static double gainDb(Biquad biquad, double frequency) {
+        biquad.reset();
+        int length = 2 * SAMPLE_RATE;
+        double in = 0.0;
+        double out = 0.0;
+        for (int n = 0; n < length; n++) {
+            float x = (float) Math.sin(2.0 * Math.PI * frequency * n / SAMPLE_RATE);
+            float y = biquad.process(x);
+            if (n >= SAMPLE_RATE) {
+                in += x * x;
+                out += y * y;
+            }
+        }
+        return 10.0 * Math.log10(out / in);
+    }
+    
+    private static float[] noise(int length) {
+        NoiseGenerator noise = new NoiseGenerator(3);
+        float[] samples = new float[length];
+        for (int n = 0; n < length; n++) {
+            samples[n] = 0.5f * noise.nextWhite();
+        }
+        return samples;
+    }
+}
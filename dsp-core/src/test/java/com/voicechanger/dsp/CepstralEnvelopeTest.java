@@ -0,0 +1,46 @@
+package com.voicechanger.dsp;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+public class CepstralEnvelopeTest {
+    private static final int FFT_SIZE = 512;
+    
+    @Test
+    public void flatSpectrumGivesAFlatEnvelope() {
+        float[] magnitude = new float[FFT_SIZE / 2 + 1];
+        java.util.Arrays.fill(magnitude, 2.0f);
+        float[] envelope = new float[magnitude.length];
+        new CepstralEnvelope(FFT_SIZE, 26).estimate(magnitude, envelope);
+        for (float value : envelope) {
+            assertEquals(Math.log(2.0), value, 1e-4);
+        }
+    }
+    
+    @Test
+    public void lifterRemovesTheHarmonicRipple() {
+        // A smooth formant bump times harmonics 16 bins apart, i.e. a pitch period of 32 samples
+        int bins = FFT_SIZE / 2 + 1;
+        float[] magnitude = new float[bins];
+        double[] smooth = new double[bins];
+        for (int k = 0; k < bins; k++) {
+            double detune = (k - 60.0) / 25.0;
+            smooth[k] = 2.0 * Math.exp(-0.5 * detune * detune);
+            magnitude[k] = (float) Math.exp(smooth[k] + Math.log(1.0 + 0.8 * Math.cos(2.0 * Math.PI * k / 16.0)));
+        }
+        float[] envelope = new float[bins];
+        new CepstralEnvelope(FFT_SIZE, 26).estimate(magnitude, envelope);
+        
+        // The ripple's log has a mean of log((1 + sqrt(1 - 0.64)) / 2) but no low quefrencies
+        double offset = Math.log((1.0 + Math.sqrt(1.0 - 0.64)) / 2.0);
+        for (int k = 0; k < bins; k++) {
+            assertEquals("bin " + k, smooth[k] + offset, envelope[k], 0.05);
+        }
+    }
+    
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsLifterAboveHalfTheFrame() {
+        new CepstralEnvelope(FFT_SIZE, FFT_SIZE / 2);
+    }
+}
@@ -0,0 +1,95 @@
+package com.voicechanger.dsp;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class ChannelVocoderTest {
+    private static final int SAMPLE_RATE = 16000;
+    
+    @Test
+    public void zeroAmountIsABypass() {
+        float[] input = TestSignals.vowel(SAMPLE_RATE, 2000, 150.0);
+        float[] output = input.clone();
+        new ChannelVocoder(SAMPLE_RATE, ChannelVocoder.DEFAULT_BANDS).process(output, 0, output.length);
+        assertArrayEquals(input, output, 0.0f);
+    }
+    
+    @Test
+    public void vocoderSpeaksOnTheCarrierPitch() {
+        float[] input = TestSignals.vowel(SAMPLE_RATE, SAMPLE_RATE, 210.0);
+        ChannelVocoder vocoder = new ChannelVocoder(SAMPLE_RATE, ChannelVocoder.DEFAULT_BANDS);
+        vocoder.setAmount(1.0f);
+        vocoder.setCarrierFrequency(120.0f);
+        float[] output = process(vocoder, input, 160);
+        
+        assertEquals(120.0, TestSignals.autocorrelationPitch(output, SAMPLE_RATE, SAMPLE_RATE / 4), 2.5);
+        // The band gains bring the output to about the level of the voice
+        double levelDb = 20.0 * Math.log10(rms(output, SAMPLE_RATE / 4) / rms(input, SAMPLE_RATE / 4));
+        assertTrue("level " + levelDb, Math.abs(levelDb) < 6.0);
+    }
+    
+    @Test
+    public void ringModulatorMovesAToneToSumAndDifference() {
+        float[] input = new float[SAMPLE_RATE];
+        for (int n = 0; n < input.length; n++) {
+            input[n] = (float) (0.5 * Math.sin(2.0 * Math.PI * 1000.0 * n / SAMPLE_RATE));
+        }
+        ChannelVocoder ringModulator = new ChannelVocoder(SAMPLE_RATE, ChannelVocoder.DEFAULT_BANDS);
+        ringModulator.setMode(ChannelVocoder.RING_MODULATOR);
+        ringModulator.setCarrierFrequency(300.0f);
+        ringModulator.setAmount(1.0f);
+        float[] output = process(ringModulator, input, 160);
+        
+        assertEquals(0.25, amplitude(output, 700.0), 0.01);
+        assertEquals(0.25, amplitude(output, 1300.0), 0.01);
+        assertEquals(0.0, amplitude(output, 1000.0), 0.01);
+    }
+    
+    @Test
+    public void outputIsIndependentOfTheBlockSize() {
+        float[] input = TestSignals.vowel(SAMPLE_RATE, 4000, 180.0);
+        ChannelVocoder whole = new ChannelVocoder(SAMPLE_RATE, 8);
+        ChannelVocoder split = new ChannelVocoder(SAMPLE_RATE, 8);
+        whole.setAmount(0.7f);
+        split.setAmount(0.7f);
+        assertArrayEquals(process(whole, input, input.length), process(split, input, 37), 1e-6f);
+    }
+    
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsTooManyBands() {
+        new ChannelVocoder(SAMPLE_RATE, ChannelVocoder.MAX_BANDS + 1);
+    }
+    
+    private static float[] process(ChannelVocoder vocoder, float[] input, int blockSize) {
+        float[] output = input.clone();
+        for (int offset = 0; offset < output.length; offset += blockSize) {
+            vocoder.process(output, offset, Math.min(blockSize, output.length - offset));
+        }
+        return output;
+    }
+    
+    private static double rms(float[] signal, int skip) {
+        double energy = 0.0;
+        for (int n = skip; n < signal.length; n++) {
+            energy += signal[n] * signal[n];
+        }
+        return Math.sqrt(energy / (signal.length - skip));
+    }
+    
+    /**
+     * Amplitude of one frequency over the whole signal, which must hold a whole number of cycles
+     */
+    private static double amplitude(float[] signal, double frequency) {
+        double re = 0.0;
+        double im = 0.0;
+        for (int n = 0; n < signal.length; n++) {
+            double w = 2.0 * Math.PI * frequency * n / SAMPLE_RATE;
+            re += signal[n] * Math.cos(w);
+            im += signal[n] * Math.sin(w);
+        }
+        return 2.0 * Math.hypot(re, im) / signal.length;
+    }
+}
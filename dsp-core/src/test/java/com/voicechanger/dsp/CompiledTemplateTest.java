@@ -0,0 +1,139 @@
+package com.voicechanger.dsp;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.Test;
+
+public class CompiledTemplateTest {
+    private static final int SAMPLE_RATE = 16000;
+    
+    @Test
+    public void missingParametersAreNeutral() {
+        CompiledTemplate template = CompiledTemplate.compile(null, SAMPLE_RATE);
+        assertEquals(1.0f, template.getPitchShift(), 0.0);
+        assertEquals(1.0f, template.getFormantShift(), 0.0);
+        assertEquals(0.0f, template.getWarmth(), 0.0);
+        assertEquals(1.0f, template.getClarity(), 0.0);
+        assertEquals(0.0f, template.getBreathiness(), 0.0);
+        assertEquals(1.0f, template.getSpeakingRate(), 0.0);
+        assertEquals(0.0f, template.getWhisper(), 0.0);
+        assertEquals(0.0f, template.getEqLow(), 0.0);
+        assertEquals(0, createChain(template).size());
+    }
+    
+    @Test
+    public void onlyActiveStagesAreChained() {
+        Map<String, Float> parameters = new HashMap<>();
+        parameters.put(CompiledTemplate.WARMTH, 0.3f);
+        parameters.put(CompiledTemplate.CLARITY, 0.9f);
+        parameters.put(CompiledTemplate.EQ_MID, 3.0f);
+        // Warmth, clarity and the EQ share one fused kernel
+        assertEquals(1, createChain(CompiledTemplate.compile(parameters, SAMPLE_RATE)).size());
+        
+        parameters.put(CompiledTemplate.PITCH_SHIFT, 1.2f);
+        parameters.put(CompiledTemplate.FORMANT_SHIFT, 0.9f);
+        parameters.put(CompiledTemplate.SPEAKING_RATE, 1.1f);
+        parameters.put(CompiledTemplate.WHISPER_EFFECT, 0.5f);
+        parameters.put(CompiledTemplate.ROBOT_EFFECT, 1.0f);
+        parameters.put(CompiledTemplate.REVERB_EFFECT, 0.5f);
+        assertEquals(7, createChain(CompiledTemplate.compile(parameters, SAMPLE_RATE)).size());
+    }
+    
+    @Test
+    public void stagesAreConfiguredFromTheTemplate() {
+        Map<String, Float> parameters = new HashMap<>();
+        parameters.put(CompiledTemplate.PITCH_SHIFT, 1.2f);
+        parameters.put(CompiledTemplate.FORMANT_SHIFT, 0.9f);
+        PhaseVocoderPitchShifter pitch = new PhaseVocoderPitchShifter();
+        FormantShifter formant = new FormantShifter();
+        parameters.put(CompiledTemplate.WHISPER_EFFECT, 1.5f);
+        WhisperEffect whisper = new WhisperEffect();
+        parameters.put(CompiledTemplate.ROBOT_EFFECT, 0.6f);
+        parameters.put(CompiledTemplate.ROBOT_MODE, (float) ChannelVocoder.RING_MODULATOR);
+        ChannelVocoder robot = new ChannelVocoder(SAMPLE_RATE, 8);
+        CompiledTemplate.compile(parameters, SAMPLE_RATE).createChain(pitch, formant, whisper, robot,
+                new TimeStretchEffect(SAMPLE_RATE, 120), convolver(), new FdnReverb(SAMPLE_RATE));
+        assertEquals(1.2f, pitch.getPitchRatio(), 0.0);
+        assertEquals(0.9f, formant.getFormantRatio(), 0.0);
+        assertEquals(1.0f, whisper.getAmount(), 0.0);
+        assertEquals(0.6f, robot.getAmount(), 0.0);
+        assertEquals(ChannelVocoder.RING_MODULATOR, robot.getMode());
+    }
+    
+    @Test
+    public void formantPreservingPitchStageTakesTheFormantShift() {
+        Map<String, Float> parameters = new HashMap<>();
+        parameters.put(CompiledTemplate.PITCH_SHIFT, 1.3f);
+        parameters.put(CompiledTemplate.FORMANT_SHIFT, 1.2f);
+        FormantPreservingPitchShifter shifter = new FormantPreservingPitchShifter(SAMPLE_RATE);
+        EffectChain chain = CompiledTemplate.compile(parameters, SAMPLE_RATE).createChain(shifter,
+                new FormantShifter(), new WhisperEffect(), new ChannelVocoder(SAMPLE_RATE, 8),
+                new TimeStretchEffect(SAMPLE_RATE, 120), convolver(), new FdnReverb(SAMPLE_RATE));
+        assertEquals(1, chain.size());
+        assertEquals(1.3f, shifter.getPitchRatio(), 0.0);
+        assertEquals(1.2f, shifter.getFormantRatio(), 0.0);
+    }
+    
+    @Test
+    public void impulseResponseIsChainedOnlyOnceLoaded() {
+        Map<String, Float> parameters = new HashMap<>();
+        parameters.put(CompiledTemplate.IMPULSE_RESPONSE, 2.0f);
+        parameters.put(CompiledTemplate.IMPULSE_RESPONSE_MIX, 0.4f);
+        CompiledTemplate template = CompiledTemplate.compile(parameters, SAMPLE_RATE);
+        PartitionedConvolver convolver = convolver();
+        assertEquals(0, createChain(template, convolver).size());
+        
+        convolver.setImpulseResponse(new float[] {1.0f, 0.5f});
+        assertEquals(1, createChain(template, convolver).size());
+        assertEquals(0.4f, convolver.getMix(), 0.0);
+    }
+    
+    @Test
+    public void kernelIsBuiltWhenCompiled() {
+        assertNull(CompiledTemplate.compile(null, SAMPLE_RATE).getKernel());
+        
+        Map<String, Float> parameters = new HashMap<>();
+        parameters.put(CompiledTemplate.EQ_HIGH, -4.0f);
+        CompiledTemplate template = CompiledTemplate.compile(parameters, SAMPLE_RATE);
+        assertNotNull(template.getKernel());
+        assertEquals(1, createChain(template).size());
+    }
+    
+    @Test
+    public void kernelFiltersRemoveDcAndWarmthBoundsTheLevel() {
+        float[] samples = new float[2000];
+        Arrays.fill(samples, 0.5f);
+        Biquad highPass = new Biquad();
+        highPass.design(Biquad.HIGH_PASS, SAMPLE_RATE, 400.0f, Biquad.BUTTERWORTH_Q, 0.0f);
+        new TemplateKernel(0.0f, new FilterBank().add(highPass), 0.0f).process(samples, 0, samples.length);
+        assertEquals(0.0f, samples[samples.length - 1], 1e-3);
+        
+        float[] loud = {4.0f, -4.0f, 0.5f};
+        new TemplateKernel(2.0f, new FilterBank(), 0.0f).process(loud, 0, loud.length);
+        for (float sample : loud) {
+            assertTrue(Math.abs(sample) <= 1.0f);
+        }
+        assertEquals(Math.tanh(1.0), loud[2], 1e-6);
+    }
+    
+    private static EffectChain createChain(CompiledTemplate template) {
+        return createChain(template, convolver());
+    }
+    
+    private static EffectChain createChain(CompiledTemplate template, PartitionedConvolver convolver) {
+        return template.createChain(new PhaseVocoderPitchShifter(), new FormantShifter(), new WhisperEffect(),
+                new ChannelVocoder(SAMPLE_RATE, 8), new TimeStretchEffect(SAMPLE_RATE, 120), convolver,
+                new FdnReverb(SAMPLE_RATE));
+    }
+    
+    private static PartitionedConvolver convolver() {
+        return new PartitionedConvolver(PartitionedConvolver.DEFAULT_BLOCK_SIZE, 256);
+    }
+}
@@ -0,0 +1,143 @@
+package com.voicechanger.dsp;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+public class EchoCancellerTest {
+    private static final int SAMPLE_RATE = 16000;
+    private static final int FRAME = SAMPLE_RATE / 100;
+    private static final int DELAY = 90 * SAMPLE_RATE / 1000;
+    private static final int TAIL = EchoCanceller.DEFAULT_TAIL_MS * SAMPLE_RATE / 1000;
+    
+    @Test
+    public void cancelsAHeadsetEcho() {
+        float[] far = speech(12 * SAMPLE_RATE, 140.0, 1);
+        float[] mic = echo(far, 20.0f);
+        EchoCanceller canceller = new EchoCanceller(SAMPLE_RATE);
+        float[] out = cancel(canceller, far, mic);
+        
+        // The bulk delay only has to put the echo onset inside the span the filter covers
+        int lead = DELAY - canceller.getDelaySamples();
+        assertTrue("echo onset " + lead + " samples into the filter", lead >= 0 && lead < TAIL / 2);
+        double erle = erle(mic, out, canceller.getLatencySamples());
+        assertTrue("ERLE " + erle + " dB", erle > 15.0);
+    }
+    
+    @Test
+    public void cancelsASpeakerphoneEcho() {
+        // With no loss on the echo path the echo alone used to look like double talk
+        float[] far = speech(16 * SAMPLE_RATE, 140.0, 1);
+        float[] mic = echo(far, 0.0f);
+        EchoCanceller canceller = new EchoCanceller(SAMPLE_RATE);
+        float[] out = cancel(canceller, far, mic);
+        double erle = erle(mic, out, canceller.getLatencySamples());
+        assertTrue("ERLE " + erle + " dB", erle > 10.0);
+    }
+    
+    @Test
+    public void nearEndPassesWhileTheFarEndIsSilent() {
+        float[] far = new float[2 * SAMPLE_RATE];
+        float[] mic = speech(far.length, 210.0, 2);
+        EchoCanceller canceller = new EchoCanceller(SAMPLE_RATE);
+        float[] out = cancel(canceller, far, mic);
+        int latency = canceller.getLatencySamples();
+        for (int n = latency; n < out.length; n++) {
+            assertEquals("sample " + n, mic[n - latency], out[n], 1e-6);
+        }
+    }
+    
+    @Test
+    public void doubleTalkKeepsTheNearEnd() {
+        float[] far = speech(12 * SAMPLE_RATE, 140.0, 1);
+        float[] echo = echo(far, 20.0f);
+        // The near end starts talking once the filter has converged
+        float[] near = speech(far.length, 210.0, 2);
+        float[] mic = echo.clone();
+        for (int n = 8 * SAMPLE_RATE; n < mic.length; n++) {
+            mic[n] += near[n];
+        }
+        EchoCanceller canceller = new EchoCanceller(SAMPLE_RATE);
+        float[] out = cancel(canceller, far, mic);
+        
+        // What is left should be the near end, not a filter that adapted towards it
+        int latency = canceller.getLatencySamples();
+        double nearEnergy = 0.0;
+        double errorEnergy = 0.0;
+        for (int n = 8 * SAMPLE_RATE; n + latency < out.length; n++) {
+            double error = out[n + latency] - near[n];
+            nearEnergy += near[n] * near[n];
+            errorEnergy += error * error;
+        }
+        double snr = 10.0 * Math.log10(nearEnergy / errorEnergy);
+        assertTrue("near end to residual " + snr + " dB", snr > 10.0);
+    }
+    
+    private static float[] cancel(EchoCanceller canceller, float[] far, float[] mic) {
+        float[] out = mic.clone();
+        for (int i = 0; i + FRAME <= out.length; i += FRAME) {
+            canceller.addReference(far, i, FRAME);
+            canceller.process(out, i, FRAME);
+        }
+        return out;
+    }
+    
+    /**
+     * Voiced speech stand-in: a harmonic buzz with some noise, in syllables separated by pauses
+     */
+    private static float[] speech(int length, double f0, long seed) {
+        Random random = new Random(seed);
+        float[] out = new float[length];
+        double phase = 0.0;
+        for (int n = 0; n < length; n++) {
+            double syllable = Math.max(0.0, Math.sin(2.0 * Math.PI * n / (0.7 * SAMPLE_RATE)));
+            phase += 2.0 * Math.PI * f0 * (1.0 + 0.1 * Math.sin(n / (0.2 * SAMPLE_RATE))) / SAMPLE_RATE;
+            double voiced = 0.0;
+            for (int h = 1; h < 12; h++) {
+                voiced += Math.sin(h * phase) / h;
+            }
+            out[n] = (float) (0.25 * syllable * (0.6 * voiced + 0.3 * random.nextGaussian()));
+        }
+        return out;
+    }
+    
+    /**
+     * Microphone signal: the far end through a bulk delay and a decaying random echo path
+     */
+    private static float[] echo(float[] far, float lossDb) {
+        Random random = new Random(3);
+        float[] path = new float[SAMPLE_RATE / 40];
+        double energy = 0.0;
+        for (int j = 0; j < path.length; j++) {
+            path[j] = (float) (random.nextGaussian() * Math.exp(-j / (0.004 * SAMPLE_RATE)));
+            energy += path[j] * path[j];
+        }
+        float scale = (float) (Math.pow(10.0, -lossDb / 20.0) / Math.sqrt(energy));
+        
+        float[] mic = new float[far.length];
+        for (int n = DELAY; n < mic.length; n++) {
+            double sum = 0.0;
+            for (int j = 0; j < path.length && n - DELAY - j >= 0; j++) {
+                sum += path[j] * far[n - DELAY - j];
+            }
+            mic[n] = (float) (scale * sum + 1e-4 * random.nextGaussian());
+        }
+        return mic;
+    }
+    
+    /**
+     * Echo return loss enhancement over the last 4 s, in dB
+     */
+    private static double erle(float[] mic, float[] out, int latency) {
+        double in = 0.0;
+        double residual = 0.0;
+        for (int n = mic.length - 4 * SAMPLE_RATE; n + latency < mic.length; n++) {
+            in += mic[n] * mic[n];
+            residual += out[n + latency] * out[n + latency];
+        }
+        return 10.0 * Math.log10(in / residual);
+    }
+}
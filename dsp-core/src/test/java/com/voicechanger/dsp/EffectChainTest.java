@@ -0,0 +1,72 @@
+package com.voicechanger.dsp;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+public class EffectChainTest {
+    
+    @Test
+    public void runsStagesInOrder() {
+        GainEffect half = new GainEffect();
+        half.setGain(0.5f);
+        EffectChain chain = new EffectChain()
+                .add(half)
+                .add(new OffsetEffect(0.25f));
+        assertEquals(2, chain.size());
+        
+        float[] samples = {1.0f, -1.0f, 0.0f};
+        chain.process(samples, 1, 2);
+        // (x * 0.5) + 0.25, and only inside the given range
+        assertEquals(1.0f, samples[0], 0.0);
+        assertEquals(-0.25f, samples[1], 1e-7);
+        assertEquals(0.25f, samples[2], 1e-7);
+    }
+    
+    @Test
+    public void forwardsPrepareAndReset() {
+        OffsetEffect first = new OffsetEffect(0.0f);
+        OffsetEffect second = new OffsetEffect(0.0f);
+        EffectChain chain = new EffectChain().add(first).add(second);
+        
+        chain.prepare(480);
+        assertEquals(480, first.preparedSize);
+        assertEquals(480, second.preparedSize);
+        
+        chain.reset();
+        assertEquals(1, first.resets);
+        assertEquals(1, second.resets);
+    }
+    
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsNullStage() {
+        new EffectChain().add(null);
+    }
+    
+    private static final class OffsetEffect implements AudioEffect {
+        private final float offset;
+        int preparedSize;
+        int resets;
+        
+        OffsetEffect(float offset) {
+            this.offset = offset;
+        }
+        
+        @Override
+        public void process(float[] samples, int from, int length) {
+            for (int i = from; i < from + length; i++) {
+                samples[i] += offset;
+            }
+        }
+        
+        @Override
+        public void prepare(int maxBlockSize) {
+            preparedSize = maxBlockSize;
+        }
+        
+        @Override
+        public void reset() {
+            resets++;
+        }
+    }
+}
@@ -0,0 +1,80 @@
+package com.voicechanger.dsp;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class EnvelopeEqualizerTest {
+    private static final int SAMPLE_RATE = 16000;
+    private static final double F0 = 117.0;
+    // The filters stay flat until about a second of input has been measured
+    private static final int SETTLE = 3 * SAMPLE_RATE / 2;
+    
+    @Test
+    public void staysFlatWithoutATargetAndForTheFirstSecond() {
+        float[] input = TestSignals.vowel(SAMPLE_RATE, 2 * SAMPLE_RATE, F0);
+        float[] output = process(new EnvelopeEqualizer(SAMPLE_RATE), input);
+        for (int n = 0; n < input.length; n++) {
+            assertEquals(input[n], output[n], 0.0);
+        }
+        
+        EnvelopeEqualizer equalizer = new EnvelopeEqualizer(SAMPLE_RATE);
+        equalizer.setTargetEnvelope(tilt(1.0f));
+        output = process(equalizer, input);
+        for (int n = 0; n < SAMPLE_RATE * 9 / 10; n++) {
+            assertEquals(input[n], output[n], 0.0);
+        }
+    }
+    
+    @Test
+    public void ownEnvelopeAsTargetKeepsTheColour() {
+        float[] input = TestSignals.vowel(SAMPLE_RATE, 3 * SAMPLE_RATE, F0);
+        MfccExtractor extractor = new MfccExtractor(SAMPLE_RATE);
+        extractor.process(input, 0, input.length);
+        float[] own = new float[extractor.getBandCount()];
+        extractor.getEnvelope(own);
+        
+        EnvelopeEqualizer equalizer = new EnvelopeEqualizer(SAMPLE_RATE);
+        equalizer.setTargetEnvelope(own);
+        float[] output = process(equalizer, input);
+        double before = TestSignals.harmonicCentroid(input, SAMPLE_RATE, F0, 7000.0, SETTLE);
+        double after = TestSignals.harmonicCentroid(output, SAMPLE_RATE, F0, 7000.0, SETTLE);
+        assertEquals(before, after, 0.05 * before);
+    }
+    
+    @Test
+    public void tiltedTargetRaisesTheCentroid() {
+        float[] input = TestSignals.vowel(SAMPLE_RATE, 3 * SAMPLE_RATE, F0);
+        EnvelopeEqualizer equalizer = new EnvelopeEqualizer(SAMPLE_RATE);
+        equalizer.setTargetEnvelope(tilt(1.0f));
+        float[] output = process(equalizer, input);
+        double before = TestSignals.harmonicCentroid(input, SAMPLE_RATE, F0, 7000.0, SETTLE);
+        double after = TestSignals.harmonicCentroid(output, SAMPLE_RATE, F0, 7000.0, SETTLE);
+        assertTrue("centroid " + before + " -> " + after, after > 1.2 * before);
+    }
+    
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsTargetWithTheWrongBandCount() {
+        new EnvelopeEqualizer(SAMPLE_RATE).setTargetEnvelope(new float[MfccExtractor.DEFAULT_BANDS + 1]);
+    }
+    
+    /**
+     * Target rising by {@code dbPerBand} a mel band, centred on the average level
+     */
+    private static float[] tilt(float dbPerBand) {
+        float[] target = new float[MfccExtractor.DEFAULT_BANDS];
+        for (int b = 0; b < target.length; b++) {
+            target[b] = dbPerBand * (b - (target.length - 1) / 2.0f);
+        }
+        return target;
+    }
+    
+    private static float[] process(EnvelopeEqualizer equalizer, float[] input) {
+        float[] samples = input.clone();
+        for (int offset = 0; offset < samples.length; offset += 160) {
+            equalizer.process(samples, offset, Math.min(160, samples.length - offset));
+        }
+        return samples;
+    }
+}
@@ -0,0 +1,119 @@
+package com.voicechanger.dsp;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class EnvelopeTransferTest {
+    private static final int SAMPLE_RATE = 16000;
+    // Off the 31.25 Hz bin grid; harmonics on bin centres leave exact nulls the envelope cannot bridge
+    private static final double F0 = 117.0;
+    private static final int SETTLE = SAMPLE_RATE / 4;
+    
+    @Test
+    public void pitchShiftKeepsTheEnvelope() {
+        float[] input = TestSignals.vowel(SAMPLE_RATE, SAMPLE_RATE, F0);
+        double centroid = TestSignals.harmonicCentroid(input, SAMPLE_RATE, F0, 4000.0, SETTLE);
+        for (float ratio : new float[] {0.8f, 1.25f}) {
+            EnvelopeTransfer transfer = new EnvelopeTransfer(SAMPLE_RATE);
+            transfer.setPitchRatio(ratio);
+            float[] output = process(transfer, input);
+            double f0 = F0 * ratio;
+            double pitch = TestSignals.autocorrelationPitch(output, SAMPLE_RATE, SETTLE);
+            assertEquals("pitch at ratio " + ratio, f0, pitch, 0.02 * f0);
+            
+            double shifted = TestSignals.harmonicCentroid(output, SAMPLE_RATE, f0, 4000.0, SETTLE);
+            double moved = Math.log(shifted / centroid) / Math.log(ratio);
+            assertTrue("envelope moved by " + moved + " of ratio " + ratio, Math.abs(moved) < 0.3);
+        }
+    }
+    
+    @Test
+    public void formantRatioMovesTheEnvelopeAndKeepsThePitch() {
+        float[] input = TestSignals.vowel(SAMPLE_RATE, SAMPLE_RATE, F0);
+        double centroid = TestSignals.harmonicCentroid(input, SAMPLE_RATE, F0, 4000.0, SETTLE);
+        for (float ratio : new float[] {0.8f, 1.25f}) {
+            EnvelopeTransfer transfer = new EnvelopeTransfer(SAMPLE_RATE);
+            transfer.setFormantRatio(ratio);
+            float[] output = process(transfer, input);
+            double pitch = TestSignals.autocorrelationPitch(output, SAMPLE_RATE, SETTLE);
+            assertEquals("pitch at ratio " + ratio, F0, pitch, 0.02 * F0);
+            
+            double shifted = TestSignals.harmonicCentroid(output, SAMPLE_RATE, F0, 4000.0, SETTLE);
+            double moved = Math.log(shifted / centroid) / Math.log(ratio);
+            assertTrue("envelope moved by " + moved + " of ratio " + ratio, moved > 0.5 && moved < 1.2);
+        }
+    }
+    
+    @Test
+    public void targetEnvelopeTiltsTheSpectrum() {
+        float[] input = TestSignals.vowel(SAMPLE_RATE, SAMPLE_RATE, F0);
+        EnvelopeTransfer transfer = new EnvelopeTransfer(SAMPLE_RATE);
+        // Rising by 1 dB a band, centred on the average level
+        float[] target = new float[MfccExtractor.DEFAULT_BANDS];
+        for (int b = 0; b < target.length; b++) {
+            target[b] = b - (target.length - 1) / 2.0f;
+        }
+        transfer.setTargetEnvelope(target);
+        float[] output = process(transfer, input);
+        
+        double before = TestSignals.harmonicCentroid(input, SAMPLE_RATE, F0, 7000.0, SETTLE);
+        double after = TestSignals.harmonicCentroid(output, SAMPLE_RATE, F0, 7000.0, SETTLE);
+        assertTrue("centroid " + before + " -> " + after, after > 1.2 * before);
+        assertEquals(F0, TestSignals.autocorrelationPitch(output, SAMPLE_RATE, SETTLE), 0.02 * F0);
+    }
+    
+    @Test
+    public void inputEnvelopeOutlivesResetUntilCleared() {
+        float[] vowel = TestSignals.vowel(SAMPLE_RATE, SAMPLE_RATE / 2, F0);
+        float[] target = new float[MfccExtractor.DEFAULT_BANDS];
+        float[] fresh = process(withTarget(target), vowel);
+        
+        // White noise first gives a flat long-term envelope that the vowel alone would not
+        EnvelopeTransfer transfer = withTarget(target);
+        process(transfer, noise(SAMPLE_RATE));
+        transfer.reset();
+        assertTrue(maxDifference(fresh, process(transfer, vowel)) > 0.01);
+        
+        transfer.reset();
+        transfer.clearSourceEnvelope();
+        assertEquals(0.0, maxDifference(fresh, process(transfer, vowel)), 1e-6);
+    }
+    
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsTargetWithTheWrongBandCount() {
+        new EnvelopeTransfer(SAMPLE_RATE).setTargetEnvelope(new float[MfccExtractor.DEFAULT_BANDS - 1]);
+    }
+    
+    private static EnvelopeTransfer withTarget(float[] target) {
+        EnvelopeTransfer transfer = new EnvelopeTransfer(SAMPLE_RATE);
+        transfer.setTargetEnvelope(target);
+        return transfer;
+    }
+    
+    private static float[] noise(int length) {
+        NoiseGenerator generator = new NoiseGenerator(2);
+        float[] signal = new float[length];
+        for (int n = 0; n < length; n++) {
+            signal[n] = 0.1f * generator.nextWhite();
+        }
+        return signal;
+    }
+    
+    private static double maxDifference(float[] a, float[] b) {
+        double difference = 0.0;
+        for (int n = 0; n < a.length; n++) {
+            difference = Math.max(difference, Math.abs(a[n] - b[n]));
+        }
+        return difference;
+    }
+    
+    private static float[] process(EnvelopeTransfer transfer, float[] input) {
+        float[] samples = input.clone();
+        for (int offset = 0; offset < samples.length; offset += 500) {
+            transfer.process(samples, offset, Math.min(500, samples.length - offset));
+        }
+        return samples;
+    }
+}
@@ -0,0 +1,69 @@
+package com.voicechanger.dsp;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class FdnReverbTest {
+    private static final int SAMPLE_RATE = 16000;
+    
+    @Test
+    public void zeroAmountIsABypass() {
+        float[] samples = {0.5f, -0.25f, 0.0f, 0.125f};
+        new FdnReverb(SAMPLE_RATE).process(samples, 0, samples.length);
+        assertEquals(0.5f, samples[0], 0.0);
+        assertEquals(-0.25f, samples[1], 0.0);
+        assertEquals(0.125f, samples[3], 0.0);
+    }
+    
+    @Test
+    public void decayTimeFollowsTheAmount() {
+        double shortest = decaySeconds(0.0001f);
+        double longest = decaySeconds(1.0f);
+        // The broadband slope sits below the 0.3 and 2 s DC decay times, since the damping cuts the top end sooner
+        assertTrue("shortest " + shortest, shortest > 0.1 && shortest < 0.3);
+        assertTrue("longest " + longest, longest > 0.8 && longest < 2.0);
+        assertTrue(longest > 3.0 * shortest);
+    }
+    
+    @Test
+    public void tailDoesNotDependOnTheBlockSize() {
+        float[] whole = impulseResponse(1.0f, SAMPLE_RATE / 2, SAMPLE_RATE / 2);
+        float[] split = impulseResponse(1.0f, SAMPLE_RATE / 2, 77);
+        for (int n = 0; n < whole.length; n++) {
+            assertEquals("sample " + n, whole[n], split[n], 1e-7);
+        }
+    }
+    
+    /**
+     * RT60 from the slope of the impulse response's energy between 50 and 250 ms
+     */
+    private static double decaySeconds(float amount) {
+        float[] response = impulseResponse(amount, SAMPLE_RATE, 500);
+        double early = energyDb(response, SAMPLE_RATE / 20, SAMPLE_RATE / 10);
+        double late = energyDb(response, SAMPLE_RATE / 5, SAMPLE_RATE / 4);
+        double slope = (late - early) / 0.15;
+        assertTrue(slope < 0.0);
+        return -60.0 / slope;
+    }
+    
+    private static float[] impulseResponse(float amount, int length, int block) {
+        FdnReverb reverb = new FdnReverb(SAMPLE_RATE);
+        reverb.setAmount(amount);
+        float[] samples = new float[length];
+        samples[0] = 1.0f;
+        for (int offset = 0; offset < length; offset += block) {
+            reverb.process(samples, offset, Math.min(block, length - offset));
+        }
+        return samples;
+    }
+    
+    private static double energyDb(float[] signal, int from, int to) {
+        double energy = 0.0;
+        for (int n = from; n < to; n++) {
+            energy += signal[n] * signal[n];
+        }
+        return 10.0 * Math.log10(energy / (to - from));
+    }
+}
@@ -0,0 +1,77 @@
+package com.voicechanger.dsp;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class FormantPreservingPitchShifterTest {
+    private static final int SAMPLE_RATE = 16000;
+    // Off the 31.25 Hz bin grid; harmonics on bin centres leave exact nulls the envelope cannot bridge
+    private static final double F0 = 117.0;
+    private static final int SETTLE = SAMPLE_RATE / 4;
+    
+    @Test
+    public void formantsMoveByTheFormantRatioAlone() {
+        float[] input = TestSignals.vowel(SAMPLE_RATE, SAMPLE_RATE, F0);
+        double centroid = TestSignals.harmonicCentroid(input, SAMPLE_RATE, F0, 4000.0, SETTLE);
+        float[][] settings = {{0.8f, 1.0f}, {1.25f, 1.0f}, {1.3f, 1.2f}, {0.8f, 0.8f}};
+        for (float[] setting : settings) {
+            FormantPreservingPitchShifter shifter = new FormantPreservingPitchShifter(SAMPLE_RATE);
+            shifter.setPitchRatio(setting[0]);
+            shifter.setFormantRatio(setting[1]);
+            float[] output = process(shifter, input);
+            double f0 = F0 * setting[0];
+            double pitch = TestSignals.autocorrelationPitch(output, SAMPLE_RATE, SETTLE);
+            assertEquals("pitch at ratio " + setting[0], f0, pitch, 0.02 * f0);
+            
+            // The centroid follows the formant ratio to within a third of the error a plain shift makes
+            double shifted = TestSignals.harmonicCentroid(output, SAMPLE_RATE, f0, 4000.0, SETTLE);
+            double expected = Math.log(setting[1]);
+            double moved = Math.log(shifted / centroid);
+            assertTrue("pitch " + setting[0] + " formant " + setting[1] + " scaled the centroid by "
+                    + Math.exp(moved),
+                    Math.abs(moved - expected) < 0.35 * Math.abs(Math.log(setting[0])));
+        }
+    }
+    
+    @Test
+    public void keepsTheLevel() {
+        float[] input = TestSignals.vowel(SAMPLE_RATE, SAMPLE_RATE, F0);
+        for (float ratio : new float[] {0.7f, 1.001f, 1.3f, 1.5f, 2.0f}) {
+            FormantPreservingPitchShifter shifter = new FormantPreservingPitchShifter(SAMPLE_RATE);
+            shifter.setPitchRatio(ratio);
+            shifter.setFormantRatio(1.1f);
+            float[] output = process(shifter, input);
+            double levelDb = 20.0 * Math.log10(rms(output, SETTLE) / rms(input, SETTLE));
+            assertEquals("level at ratio " + ratio, 0.0, levelDb, 1.0);
+        }
+    }
+    
+    @Test
+    public void unityRatiosAreABypass() {
+        float[] input = TestSignals.vowel(SAMPLE_RATE, 4000, F0);
+        FormantPreservingPitchShifter shifter = new FormantPreservingPitchShifter(SAMPLE_RATE);
+        float[] output = process(shifter, input);
+        int latency = shifter.getLatencySamples();
+        for (int n = latency; n < input.length; n++) {
+            assertEquals(input[n - latency], output[n], 1e-6);
+        }
+    }
+    
+    private static float[] process(FormantPreservingPitchShifter shifter, float[] input) {
+        float[] samples = input.clone();
+        for (int offset = 0; offset < samples.length; offset += 500) {
+            shifter.process(samples, offset, Math.min(500, samples.length - offset));
+        }
+        return samples;
+    }
+    
+    private static double rms(float[] signal, int skip) {
+        double energy = 0.0;
+        for (int n = skip; n < signal.length; n++) {
+            energy += signal[n] * signal[n];
+        }
+        return Math.sqrt(energy / (signal.length - skip));
+    }
+}
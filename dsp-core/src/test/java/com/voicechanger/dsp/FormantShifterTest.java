@@ -0,0 +1,47 @@
+package com.voicechanger.dsp;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class FormantShifterTest {
+    private static final int SAMPLE_RATE = 16000;
+    private static final double F0 = 125.0;
+    private static final int SETTLE = SAMPLE_RATE / 4;
+    
+    @Test
+    public void unityRatioIsAnExactBypass() {
+        float[] input = TestSignals.vowel(SAMPLE_RATE, SAMPLE_RATE, F0);
+        float[] output = shift(input, 1.0f);
+        for (int n = 0; n < input.length; n++) {
+            assertEquals(input[n], output[n], 0.0);
+        }
+    }
+    
+    @Test
+    public void movesTheEnvelopeAndKeepsThePitch() {
+        float[] input = TestSignals.vowel(SAMPLE_RATE, SAMPLE_RATE, F0);
+        double centroid = TestSignals.harmonicCentroid(input, SAMPLE_RATE, F0, 4000.0, SETTLE);
+        for (float ratio : new float[] {0.8f, 1.25f}) {
+            float[] output = shift(input, ratio);
+            double shifted = TestSignals.harmonicCentroid(output, SAMPLE_RATE, F0, 4000.0, SETTLE);
+            // The vowel's harmonics sample the envelope coarsely, so ask for most of the shift
+            double moved = Math.log(shifted / centroid) / Math.log(ratio);
+            assertTrue("envelope moved by " + moved + " of ratio " + ratio, moved > 0.5 && moved < 1.2);
+            
+            double pitch = TestSignals.autocorrelationPitch(output, SAMPLE_RATE, SETTLE);
+            assertEquals("pitch at ratio " + ratio, F0, pitch, 0.02 * F0);
+        }
+    }
+    
+    private static float[] shift(float[] input, float ratio) {
+        FormantShifter shifter = new FormantShifter();
+        shifter.setFormantRatio(ratio);
+        float[] samples = input.clone();
+        for (int offset = 0; offset < samples.length; offset += 500) {
+            shifter.process(samples, offset, Math.min(500, samples.length - offset));
+        }
+        return samples;
+    }
+}
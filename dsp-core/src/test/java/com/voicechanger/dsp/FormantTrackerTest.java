@@ -0,0 +1,47 @@
+package com.voicechanger.dsp;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class FormantTrackerTest {
+    private static final int SAMPLE_RATE = 16000;
+    
+    @Test
+    public void tracksTheVowelFormants() {
+        FormantTracker tracker = new FormantTracker(SAMPLE_RATE);
+        float[] vowel = TestSignals.vowel(SAMPLE_RATE, 2 * SAMPLE_RATE, 110.0);
+        for (int offset = 0; offset < vowel.length; offset += 160) {
+            tracker.process(vowel, offset, 160);
+        }
+        
+        // TestSignals.vowel's formants; F3 sits on a weak harmonic envelope so gets more slack
+        assertEquals(730.0, tracker.getStatistics(0).getMedian(), 730.0 * 0.08);
+        assertEquals(1090.0, tracker.getStatistics(1).getMedian(), 1090.0 * 0.08);
+        assertEquals(2440.0, tracker.getStatistics(2).getMedian(), 2440.0 * 0.1);
+        float[] formants = new float[FormantTracker.FORMANTS];
+        tracker.getFormants(formants);
+        assertTrue(formants[0] < formants[1] && formants[1] < formants[2]);
+    }
+    
+    @Test
+    public void silenceIsNotAnalysed() {
+        FormantTracker tracker = new FormantTracker(SAMPLE_RATE);
+        assertEquals(0, tracker.process(new float[SAMPLE_RATE], 0, SAMPLE_RATE));
+        float[] formants = new float[FormantTracker.FORMANTS];
+        tracker.getFormants(formants);
+        assertEquals(0.0f, formants[0], 0.0);
+    }
+    
+    @Test
+    public void pcmAndFloatInputAgree() {
+        float[] vowel = TestSignals.vowel(SAMPLE_RATE, SAMPLE_RATE / 2, 140.0);
+        byte[] pcm = new byte[2 * vowel.length];
+        PcmConverter.toPcm16(vowel, 0, pcm, 0, vowel.length);
+        FormantTracker fromFloat = new FormantTracker(SAMPLE_RATE);
+        FormantTracker fromPcm = new FormantTracker(SAMPLE_RATE);
+        assertEquals(fromFloat.process(vowel, 0, vowel.length), fromPcm.process(pcm, 0, pcm.length));
+        assertEquals(fromFloat.getStatistics(1).getMedian(), fromPcm.getStatistics(1).getMedian(), 5.0);
+    }
+}
@@ -0,0 +1,90 @@
+package com.voicechanger.dsp;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+public class LpcTest {
+    @Test
+    public void levinsonRecoversAnAllPoleProcess() {
+        // x[n] = 1.3 x[n-1] - 0.8 x[n-2] + e[n], so A(z) = 1 - 1.3 z^-1 + 0.8 z^-2
+        Random random = new Random(4);
+        float[] x = new float[50000];
+        for (int n = 2; n < x.length; n++) {
+            x[n] = (float) (1.3 * x[n - 1] - 0.8 * x[n - 2] + random.nextGaussian());
+        }
+        double[] r = new double[3];
+        Lpc.autocorrelate(x, 0, x.length, r, 2);
+        double[] a = new double[3];
+        double error = Lpc.levinson(r, 2, a, new double[3]);
+        
+        assertEquals(1.0, a[0], 0.0);
+        assertEquals(-1.3, a[1], 0.02);
+        assertEquals(0.8, a[2], 0.02);
+        // Prediction error power per sample is the unit driving noise
+        assertEquals(1.0, error / x.length, 0.05);
+    }
+    
+    @Test
+    public void levinsonOfSilenceIsZero() {
+        double[] a = new double[3];
+        assertEquals(0.0, Lpc.levinson(new double[3], 2, a, new double[3]), 0.0);
+        assertEquals(1.0, a[0], 0.0);
+        assertEquals(0.0, a[2], 0.0);
+    }
+    
+    @Test
+    public void rootsFindConjugatePolePairs() {
+        double[] a = polynomial(0.9, 0.6, 0.7, 2.1);
+        double[] re = new double[4];
+        double[] im = new double[4];
+        assertTrue(Lpc.roots(a, 4, re, im, false));
+        assertPoles(re, im, 0.9, 0.6, 0.7, 2.1);
+        
+        // Starting from the previous roots of a slightly different polynomial
+        a = polynomial(0.92, 0.62, 0.68, 2.05);
+        assertTrue(Lpc.roots(a, 4, re, im, true));
+        assertPoles(re, im, 0.92, 0.62, 0.68, 2.05);
+    }
+    
+    @Test
+    public void bandwidthExpansionPullsPolesInward() {
+        double[] a = polynomial(0.95, 0.5, 0.9, 2.0);
+        Lpc.bandwidthExpand(a, 4, 0.9);
+        double[] re = new double[4];
+        double[] im = new double[4];
+        assertTrue(Lpc.roots(a, 4, re, im, false));
+        assertPoles(re, im, 0.855, 0.5, 0.81, 2.0);
+    }
+    
+    /**
+     * Monic coefficients of two conjugate pole pairs with the given radii and angles
+     */
+    private static double[] polynomial(double r1, double theta1, double r2, double theta2) {
+        double[] first = {1.0, -2.0 * r1 * Math.cos(theta1), r1 * r1};
+        double[] second = {1.0, -2.0 * r2 * Math.cos(theta2), r2 * r2};
+        double[] a = new double[5];
+        for (int i = 0; i < 3; i++) {
+            for (int j = 0; j < 3; j++) {
+                a[i + j] += first[i] * second[j];
+            }
+        }
+        return a;
+    }
+    
+    private static void assertPoles(double[] re, double[] im, double r1, double theta1, double r2, double theta2) {
+        int found = 0;
+        for (int i = 0; i < 4; i++) {
+            double radius = Math.hypot(re[i], im[i]);
+            double angle = Math.abs(Math.atan2(im[i], re[i]));
+            if (Math.abs(radius - r1) < 1e-6 && Math.abs(angle - theta1) < 1e-6
+                    || Math.abs(radius - r2) < 1e-6 && Math.abs(angle - theta2) < 1e-6) {
+                found++;
+            }
+        }
+        assertEquals(4, found);
+    }
+}
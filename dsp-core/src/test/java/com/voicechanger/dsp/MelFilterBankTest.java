@@ -0,0 +1,55 @@
+package com.voicechanger.dsp;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class MelFilterBankTest {
+    private static final int SAMPLE_RATE = 16000;
+    
+    @Test
+    public void melScaleMapsAThousandHertzToAThousandMel() {
+        assertEquals(1000.0, MelFilterBank.toMel(1000.0), 0.1);
+        assertEquals(3500.0, MelFilterBank.fromMel(MelFilterBank.toMel(3500.0)), 1e-9);
+    }
+    
+    @Test
+    public void centresAreEvenlySpacedInMel() {
+        MelFilterBank bank = new MelFilterBank(SAMPLE_RATE, 512, 26);
+        double step = MelFilterBank.toMel(bank.getCentre(1)) - MelFilterBank.toMel(bank.getCentre(0));
+        for (int b = 1; b < bank.getBandCount(); b++) {
+            double spacing = MelFilterBank.toMel(bank.getCentre(b)) - MelFilterBank.toMel(bank.getCentre(b - 1));
+            assertEquals(step, spacing, 1e-3);
+        }
+        assertTrue(bank.getCentre(bank.getBandCount() - 1) < SAMPLE_RATE / 2);
+    }
+    
+    @Test
+    public void aSingleBinLandsInTheBandCentredOnIt() {
+        MelFilterBank bank = new MelFilterBank(SAMPLE_RATE, 512, 26);
+        float[] energies = new float[bank.getBandCount()];
+        for (int b = 0; b < bank.getBandCount(); b++) {
+            float[] power = new float[257];
+            int bin = Math.round(bank.getCentre(b) * 512 / SAMPLE_RATE);
+            power[bin] = 1.0f;
+            bank.apply(power, energies);
+            int loudest = 0;
+            for (int i = 1; i < energies.length; i++) {
+                if (energies[i] > energies[loudest]) loudest = i;
+            }
+            assertEquals(b, loudest);
+        }
+    }
+    
+    @Test
+    public void banksAreSharedPerConfiguration() {
+        assertTrue(MelFilterBank.forSize(SAMPLE_RATE, 512, 26) == MelFilterBank.forSize(SAMPLE_RATE, 512, 26));
+        assertTrue(MelFilterBank.forSize(SAMPLE_RATE, 512, 26) != MelFilterBank.forSize(SAMPLE_RATE, 512, 40));
+    }
+    
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsFftSizeThatIsNotAPowerOfTwo() {
+        new MelFilterBank(SAMPLE_RATE, 400, 26);
+    }
+}
@@ -0,0 +1,83 @@
+package com.voicechanger.dsp;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class MfccExtractorTest {
+    private static final int SAMPLE_RATE = 16000;
+    
+    @Test
+    public void envelopePeaksAtTheFirstFormants() {
+        MfccExtractor extractor = new MfccExtractor(SAMPLE_RATE);
+        float[] vowel = TestSignals.vowel(SAMPLE_RATE, SAMPLE_RATE, 120.0);
+        extractor.process(vowel, 0, vowel.length);
+        float[] envelope = new float[extractor.getBandCount()];
+        extractor.getEnvelope(envelope);
+        
+        int loudest = 0;
+        double total = 0.0;
+        for (int b = 0; b < envelope.length; b++) {
+            if (envelope[b] > envelope[loudest]) loudest = b;
+            total += envelope[b];
+        }
+        // F1 and F2 of TestSignals.vowel are 730 and 1090 Hz
+        float centre = extractor.getFilterBank().getCentre(loudest);
+        assertTrue("peak at " + centre, centre > 600.0f && centre < 1250.0f);
+        // Without c0 the envelope is relative to the average level
+        assertEquals(0.0, total / envelope.length, 1e-3);
+    }
+    
+    @Test
+    public void levelOnlyMovesTheFirstCoefficient() {
+        float[] vowel = TestSignals.vowel(SAMPLE_RATE, SAMPLE_RATE / 2, 150.0);
+        float[] quiet = new float[vowel.length];
+        for (int n = 0; n < vowel.length; n++) {
+            quiet[n] = 0.25f * vowel[n];
+        }
+        float[] loudMfcc = meanMfcc(vowel);
+        float[] quietMfcc = meanMfcc(quiet);
+        // 12 dB lower in every band, scaled by the orthonormal DCT's sqrt(bands)
+        assertEquals(-12.04 * Math.sqrt(MfccExtractor.DEFAULT_BANDS), quietMfcc[0] - loudMfcc[0], 0.1);
+        for (int c = 1; c < loudMfcc.length; c++) {
+            assertEquals(loudMfcc[c], quietMfcc[c], 0.01);
+        }
+    }
+    
+    @Test
+    public void streamingAveragesTheSingleFrameAnalysis() {
+        MfccExtractor extractor = new MfccExtractor(SAMPLE_RATE);
+        float[] vowel = TestSignals.vowel(SAMPLE_RATE, SAMPLE_RATE / 4, 200.0);
+        assertTrue(extractor.process(vowel, 0, vowel.length) > 0);
+        float[] streamed = new float[extractor.getCoefficientCount()];
+        extractor.getMfcc(streamed);
+        
+        // The last analysed frame ends on the last hop boundary
+        int hop = extractor.getHopSize();
+        int end = vowel.length / hop * hop;
+        float[] single = new float[extractor.getCoefficientCount()];
+        assertTrue(extractor.analyze(vowel, end - extractor.getFrameSize(), single));
+        for (int c = 0; c < single.length; c++) {
+            assertEquals(single[c], streamed[c], 1e-3);
+        }
+    }
+    
+    @Test
+    public void silenceIsSkipped() {
+        MfccExtractor extractor = new MfccExtractor(SAMPLE_RATE);
+        assertEquals(0, extractor.process(new float[SAMPLE_RATE], 0, SAMPLE_RATE));
+        assertEquals(0, extractor.getFrameCount());
+        float[] mean = new float[extractor.getCoefficientCount()];
+        extractor.getMeanMfcc(mean);
+        assertEquals(0.0f, mean[0], 0.0);
+    }
+    
+    private static float[] meanMfcc(float[] signal) {
+        MfccExtractor extractor = new MfccExtractor(SAMPLE_RATE);
+        extractor.process(signal, 0, signal.length);
+        float[] mean = new float[extractor.getCoefficientCount()];
+        extractor.getMeanMfcc(mean);
+        return mean;
+    }
+}
@@ -0,0 +1,69 @@
+package com.voicechanger.dsp;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class NoiseGeneratorTest {
+    private static final int COUNT = 1 << 18;
+    
+    @Test
+    public void seedFixesTheSequence() {
+        NoiseGenerator a = new NoiseGenerator(42);
+        NoiseGenerator b = new NoiseGenerator(42);
+        NoiseGenerator c = new NoiseGenerator(43);
+        int same = 0;
+        for (int i = 0; i < 1000; i++) {
+            long next = a.nextLong();
+            assertEquals(next, b.nextLong());
+            if (next == c.nextLong()) same++;
+        }
+        assertEquals(0, same);
+    }
+    
+    @Test
+    public void zeroSeedStillProducesNoise() {
+        NoiseGenerator noise = new NoiseGenerator(0);
+        long first = noise.nextLong();
+        assertTrue(first != 0 || noise.nextLong() != 0);
+    }
+    
+    @Test
+    public void whiteIsUniformOverTheUnitRange() {
+        NoiseGenerator noise = new NoiseGenerator(7);
+        double sum = 0.0;
+        double square = 0.0;
+        int[] histogram = new int[8];
+        for (int i = 0; i < COUNT; i++) {
+            float x = noise.nextWhite();
+            assertTrue(x >= -1.0f && x < 1.0f);
+            sum += x;
+            square += x * x;
+            histogram[(int) ((x + 1.0f) * 4.0f)]++;
+        }
+        assertEquals(0.0, sum / COUNT, 0.01);
+        assertEquals(1.0 / 3.0, square / COUNT, 0.01);
+        for (int count : histogram) {
+            assertEquals(COUNT / 8.0, count, 0.02 * COUNT / 8.0);
+        }
+    }
+    
+    @Test
+    public void pinkHasWhiteLevelAndFallsWithFrequency() {
+        NoiseGenerator noise = new NoiseGenerator(7);
+        double square = 0.0;
+        // First differences weight high frequencies: white noise doubles its energy, pink loses most
+        double difference = 0.0;
+        float previous = 0.0f;
+        for (int i = 0; i < COUNT; i++) {
+            float x = noise.nextPink();
+            square += x * x;
+            difference += (x - previous) * (x - previous);
+            previous = x;
+        }
+        double level = 10.0 * Math.log10(square / COUNT / (1.0 / 3.0));
+        assertEquals("pink level against white, dB", 0.0, level, 3.0);
+        assertTrue(difference < square);
+    }
+}
@@ -0,0 +1,98 @@
+package com.voicechanger.dsp;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class NoiseSuppressorTest {
+    private static final int SAMPLE_RATE = 16000;
+    private static final int BLOCK = 256;
+    // The noise tracker needs its 1.5 s search window before the estimate settles
+    private static final int SETTLE = 2 * SAMPLE_RATE;
+    
+    @Test
+    public void zeroStrengthOnlyDelays() {
+        float[] input = noise(SAMPLE_RATE / 2, 0.1f);
+        NoiseSuppressor suppressor = new NoiseSuppressor(SAMPLE_RATE);
+        suppressor.setStrength(0.0f);
+        float[] output = process(suppressor, input);
+        int latency = suppressor.getLatencySamples();
+        for (int n = latency; n < output.length; n++) {
+            assertEquals("sample " + n, input[n - latency], output[n], 1e-6);
+        }
+    }
+    
+    @Test
+    public void stationaryNoiseIsAttenuated() {
+        float[] input = noise(4 * SAMPLE_RATE, 0.05f);
+        float[] output = process(new NoiseSuppressor(SAMPLE_RATE), input);
+        double attenuation = level(input, SETTLE, 0) - level(output, SETTLE, 0);
+        assertTrue("attenuation " + attenuation + " dB", attenuation > 12.0);
+    }
+    
+    @Test
+    public void speechInNoiseGetsCleaner() {
+        // Syllables with pauses: a vowel held for seconds would be taken for stationary noise
+        float[] clean = TestSignals.vowel(SAMPLE_RATE, 4 * SAMPLE_RATE, 130.0);
+        for (int n = 0; n < clean.length; n++) {
+            if (n % (SAMPLE_RATE / 2) >= 3 * SAMPLE_RATE / 10) {
+                clean[n] = 0.0f;
+            }
+        }
+        float[] noise = noise(clean.length, 0.05f);
+        float[] noisy = new float[clean.length];
+        for (int n = 0; n < noisy.length; n++) {
+            noisy[n] = clean[n] + noise[n];
+        }
+        NoiseSuppressor suppressor = new NoiseSuppressor(SAMPLE_RATE);
+        float[] output = process(suppressor, noisy);
+        int latency = suppressor.getLatencySamples();
+        
+        double before = snr(clean, noisy, 0);
+        double after = snr(clean, output, latency);
+        assertTrue("SNR " + before + " dB before, " + after + " dB after", after > before + 3.0);
+    }
+    
+    private static float[] process(NoiseSuppressor suppressor, float[] input) {
+        float[] samples = input.clone();
+        for (int offset = 0; offset < samples.length; offset += BLOCK) {
+            suppressor.process(samples, offset, Math.min(BLOCK, samples.length - offset));
+        }
+        return samples;
+    }
+    
+    private static float[] noise(int length, float amplitude) {
+        NoiseGenerator generator = new NoiseGenerator(11);
+        float[] samples = new float[length];
+        for (int n = 0; n < length; n++) {
+            samples[n] = amplitude * generator.nextWhite();
+        }
+        return samples;
+    }
+    
+    /**
+     * Level in dB after {@code from}, ignoring the last {@code tail} samples
+     */
+    private static double level(float[] signal, int from, int tail) {
+        double energy = 0.0;
+        for (int n = from; n < signal.length - tail; n++) {
+            energy += signal[n] * signal[n];
+        }
+        return 10.0 * Math.log10(energy / (signal.length - tail - from));
+    }
+    
+    /**
+     * Ratio of the clean signal to what differs from it, after settling, in dB
+     */
+    private static double snr(float[] clean, float[] signal, int delay) {
+        double signalEnergy = 0.0;
+        double errorEnergy = 0.0;
+        for (int n = SETTLE; n + delay < signal.length; n++) {
+            double error = signal[n + delay] - clean[n];
+            signalEnergy += clean[n] * clean[n];
+            errorEnergy += error * error;
+        }
+        return 10.0 * Math.log10(signalEnergy / errorEnergy);
+    }
+}
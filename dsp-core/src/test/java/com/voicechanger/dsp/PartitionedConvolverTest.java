@@ -0,0 +1,71 @@
+package com.voicechanger.dsp;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+public class PartitionedConvolverTest {
+    private static final int BLOCK_SIZE = 64;
+    
+    @Test
+    public void matchesDirectConvolution() {
+        Random random = new Random(1);
+        float[] response = new float[1000];
+        for (int i = 0; i < response.length; i++) {
+            response[i] = (float) (random.nextGaussian() * Math.exp(-i / 300.0));
+        }
+        float[] input = new float[4000];
+        for (int i = 0; i < input.length; i++) {
+            input[i] = (float) random.nextGaussian() * 0.1f;
+        }
+        
+        PartitionedConvolver convolver = new PartitionedConvolver(BLOCK_SIZE, 2048);
+        convolver.setImpulseResponse(response);
+        float[] output = input.clone();
+        // Chunks that do not line up with the partitions
+        int[] chunks = {1, 37, 64, 100, 500, 3};
+        for (int offset = 0, c = 0; offset < output.length; c++) {
+            int length = Math.min(chunks[c % chunks.length], output.length - offset);
+            convolver.process(output, offset, length);
+            offset += length;
+        }
+        
+        for (int n = 0; n < input.length; n++) {
+            double expected = 0.0;
+            for (int j = 0; j < response.length && j <= n; j++) {
+                expected += response[j] * input[n - j];
+            }
+            assertEquals("sample " + n, expected, output[n], 1e-4);
+        }
+    }
+    
+    @Test
+    public void mixBlendsDryAndConvolved() {
+        PartitionedConvolver convolver = new PartitionedConvolver(BLOCK_SIZE, 1024);
+        // A response that is a gain of -1 and a delay of 200 samples
+        float[] response = new float[201];
+        response[200] = -1.0f;
+        convolver.setImpulseResponse(response);
+        convolver.setMix(0.25f);
+        
+        float[] samples = new float[400];
+        samples[10] = 1.0f;
+        convolver.process(samples, 0, samples.length);
+        assertEquals(0.75f, samples[10], 1e-6);
+        assertEquals(-0.25f, samples[210], 1e-5);
+    }
+    
+    @Test
+    public void passesThroughWithoutResponse() {
+        PartitionedConvolver convolver = new PartitionedConvolver(BLOCK_SIZE, 1024);
+        assertFalse(convolver.hasImpulseResponse());
+        float[] samples = {0.1f, -0.2f, 0.3f};
+        convolver.process(samples, 0, samples.length);
+        assertEquals(0.1f, samples[0], 0.0);
+        assertEquals(-0.2f, samples[1], 0.0);
+        assertEquals(0.3f, samples[2], 0.0);
+    }
+}
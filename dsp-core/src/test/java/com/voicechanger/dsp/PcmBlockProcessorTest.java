@@ -0,0 +1,111 @@
+package com.voicechanger.dsp;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class PcmBlockProcessorTest {
+    
+    @Test
+    public void resultDoesNotDependOnTheBlockSize() {
+        byte[] reference = pcm(1000);
+        byte[] split = reference.clone();
+        
+        // A stateful stage: the output depends on everything before it
+        process(reference, 1000, new Smoother());
+        Smoother smoother = new Smoother();
+        process(split, 96, smoother);
+        
+        assertTrue(smoother.largestBlock <= 96);
+        for (int i = 0; i < reference.length; i++) {
+            assertEquals("byte " + i, reference[i], split[i]);
+        }
+    }
+    
+    @Test
+    public void leavesBytesOutsideTheRangeAlone() {
+        byte[] data = pcm(10);
+        byte[] original = data.clone();
+        GainEffect gain = new GainEffect();
+        gain.setGain(0.5f);
+        
+        PcmBlockProcessor processor = new PcmBlockProcessor();
+        processor.prepare(4);
+        processor.process(gain, data, 4, 12);
+        for (int i = 0; i < data.length; i++) {
+            if (i < 4 || i >= 16) {
+                assertEquals(original[i], data[i]);
+            }
+        }
+        short before = (short) ((original[5] << 8) | (original[4] & 0xFF));
+        short after = (short) ((data[5] << 8) | (data[4] & 0xFF));
+        assertEquals(before / 2, after, 1.0);
+    }
+    
+    @Test
+    public void fusedGainControlMatchesASeparateStage() {
+        byte[] separate = pcm(1000);
+        byte[] fused = separate.clone();
+        GainEffect gain = new GainEffect();
+        gain.setGain(0.5f);
+        
+        EffectChain chain = new EffectChain();
+        chain.add(gain);
+        chain.add(new AutomaticGainControl(16000, 0.1f, 0.1f, 10.0f));
+        chain.prepare(96);
+        process(separate, 96, chain);
+        
+        PcmBlockProcessor processor = new PcmBlockProcessor();
+        processor.prepare(96);
+        processor.process(gain, new AutomaticGainControl(16000, 0.1f, 0.1f, 10.0f), fused, 0, fused.length);
+        for (int i = 0; i < separate.length; i++) {
+            assertEquals("byte " + i, separate[i], fused[i]);
+        }
+    }
+    
+    @Test(expected = IllegalStateException.class)
+    public void requiresPrepare() {
+        new PcmBlockProcessor().process(new GainEffect(), new byte[4], 0, 4);
+    }
+    
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsEmptyBlockSize() {
+        new PcmBlockProcessor().prepare(0);
+    }
+    
+    private static void process(byte[] data, int blockSize, AudioEffect effect) {
+        PcmBlockProcessor processor = new PcmBlockProcessor();
+        processor.prepare(blockSize);
+        processor.process(effect, data, 0, data.length);
+    }
+    
+    private static byte[] pcm(int samples) {
+        byte[] data = new byte[2 * samples];
+        for (int i = 0; i < samples; i++) {
+            short sample = (short) (12000 * Math.sin(i * 0.07) + 3000 * Math.sin(i * 1.3));
+            data[2 * i] = (byte) sample;
+            data[2 * i + 1] = (byte) (sample >> 8);
+        }
+        return data;
+    }
+    
+    private static final class Smoother implements AudioEffect {
+        private float state;
+        int largestBlock;
+        
+        @Override
+        public void process(float[] samples, int offset, int length) {
+            largestBlock = Math.max(largestBlock, length);
+            for (int i = offset; i < offset + length; i++) {
+                state += 0.1f * (samples[i] - state);
+                samples[i] = state;
+            }
+        }
+        
+        @Override
+        public void reset() {
+            state = 0.0f;
+        }
+    }
+}
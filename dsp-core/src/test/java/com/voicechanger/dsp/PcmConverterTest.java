@@ -0,0 +1,47 @@
+package com.voicechanger.dsp;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+public class PcmConverterTest {
+    
+    @Test
+    public void bytePcmRoundTripsEverySample() {
+        byte[] pcm = new byte[2 * 65536];
+        for (int i = 0; i < 65536; i++) {
+            short sample = (short) (i - 32768);
+            pcm[2 * i] = (byte) sample;
+            pcm[2 * i + 1] = (byte) (sample >> 8);
+        }
+        float[] samples = new float[65536];
+        PcmConverter.toFloat(pcm, 0, samples, 0, samples.length);
+        byte[] out = new byte[pcm.length];
+        PcmConverter.toPcm16(samples, 0, out, 0, samples.length);
+        
+        // Encoding truncates, so a sample may come back one step towards zero
+        for (int i = 0; i < 65536; i++) {
+            short expected = (short) Math.max(i - 32768, -32767);
+            short actual = (short) ((out[2 * i + 1] << 8) | (out[2 * i] & 0xFF));
+            assertEquals("sample " + expected, expected, actual, 1.0);
+        }
+    }
+    
+    @Test
+    public void decodesLittleEndianAtAnOffset() {
+        byte[] pcm = {9, 9, (byte) 0xFF, 0x3F, 0x01, (byte) 0xC0};
+        float[] samples = new float[3];
+        PcmConverter.toFloat(pcm, 2, samples, 1, 2);
+        assertEquals(0.0f, samples[0], 0.0);
+        assertEquals(16383 / 32767.0f, samples[1], 1e-6);
+        assertEquals(-16383 / 32767.0f, samples[2], 1e-6);
+    }
+    
+    @Test
+    public void clampsOutOfRangeSamples() {
+        assertEquals(32767, PcmConverter.toShort(1.5f));
+        assertEquals(-32767, PcmConverter.toShort(-3.0f));
+        assertEquals(32767, PcmConverter.toShort(1.0f));
+        assertEquals(0, PcmConverter.toShort(0.0f));
+    }
+}
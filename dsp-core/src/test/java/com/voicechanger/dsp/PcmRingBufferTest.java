@@ -0,0 +1,91 @@
+package com.voicechanger.dsp;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+public class PcmRingBufferTest {
+    
+    @Test
+    public void capacityRoundsUpToPowerOfTwo() {
+        assertEquals(8, new PcmRingBuffer(5).capacity());
+        assertEquals(16, new PcmRingBuffer(16).capacity());
+    }
+    
+    @Test
+    public void keepsOrderAcrossWraparound() {
+        PcmRingBuffer ring = new PcmRingBuffer(8);
+        short[] chunk = new short[5];
+        short[] out = new short[5];
+        short next = 0;
+        short expected = 0;
+        // 5 does not divide 8, so the copies split at the end of the array in ever new places
+        for (int round = 0; round < 40; round++) {
+            for (int i = 0; i < chunk.length; i++) {
+                chunk[i] = next++;
+            }
+            assertEquals(5, ring.write(chunk, 0, chunk.length));
+            assertEquals(5, ring.read(out, 0, out.length));
+            for (short sample : out) {
+                assertEquals(expected++, sample);
+            }
+        }
+        assertEquals(0, ring.availableToRead());
+    }
+    
+    @Test
+    public void bytePcmWrapsAroundLittleEndian() {
+        PcmRingBuffer ring = new PcmRingBuffer(4);
+        byte[] pcm = new byte[6];
+        byte[] out = new byte[6];
+        for (int round = 0; round < 10; round++) {
+            for (int i = 0; i < 3; i++) {
+                short sample = (short) (round * 1000 - 4000 + i);
+                pcm[2 * i] = (byte) sample;
+                pcm[2 * i + 1] = (byte) (sample >> 8);
+            }
+            assertEquals(3, ring.write(pcm, 0, pcm.length));
+            assertEquals(3, ring.read(out, 0, out.length));
+            for (int b = 0; b < pcm.length; b++) {
+                assertEquals("round " + round + ", byte " + b, pcm[b], out[b]);
+            }
+        }
+    }
+    
+    @Test
+    public void writesStopWhenFullAndReadsWhenEmpty() {
+        PcmRingBuffer ring = new PcmRingBuffer(8);
+        short[] data = new short[12];
+        for (int i = 0; i < data.length; i++) {
+            data[i] = (short) i;
+        }
+        assertEquals(3, ring.write(data, 0, 3));
+        assertEquals(3, ring.read(new short[3], 0, 3));
+        
+        // Fill across the end of the array: only the free space is taken
+        assertEquals(8, ring.write(data, 0, data.length));
+        assertEquals(0, ring.availableToWrite());
+        assertEquals(0, ring.write(data, 0, 1));
+        
+        short[] out = new short[12];
+        assertEquals(8, ring.read(out, 0, out.length));
+        for (int i = 0; i < 8; i++) {
+            assertEquals(i, out[i]);
+        }
+        assertEquals(0, ring.read(out, 0, 1));
+    }
+    
+    @Test
+    public void floatSamplesRoundTripAndClamp() {
+        PcmRingBuffer ring = new PcmRingBuffer(8);
+        float[] in = {0.0f, 0.5f, -0.25f, 1.5f, -1.5f};
+        float[] out = new float[in.length];
+        ring.write(in, 0, in.length);
+        ring.read(out, 0, out.length);
+        assertEquals(0.0f, out[0], 1e-4);
+        assertEquals(0.5f, out[1], 1e-4);
+        assertEquals(-0.25f, out[2], 1e-4);
+        assertEquals(1.0f, out[3], 1e-4);
+        assertEquals(-1.0f, out[4], 1e-4);
+    }
+}
@@ -0,0 +1,98 @@
+package com.voicechanger.dsp;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+public class PitchShifterTest {
+    private static final int SAMPLE_RATE = 16000;
+    private static final double F0 = 150.0;
+    private static final float[] RATIOS = {0.75f, 0.9f, 1.25f, 1.5f};
+    // Output before this is left out, so the shifters' latency and start-up do not count
+    private static final int SETTLE = SAMPLE_RATE / 2;
+    
+    @Test
+    public void psolaHitsTheTargetPitch() {
+        for (float ratio : RATIOS) {
+            assertShifts(new PsolaPitchShifter(SAMPLE_RATE), ratio);
+        }
+    }
+    
+    @Test
+    public void phaseVocoderHitsTheTargetPitch() {
+        for (float ratio : RATIOS) {
+            assertShifts(new PhaseVocoderPitchShifter(), ratio);
+        }
+    }
+    
+    @Test
+    public void formantPreservingShifterHitsTheTargetPitch() {
+        for (float ratio : RATIOS) {
+            assertShifts(new FormantPreservingPitchShifter(SAMPLE_RATE), ratio);
+        }
+    }
+    
+    @Test
+    public void unityRatioKeepsThePitch() {
+        assertShifts(new PsolaPitchShifter(SAMPLE_RATE), 1.0f);
+        assertShifts(new PhaseVocoderPitchShifter(), 1.0f);
+    }
+    
+    @Test
+    public void phaseVocoderUnityRatioIsTheDelayedInput() {
+        PhaseVocoderPitchShifter shifter = new PhaseVocoderPitchShifter();
+        float[] input = TestSignals.vowel(SAMPLE_RATE, SAMPLE_RATE, F0);
+        float[] output = shift(shifter, input, 1.0f, 500);
+        int latency = shifter.getLatencySamples();
+        for (int n = latency; n < output.length; n++) {
+            assertEquals("sample " + n, input[n - latency], output[n], 1e-6);
+        }
+    }
+    
+    @Test
+    public void phaseVocoderOutputDoesNotDependOnTheBlockSize() {
+        float[] input = TestSignals.vowel(SAMPLE_RATE, SAMPLE_RATE, F0);
+        float[] whole = shift(new PhaseVocoderPitchShifter(), input, 1.25f, 500);
+        float[] split = shift(new PhaseVocoderPitchShifter(), input, 1.25f, 37);
+        for (int n = 0; n < whole.length; n++) {
+            assertEquals("sample " + n, whole[n], split[n], 1e-5);
+        }
+    }
+    
+    @Test
+    public void phaseVocoderKeepsTheLevel() {
+        float[] input = TestSignals.vowel(SAMPLE_RATE, SAMPLE_RATE, F0);
+        for (float ratio : new float[] {0.7f, 1.001f, 1.3f, 1.5f, 2.0f}) {
+            float[] output = shift(new PhaseVocoderPitchShifter(), input, ratio, 500);
+            double levelDb = 20.0 * Math.log10(rms(output, SETTLE) / rms(input, SETTLE));
+            assertEquals("level at ratio " + ratio, 0.0, levelDb, 1.0);
+        }
+    }
+    
+    private static float[] shift(PitchShifter shifter, float[] input, float ratio, int blockSize) {
+        shifter.setPitchRatio(ratio);
+        float[] samples = input.clone();
+        for (int offset = 0; offset < samples.length; offset += blockSize) {
+            shifter.process(samples, offset, Math.min(blockSize, samples.length - offset));
+        }
+        return samples;
+    }
+    
+    private static void assertShifts(PitchShifter shifter, float ratio) {
+        float[] input = TestSignals.vowel(SAMPLE_RATE, 2 * SAMPLE_RATE, F0);
+        // In the pipeline's 500-sample chunks
+        float[] samples = shift(shifter, input, ratio, 500);
+        
+        double expected = F0 * ratio;
+        double measured = TestSignals.autocorrelationPitch(samples, SAMPLE_RATE, SETTLE);
+        assertEquals(shifter.getClass().getSimpleName() + " at ratio " + ratio, expected, measured, 0.02 * expected);
+    }
+    
+    private static double rms(float[] signal, int skip) {
+        double energy = 0.0;
+        for (int n = skip; n < signal.length; n++) {
+            energy += signal[n] * signal[n];
+        }
+        return Math.sqrt(energy / (signal.length - skip));
+    }
+}
@@ -0,0 +1,55 @@
+package com.voicechanger.dsp;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class PitchTrackerTest {
+    private static final int SAMPLE_RATE = 16000;
+    
+    @Test
+    public void findsVowelPitchWithoutOctaveErrors() {
+        for (double f0 : new double[] {70.0, 100.0, 140.0, 220.0, 330.0, 450.0}) {
+            float[] vowel = TestSignals.vowel(SAMPLE_RATE, SAMPLE_RATE, f0);
+            PitchTracker tracker = new PitchTracker(SAMPLE_RATE);
+            tracker.process(vowel, 0, vowel.length);
+            PitchStatistics statistics = tracker.getStatistics();
+            
+            assertTrue("voiced at " + f0 + " Hz", statistics.getVoicedFraction() > 0.8f);
+            // Every voiced frame, not only the median, within 1%
+            assertEquals("lowest at " + f0 + " Hz", f0, statistics.getMin(), 0.01 * f0);
+            assertEquals("highest at " + f0 + " Hz", f0, statistics.getMax(), 0.01 * f0);
+        }
+    }
+    
+    @Test
+    public void periodsBetweenCoarseLagsAreNotReadAnOctaveLow() {
+        // Periods that fall between two lags of the 4 kHz search grid
+        for (double f0 : new double[] {170.0, 205.0, 320.0, 380.0, 420.0}) {
+            float[] vowel = TestSignals.vowel(SAMPLE_RATE, SAMPLE_RATE, f0);
+            PitchTracker tracker = new PitchTracker(SAMPLE_RATE);
+            tracker.process(vowel, 0, vowel.length);
+            PitchStatistics statistics = tracker.getStatistics();
+            assertEquals("median at " + f0 + " Hz", f0, statistics.getMedian(), 0.01 * f0);
+            assertEquals("lowest at " + f0 + " Hz", f0, statistics.getMin(), 0.01 * f0);
+        }
+    }
+    
+    @Test
+    public void silenceIsUnvoiced() {
+        PitchTracker tracker = new PitchTracker(SAMPLE_RATE);
+        tracker.process(new float[SAMPLE_RATE], 0, SAMPLE_RATE);
+        assertEquals(0, tracker.getStatistics().getVoicedCount());
+        assertEquals(0.0f, tracker.getFrequency(), 0.0);
+    }
+    
+    @Test
+    public void pitchOutsideTheRangeIsUnvoiced() {
+        float[] vowel = TestSignals.vowel(SAMPLE_RATE, SAMPLE_RATE, 180.0);
+        PitchTracker tracker = new PitchTracker(SAMPLE_RATE, 60.0f, 150.0f, SAMPLE_RATE / 100);
+        tracker.process(vowel, 0, vowel.length);
+        PitchStatistics statistics = tracker.getStatistics();
+        assertTrue("no pitch above the range", statistics.getVoicedCount() == 0 || statistics.getMax() <= 150.0f);
+    }
+}
@@ -0,0 +1,65 @@
+package com.voicechanger.dsp;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+public class RealFftTest {
+    
+    @Test
+    public void forwardMatchesDirectDft() {
+        for (int size : new int[] {4, 8, 64, 512}) {
+            float[] signal = noise(size, size);
+            float[] packed = signal.clone();
+            RealFft.forSize(size).forward(packed);
+            
+            double tolerance = 1e-5 * size;
+            for (int k = 0; k <= size / 2; k++) {
+                double re = 0.0;
+                double im = 0.0;
+                for (int n = 0; n < size; n++) {
+                    double angle = -2.0 * Math.PI * k * n / size;
+                    re += signal[n] * Math.cos(angle);
+                    im += signal[n] * Math.sin(angle);
+                }
+                if (k == 0) {
+                    assertEquals("DC, size " + size, re, packed[0], tolerance);
+                } else if (k == size / 2) {
+                    assertEquals("Nyquist, size " + size, re, packed[1], tolerance);
+                } else {
+                    assertEquals("re bin " + k + ", size " + size, re, packed[2 * k], tolerance);
+                    assertEquals("im bin " + k + ", size " + size, im, packed[2 * k + 1], tolerance);
+                }
+            }
+        }
+    }
+    
+    @Test
+    public void inverseUndoesForwardUpToSize() {
+        int size = 256;
+        float[] signal = noise(size, 7);
+        float[] data = signal.clone();
+        RealFft fft = RealFft.forSize(size);
+        fft.forward(data);
+        fft.inverse(data);
+        for (int n = 0; n < size; n++) {
+            assertEquals("sample " + n, signal[n], data[n] / size, 1e-5);
+        }
+    }
+    
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsSizesThatAreNotPowersOfTwo() {
+        new RealFft(48);
+    }
+    
+    private static float[] noise(int size, long seed) {
+        Random random = new Random(seed);
+        float[] signal = new float[size];
+        for (int n = 0; n < size; n++) {
+            signal[n] = (float) random.nextGaussian();
+        }
+        return signal;
+    }
+}
@@ -0,0 +1,110 @@
+package com.voicechanger.dsp;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+
+import org.junit.Test;
+
+public class ResamplerTest {
+    private static final int CAPTURE_RATE = 44100;
+    private static final int PIPELINE_RATE = 16000;
+    
+    @Test
+    public void toneComesThroughCleanly() {
+        double[] minimumSnr = {55.0, 75.0, 90.0};
+        for (Resampler.Quality quality : Resampler.Quality.values()) {
+            float[] output = convert(tone(1000.0, CAPTURE_RATE, CAPTURE_RATE), CAPTURE_RATE, PIPELINE_RATE, quality, 441);
+            // Fit the tone and measure what is left, once the filter has filled
+            double[] fit = fitTone(output, 1000.0, PIPELINE_RATE, 1000);
+            assertEquals(quality + " level", 0.5, fit[0], 0.005);
+            assertTrue(quality + " SNR " + fit[1] + " dB", fit[1] > minimumSnr[quality.ordinal()]);
+        }
+    }
+    
+    @Test
+    public void downsamplingRejectsAboveTheNewNyquist() {
+        // 11 kHz would alias to 5 kHz at 16 kHz
+        float[] output = convert(tone(11000.0, CAPTURE_RATE, CAPTURE_RATE), CAPTURE_RATE, PIPELINE_RATE,
+                Resampler.Quality.MEDIUM, 441);
+        double level = 20.0 * Math.log10(rms(output, 1000) / (0.5 / Math.sqrt(2.0)));
+        assertTrue("aliased level " + level + " dB", level < -65.0);
+    }
+    
+    @Test
+    public void outputLengthFollowsTheRatioWhateverTheBlocks() {
+        float[] input = tone(440.0, PIPELINE_RATE, PIPELINE_RATE);
+        float[] whole = convert(input, PIPELINE_RATE, 48000, Resampler.Quality.FAST, input.length);
+        float[] blocks = convert(input, PIPELINE_RATE, 48000, Resampler.Quality.FAST, 37);
+        assertEquals(3 * input.length, whole.length);
+        assertEquals(whole.length, blocks.length);
+        for (int n = 0; n < whole.length; n++) {
+            assertEquals(whole[n], blocks[n], 0.0);
+        }
+    }
+    
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsNonPositiveRates() {
+        new Resampler(0, PIPELINE_RATE, Resampler.Quality.FAST);
+    }
+    
+    private static float[] convert(float[] input, int inputRate, int outputRate, Resampler.Quality quality, int block) {
+        Resampler resampler = new Resampler(inputRate, outputRate, quality);
+        float[] output = new float[resampler.getMaxOutput(input.length)];
+        float[] scratch = new float[resampler.getMaxOutput(block)];
+        int produced = 0;
+        for (int offset = 0; offset < input.length; offset += block) {
+            int count = resampler.process(input, offset, Math.min(block, input.length - offset), scratch, 0);
+            assertTrue(count <= scratch.length);
+            System.arraycopy(scratch, 0, output, produced, count);
+            produced += count;
+        }
+        return Arrays.copyOf(output, produced);
+    }
+    
+    private static float[] tone(double frequency, int sampleRate, int length) {
+        float[] samples = new float[length];
+        for (int n = 0; n < length; n++) {
+            samples[n] = (float) (0.5 * Math.sin(2.0 * Math.PI * frequency * n / sampleRate));
+        }
+        return samples;
+    }
+    
+    /**
+     * Least-squares fit of a sinusoid at {@code frequency} after {@code skip} samples; returns its
+     * amplitude and the ratio of the fitted tone to the residual in dB
+     */
+    private static double[] fitTone(float[] signal, double frequency, int sampleRate, int skip) {
+        double w = 2.0 * Math.PI * frequency / sampleRate;
+        double cc = 0.0, ss = 0.0, cs = 0.0, xc = 0.0, xs = 0.0;
+        for (int n = skip; n < signal.length; n++) {
+            double c = Math.cos(w * n);
+            double s = Math.sin(w * n);
+            cc += c * c;
+            ss += s * s;
+            cs += c * s;
+            xc += signal[n] * c;
+            xs += signal[n] * s;
+        }
+        double det = cc * ss - cs * cs;
+        double a = (xc * ss - xs * cs) / det;
+        double b = (xs * cc - xc * cs) / det;
+        double toneEnergy = 0.0;
+        double residualEnergy = 0.0;
+        for (int n = skip; n < signal.length; n++) {
+            double fitted = a * Math.cos(w * n) + b * Math.sin(w * n);
+            toneEnergy += fitted * fitted;
+            residualEnergy += (signal[n] - fitted) * (signal[n] - fitted);
+        }
+        return new double[] {Math.hypot(a, b), 10.0 * Math.log10(toneEnergy / residualEnergy)};
+    }
+    
+    private static double rms(float[] signal, int skip) {
+        double energy = 0.0;
+        for (int n = skip; n < signal.length; n++) {
+            energy += signal[n] * signal[n];
+        }
+        return Math.sqrt(energy / (signal.length - skip));
+    }
+}
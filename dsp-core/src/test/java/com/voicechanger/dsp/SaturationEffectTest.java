@@ -0,0 +1,86 @@
+package com.voicechanger.dsp;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class SaturationEffectTest {
+    private static final int SAMPLE_RATE = 16000;
+    
+    @Test
+    public void tableFollowsTanh() {
+        double worst = 0.0;
+        for (int i = -120000; i <= 120000; i++) {
+            float x = i * 1e-4f;
+            worst = Math.max(worst, Math.abs(TanhTable.tanh(x) - Math.tanh(x)));
+            assertEquals(-TanhTable.tanh(x), TanhTable.tanh(-x), 1e-6);
+        }
+        assertTrue("worst error " + worst, worst < 3e-6);
+        assertEquals(1.0f, TanhTable.tanh(100.0f), 1e-6);
+    }
+    
+    @Test
+    public void zeroDriveIsABypass() {
+        float[] samples = {0.9f, -0.4f, 0.1f};
+        SaturationEffect saturation = new SaturationEffect();
+        saturation.process(samples, 0, samples.length);
+        assertEquals(0.9f, samples[0], 0.0);
+        assertEquals(-0.4f, samples[1], 0.0);
+    }
+    
+    @Test
+    public void oversamplingFollowsTheCurveTwoSamplesLate() {
+        float[] input = sine(200.0, 0.8, SAMPLE_RATE / 10);
+        float[] output = input.clone();
+        SaturationEffect saturation = new SaturationEffect();
+        saturation.setDrive(2.0f);
+        saturation.setOversampling(true);
+        saturation.process(output, 0, output.length);
+        // After the interpolator has filled
+        for (int n = 4; n < output.length; n++) {
+            assertEquals("sample " + n, Math.tanh(2.0 * input[n - 2]), output[n], 0.01);
+        }
+    }
+    
+    @Test
+    public void oversamplingReducesAliasing() {
+        // The third harmonic of 3.7 kHz (11.1 kHz) folds back to 4.9 kHz at 16 kHz
+        double aliased = 3.0 * 3700.0 - SAMPLE_RATE;
+        double plain = toneLevel(saturate(false), -aliased);
+        double oversampled = toneLevel(saturate(true), -aliased);
+        assertTrue("aliased tone " + plain + " dB without, " + oversampled + " dB with oversampling",
+                oversampled < plain - 6.0);
+    }
+    
+    private static float[] saturate(boolean oversampling) {
+        float[] samples = sine(3700.0, 0.9, SAMPLE_RATE / 4);
+        SaturationEffect saturation = new SaturationEffect();
+        saturation.setDrive(3.0f);
+        saturation.setOversampling(oversampling);
+        saturation.process(samples, 0, samples.length);
+        return samples;
+    }
+    
+    private static float[] sine(double frequency, double amplitude, int length) {
+        float[] samples = new float[length];
+        for (int n = 0; n < length; n++) {
+            samples[n] = (float) (amplitude * Math.sin(2.0 * Math.PI * frequency * n / SAMPLE_RATE));
+        }
+        return samples;
+    }
+    
+    /**
+     * Level in dB of the component at {@code |frequency|}
+     */
+    private static double toneLevel(float[] samples, double frequency) {
+        double w = 2.0 * Math.PI * Math.abs(frequency) / SAMPLE_RATE;
+        double re = 0.0;
+        double im = 0.0;
+        for (int n = 0; n < samples.length; n++) {
+            re += samples[n] * Math.cos(w * n);
+            im += samples[n] * Math.sin(w * n);
+        }
+        return 20.0 * Math.log10(2.0 * Math.hypot(re, im) / samples.length);
+    }
+}
@@ -0,0 +1,119 @@
+package com.voicechanger.dsp;
+
+/**
+ * Synthetic voices for the pitch tests
+ */
+final class TestSignals {
+    // Formants of an open vowel and their bandwidths
+    private static final double[] FORMANTS = {730.0, 1090.0, 2440.0};
+    private static final double[] BANDWIDTHS = {80.0, 90.0, 120.0};
+    
+    private TestSignals() {
+    }
+    
+    /**
+     * Steady vowel: every harmonic of {@code f0} below 0.45 of the sample rate, weighted by a
+     * three-formant envelope, at a peak level of about -6 dBFS
+     */
+    static float[] vowel(int sampleRate, int length, double f0) {
+        int harmonics = (int) (0.45 * sampleRate / f0);
+        double[] amplitude = new double[harmonics + 1];
+        double total = 0.0;
+        for (int h = 1; h <= harmonics; h++) {
+            double f = h * f0;
+            double a = 0.0;
+            for (int i = 0; i < FORMANTS.length; i++) {
+                double detune = (f - FORMANTS[i]) / BANDWIDTHS[i];
+                a += 1.0 / (1.0 + detune * detune);
+            }
+            amplitude[h] = (a + 0.05) / h;
+            total += amplitude[h];
+        }
+        
+        float[] signal = new float[length];
+        for (int n = 0; n < length; n++) {
+            double sum = 0.0;
+            for (int h = 1; h <= harmonics; h++) {
+                sum += amplitude[h] * Math.sin(2.0 * Math.PI * h * f0 * n / sampleRate);
+            }
+            signal[n] = (float) (0.5 * sum / total);
+        }
+        return signal;
+    }
+    
+    /**
+     * Fundamental of a steady periodic signal after the first {@code skip} samples, from the
+     * first autocorrelation peak that comes within 10% of the highest one between 60 and 500 Hz
+     */
+    static double autocorrelationPitch(float[] signal, int sampleRate, int skip) {
+        int minLag = sampleRate / 500;
+        int maxLag = sampleRate / 60;
+        double[] r = new double[maxLag + 2];
+        for (int lag = minLag - 1; lag <= maxLag + 1; lag++) {
+            double sum = 0.0;
+            for (int n = skip; n + lag < signal.length; n++) {
+                sum += signal[n] * signal[n + lag];
+            }
+            r[lag] = sum / (signal.length - skip - lag);
+        }
+        double best = 0.0;
+        for (int lag = minLag; lag <= maxLag; lag++) {
+            best = Math.max(best, r[lag]);
+        }
+        for (int lag = minLag; lag <= maxLag; lag++) {
+            if (r[lag] >= 0.9 * best && r[lag] >= r[lag - 1] && r[lag] >= r[lag + 1]) {
+                // Parabolic interpolation between the neighbouring lags
+                double curvature = r[lag - 1] - 2.0 * r[lag] + r[lag + 1];
+                double delta = curvature == 0.0 ? 0.0 : 0.5 * (r[lag - 1] - r[lag + 1]) / curvature;
+                return sampleRate / (lag + delta);
+            }
+        }
+        return 0.0;
+    }
+    
+    /**
+     * Power-weighted mean frequency of the harmonics of {@code f0} below {@code maxFrequency},
+     * each measured by projection onto a sine and cosine after the first {@code skip} samples.
+     * It follows the formants of a steady vowel whatever its pitch.
+     */
+    static double harmonicCentroid(float[] signal, int sampleRate, double f0, double maxFrequency, int skip) {
+        double weighted = 0.0;
+        double total = 0.0;
+        for (int h = 1; h * f0 < maxFrequency; h++) {
+            double w = 2.0 * Math.PI * h * f0 / sampleRate;
+            double re = 0.0;
+            double im = 0.0;
+            for (int n = skip; n < signal.length; n++) {
+                re += signal[n] * Math.cos(w * n);
+                im += signal[n] * Math.sin(w * n);
+            }
+            double power = re * re + im * im;
+            weighted += power * h * f0;
+            total += power;
+        }
+        return weighted / total;
+    }
+    
+    /**
+     * Power-weighted mean frequency below {@code maxFrequency} after the first {@code skip}
+     * samples, with the spectrum sampled every 10 Hz. Unlike {@link #harmonicCentroid} it also
+     * follows the envelope of shaped noise.
+     */
+    static double spectralCentroid(float[] signal, int sampleRate, double maxFrequency, int skip) {
+        double weighted = 0.0;
+        double total = 0.0;
+        for (double f = 10.0; f < maxFrequency; f += 10.0) {
+            double w = 2.0 * Math.PI * f / sampleRate;
+            double re = 0.0;
+            double im = 0.0;
+            for (int n = skip; n < signal.length; n++) {
+                re += signal[n] * Math.cos(w * n);
+                im += signal[n] * Math.sin(w * n);
+            }
+            double power = re * re + im * im;
+            weighted += power * f;
+            total += power;
+        }
+        return weighted / total;
+    }
+}
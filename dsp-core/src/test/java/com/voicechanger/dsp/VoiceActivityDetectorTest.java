@@ -0,0 +1,146 @@
+package com.voicechanger.dsp;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class VoiceActivityDetectorTest {
+    private static final int SAMPLE_RATE = 16000;
+    private static final int BLOCK = 160;
+    // Syllables of 300 ms every 800 ms, after a second of background only
+    private static final int LEAD_IN = SAMPLE_RATE;
+    private static final int PERIOD = 8 * SAMPLE_RATE / 10;
+    private static final int SYLLABLE = 3 * SAMPLE_RATE / 10;
+    private static final int DELAY = SAMPLE_RATE / 5;
+    
+    @Test
+    public void findsSyllablesInNoise() {
+        float[] signal = syllablesInNoise(8 * SAMPLE_RATE);
+        VoiceActivityDetector detector = new VoiceActivityDetector(SAMPLE_RATE);
+        int speechBlocks = 0;
+        int detected = 0;
+        int pauseBlocks = 0;
+        int falseAlarms = 0;
+        for (int offset = 0; offset < signal.length; offset += BLOCK) {
+            boolean speech = detector.process(signal, offset, BLOCK);
+            int position = offset - LEAD_IN;
+            if (position < 0) continue;
+            int phase = position % PERIOD;
+            if (phase >= 40 * SAMPLE_RATE / 1000 && phase + BLOCK <= SYLLABLE) {
+                speechBlocks++;
+                if (speech) detected++;
+            } else if (phase >= SYLLABLE + 300 * SAMPLE_RATE / 1000) {
+                // Past the hangover
+                pauseBlocks++;
+                if (speech) falseAlarms++;
+            }
+        }
+        assertTrue("detected " + detected + " of " + speechBlocks, detected > 0.9 * speechBlocks);
+        assertTrue("false alarms " + falseAlarms + " of " + pauseBlocks, falseAlarms < 0.1 * pauseBlocks);
+    }
+    
+    @Test
+    public void bytePcmGivesTheSameDecisions() {
+        float[] signal = syllablesInNoise(3 * SAMPLE_RATE);
+        byte[] pcm = new byte[2 * signal.length];
+        PcmConverter.toPcm16(signal, 0, pcm, 0, signal.length);
+        float[] decoded = new float[signal.length];
+        PcmConverter.toFloat(pcm, 0, decoded, 0, signal.length);
+        
+        VoiceActivityDetector fromFloat = new VoiceActivityDetector(SAMPLE_RATE);
+        VoiceActivityDetector fromPcm = new VoiceActivityDetector(SAMPLE_RATE);
+        for (int offset = 0; offset < signal.length; offset += BLOCK) {
+            assertEquals("block at " + offset, fromFloat.process(decoded, offset, BLOCK),
+                    fromPcm.process(pcm, 2 * offset, 2 * BLOCK));
+        }
+    }
+    
+    @Test
+    public void gateLetsTheDelayedTailDrainAndThenIdles() {
+        float[] signal = syllablesInNoise(4 * SAMPLE_RATE);
+        float[] source = signal.clone();
+        DelayEffect effect = new DelayEffect(DELAY);
+        VoiceActivityGate gate = new VoiceActivityGate(SAMPLE_RATE, new VoiceActivityDetector(SAMPLE_RATE), effect);
+        int idleBlocks = 0;
+        for (int offset = 0; offset < signal.length; offset += BLOCK) {
+            boolean wasOpen = gate.isOpen();
+            int processed = effect.blocks;
+            gate.process(signal, offset, BLOCK);
+            if (!wasOpen && !gate.isOpen()) {
+                idleBlocks++;
+                assertEquals(processed, effect.blocks);
+                for (int n = offset; n < offset + BLOCK; n++) {
+                    assertEquals(0.0f, signal[n], 0.0);
+                }
+            }
+        }
+        assertTrue(idleBlocks > 0);
+        assertEquals(0, effect.resets);
+        
+        // Each syllable's last 200 ms comes out after it ends, at full level
+        for (int start = LEAD_IN; start + PERIOD <= signal.length; start += PERIOD) {
+            int end = start + SYLLABLE;
+            double in = energy(source, end - DELAY, end);
+            double out = energy(signal, end, end + DELAY);
+            assertEquals("tail after " + end, 1.0, out / in, 0.05);
+        }
+        // The ramps keep every step within the largest step of the source
+        float largest = 0.0f;
+        for (int n = 1; n < source.length; n++) {
+            largest = Math.max(largest, Math.abs(source[n] - source[n - 1]));
+        }
+        for (int n = 1; n < signal.length; n++) {
+            assertTrue("step at " + n, Math.abs(signal[n] - signal[n - 1]) <= largest);
+        }
+    }
+    
+    private static float[] syllablesInNoise(int length) {
+        float[] vowel = TestSignals.vowel(SAMPLE_RATE, length, 140.0);
+        NoiseGenerator noise = new NoiseGenerator(5);
+        float[] signal = new float[length];
+        for (int n = 0; n < length; n++) {
+            boolean voiced = n >= LEAD_IN && (n - LEAD_IN) % PERIOD < SYLLABLE;
+            signal[n] = (voiced ? vowel[n] : 0.0f) + 0.003f * noise.nextWhite();
+        }
+        return signal;
+    }
+    
+    private static double energy(float[] signal, int from, int to) {
+        double sum = 0.0;
+        for (int n = from; n < to; n++) {
+            sum += signal[n] * signal[n];
+        }
+        return sum;
+    }
+    
+    /**
+     * Plain delay line standing in for a stage with latency or a tail
+     */
+    private static final class DelayEffect implements AudioEffect {
+        private final float[] line;
+        private int position;
+        int blocks;
+        int resets;
+        
+        DelayEffect(int delay) {
+            line = new float[delay];
+        }
+        
+        @Override
+        public void process(float[] samples, int offset, int length) {
+            for (int i = offset; i < offset + length; i++) {
+                float delayed = line[position];
+                line[position] = samples[i];
+                samples[i] = delayed;
+                position = (position + 1) % line.length;
+            }
+            blocks++;
+        }
+        
+        @Override
+        public void reset() {
+            resets++;
+        }
+    }
+}
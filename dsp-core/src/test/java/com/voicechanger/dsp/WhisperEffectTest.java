@@ -0,0 +1,54 @@
+package com.voicechanger.dsp;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class WhisperEffectTest {
+    private static final int SAMPLE_RATE = 16000;
+    private static final double F0 = 150.0;
+    
+    @Test
+    public void zeroAmountIsABypass() {
+        float[] input = TestSignals.vowel(SAMPLE_RATE, SAMPLE_RATE / 4, F0);
+        float[] output = input.clone();
+        new WhisperEffect().process(output, 0, output.length);
+        for (int n = 0; n < input.length; n++) {
+            assertEquals(input[n], output[n], 0.0);
+        }
+    }
+    
+    @Test
+    public void fullWhisperRemovesThePitchAndKeepsTheEnvelope() {
+        float[] input = TestSignals.vowel(SAMPLE_RATE, SAMPLE_RATE, F0);
+        float[] output = input.clone();
+        WhisperEffect whisper = new WhisperEffect();
+        whisper.setAmount(1.0f);
+        for (int offset = 0; offset < output.length; offset += 500) {
+            whisper.process(output, offset, 500);
+        }
+        
+        int skip = SAMPLE_RATE / 4;
+        int period = (int) Math.round(SAMPLE_RATE / F0);
+        assertTrue(periodicity(input, skip, period) > 0.9);
+        assertTrue(periodicity(output, skip, period) < 0.3);
+        
+        double centroid = TestSignals.spectralCentroid(input, SAMPLE_RATE, 4000.0, skip);
+        double whispered = TestSignals.spectralCentroid(output, SAMPLE_RATE, 4000.0, skip);
+        assertEquals(centroid, whispered, 0.2 * centroid);
+    }
+    
+    /**
+     * Normalized autocorrelation at one pitch period
+     */
+    private static double periodicity(float[] signal, int skip, int lag) {
+        double cross = 0.0;
+        double energy = 0.0;
+        for (int n = skip; n + lag < signal.length; n++) {
+            cross += signal[n] * signal[n + lag];
+            energy += signal[n] * signal[n];
+        }
+        return cross / energy;
+    }
+}
@@ -0,0 +1,68 @@
+package com.voicechanger.dsp;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class WsolaTimeStretcherTest {
+    private static final int SAMPLE_RATE = 16000;
+    private static final double F0 = 140.0;
+    private static final int BLOCK = 500;
+    
+    @Test
+    public void offlineStretchChangesDurationNotPitch() {
+        float[] vowel = TestSignals.vowel(SAMPLE_RATE, SAMPLE_RATE, F0);
+        for (float rate : new float[] {0.8f, 1.25f}) {
+            float[] stretched = WsolaTimeStretcher.stretch(vowel, rate);
+            assertEquals(Math.round(vowel.length / rate), stretched.length);
+            double pitch = TestSignals.autocorrelationPitch(stretched, SAMPLE_RATE, SAMPLE_RATE / 10);
+            assertEquals("pitch at rate " + rate, F0, pitch, 0.02 * F0);
+            // Aligned frames add up coherently, so the level holds
+            assertEquals(rms(vowel), rms(stretched), 0.1 * rms(vowel));
+        }
+    }
+    
+    @Test
+    public void elasticStageKeepsTheDelayWithinItsBudget() {
+        float[] speech = syllables(8 * SAMPLE_RATE);
+        for (float rate : new float[] {0.8f, 1.0f, 1.2f}) {
+            TimeStretchEffect stage = new TimeStretchEffect(SAMPLE_RATE, 120);
+            stage.prepare(BLOCK);
+            stage.setRate(rate);
+            // Reserve for a 20 ms frame, a 5 ms search and a block, the elastic budget and a hop
+            int cap = 320 + 80 + BLOCK + 120 * SAMPLE_RATE / 1000 + 160;
+            float[] samples = speech.clone();
+            for (int offset = 0; offset < samples.length; offset += BLOCK) {
+                stage.process(samples, offset, BLOCK);
+                assertTrue("delay " + stage.getLatencySamples() + " at rate " + rate,
+                        stage.getLatencySamples() <= cap);
+            }
+            double pitch = TestSignals.autocorrelationPitch(samples, SAMPLE_RATE, SAMPLE_RATE);
+            assertEquals("pitch at rate " + rate, F0, pitch, 0.02 * F0);
+        }
+    }
+    
+    /**
+     * A vowel in 300 ms syllables separated by 200 ms pauses
+     */
+    private static float[] syllables(int length) {
+        float[] vowel = TestSignals.vowel(SAMPLE_RATE, length, F0);
+        int syllable = 3 * SAMPLE_RATE / 10;
+        int period = SAMPLE_RATE / 2;
+        for (int n = 0; n < length; n++) {
+            if (n % period >= syllable) {
+                vowel[n] = 0.0f;
+            }
+        }
+        return vowel;
+    }
+    
+    private static double rms(float[] signal) {
+        double energy = 0.0;
+        for (float sample : signal) {
+            energy += sample * sample;
+        }
+        return Math.sqrt(energy / signal.length);
+    }
+}